@@ -1,22 +1,86 @@
 package health.ere.ps.config.interceptor;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import health.ere.ps.event.config.UserConfigurationsUpdateEvent;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.ObservesAsync;
 
+/**
+ * Collects which parts of the connector setup have to be re-initialized after the
+ * user configurations changed. Keys that only concern eRiXa, the UI or the
+ * prescriptions themselves do not trigger any re-initialization.
+ */
 @ApplicationScoped
 public class ConfigUpdateObserver {
 
-    private boolean updated = false;
+    public enum Reload {
+        /** client certificate of the connector, implies {@link #CONNECTOR_SERVICES} */
+        SSL_CONTEXT,
+        /** endpoint discovery and SOAP ports */
+        CONNECTOR_SERVICES,
+        /** mandant, workplace, client system and user id */
+        CONTEXT_TYPE
+    }
+
+    private Set<Reload> pending = EnumSet.noneOf(Reload.class);
+    // checked without locking on every intercepted call
+    private volatile boolean dirty;
 
     public void handleUpdateProperties(@ObservesAsync UserConfigurationsUpdateEvent event) {
-        updated = true;
+        Set<Reload> reloads = reloadsFor(event.getChangedKeys());
+        synchronized (this) {
+            pending.addAll(reloads);
+            dirty = !pending.isEmpty();
+        }
+    }
+
+    /**
+     * @return the re-initializations requested since the last call
+     */
+    public Set<Reload> pullReloads() {
+        if (!dirty) {
+            return Collections.emptySet();
+        }
+        synchronized (this) {
+            Set<Reload> result = pending;
+            pending = EnumSet.noneOf(Reload.class);
+            dirty = false;
+            return result;
+        }
     }
 
-    public boolean pullValue() {
-        boolean result = updated;
-        updated = false;
-        return result;
+    static Set<Reload> reloadsFor(Set<String> changedKeys) {
+        if (changedKeys == null) {
+            return EnumSet.allOf(Reload.class);
+        }
+        Set<Reload> reloads = EnumSet.noneOf(Reload.class);
+        for (String key : changedKeys) {
+            switch (key) {
+                case "clientCertificate":
+                case "clientCertificatePassword":
+                    reloads.add(Reload.SSL_CONTEXT);
+                    reloads.add(Reload.CONNECTOR_SERVICES);
+                    break;
+                case "connectorBaseURL":
+                case "version":
+                case "basicAuthUsername":
+                case "basicAuthPassword":
+                    reloads.add(Reload.CONNECTOR_SERVICES);
+                    break;
+                case "mandantId":
+                case "workplaceId":
+                case "clientSystemId":
+                case "userId":
+                    reloads.add(Reload.CONTEXT_TYPE);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return reloads;
     }
 }
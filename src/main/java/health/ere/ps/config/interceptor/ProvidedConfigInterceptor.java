@@ -1,5 +1,6 @@
 package health.ere.ps.config.interceptor;
 
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -9,6 +10,7 @@ import jakarta.interceptor.AroundInvoke;
 import jakarta.interceptor.Interceptor;
 import jakarta.interceptor.InvocationContext;
 
+import health.ere.ps.config.interceptor.ConfigUpdateObserver.Reload;
 import health.ere.ps.service.common.security.SecretsManagerService;
 import health.ere.ps.service.connector.provider.AbstractConnectorServicesProvider;
 import health.ere.ps.service.connector.provider.DefaultConnectorServicesProvider;
@@ -35,14 +37,22 @@ public class ProvidedConfigInterceptor {
 
     @AroundInvoke
     public Object capture(InvocationContext invocationContext) throws Exception {
-        if (observer.pullValue()) {
-            log.info("Detected change in user configurations. Connector services will be re-initialized.");
-            secrectsManagerService.updateSSLContext();
+        Set<Reload> reloads = observer.pullReloads();
+        if (!reloads.isEmpty()) {
+            log.info("Detected change in user configurations. Re-initializing " + reloads);
+            if (reloads.contains(Reload.SSL_CONTEXT)) {
+                secrectsManagerService.updateSSLContext();
+            }
             AbstractConnectorServicesProvider provider = (AbstractConnectorServicesProvider) invocationContext.getTarget();
-            try {
-                provider.initializeServices(true);
-            } catch(Exception ex) {
-                log.log(Level.WARNING, "Could not init connector with new settings", ex);
+            if (reloads.contains(Reload.CONNECTOR_SERVICES)) {
+                try {
+                    provider.initializeServices(true);
+                } catch(Exception ex) {
+                    log.log(Level.WARNING, "Could not init connector with new settings", ex);
+                }
+            } else {
+                // the SOAP ports stay valid, only the context changed
+                provider.initializeContextType();
             }
             multiConnectorServicesProvider.clearAll();
         }
@@ -11,6 +11,7 @@ import jakarta.websocket.Session;
 public class AbortTasksEvent extends AbstractEvent {
 
     private List<AbortTaskEntry> tasks = new ArrayList<>();
+    private boolean streamStatus;
 
     public AbortTasksEvent() {
 
@@ -26,6 +27,7 @@ public class AbortTasksEvent extends AbstractEvent {
     public AbortTasksEvent(JsonObject object, Session replyTo, String id) {
         this(object.getJsonArray("payload"));
         parseRuntimeConfig(object);
+        this.streamStatus = object.getBoolean("streamStatus", false);
         this.replyTo = replyTo;
         this.id = id;
     }
@@ -38,6 +40,17 @@ public class AbortTasksEvent extends AbstractEvent {
         this.tasks = tasks;
     }
 
+    /**
+     * If set, the status of every task is sent as soon as it is aborted.
+     */
+    public boolean isStreamStatus() {
+        return this.streamStatus;
+    }
+
+    public void setStreamStatus(boolean streamStatus) {
+        this.streamStatus = streamStatus;
+    }
+
     public void addAbortTaskEntry(AbortTaskEntry abortTaskEntry) {
         this.tasks.add(abortTaskEntry);
     }
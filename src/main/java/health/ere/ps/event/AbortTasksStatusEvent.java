@@ -8,6 +8,7 @@ import jakarta.websocket.Session;
 public class AbortTasksStatusEvent extends AbstractEvent {
 
     private List<AbortTaskStatus> tasks = new ArrayList<>();
+    private boolean partial;
 
     
     public AbortTasksStatusEvent(List<AbortTaskStatus> tasks, Session replyTo, String replyToMessageId) {
@@ -24,4 +25,15 @@ public class AbortTasksStatusEvent extends AbstractEvent {
         this.tasks = tasks;
     }
 
+    /**
+     * A partial event contains the status of a single task while the others are still aborted.
+     */
+    public boolean isPartial() {
+        return this.partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
 }
@@ -7,6 +7,7 @@ import jakarta.websocket.Session;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.trace.TraceContext;
 
 public abstract class AbstractEvent {
     
@@ -26,6 +27,13 @@ public abstract class AbstractEvent {
     @JsonIgnore
     protected RuntimeConfig runtimeConfig;
 
+    /**
+     * Context of the span that fired the event, the parent of the spans of the observers.
+     */
+    @JsonbTransient
+    @JsonIgnore
+    protected TraceContext traceContext;
+
     public String getId() {
         return this.id;
     }
@@ -58,6 +66,14 @@ public abstract class AbstractEvent {
         this.runtimeConfig = runtimeConfig;
     }
 
+    public TraceContext getTraceContext() {
+        return this.traceContext;
+    }
+
+    public void setTraceContext(TraceContext traceContext) {
+        this.traceContext = traceContext;
+    }
+
     public void parseRuntimeConfig(JsonObject object) {
         if(object != null && object.getJsonObject("runtimeConfig") != null) {
             this.runtimeConfig = new RuntimeConfig(object);
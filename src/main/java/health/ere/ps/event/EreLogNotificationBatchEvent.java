@@ -0,0 +1,19 @@
+package health.ere.ps.event;
+
+import java.util.List;
+
+/**
+ * All log notifications that were collected during one delivery interval of the
+ * {@link health.ere.ps.service.logging.EreLogNotificationPublisher}.
+ */
+public class EreLogNotificationBatchEvent {
+    private final List<EreLogNotificationEvent> notifications;
+
+    public EreLogNotificationBatchEvent(List<EreLogNotificationEvent> notifications) {
+        this.notifications = notifications;
+    }
+
+    public List<EreLogNotificationEvent> getNotifications() {
+        return notifications;
+    }
+}
@@ -1,16 +1,32 @@
 package health.ere.ps.event.config;
 
+import java.util.Collections;
+import java.util.Set;
+
 import health.ere.ps.model.config.UserConfigurations;
 
 public class UserConfigurationsUpdateEvent {
 
     private final UserConfigurations configurations;
+    private final Set<String> changedKeys;
 
     public UserConfigurationsUpdateEvent(UserConfigurations configurations) {
+        this(configurations, null);
+    }
+
+    public UserConfigurationsUpdateEvent(UserConfigurations configurations, Set<String> changedKeys) {
         this.configurations = configurations;
+        this.changedKeys = changedKeys == null ? null : Collections.unmodifiableSet(changedKeys);
     }
 
     public UserConfigurations getConfigurations() {
         return configurations;
     }
+
+    /**
+     * @return the property keys that differ from the previous configuration or null if unknown
+     */
+    public Set<String> getChangedKeys() {
+        return changedKeys;
+    }
 }
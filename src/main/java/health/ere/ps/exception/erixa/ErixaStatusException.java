@@ -0,0 +1,20 @@
+package health.ere.ps.exception.erixa;
+
+import java.io.IOException;
+
+/**
+ * eRiXa answered a request with another status than 200.
+ */
+public class ErixaStatusException extends IOException {
+
+    private final int statusCode;
+
+    public ErixaStatusException(int statusCode, String msg) {
+        super(msg);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
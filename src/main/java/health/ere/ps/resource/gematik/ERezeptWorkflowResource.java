@@ -4,11 +4,18 @@ import static health.ere.ps.resource.gematik.Extractors.extractRuntimeConfigFrom
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URI;
 import java.security.cert.CertificateEncodingException;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.naming.InvalidNameException;
@@ -28,19 +35,25 @@ import de.gematik.ws.conn.eventservice.wsdl.v7.FaultMessage;
 import de.gematik.ws.conn.signatureservice.v7.SignResponse;
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.config.UserConfig;
+import health.ere.ps.event.AbortTaskEntry;
+import health.ere.ps.event.AbortTaskStatus;
 import health.ere.ps.event.GetSignatureModeResponseEvent;
 import health.ere.ps.exception.gematik.ERezeptWorkflowException;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.service.fhir.FHIRService;
 import health.ere.ps.service.gematik.ERezeptWorkflowService;
 import health.ere.ps.service.gematik.PrefillPrescriptionService;
+import health.ere.ps.service.job.Job;
+import health.ere.ps.service.job.JobService;
 import health.ere.ps.service.pdf.DocumentService;
 import jakarta.inject.Inject;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.client.Entity;
@@ -51,6 +64,9 @@ import jakarta.ws.rs.core.Response;
 @Path("/workflow")
 public class ERezeptWorkflowResource {
 
+    // a job that was rejected by the saturated jobs pool may be submitted again after this time
+    static final int RETRY_AFTER_SECONDS = 5;
+
     @Inject
     ERezeptWorkflowService eRezeptWorkflowService;
 
@@ -60,6 +76,9 @@ public class ERezeptWorkflowResource {
     @Inject
     DocumentService documentService;
 
+    @Inject
+    JobService jobService;
+
     private final FhirContext fhirContext = FHIRService.getFhirContext();
     IParser jsonParser = fhirContext.newJsonParser();
     IParser xmlParser = fhirContext.newXmlParser();
@@ -73,27 +92,39 @@ public class ERezeptWorkflowResource {
     @POST
     @Path("task")
     public Response createERezeptTask(@HeaderParam("accept") String accept, @QueryParam("flowtype") String flowtype) {
+        String task = createERezeptTask(accept, flowtype, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig));
+        return Response.ok().entity(task).type(taskMediaType(accept)).build();
+    }
 
+    String createERezeptTask(String accept, String flowtype, RuntimeConfig runtimeConfig) {
 	if(flowtype == null) {
 	    flowtype = "160";
 	}
-        Task task = eRezeptWorkflowService.createERezeptTask(true, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig), flowtype);
+        Task task = eRezeptWorkflowService.createERezeptTask(true, runtimeConfig, flowtype);
         if("application/xml".equals(accept)) {
-            return Response.ok().entity(xmlParser.encodeResourceToString(task)).type(MediaType.APPLICATION_XML).build();
+            return xmlParser.encodeResourceToString(task);
         } else {
-            return Response.ok().entity(jsonParser.encodeResourceToString(task)).type(MediaType.APPLICATION_JSON).build();
+            return jsonParser.encodeResourceToString(task);
         }
     }
 
+    static String taskMediaType(String accept) {
+        return "application/xml".equals(accept) ? MediaType.APPLICATION_XML : MediaType.APPLICATION_JSON;
+    }
+
     @POST
     @Path("sign")
     public Response signBundleWithIdentifiers(@HeaderParam("Content-Type") String contentType, String bundle) throws DataFormatException, ERezeptWorkflowException {
-        Bundle bundleObject = string2bundle(contentType, bundle);
-        SignResponse signResponse = eRezeptWorkflowService.signBundleWithIdentifiers(bundleObject, false, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig));
-        String base64String = signResponse2base64String(signResponse);
+        String base64String = signBundleWithIdentifiers(contentType, bundle, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig));
         return Response.ok().entity(base64String).type(MediaType.TEXT_PLAIN).build();
     }
 
+    String signBundleWithIdentifiers(String contentType, String bundle, RuntimeConfig runtimeConfig) throws DataFormatException, ERezeptWorkflowException {
+        Bundle bundleObject = string2bundle(contentType, bundle);
+        SignResponse signResponse = eRezeptWorkflowService.signBundleWithIdentifiers(bundleObject, false, runtimeConfig);
+        return signResponse2base64String(signResponse);
+    }
+
     static String signResponse2base64String(SignResponse signResponse) {
         return new String(Base64.getEncoder().encode(signResponse.getSignatureObject().getBase64Signature().getValue()));
     }
@@ -106,12 +137,16 @@ public class ERezeptWorkflowResource {
     @POST
     @Path("batch-sign")
     public Response signBundlesWithIdentifiers(@HeaderParam("Content-Type") String contentType, String bundles) throws DataFormatException, ERezeptWorkflowException {
-        List<Bundle> bundlesList = Arrays.asList(bundles.split("\\r?\\n")).stream().map((bundle) ->  string2bundle(contentType, bundle)).collect(Collectors.toList());
-        List<SignResponse> signResponse = eRezeptWorkflowService.signBundleWithIdentifiers(bundlesList, false, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig));
-        String responses = signResponse.stream().map(ERezeptWorkflowResource::signResponse2base64String).collect(Collectors.joining("\n"));
+        String responses = String.join("\n", signBundlesWithIdentifiers(contentType, bundles, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig)));
         return Response.ok().entity(responses).type(MediaType.TEXT_PLAIN).build();
     }
 
+    List<String> signBundlesWithIdentifiers(String contentType, String bundles, RuntimeConfig runtimeConfig) throws DataFormatException, ERezeptWorkflowException {
+        List<Bundle> bundlesList = Arrays.asList(bundles.split("\\r?\\n")).stream().map((bundle) ->  string2bundle(contentType, bundle)).collect(Collectors.toList());
+        List<SignResponse> signResponse = eRezeptWorkflowService.signBundleWithIdentifiers(bundlesList, false, runtimeConfig);
+        return signResponse.stream().map(ERezeptWorkflowResource::signResponse2base64String).collect(Collectors.toList());
+    }
+
     @GET
     @Path("cards")
     public GetCardsResponse cards() {
@@ -136,6 +171,134 @@ public class ERezeptWorkflowResource {
         return Response.noContent().build();
     }
 
+    /**
+     * Aborts all given tasks concurrently and returns the status of every task.
+     */
+    @POST
+    @Path("abort-batch")
+    public List<AbortTaskStatus> abortERezeptTasks(List<AbortERezept> abortERezepts) {
+        List<AbortTaskEntry> abortTaskEntries = toAbortTaskEntries(abortERezepts);
+        return eRezeptWorkflowService.abortERezeptTasks(extractRuntimeConfigFromHeaders(httpServletRequest, userConfig), abortTaskEntries, null, null, null);
+    }
+
+    /**
+     * Same as task, but the connector and prescription server calls run on a job thread and
+     * are cancelled after ere.jobs.timeout-seconds. Creating and updating a Task is not
+     * interrupted once it runs, so the response is the real outcome.
+     */
+    @POST
+    @Path("async/task")
+    public CompletionStage<Response> createERezeptTaskAsync(@HeaderParam("accept") String accept, @QueryParam("flowtype") String flowtype) {
+        RuntimeConfig runtimeConfig = extractRuntimeConfigFromHeaders(httpServletRequest, userConfig);
+        return respond(jobService.submit("task", false, () -> createERezeptTask(accept, flowtype, runtimeConfig)),
+            task -> Response.ok().entity(task).type(taskMediaType(accept)).build());
+    }
+
+    @POST
+    @Path("async/sign")
+    public CompletionStage<Response> signBundleWithIdentifiersAsync(@HeaderParam("Content-Type") String contentType, String bundle) {
+        RuntimeConfig runtimeConfig = extractRuntimeConfigFromHeaders(httpServletRequest, userConfig);
+        return respond(jobService.submit("sign", () -> signBundleWithIdentifiers(contentType, bundle, runtimeConfig)),
+            base64String -> Response.ok().entity(base64String).type(MediaType.TEXT_PLAIN).build());
+    }
+
+    @POST
+    @Path("async/batch-sign")
+    public CompletionStage<Response> signBundlesWithIdentifiersAsync(@HeaderParam("Content-Type") String contentType, String bundles) {
+        RuntimeConfig runtimeConfig = extractRuntimeConfigFromHeaders(httpServletRequest, userConfig);
+        return respond(jobService.submit("batch-sign", () -> signBundlesWithIdentifiers(contentType, bundles, runtimeConfig)),
+            responses -> Response.ok().entity(String.join("\n", responses)).type(MediaType.TEXT_PLAIN).build());
+    }
+
+    @POST
+    @Path("async/update")
+    public CompletionStage<Response> updateERezeptTaskAsync(UpdateERezept updateERezept) {
+        RuntimeConfig runtimeConfig = extractRuntimeConfigFromHeaders(httpServletRequest, userConfig);
+        return respond(jobService.submit("update", false, () -> {
+            eRezeptWorkflowService.updateERezeptTask(updateERezept.getTaskId(), updateERezept.getAccessCode(), Base64.getDecoder().decode(updateERezept.getSignedBytes()), runtimeConfig);
+            return null;
+        }), result -> Response.ok().build());
+    }
+
+    /**
+     * Starts a batch signature and returns the job at once, its status and the signatures
+     * are polled from jobs/{id}.
+     */
+    @POST
+    @Path("jobs/batch-sign")
+    public Response signBundlesWithIdentifiersJob(@HeaderParam("Content-Type") String contentType, String bundles) {
+        RuntimeConfig runtimeConfig = extractRuntimeConfigFromHeaders(httpServletRequest, userConfig);
+        return accepted(jobService.submit("batch-sign", () -> signBundlesWithIdentifiers(contentType, bundles, runtimeConfig)));
+    }
+
+    @POST
+    @Path("jobs/abort-batch")
+    public Response abortERezeptTasksJob(List<AbortERezept> abortERezepts) {
+        RuntimeConfig runtimeConfig = extractRuntimeConfigFromHeaders(httpServletRequest, userConfig);
+        List<AbortTaskEntry> abortTaskEntries = toAbortTaskEntries(abortERezepts);
+        return accepted(jobService.submit("abort-batch", () -> eRezeptWorkflowService.abortERezeptTasks(runtimeConfig, abortTaskEntries, null, null, null)));
+    }
+
+    @GET
+    @Path("jobs/{id}")
+    public Response job(@PathParam("id") String id) {
+        return jobService.getJob(id).map(job -> Response.ok(job).build())
+            .orElse(Response.status(Response.Status.NOT_FOUND).build());
+    }
+
+    @DELETE
+    @Path("jobs/{id}")
+    public Response cancelJob(@PathParam("id") String id) {
+        if (jobService.cancel(id)) {
+            return Response.noContent().build();
+        }
+        return Response.status(jobService.getJob(id).isPresent() ? Response.Status.CONFLICT : Response.Status.NOT_FOUND).build();
+    }
+
+    private static Response accepted(Job<?> job) {
+        if (job.isRejected()) {
+            return serviceUnavailable(job.getError());
+        }
+        return Response.accepted(job).location(URI.create("workflow/jobs/" + job.getId())).build();
+    }
+
+    private static <T> CompletionStage<Response> respond(Job<T> job, Function<T, Response> response) {
+        return job.completion().handle((result, t) -> {
+            if (t == null) {
+                return response.apply(result);
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof TimeoutException) {
+                return Response.status(Response.Status.GATEWAY_TIMEOUT).entity(cause.getMessage()).type(MediaType.TEXT_PLAIN).build();
+            }
+            if (cause instanceof CancellationException) {
+                return Response.status(Response.Status.CONFLICT).entity(cause.getMessage()).type(MediaType.TEXT_PLAIN).build();
+            }
+            if (cause instanceof RejectedExecutionException) {
+                return serviceUnavailable(cause.getMessage());
+            }
+            // mapped by the WebExceptionMapper like the synchronous endpoints
+            throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
+        });
+    }
+
+    /**
+     * The jobs pool is saturated, the client may submit the job again later.
+     */
+    private static Response serviceUnavailable(String message) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", RETRY_AFTER_SECONDS)
+            .entity(message).type(MediaType.TEXT_PLAIN).build();
+    }
+
+    static List<AbortTaskEntry> toAbortTaskEntries(List<AbortERezept> abortERezepts) {
+        return abortERezepts.stream().map(abortERezept -> {
+            AbortTaskEntry abortTaskEntry = new AbortTaskEntry();
+            abortTaskEntry.setId(abortERezept.getTaskId());
+            abortTaskEntry.setAccessCode(abortERezept.getAccessCode());
+            return abortTaskEntry;
+        }).collect(Collectors.toList());
+    }
+
     @POST
     @Path("comfortsignature/activate")
     public Response activate() {
@@ -3,7 +3,14 @@ package health.ere.ps.resource.gematik;
 
 import static health.ere.ps.resource.gematik.Extractors.extractRuntimeConfigFromHeaders;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.OperationOutcome;
 
 import de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage;
 import health.ere.ps.config.UserConfig;
@@ -11,6 +18,7 @@ import health.ere.ps.service.gematik.PharmacyService;
 import jakarta.inject.Inject;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
@@ -18,6 +26,8 @@ import jakarta.ws.rs.core.Context;
 @Path("/pharmacy")
 public class PharmacyResource {
 
+    private static final Pattern TASK_ID = Pattern.compile("/Task/([^/?]+)");
+
     @Inject
     PharmacyService pharmacyService;
 
@@ -39,4 +49,34 @@ public class PharmacyResource {
         return pharmacyService.accept(token, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig));
     }
 
+    /**
+     * Accepts one token per line concurrently. The result is a collection bundle with one entry per
+     * token, in the same order, an OperationOutcome for tokens that could not be processed. The
+     * OperationOutcome names the line and the Task id, the token itself carries the AccessCode.
+     */
+    @POST
+    @Path("Accept")
+    public Bundle ePrescriptions(String tokens) {
+        List<String> tokenList = Arrays.stream(tokens.split("\\r?\\n")).map(String::trim).filter(token -> !token.isEmpty()).collect(Collectors.toList());
+        List<Bundle> bundles = pharmacyService.acceptAll(tokenList, extractRuntimeConfigFromHeaders(httpServletRequest, userConfig));
+        Bundle collection = new Bundle();
+        collection.setType(Bundle.BundleType.COLLECTION);
+        for (int i = 0; i < tokenList.size(); i++) {
+            if (bundles.get(i) != null) {
+                collection.addEntry().setResource(bundles.get(i));
+            } else {
+                OperationOutcome operationOutcome = new OperationOutcome();
+                operationOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR)
+                    .setCode(OperationOutcome.IssueType.PROCESSING).setDiagnostics(diagnostics(i, tokenList.get(i)));
+                collection.addEntry().setResource(operationOutcome);
+            }
+        }
+        return collection;
+    }
+
+    static String diagnostics(int index, String token) {
+        Matcher matcher = TASK_ID.matcher(token);
+        return "Could not process token " + (index + 1) + (matcher.find() ? " of Task " + matcher.group(1) : "");
+    }
+
 }
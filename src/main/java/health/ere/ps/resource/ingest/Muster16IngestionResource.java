@@ -0,0 +1,44 @@
+package health.ere.ps.resource.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletionStage;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import health.ere.ps.service.ingest.Muster16IngestionService;
+
+@Path("/ingest/muster16")
+public class Muster16IngestionResource {
+
+    @Inject
+    Muster16IngestionService ingestionService;
+
+    /**
+     * Ingests the scanned Muster 16 PDFs of a ZIP. The valid bundles are sent to the websocket
+     * clients while the ZIP is processed, the response lists the result of every page.
+     */
+    @POST
+    @Consumes({"application/zip", MediaType.APPLICATION_OCTET_STREAM})
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> ingestZip(InputStream zip) throws IOException {
+        return ingestionService.submitZip(zip).thenApply(results -> Response.ok(results).build());
+    }
+
+    /**
+     * Ingests a single scanned PDF, which may contain several forms.
+     */
+    @POST
+    @Consumes("application/pdf")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> ingestPdf(byte[] pdf, @QueryParam("name") String name) {
+        return ingestionService.submit(name != null ? name : "upload.pdf", pdf).thenApply(results -> Response.ok(results).build());
+    }
+}
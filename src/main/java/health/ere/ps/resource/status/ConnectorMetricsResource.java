@@ -0,0 +1,22 @@
+package health.ere.ps.resource.status;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import health.ere.ps.service.connector.metrics.ConnectorMetrics;
+
+@Path("/status/connector")
+public class ConnectorMetricsResource {
+
+    /**
+     * Latency histograms, payload sizes, faults and in-flight calls per mandant and connector operation.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response connector() {
+        return Response.ok(ConnectorMetrics.getStatistics()).build();
+    }
+}
@@ -0,0 +1,26 @@
+package health.ere.ps.resource.status;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import health.ere.ps.service.ingest.Muster16IngestionService;
+
+@Path("/status/ingestion")
+public class IngestionResource {
+
+    @Inject
+    Muster16IngestionService ingestionService;
+
+    /**
+     * Documents in flight, ingested pages and bundles, invalid and failed pages of the bulk Muster 16 ingestion.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response ingestion() {
+        return Response.ok(ingestionService.getStatistics()).build();
+    }
+}
@@ -0,0 +1,26 @@
+package health.ere.ps.resource.status;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+
+@Path("/status/observers")
+public class ObserverExecutorsResource {
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    /**
+     * Threads, queue lengths, queue wait times and rejected events of the async observer pools.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response observers() {
+        return Response.ok(observerExecutors.getStatistics()).build();
+    }
+}
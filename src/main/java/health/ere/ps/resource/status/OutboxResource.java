@@ -0,0 +1,26 @@
+package health.ere.ps.resource.status;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import health.ere.ps.service.outbox.OutboxService;
+
+@Path("/status/outbox")
+public class OutboxResource {
+
+    @Inject
+    OutboxService outboxService;
+
+    /**
+     * Backlog and throughput of the KIM and eRiXa deliveries.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response outbox() {
+        return Response.ok(outboxService.getStatistics()).build();
+    }
+}
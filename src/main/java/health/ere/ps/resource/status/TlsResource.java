@@ -0,0 +1,22 @@
+package health.ere.ps.resource.status;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import health.ere.ps.service.common.security.SSLContextCache;
+
+@Path("/status/tls")
+public class TlsResource {
+
+    /**
+     * Cached SSLContexts and the full and resumed TLS handshakes with the connector per tenant.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response tls() {
+        return Response.ok(SSLContextCache.getStatistics()).build();
+    }
+}
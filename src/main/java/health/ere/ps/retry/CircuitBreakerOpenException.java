@@ -0,0 +1,21 @@
+package health.ere.ps.retry;
+
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private final String target;
+    private final long remainingOpenMs;
+
+    public CircuitBreakerOpenException(String target, long remainingOpenMs) {
+        super("Circuit breaker for " + target + " is open, calls are rejected for " + remainingOpenMs + " ms");
+        this.target = target;
+        this.remainingOpenMs = remainingOpenMs;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public long getRemainingOpenMs() {
+        return remainingOpenMs;
+    }
+}
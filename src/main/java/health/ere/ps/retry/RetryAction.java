@@ -1,6 +0,0 @@
-package health.ere.ps.retry;
-
-public interface RetryAction<T> {
-
-    T execute();
-}
@@ -0,0 +1,51 @@
+package health.ere.ps.retry;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Limits retries to a share of the calls to a target so that a degraded target does
+ * not receive a multiple of the normal load. Every call deposits ratio tokens, every
+ * retry takes one token. A minimal number of retries per second is always refilled.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double minRetriesPerSecond;
+    private final double capacity;
+    private final LongSupplier clock;
+
+    private double tokens;
+    private long lastRefill;
+
+    public RetryBudget(double ratio, double minRetriesPerSecond, double capacity) {
+        this(ratio, minRetriesPerSecond, capacity, System::currentTimeMillis);
+    }
+
+    RetryBudget(double ratio, double minRetriesPerSecond, double capacity, LongSupplier clock) {
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.clock = clock;
+        this.tokens = this.capacity;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    public synchronized void deposit() {
+        tokens = Math.min(capacity, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / 1000d * minRetriesPerSecond);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+}
@@ -0,0 +1,339 @@
+package health.ere.ps.retry;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+/**
+ * Retries calls to remote targets with exponential backoff and jitter.
+ *
+ * Every target has its own circuit breaker, retry budget and counters. A target can be keyed,
+ * e.g. per connector with {@link #keyed(String, String)}, then every key has its own breaker
+ * and shares the configuration of the target. Only failures accepted by the retryOn predicate
+ * are retried and count towards the breaker, other failures are passed through immediately.
+ * While the breaker is open calls fail fast with a {@link CircuitBreakerOpenException}, while
+ * its probe is in flight other calls back off before they try again.
+ *
+ * {@link #callAsync} does not block any thread between attempts, the next attempt is
+ * scheduled with the scheduler of {@link ObserverExecutors} and runs on the workflow pool by
+ * default. {@link #call} is meant for the synchronous workflow APIs and sleeps on the calling
+ * thread, at most ere.retry.blocking-max-sleep-ms (2000) per call in total. A retry that would
+ * exceed it is not attempted, longer backoffs need {@link #callAsync}.
+ *
+ * Configuration per target with fallback to the global key, e.g.
+ * ere.retry.prescription-server.max-attempts, then ere.retry.max-attempts:
+ * max-attempts (3), initial-delay-ms (200), max-delay-ms (5000), jitter (0.5),
+ * max-elapsed-ms (15000), breaker.failure-threshold (5), breaker.open-ms (30000),
+ * budget.ratio (0.2), budget.min-per-second (1), budget.capacity (20)
+ */
+@ApplicationScoped
+public class RetryEngine {
+
+    private static final Logger log = Logger.getLogger(RetryEngine.class.getName());
+
+    public static final String CONNECTOR = "connector";
+    public static final String IDP = "idp";
+    public static final String PRESCRIPTION_SERVER = "prescription-server";
+    public static final String ERIXA = "erixa";
+    public static final String KIM = "kim";
+
+    // delay of a call that was rejected while the probe of a half open breaker is in flight
+    static final long HALF_OPEN_MIN_DELAY_MS = 100;
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    // total time call() may sleep on the calling thread, which is usually a pool thread
+    long blockingMaxSleepMs = blockingMaxSleepMs();
+
+    private final Map<String, RetryTarget> targets = new ConcurrentHashMap<>();
+
+    /**
+     * The target for one key, e.g. the connector of a tenant. It is configured like the target.
+     */
+    public static String keyed(String target, String key) {
+        return key == null || key.isEmpty() ? target : target + "@" + key;
+    }
+
+    public RetryTarget getTarget(String name) {
+        return targets.computeIfAbsent(name, this::createTarget);
+    }
+
+    public Collection<RetryTarget> getTargets() {
+        return Collections.unmodifiableCollection(targets.values());
+    }
+
+    public <T> T call(String target, Callable<T> action, Predicate<Throwable> retryOn) throws Exception {
+        return call(target, getTarget(target).getPolicy(), action, retryOn);
+    }
+
+    public <T> T call(String target, RetryPolicy policy, Callable<T> action, Predicate<Throwable> retryOn) throws Exception {
+        Execution<T> execution = new Execution<>(getTarget(target), policy, action, retryOn);
+        execution.maxSleepMs = blockingMaxSleepMs;
+        while (true) {
+            try {
+                return execution.attempt();
+            } catch (Exception e) {
+                long delay = execution.nextDelay(e);
+                if (delay < 0) {
+                    throw e;
+                }
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    public <T> CompletableFuture<T> callAsync(String target, Callable<T> action, Predicate<Throwable> retryOn) {
+        return callAsync(target, getTarget(target).getPolicy(), action, retryOn, observerExecutors.getPool(Workload.WORKFLOW));
+    }
+
+    public <T> CompletableFuture<T> callAsync(String target, RetryPolicy policy, Callable<T> action,
+                                              Predicate<Throwable> retryOn) {
+        return callAsync(target, policy, action, retryOn, observerExecutors.getPool(Workload.WORKFLOW));
+    }
+
+    /**
+     * Attempts run on the given executor. Cancelling the returned future stops further attempts.
+     * When the executor rejects an attempt, the future fails with the RejectedExecutionException.
+     */
+    public <T> CompletableFuture<T> callAsync(String target, RetryPolicy policy, Callable<T> action,
+                                              Predicate<Throwable> retryOn, Executor executor) {
+        Execution<T> execution = new Execution<>(getTarget(target), policy, action, retryOn);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(execution, executor, result);
+        return result;
+    }
+
+    private <T> void submit(Execution<T> execution, Executor executor, CompletableFuture<T> result) {
+        try {
+            executor.execute(() -> attemptAsync(execution, executor, result));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private <T> void attemptAsync(Execution<T> execution, Executor executor, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            result.complete(execution.attempt());
+        } catch (Exception e) {
+            long delay = execution.nextDelay(e);
+            if (delay < 0) {
+                result.completeExceptionally(e);
+            } else {
+                observerExecutors.schedule(() -> submit(execution, executor, result), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * I/O and web service transport errors anywhere in the cause chain. A SOAP fault is an
+     * answer of the target and not transient.
+     */
+    public static boolean isTransient(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SOAPFaultException) {
+                return false;
+            }
+            if (cause instanceof IOException || cause instanceof ProcessingException
+                    || cause instanceof WebServiceException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Transient errors and HTTP statuses that are worth another attempt.
+     */
+    public static boolean isRetryableHttp(Throwable t) {
+        if (t instanceof WebApplicationException && ((WebApplicationException) t).getResponse() != null) {
+            return isRetryableStatus(((WebApplicationException) t).getResponse().getStatus());
+        }
+        return isTransient(t);
+    }
+
+    public static boolean isRetryableStatus(int status) {
+        // 401 is retried because the caller drops the rejected bearer token, the next attempt requests a new one
+        return status == 401 || status == 408 || status == 429 || status >= 500;
+    }
+
+    /**
+     * For requests that are not idempotent, e.g. creating a task: only a 401, after which the
+     * caller drops the rejected bearer token, and failures that happened before the request
+     * was sent. A timeout or a 5xx may come after the target committed the request.
+     */
+    public static boolean isRetryableBeforeSent(Throwable t) {
+        if (t instanceof WebApplicationException && ((WebApplicationException) t).getResponse() != null) {
+            return ((WebApplicationException) t).getResponse().getStatus() == 401;
+        }
+        return isNotSent(t);
+    }
+
+    /**
+     * The connection could not be established, so the request never reached the target.
+     */
+    public static boolean isNotSent(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private RetryTarget createTarget(String keyedName) {
+        int keyStart = keyedName.indexOf('@');
+        String name = keyStart < 0 ? keyedName : keyedName.substring(0, keyStart);
+        RetryPolicy policy = new RetryPolicy(
+                (int) configValue(name, "max-attempts", 3),
+                (long) configValue(name, "initial-delay-ms", 200),
+                (long) configValue(name, "max-delay-ms", 5000),
+                configValue(name, "jitter", 0.5),
+                (long) configValue(name, "max-elapsed-ms", 15000));
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+                (int) configValue(name, "breaker.failure-threshold", 5),
+                (long) configValue(name, "breaker.open-ms", 30000));
+        RetryBudget retryBudget = new RetryBudget(
+                configValue(name, "budget.ratio", 0.2),
+                configValue(name, "budget.min-per-second", 1),
+                configValue(name, "budget.capacity", 20));
+        return new RetryTarget(keyedName, policy, circuitBreaker, retryBudget);
+    }
+
+    private static long blockingMaxSleepMs() {
+        try {
+            return ConfigProvider.getConfig().getOptionalValue("ere.retry.blocking-max-sleep-ms", Long.class).orElse(2000L);
+        } catch (RuntimeException e) {
+            return 2000;
+        }
+    }
+
+    private static double configValue(String target, String key, double defaultValue) {
+        try {
+            return ConfigProvider.getConfig().getOptionalValue("ere.retry." + target + "." + key, Double.class)
+                    .or(() -> ConfigProvider.getConfig().getOptionalValue("ere.retry." + key, Double.class))
+                    .orElse(defaultValue);
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    private static class Execution<T> {
+        final RetryTarget target;
+        final RetryPolicy policy;
+        final Callable<T> action;
+        final Predicate<Throwable> retryOn;
+        final long start = System.currentTimeMillis();
+        int attempts;
+        // sum of the delays, bounded for attempts that sleep on the calling thread
+        long sleptMs;
+        long maxSleepMs = Long.MAX_VALUE;
+
+        Execution(RetryTarget target, RetryPolicy policy, Callable<T> action, Predicate<Throwable> retryOn) {
+            this.target = target;
+            this.policy = policy;
+            this.action = action;
+            this.retryOn = retryOn;
+            target.calls.increment();
+            target.getRetryBudget().deposit();
+        }
+
+        T attempt() throws Exception {
+            attempts++;
+            target.attempts.increment();
+            CircuitBreaker circuitBreaker = target.getCircuitBreaker();
+            if (!circuitBreaker.tryAcquire()) {
+                target.rejectedByBreaker.increment();
+                throw new CircuitBreakerOpenException(target.getName(), circuitBreaker.remainingOpenMs());
+            }
+            try {
+                T result = action.call();
+                circuitBreaker.recordSuccess();
+                target.successes.increment();
+                return result;
+            } catch (Exception e) {
+                if (retryOn.test(e)) {
+                    circuitBreaker.recordFailure();
+                } else {
+                    // the target answered, the request itself was not acceptable
+                    circuitBreaker.recordSuccess();
+                }
+                throw e;
+            } catch (Error e) {
+                circuitBreaker.recordFailure();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the delay before the next attempt or -1 if the failure is final
+         */
+        long nextDelay(Exception failure) {
+            long delay;
+            if (failure instanceof CircuitBreakerOpenException) {
+                if (((CircuitBreakerOpenException) failure).getRemainingOpenMs() > 0) {
+                    // open, fail fast instead of waiting for the breaker
+                    target.failures.increment();
+                    return -1;
+                }
+                // half open, another call is probing the target
+                delay = Math.max(HALF_OPEN_MIN_DELAY_MS, policy.delayMs(attempts));
+            } else if (retryOn.test(failure)) {
+                delay = policy.delayMs(attempts);
+            } else {
+                target.failures.increment();
+                return -1;
+            }
+            if (!policy.allowsRetry(attempts, System.currentTimeMillis() - start, delay)
+                    || delay > maxSleepMs - sleptMs) {
+                target.failures.increment();
+                return -1;
+            }
+            if (!target.getRetryBudget().tryWithdraw()) {
+                target.budgetExhausted.increment();
+                target.failures.increment();
+                log.warning("Retry budget for " + target.getName() + " exhausted, not retrying");
+                return -1;
+            }
+            target.retries.increment();
+            sleptMs += delay;
+            log.log(Level.WARNING, "Attempt " + attempts + " on " + target.getName() + " failed, retrying in "
+                    + delay + " ms: " + failure);
+            return delay;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package health.ere.ps.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter. The delay before retry n is
+ * min(maxDelay, initialDelay * 2^(n-1)) reduced by a random share of up to jitter.
+ */
+public class RetryPolicy {
+
+    /**
+     * Executes the action once without any retry.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0, Long.MAX_VALUE);
+
+    private final int maxAttempts;
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private final double jitter;
+    private final long maxElapsedMs;
+
+    /**
+     * @param maxAttempts  attempts including the first one
+     * @param jitter       share of the delay that is randomized, between 0 and 1
+     * @param maxElapsedMs no retry is scheduled that would start later than this after the first attempt
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayMs, long maxDelayMs, double jitter, long maxElapsedMs) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMs = initialDelayMs;
+        this.maxDelayMs = Math.max(initialDelayMs, maxDelayMs);
+        this.jitter = jitter;
+        this.maxElapsedMs = maxElapsedMs;
+    }
+
+    /**
+     * @param retry 1 for the first retry
+     */
+    public long delayMs(int retry) {
+        long delay = maxDelayMs;
+        int shift = retry - 1;
+        if (shift < 63 && initialDelayMs <= (maxDelayMs >> shift)) {
+            delay = initialDelayMs << shift;
+        }
+        if (jitter > 0 && delay > 0) {
+            delay -= (long) (ThreadLocalRandom.current().nextDouble() * jitter * delay);
+        }
+        return delay;
+    }
+
+    public boolean allowsRetry(int attempts, long elapsedMs, long delayMs) {
+        return attempts < maxAttempts && elapsedMs + delayMs <= maxElapsedMs;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialDelayMs() {
+        return initialDelayMs;
+    }
+
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public long getMaxElapsedMs() {
+        return maxElapsedMs;
+    }
+}
@@ -0,0 +1,80 @@
+package health.ere.ps.retry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Breaker, budget, default policy and counters of one remote target.
+ */
+public class RetryTarget {
+
+    private final String name;
+    private final RetryPolicy policy;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryBudget retryBudget;
+
+    final LongAdder calls = new LongAdder();
+    final LongAdder attempts = new LongAdder();
+    final LongAdder retries = new LongAdder();
+    final LongAdder successes = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder rejectedByBreaker = new LongAdder();
+    final LongAdder budgetExhausted = new LongAdder();
+
+    public RetryTarget(String name, RetryPolicy policy, CircuitBreaker circuitBreaker, RetryBudget retryBudget) {
+        this.name = name;
+        this.policy = policy;
+        this.circuitBreaker = circuitBreaker;
+        this.retryBudget = retryBudget;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RetryPolicy getPolicy() {
+        return policy;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getRejectedByBreaker() {
+        return rejectedByBreaker.sum();
+    }
+
+    public long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[state=" + circuitBreaker.getState() + ", calls=" + getCalls() + ", attempts=" + getAttempts()
+                + ", retries=" + getRetries() + ", successes=" + getSuccesses() + ", failures=" + getFailures()
+                + ", rejectedByBreaker=" + getRejectedByBreaker() + ", budgetExhausted=" + getBudgetExhausted() + "]";
+    }
+}
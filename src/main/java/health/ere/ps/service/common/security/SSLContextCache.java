@@ -0,0 +1,215 @@
+package health.ere.ps.service.common.security;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * SSLContexts of the connector client certificates by keystore fingerprint. All providers
+ * of a tenant share one SSLContext and one socket factory, so the JDK can resume TLS
+ * sessions and reuse keep-alive connections across all SOAP ports and provider rebuilds.
+ *
+ * The contexts are only weakly referenced. When the keystore or its password changes, the
+ * old context and its key material are dropped once no provider uses it anymore.
+ */
+public final class SSLContextCache {
+
+    public static final String ACCEPT_ALL = "accept-all";
+
+    private static final Map<String, WeakReference<CachedSSLContext>> contexts = new ConcurrentHashMap<>();
+    private static final LongAdder created = new LongAdder();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder evicted = new LongAdder();
+
+    private SSLContextCache() {
+    }
+
+    @FunctionalInterface
+    public interface SSLContextFactory {
+        SSLContext create() throws GeneralSecurityException, IOException;
+    }
+
+    /**
+     * Only calls the factory, i.e. decrypts the keystore, if there is no context for the fingerprint yet.
+     */
+    public static CachedSSLContext get(String fingerprint, SSLContextFactory factory) throws GeneralSecurityException, IOException {
+        CachedSSLContext cached = cached(fingerprint);
+        if (cached == null) {
+            synchronized (contexts) {
+                cached = cached(fingerprint);
+                if (cached == null) {
+                    evictUnused();
+                    cached = new CachedSSLContext(fingerprint, factory.create());
+                    contexts.put(fingerprint, new WeakReference<>(cached));
+                    created.increment();
+                    return cached;
+                }
+            }
+        }
+        hits.increment();
+        return cached;
+    }
+
+    static boolean isCached(String fingerprint) {
+        return cached(fingerprint) != null;
+    }
+
+    private static CachedSSLContext cached(String fingerprint) {
+        WeakReference<CachedSSLContext> reference = contexts.get(fingerprint);
+        return reference == null ? null : reference.get();
+    }
+
+    private static void evictUnused() {
+        contexts.values().removeIf(reference -> {
+            if (reference.get() != null) {
+                return false;
+            }
+            evicted.increment();
+            return true;
+        });
+    }
+
+    /**
+     * SHA-256 of the keystore and its password, so a changed password gets its own context.
+     */
+    public static String fingerprint(byte[] keystore, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(keystore);
+            digest.update((byte) 0);
+            digest.update((password == null ? "" : password).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        synchronized (contexts) {
+            evictUnused();
+        }
+        statistics.put("contextsCreated", created.sum());
+        statistics.put("contextsEvicted", evicted.sum());
+        statistics.put("cacheHits", hits.sum());
+        // by the first 12 hex digits of the keystore fingerprint, a tenant has one per keystore it used
+        Map<String, Object> keystores = new LinkedHashMap<>();
+        contexts.values().forEach(reference -> {
+            CachedSSLContext cached = reference.get();
+            if (cached == null) {
+                return;
+            }
+            Map<String, Object> keystore = new LinkedHashMap<>();
+            long handshakes = cached.handshakes.sum();
+            long resumed = cached.resumedHandshakes.sum();
+            keystore.put("handshakes", handshakes);
+            keystore.put("resumedHandshakes", resumed);
+            keystore.put("fullHandshakes", handshakes - resumed);
+            keystores.put(cached.fingerprint.length() > 12 ? cached.fingerprint.substring(0, 12) : cached.fingerprint, keystore);
+        });
+        statistics.put("keystores", keystores);
+        return statistics;
+    }
+
+    public static class CachedSSLContext {
+
+        private final String fingerprint;
+        private final SSLContext sslContext;
+        private final javax.net.ssl.SSLSocketFactory socketFactory;
+        private final LongAdder handshakes = new LongAdder();
+        private final LongAdder resumedHandshakes = new LongAdder();
+
+        CachedSSLContext(String fingerprint, SSLContext sslContext) {
+            this.fingerprint = fingerprint;
+            this.sslContext = sslContext;
+            this.socketFactory = new CountingSocketFactory(sslContext.getSocketFactory());
+        }
+
+        public SSLContext getSslContext() {
+            return sslContext;
+        }
+
+        /**
+         * The same instance for every port, the keep-alive cache of HttpsURLConnection only
+         * reuses connections that were opened with the same socket factory.
+         */
+        public javax.net.ssl.SSLSocketFactory getSocketFactory() {
+            return socketFactory;
+        }
+
+        private class CountingSocketFactory extends javax.net.ssl.SSLSocketFactory {
+
+            private final javax.net.ssl.SSLSocketFactory delegate;
+
+            CountingSocketFactory(javax.net.ssl.SSLSocketFactory delegate) {
+                this.delegate = delegate;
+            }
+
+            private Socket count(Socket socket) {
+                if (socket instanceof SSLSocket sslSocket) {
+                    long createdAt = System.currentTimeMillis();
+                    sslSocket.addHandshakeCompletedListener(event -> {
+                        handshakes.increment();
+                        // a resumed session was created by an earlier handshake
+                        if (event.getSession().getCreationTime() < createdAt) {
+                            resumedHandshakes.increment();
+                        }
+                    });
+                }
+                return socket;
+            }
+
+            @Override
+            public Socket createSocket() throws IOException {
+                return count(delegate.createSocket());
+            }
+
+            @Override
+            public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+                return count(delegate.createSocket(socket, host, port, autoClose));
+            }
+
+            @Override
+            public Socket createSocket(String host, int port) throws IOException {
+                return count(delegate.createSocket(host, port));
+            }
+
+            @Override
+            public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+                return count(delegate.createSocket(host, port, localHost, localPort));
+            }
+
+            @Override
+            public Socket createSocket(InetAddress host, int port) throws IOException {
+                return count(delegate.createSocket(host, port));
+            }
+
+            @Override
+            public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+                return count(delegate.createSocket(address, port, localAddress, localPort));
+            }
+
+            @Override
+            public String[] getDefaultCipherSuites() {
+                return delegate.getDefaultCipherSuites();
+            }
+
+            @Override
+            public String[] getSupportedCipherSuites() {
+                return delegate.getSupportedCipherSuites();
+            }
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package health.ere.ps.service.common.security;
 
 import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -46,7 +46,7 @@ public class SecretsManagerService {
     @Inject
     Event<Exception> exceptionEvent;
 
-    private SSLContext sslContext;
+    private SSLContextCache.CachedSSLContext cachedSSLContext;
 
 
     public SecretsManagerService() {
@@ -58,7 +58,7 @@ public class SecretsManagerService {
         UserConfigurations userConfigurations = userConfigurationService.getConfig();
 
         if(userConfigurations.getClientCertificate() != null && !userConfigurations.getClientCertificate().isEmpty()) {
-            sslContext = createSSLContext(userConfigurations);
+            cachedSSLContext = cachedSSLContext(userConfigurations);
         } else if (appConfig.getCertAuthStoreFile().isPresent() && appConfig.getCertAuthStoreFilePassword().isPresent()) {
             initFromAppConfig();
         } else {
@@ -67,14 +67,20 @@ public class SecretsManagerService {
     }
 
     public SSLContext createSSLContext(UserConfigurations userConfigurations) {
+        SSLContextCache.CachedSSLContext cached = cachedSSLContext(userConfigurations);
+        return cached == null ? null : cached.getSslContext();
+    }
+
+    private SSLContextCache.CachedSSLContext cachedSSLContext(UserConfigurations userConfigurations) {
         String base64UrlCertificate = userConfigurations.getClientCertificate();
         String clientCertificateString = base64UrlCertificate.split(",")[1];
         log.fine("Using certifcate: "+clientCertificateString);
         byte[] clientCertificateBytes = Base64.getDecoder().decode(clientCertificateString);
-        try (ByteArrayInputStream certificateInputStream = new ByteArrayInputStream(clientCertificateBytes)) {
-            return createSSLContext(userConfigurations.getClientCertificatePassword(), certificateInputStream);
-        } catch (NoSuchAlgorithmException | KeyStoreException | CertificateException | IOException
-                | UnrecoverableKeyException | KeyManagementException e) {
+        String clientCertificatePassword = userConfigurations.getClientCertificatePassword();
+        try {
+            return SSLContextCache.get(SSLContextCache.fingerprint(clientCertificateBytes, clientCertificatePassword),
+                () -> createSSLContext(clientCertificatePassword, new ByteArrayInputStream(clientCertificateBytes)));
+        } catch (GeneralSecurityException | IOException e) {
             log.severe("There was a problem when creating the SSLContext:");
             e.printStackTrace();
             exceptionEvent.fireAsync(e);
@@ -85,10 +91,13 @@ public class SecretsManagerService {
     public void acceptAllCertificates() {
         // For the connector trust all certificates
         try {
-            sslContext = SSLContext.getInstance(SslContextType.TLS.getSslContextType());
-            sslContext.init(null, new TrustManager[]{new SSLUtilities.FakeX509TrustManager()},
-                null);
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            cachedSSLContext = SSLContextCache.get(SSLContextCache.ACCEPT_ALL, () -> {
+                SSLContext sslContext = SSLContext.getInstance(SslContextType.TLS.getSslContextType());
+                sslContext.init(null, new TrustManager[]{new SSLUtilities.FakeX509TrustManager()},
+                    null);
+                return sslContext;
+            });
+        } catch (GeneralSecurityException | IOException e) {
             log.severe("There was a problem when creating the SSLContext:");
             e.printStackTrace();
             exceptionEvent.fireAsync(e);
@@ -99,10 +108,11 @@ public class SecretsManagerService {
         String connectorTlsCertAuthStoreFile = appConfig.getCertAuthStoreFile().get();
         String connectorTlsCertAuthStorePwd = appConfig.getCertAuthStoreFilePassword().get();
 
-        try (FileInputStream certificateInputStream = new FileInputStream(connectorTlsCertAuthStoreFile)) {
-            sslContext = createSSLContext(connectorTlsCertAuthStorePwd, certificateInputStream);
-        } catch (NoSuchAlgorithmException | KeyStoreException | CertificateException | IOException
-                | UnrecoverableKeyException | KeyManagementException e) {
+        try {
+            byte[] keystore = Files.readAllBytes(Paths.get(connectorTlsCertAuthStoreFile));
+            cachedSSLContext = SSLContextCache.get(SSLContextCache.fingerprint(keystore, connectorTlsCertAuthStorePwd),
+                () -> createSSLContext(connectorTlsCertAuthStorePwd, new ByteArrayInputStream(keystore)));
+        } catch (GeneralSecurityException | IOException e) {
             log.severe("There was a problem when creating the SSLContext:");
             e.printStackTrace();
             exceptionEvent.fireAsync(e);
@@ -128,10 +138,24 @@ public class SecretsManagerService {
     public void setUpSSLContext(KeyManager km)
             throws NoSuchAlgorithmException, KeyStoreException, IOException, CertificateException,
             UnrecoverableKeyException, KeyManagementException {
-        sslContext = SSLContext.getInstance(SslContextType.TLS.getSslContextType());
+        cachedSSLContext = new SSLContextCache.CachedSSLContext(null, createSSLContext(km));
+    }
+
+    /**
+     * Reuses the SSLContext of the keystore with the fingerprint, the key manager is only
+     * created for the first provider of the tenant.
+     */
+    public void setUpSSLContext(String fingerprint, SSLContextCache.SSLContextFactory factory)
+            throws GeneralSecurityException, IOException {
+        cachedSSLContext = SSLContextCache.get(fingerprint, factory);
+    }
+
+    public static SSLContext createSSLContext(KeyManager km) throws NoSuchAlgorithmException, KeyManagementException {
+        SSLContext sslContext = SSLContext.getInstance(SslContextType.TLS.getSslContextType());
 
         sslContext.init(new KeyManager[] { km }, new TrustManager[]{new SSLUtilities.FakeX509TrustManager()},
                 null);
+        return sslContext;
     }
 
     public void updateSSLContext() {
@@ -139,7 +163,14 @@ public class SecretsManagerService {
     }
 
     public SSLContext getSslContext() {
-        return sslContext;
+        return cachedSSLContext == null ? null : cachedSSLContext.getSslContext();
+    }
+
+    /**
+     * The socket factory that is shared by all SOAP ports of the tenant.
+     */
+    public javax.net.ssl.SSLSocketFactory getSocketFactory() {
+        return cachedSSLContext == null ? null : cachedSSLContext.getSocketFactory();
     }
 
 
@@ -5,19 +5,41 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
 import jakarta.enterprise.event.ObservesAsync;
 import jakarta.inject.Inject;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 import health.ere.ps.event.SaveSettingsEvent;
 import health.ere.ps.event.SaveSettingsResponseEvent;
 import health.ere.ps.event.config.UserConfigurationsUpdateEvent;
 import health.ere.ps.model.config.UserConfigurations;
 
+/**
+ * Keeps the user configurations in memory. The file is read once, updates are
+ * diffed against the current snapshot and only real changes are written and
+ * published together with the changed keys. Edits of the file by other processes
+ * are picked up by a debounced file watch.
+ */
 @ApplicationScoped
 public class UserConfigurationService {
 
@@ -29,19 +51,63 @@ public class UserConfigurationService {
     @Inject
     Event<SaveSettingsResponseEvent> saveSettingsResponseEvent;
 
-    private String getConfigFilePath() {
-        // TODO configure proper file path
-        return "user.properties";
+    @ConfigProperty(name = "ere.user-config.file", defaultValue = "user.properties")
+    String configFilePath = "user.properties";
+
+    @ConfigProperty(name = "ere.user-config.watch", defaultValue = "true")
+    boolean watch;
+
+    @ConfigProperty(name = "ere.user-config.reload-debounce-ms", defaultValue = "500")
+    long reloadDebounceMs = 500;
+
+    private volatile Properties snapshot;
+    private WatchService watchService;
+
+    @PostConstruct
+    void init() {
+        if (watch) {
+            startWatching();
+        }
     }
 
+    @PreDestroy
+    void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Could not close user-config watch service", e);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the current configuration properties
+     */
     public Properties getProperties() {
-        File file = new File(getConfigFilePath());
+        Properties properties = new Properties();
+        properties.putAll(snapshot());
+        return properties;
+    }
+
+    private Properties snapshot() {
+        Properties current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = readFile(getConfigFile());
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private File getConfigFile() {
+        File file = new File(configFilePath);
         if (!file.exists())
             createConfigurationFile(file);
-        if (file.exists())
-            return readFile(file);
-        else
-            return null;
+        return file;
     }
 
     private void createConfigurationFile(File file) {
@@ -54,8 +120,8 @@ public class UserConfigurationService {
 
     private Properties readFile(File file) {
         final Properties properties = new Properties();
-        try {
-            properties.load(new FileReader(file));
+        try (FileReader reader = new FileReader(file)) {
+            properties.load(reader);
         } catch (IOException e) {
             log.warning("Failed to load user-config file");
         }
@@ -63,33 +129,123 @@ public class UserConfigurationService {
     }
 
     private void writeFile(File file, Properties properties) {
+        Path target = file.toPath().toAbsolutePath();
         try {
-            FileOutputStream outputStream = new FileOutputStream(file);
-            properties.store(outputStream, "");
-            outputStream.close();
+            Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+            try (FileOutputStream outputStream = new FileOutputStream(temp.toFile())) {
+                properties.store(outputStream, "");
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException e) {
             log.severe("Could not store configurations");
         }
     }
 
-    private void updateConfig(Properties updated) {
-        File file = new File(getConfigFilePath());
-        if (!file.exists())
-            createConfigurationFile(file);
-        Properties properties = readFile(file);
-        properties.putAll(updated);
-        writeFile(file, properties);
+    private synchronized Set<String> updateConfig(Properties updated) {
+        Properties current = snapshot();
+        Properties merged = new Properties();
+        merged.putAll(current);
+        merged.putAll(updated);
+        Set<String> changedKeys = changedKeys(current, merged);
+        if (!changedKeys.isEmpty()) {
+            writeFile(getConfigFile(), merged);
+            snapshot = merged;
+        }
+        return changedKeys;
     }
 
     public void updateConfig(UserConfigurations config) {
-        updateConfig(config.properties());
-        configurationsUpdateEvent.fireAsync(new UserConfigurationsUpdateEvent(config));
+        Set<String> changedKeys = updateConfig(config.properties());
+        if (changedKeys.isEmpty()) {
+            log.fine("User configurations unchanged");
+            return;
+        }
+        configurationsUpdateEvent.fireAsync(new UserConfigurationsUpdateEvent(getConfig(), changedKeys));
+    }
+
+    /**
+     * Reads the file again and publishes the keys that differ from the current snapshot.
+     */
+    void reload() {
+        Set<String> changedKeys;
+        synchronized (this) {
+            Properties current = snapshot();
+            Properties reloaded = readFile(getConfigFile());
+            changedKeys = changedKeys(current, reloaded);
+            if (changedKeys.isEmpty()) {
+                return;
+            }
+            snapshot = reloaded;
+        }
+        log.info("User configurations changed on disk: " + changedKeys);
+        configurationsUpdateEvent.fireAsync(new UserConfigurationsUpdateEvent(getConfig(), changedKeys));
+    }
+
+    static Set<String> changedKeys(Properties previous, Properties current) {
+        Set<String> changedKeys = new HashSet<>();
+        for (String key : current.stringPropertyNames()) {
+            if (!current.getProperty(key).equals(previous.getProperty(key))) {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : previous.stringPropertyNames()) {
+            if (current.getProperty(key) == null) {
+                changedKeys.add(key);
+            }
+        }
+        return changedKeys;
+    }
+
+    private void startWatching() {
+        Path file = getConfigFile().toPath().toAbsolutePath();
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not watch user-config file, changes on disk need a restart", e);
+            return;
+        }
+        Thread thread = new Thread(() -> watch(watchService, file.getFileName()), "ere-user-config-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch(WatchService watchService, Path fileName) {
+        try {
+            while (true) {
+                boolean changed = pollChanges(watchService.take(), fileName);
+                // wait until the file was quiet for the debounce time, editors write in several steps
+                WatchKey next;
+                while ((next = watchService.poll(reloadDebounceMs, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= pollChanges(next, fileName);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // shutdown
+        }
+    }
+
+    private static boolean pollChanges(WatchKey key, Path fileName) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+        }
+        key.reset();
+        return changed;
     }
 
     public UserConfigurations getConfig() {
-        Properties properties = getProperties();
-        UserConfigurations config = new UserConfigurations(properties);
-        return config;
+        return new UserConfigurations(snapshot());
     }
 
     public void onSaveSettingsEvent(@ObservesAsync SaveSettingsEvent saveSettingsEvent) {
@@ -101,4 +257,4 @@ public class UserConfigurationService {
     }
 
 
-}
\ No newline at end of file
+}
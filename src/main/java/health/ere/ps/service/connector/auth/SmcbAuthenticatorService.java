@@ -49,9 +49,11 @@ public class SmcbAuthenticatorService {
     @Inject
     ConnectorCardsService connectorCardsService;
 
-    private X509Certificate x509Certificate;
-
-    public String signIdpChallenge(Pair<String, String> jwtPair, RuntimeConfig runtimeConfig) {
+    /**
+     * The certificate is passed per call, so concurrent logins of different practices
+     * don't share any state.
+     */
+    public String signIdpChallenge(Pair<String, String> jwtPair, X509Certificate x509Certificate, RuntimeConfig runtimeConfig) {
         JsonWebSignatureWithExternalAuthentication jws = new JsonWebSignatureWithExternalAuthentication(runtimeConfig);
         jws.setPayload(new String(Base64.getUrlDecoder().decode(jwtPair.getRight())));
 
@@ -72,10 +74,6 @@ public class SmcbAuthenticatorService {
         }
     }
 
-    public void setX509Certificate(X509Certificate x509Certificate) {
-        this.x509Certificate = x509Certificate;
-    }
-
     /**
      * This extension for the jose4j JsonWebSignature signs the payload
      * with the function ExternalAuthenticate from the AuthSignatureServicePortType.
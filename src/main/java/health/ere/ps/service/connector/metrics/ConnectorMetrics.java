@@ -0,0 +1,141 @@
+package health.ere.ps.service.connector.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms, payload sizes, faults and in-flight calls of the connector SOAP
+ * operations per tenant. The providers of the tenants are not all CDI beans, so the
+ * metrics are kept in this static registry and filled by the {@link ConnectorMetricsHandler}.
+ */
+public final class ConnectorMetrics {
+
+    static final long[] BUCKETS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    // every n-th message of an operation without a Content-Length is serialized to measure it
+    static final int SIZE_SAMPLE_RATE = 16;
+
+    private static final Map<String, Map<String, OperationMetrics>> tenants = new ConcurrentHashMap<>();
+
+    private ConnectorMetrics() {
+    }
+
+    static OperationMetrics operation(String tenant, String operation) {
+        return tenants.computeIfAbsent(tenant, t -> new ConcurrentHashMap<>())
+            .computeIfAbsent(operation, o -> new OperationMetrics());
+    }
+
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new TreeMap<>();
+        tenants.forEach((tenant, operations) -> {
+            Map<String, Object> tenantStatistics = new TreeMap<>();
+            operations.forEach((operation, metrics) -> tenantStatistics.put(operation, metrics.getStatistics()));
+            statistics.put(tenant, tenantStatistics);
+        });
+        return statistics;
+    }
+
+    static void clear() {
+        tenants.clear();
+    }
+
+    static class OperationMetrics {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder faults = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final LongAdder totalMillis = new LongAdder();
+        private final LongAccumulator maxMillis = new LongAccumulator(Long::max, 0);
+        private final AtomicLong requests = new AtomicLong();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder sizedRequests = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder sizedResponses = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS_MS.length + 1];
+
+        OperationMetrics() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @return true for the first and then every SIZE_SAMPLE_RATE-th call, whose sizes are measured
+         */
+        boolean sample() {
+            return requests.getAndIncrement() % SIZE_SAMPLE_RATE == 0;
+        }
+
+        /**
+         * @param requestSize -1 if the request was not measured
+         */
+        void started(long requestSize) {
+            inFlight.incrementAndGet();
+            if (requestSize >= 0) {
+                requestBytes.add(requestSize);
+                sizedRequests.increment();
+            }
+        }
+
+        /**
+         * @param responseSize -1 if the response was not measured
+         * @param outcome the response was a SOAP fault, or there was no response at all
+         */
+        void finished(long millis, long responseSize, Outcome outcome) {
+            inFlight.decrementAndGet();
+            calls.increment();
+            totalMillis.add(millis);
+            maxMillis.accumulate(millis);
+            if (responseSize >= 0) {
+                responseBytes.add(responseSize);
+                sizedResponses.increment();
+            }
+            if (outcome == Outcome.FAULT) {
+                faults.increment();
+            } else if (outcome == Outcome.ERROR) {
+                errors.increment();
+            }
+            int bucket = 0;
+            while (bucket < BUCKETS_MS.length && millis > BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+
+        Map<String, Object> getStatistics() {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            long count = calls.sum();
+            statistics.put("calls", count);
+            statistics.put("faults", faults.sum());
+            statistics.put("errors", errors.sum());
+            statistics.put("inFlight", inFlight.get());
+            statistics.put("averageMs", count == 0 ? 0 : totalMillis.sum() / count);
+            statistics.put("maxMs", maxMillis.get());
+            long requestCount = sizedRequests.sum();
+            long responseCount = sizedResponses.sum();
+            statistics.put("sizedRequests", requestCount);
+            statistics.put("averageRequestBytes", requestCount == 0 ? 0 : requestBytes.sum() / requestCount);
+            statistics.put("sizedResponses", responseCount);
+            statistics.put("averageResponseBytes", responseCount == 0 ? 0 : responseBytes.sum() / responseCount);
+            // cumulative like a prometheus histogram
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                histogram.put(i < BUCKETS_MS.length ? String.valueOf(BUCKETS_MS[i]) : "+Inf", cumulative);
+            }
+            statistics.put("latencyHistogramMs", histogram);
+            return statistics;
+        }
+    }
+
+    enum Outcome {
+        OK, FAULT, ERROR
+    }
+}
@@ -0,0 +1,157 @@
+package health.ere.ps.service.connector.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import jakarta.xml.soap.SOAPBody;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.w3c.dom.Node;
+
+import health.ere.ps.service.connector.metrics.ConnectorMetrics.OperationMetrics;
+import health.ere.ps.service.connector.metrics.ConnectorMetrics.Outcome;
+
+/**
+ * Times every SOAP call of one port to the connector. The port is called synchronously, so
+ * the request and the response of a call are handled on the same thread.
+ *
+ * The response size is taken from its Content-Length. Serializing a message only to count
+ * its bytes costs as much as sending it, so requests and responses without a Content-Length
+ * are only measured for a sample of the calls.
+ */
+public class ConnectorMetricsHandler implements SOAPHandler<SOAPMessageContext> {
+
+    private static final Logger log = Logger.getLogger(ConnectorMetricsHandler.class.getName());
+
+    private final String tenant;
+    private final ThreadLocal<Call> calls = new ThreadLocal<>();
+
+    public ConnectorMetricsHandler(String tenant) {
+        this.tenant = tenant;
+    }
+
+    @Override
+    public boolean handleMessage(SOAPMessageContext context) {
+        if (Boolean.TRUE.equals(context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY))) {
+            OperationMetrics metrics = ConnectorMetrics.operation(tenant, operation(context));
+            boolean sampled = metrics.sample();
+            metrics.started(sampled ? size(context.getMessage()) : -1);
+            calls.set(new Call(metrics, System.nanoTime(), sampled));
+        } else {
+            finish(context, Outcome.OK);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context) {
+        finish(context, Outcome.FAULT);
+        return true;
+    }
+
+    @Override
+    public void close(MessageContext context) {
+        // no response, e.g. the connector was not reachable
+        finish(null, Outcome.ERROR);
+    }
+
+    @Override
+    public Set<QName> getHeaders() {
+        return Set.of();
+    }
+
+    private void finish(SOAPMessageContext response, Outcome outcome) {
+        Call call = calls.get();
+        if (call == null) {
+            return;
+        }
+        calls.remove();
+        long millis = (System.nanoTime() - call.startedAt) / 1_000_000;
+        long size = -1;
+        if (response != null) {
+            size = contentLength(response);
+            if (size < 0 && call.sampled && response.getMessage() != null) {
+                size = size(response.getMessage());
+            }
+        }
+        call.metrics.finished(millis, size, outcome);
+    }
+
+    /**
+     * @return the Content-Length of the HTTP response, -1 if there is none, e.g. for a chunked response
+     */
+    static long contentLength(MessageContext context) {
+        Object headers = context.get(MessageContext.HTTP_RESPONSE_HEADERS);
+        if (!(headers instanceof Map<?, ?> map)) {
+            return -1;
+        }
+        for (Map.Entry<?, ?> header : map.entrySet()) {
+            if (header.getKey() instanceof String name && "Content-Length".equalsIgnoreCase(name)
+                    && header.getValue() instanceof List<?> values && !values.isEmpty()) {
+                try {
+                    return Long.parseLong(String.valueOf(values.get(0)).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static String operation(SOAPMessageContext context) {
+        Object operation = context.get(MessageContext.WSDL_OPERATION);
+        if (operation instanceof QName qName) {
+            return qName.getLocalPart();
+        }
+        try {
+            SOAPBody body = context.getMessage().getSOAPBody();
+            for (Node node = body.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    return node.getLocalName();
+                }
+            }
+        } catch (SOAPException e) {
+            log.log(Level.FINE, "Could not read the SOAP body", e);
+        }
+        return "unknown";
+    }
+
+    static long size(SOAPMessage message) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try {
+            message.writeTo(counter);
+        } catch (SOAPException | IOException e) {
+            log.log(Level.FINE, "Could not measure the SOAP message", e);
+        }
+        return counter.count;
+    }
+
+    private record Call(OperationMetrics metrics, long startedAt, boolean sampled) {
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
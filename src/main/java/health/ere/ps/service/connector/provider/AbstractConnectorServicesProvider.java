@@ -1,12 +1,14 @@
 package health.ere.ps.service.connector.provider;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jakarta.inject.Inject;
 import jakarta.xml.ws.BindingProvider;
-import javax.net.ssl.SSLContext;
+import jakarta.xml.ws.handler.Handler;
+import javax.net.ssl.SSLSocketFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureService;
@@ -29,9 +31,11 @@ import health.ere.ps.config.interceptor.ProvidedConfig;
 import health.ere.ps.service.common.security.SecretsManagerService;
 import health.ere.ps.service.connector.endpoint.EndpointDiscoveryService;
 import health.ere.ps.service.connector.endpoint.SSLUtilities;
+import health.ere.ps.service.connector.metrics.ConnectorMetricsHandler;
 
 public abstract class AbstractConnectorServicesProvider {
     private final static Logger log = Logger.getLogger(AbstractConnectorServicesProvider.class.getName());
+    private final static SSLUtilities.FakeHostnameVerifier hostnameVerifier = new SSLUtilities.FakeHostnameVerifier();
  
     @Inject
     EndpointDiscoveryService endpointDiscoveryService;
@@ -194,7 +198,7 @@ public abstract class AbstractConnectorServicesProvider {
         signatureServicePortTypeV755 = service;
     }
 
-    private void initializeContextType() {
+    public void initializeContextType() {
         ContextType contextType = new ContextType();
         contextType.setMandantId(getUserConfig().getMandantId());
         contextType.setClientSystemId(getUserConfig().getClientSystemId());
@@ -205,13 +209,19 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void configureBindingProvider(BindingProvider bindingProvider) {
-        SSLContext sslContext = secretsManagerService.getSslContext();
-        if(sslContext != null) {
+        // one socket factory for all ports, so they share the TLS sessions and keep-alive connections
+        SSLSocketFactory socketFactory = secretsManagerService.getSocketFactory();
+        if(socketFactory != null) {
             bindingProvider.getRequestContext().put("com.sun.xml.ws.transport.https.client.SSLSocketFactory",
-                    sslContext.getSocketFactory());
+                    socketFactory);
         }
         bindingProvider.getRequestContext().put("com.sun.xml.ws.transport.https.client.hostname.verifier",
-                new SSLUtilities.FakeHostnameVerifier());
+                hostnameVerifier);
+
+        @SuppressWarnings("rawtypes")
+        List<Handler> handlerChain = bindingProvider.getBinding().getHandlerChain();
+        handlerChain.add(new ConnectorMetricsHandler(getTenant()));
+        bindingProvider.getBinding().setHandlerChain(handlerChain);
 
         String basicAuthUsername = getUserConfig().getConfigurations().getBasicAuthUsername();
         String basicAuthPassword = getUserConfig().getConfigurations().getBasicAuthPassword();
@@ -262,5 +272,14 @@ public abstract class AbstractConnectorServicesProvider {
         return contextType;
     }
 
+    /**
+     * The mandant the connector metrics are recorded for.
+     */
+    String getTenant() {
+        UserConfig userConfig = getUserConfig();
+        String mandantId = userConfig == null ? null : userConfig.getMandantId();
+        return mandantId == null ? "unknown" : mandantId;
+    }
+
     public abstract UserConfig getUserConfig();
 }
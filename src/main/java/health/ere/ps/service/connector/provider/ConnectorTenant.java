@@ -0,0 +1,76 @@
+package health.ere.ps.service.connector.provider;
+
+import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureServicePortType;
+import de.gematik.ws.conn.cardservice.wsdl.v8.CardServicePortType;
+import de.gematik.ws.conn.certificateservice.wsdl.v6.CertificateServicePortType;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+import de.gematik.ws.conn.eventservice.wsdl.v7.EventServicePortType;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV740;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755;
+import de.gematik.ws.conn.vsds.vsdservice.v5.VSDServicePortType;
+
+/**
+ * The connector provider and context of one tenant, resolved once per request by
+ * {@link MultiConnectorServicesProvider#getTenant} and passed through the workflow, so the
+ * calls of a request do not build a lookup key and a new ContextType for every port access.
+ *
+ * The context belongs to the request. It must not be changed, use {@link #copyContextType()}
+ * e.g. to set another user id.
+ */
+public class ConnectorTenant {
+
+    private final AbstractConnectorServicesProvider provider;
+    private final ContextType contextType;
+
+    public ConnectorTenant(AbstractConnectorServicesProvider provider, ContextType contextType) {
+        this.provider = provider;
+        this.contextType = contextType;
+    }
+
+    public ContextType getContextType() {
+        return contextType;
+    }
+
+    public ContextType copyContextType() {
+        return copy(contextType);
+    }
+
+    public CardServicePortType getCardServicePortType() {
+        return provider.getCardServicePortType();
+    }
+
+    public CertificateServicePortType getCertificateService() {
+        return provider.getCertificateService();
+    }
+
+    public EventServicePortType getEventServicePortType() {
+        return provider.getEventServicePortType();
+    }
+
+    public AuthSignatureServicePortType getAuthSignatureServicePortType() {
+        return provider.getAuthSignatureServicePortType();
+    }
+
+    public SignatureServicePortTypeV740 getSignatureServicePortType() {
+        return provider.getSignatureServicePortType();
+    }
+
+    public SignatureServicePortTypeV755 getSignatureServicePortTypeV755() {
+        return provider.getSignatureServicePortTypeV755();
+    }
+
+    public VSDServicePortType getVSDServicePortType() {
+        return provider.getVSDServicePortType();
+    }
+
+    static ContextType copy(ContextType contextType) {
+        ContextType copy = new ContextType();
+        if (contextType != null) {
+            copy.setMandantId(contextType.getMandantId());
+            copy.setClientSystemId(contextType.getClientSystemId());
+            copy.setWorkplaceId(contextType.getWorkplaceId());
+            copy.setUserId(contextType.getUserId());
+        }
+        return copy;
+    }
+}
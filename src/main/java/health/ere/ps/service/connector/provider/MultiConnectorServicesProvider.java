@@ -1,8 +1,7 @@
 package health.ere.ps.service.connector.provider;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureServicePortType;
@@ -29,7 +28,8 @@ public class MultiConnectorServicesProvider {
     @Inject
     Event<Exception> eventException;
 
-    Map<SimpleUserConfig, SingleConnectorServicesProvider> singleConnectorServicesProvider = Collections.synchronizedMap(new HashMap<SimpleUserConfig, SingleConnectorServicesProvider>());
+    // lock free lookups, a provider is only created once per tenant
+    volatile Map<SimpleUserConfig, SingleConnectorServicesProvider> singleConnectorServicesProvider = new ConcurrentHashMap<>();
 
     public CardServicePortType getCardServicePortType(UserConfig userConfig) {
         CardServicePortType cardServicePortType = getSingleConnectorServicesProvider(userConfig).getCardServicePortType();
@@ -40,14 +40,22 @@ public class MultiConnectorServicesProvider {
         if(userConfig == null) {
             return defaultConnectorServicesProvider;
         } else {
-        	SimpleUserConfig simpleUserConfig = new SimpleUserConfig(userConfig);
-        	if(!singleConnectorServicesProvider.containsKey(simpleUserConfig)) {
-        		singleConnectorServicesProvider.put(simpleUserConfig, new SingleConnectorServicesProvider(userConfig, eventException));
-            }
-            return singleConnectorServicesProvider.get(simpleUserConfig);
+            return singleConnectorServicesProvider.computeIfAbsent(new SimpleUserConfig(userConfig),
+                key -> new SingleConnectorServicesProvider(userConfig, eventException));
         }
     }
 
+    /**
+     * Resolves the provider and the context of the tenant once, for all connector calls of a request.
+     */
+    public ConnectorTenant getTenant(UserConfig userConfig) {
+        // the context of the default provider is shared, every request gets its own
+        ContextType contextType = userConfig == null
+            ? ConnectorTenant.copy(defaultConnectorServicesProvider.getContextType())
+            : getContextType(userConfig);
+        return new ConnectorTenant(getSingleConnectorServicesProvider(userConfig), contextType);
+    }
+
     public CertificateServicePortType getCertificateServicePortType(UserConfig userConfig) {
         CertificateServicePortType certificateService = getSingleConnectorServicesProvider(userConfig).getCertificateService();
         return certificateService;
@@ -91,6 +99,6 @@ public class MultiConnectorServicesProvider {
     }
 
     public void clearAll() {
-    	singleConnectorServicesProvider = Collections.synchronizedMap(new HashMap<SimpleUserConfig, SingleConnectorServicesProvider>());
+        singleConnectorServicesProvider = new ConcurrentHashMap<>();
     }
 }
@@ -6,7 +6,10 @@ import java.io.IOException;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.KeyManagementException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -15,6 +18,7 @@ import java.security.PrivateKey;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,6 +32,7 @@ import javax.net.ssl.X509KeyManager;
 
 import health.ere.ps.config.AppConfig;
 import health.ere.ps.config.UserConfig;
+import health.ere.ps.service.common.security.SSLContextCache;
 import health.ere.ps.service.common.security.SecretsManagerService;
 import health.ere.ps.service.connector.endpoint.EndpointDiscoveryService;
 
@@ -46,10 +51,14 @@ public class SingleConnectorServicesProvider extends AbstractConnectorServicesPr
         
         if (configKeystoreUri != null && !configKeystoreUri.isEmpty()) {
             try {
-                KeyManager keyManager = getKeyFromKeyStoreUri(configKeystoreUri, configKeystorePass);
-                this.secretsManagerService.setUpSSLContext(keyManager);
-            } catch (KeyStoreException | NoSuchAlgorithmException | CertificateException
-            | URISyntaxException | IOException | UnrecoverableKeyException | KeyManagementException e) {
+                this.secretsManagerService.setUpSSLContext(keystoreFingerprint(configKeystoreUri, configKeystorePass), () -> {
+                    try {
+                        return SecretsManagerService.createSSLContext(getKeyFromKeyStoreUri(configKeystoreUri, configKeystorePass));
+                    } catch (URISyntaxException e) {
+                        throw new IOException(e);
+                    }
+                });
+            } catch (GeneralSecurityException | URISyntaxException | IOException e) {
                 log.severe("There was a problem when unpacking key from ClientCertificateKeyStore:");
                 e.printStackTrace();
                 exceptionEvent.fireAsync(e);
@@ -79,6 +88,20 @@ public class SingleConnectorServicesProvider extends AbstractConnectorServicesPr
         initializeServices();
     }
 
+    /**
+     * The keystore of a file URI is read, so a replaced file gets a new SSLContext.
+     */
+    static String keystoreFingerprint(String keystoreUri, String keystorePassword) throws URISyntaxException, IOException {
+        URI uriParser = new URI(keystoreUri);
+        byte[] keystore = keystoreUri.getBytes(StandardCharsets.UTF_8);
+        if ("file".equalsIgnoreCase(uriParser.getScheme())) {
+            byte[] file = Files.readAllBytes(Paths.get(uriParser.getPath()));
+            keystore = Arrays.copyOf(keystore, keystore.length + file.length);
+            System.arraycopy(file, 0, keystore, keystore.length - file.length, file.length);
+        }
+        return SSLContextCache.fingerprint(keystore, keystorePassword);
+    }
+
     public static KeyManager getKeyFromKeyStoreUri(String keystoreUri, String keystorePassword) throws URISyntaxException, KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException {
         if(keystorePassword== null) {
             keystorePassword = "";
@@ -8,13 +8,18 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.util.EntityUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import health.ere.ps.exception.erixa.ErixaStatusException;
+import health.ere.ps.model.erixa.api.mapping.DoctorUploadToDrugstorePrescriptionModel;
 import health.ere.ps.model.erixa.api.mapping.UserDetails;
 
 
@@ -49,18 +54,35 @@ public class ErixaAPIInterface {
         }
     }
 
-    public Object uploadToDrugstore(String json) {
+    public String getUploadToDrugstoreURL() {
+        return uploadToDrugstoreURL;
+    }
+
+    /**
+     * Streams the model as JSON into the request body with a Jackson generator, the
+     * body is never materialized as a String.
+     *
+     * @throws IOException if the request fails, an {@link ErixaStatusException} if eRiXa does not answer with 200
+     */
+    public Object uploadToDrugstore(DoctorUploadToDrugstorePrescriptionModel model) throws IOException {
+        log.fine("Post: "+uploadToDrugstoreURL+" "+model.getFileName());
+        EntityTemplate entity = new EntityTemplate(outputStream -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            objectMapper.writeValue(generator, model);
+            generator.flush();
+        });
+        entity.setContentType(ContentType.APPLICATION_JSON.toString());
+        HttpResponse response = httpClient.sendPostRequest(uploadToDrugstoreURL, entity);
         try {
-            log.fine("Post: "+uploadToDrugstoreURL+" "+json);
-            HttpResponse response = httpClient.sendPostRequest(uploadToDrugstoreURL, json);
             if(response.getStatusLine().getStatusCode() != 200) {
-                log.log(Level.WARNING, "Could not upload prescription to eRiXa: "+response.getStatusLine().getStatusCode()+" "+new String(response.getEntity().getContent().readAllBytes()));
+                String message = "Could not upload prescription to eRiXa: "+response.getStatusLine().getStatusCode()+" "+EntityUtils.toString(response.getEntity());
+                log.log(Level.WARNING, message);
+                throw new ErixaStatusException(response.getStatusLine().getStatusCode(), message);
             }
             return parseDrugstoreUploadResult(response);
-        } catch (Exception e) {
-            e.printStackTrace();
-            eventException.fireAsync(e);
-            return null;
+        } finally {
+            // releases the pooled connection
+            EntityUtils.consumeQuietly(response.getEntity());
         }
     }
 
@@ -9,6 +9,7 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
@@ -29,11 +30,17 @@ public class ErixaHttpClient {
     @Inject
     UserConfig userConfig;
 
-    private final HttpClient httpClient = HttpClientBuilder.create().build();
+    // the default of 2 connections per route would serialize concurrent uploads
+    private final HttpClient httpClient = HttpClientBuilder.create()
+            .setMaxConnPerRoute(16)
+            .setMaxConnTotal(32)
+            .build();
 
     public HttpResponse sendPostRequest(String url, String json) throws IOException {
+        return sendPostRequest(url, new StringEntity(json, ContentType.APPLICATION_JSON));
+    }
 
-        StringEntity entity = new StringEntity(json, ContentType.APPLICATION_JSON);
+    public HttpResponse sendPostRequest(String url, HttpEntity entity) throws IOException {
 
         HttpPost request = new HttpPost(url);
 
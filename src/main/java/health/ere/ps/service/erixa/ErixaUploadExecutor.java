@@ -0,0 +1,86 @@
+package health.ere.ps.service.erixa;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.exception.erixa.ErixaStatusException;
+import health.ere.ps.retry.RetryEngine;
+import health.ere.ps.retry.RetryPolicy;
+
+/**
+ * Runs eRiXa uploads concurrently with a limit of in-flight uploads per endpoint.
+ *
+ * The permit of the endpoint is taken by the submitting thread before anything is submitted
+ * and released when the upload, including its retries, is done. A burst of uploads therefore
+ * waits in the submitters instead of starting a thread per upload.
+ *
+ * Uploads that could not connect or were answered with a 5xx are retried by the
+ * {@link RetryEngine} with a doubling backoff and share the circuit breaker of the eRiXa
+ * target. Other failures, e.g. a 4xx or a timeout after the upload was sent, are left to the
+ * outbox, which delivers the entry again later. The delay is scheduled, but a caller that
+ * joins the returned future, like the outbox delivery, still waits for it.
+ */
+@ApplicationScoped
+public class ErixaUploadExecutor {
+
+    @FunctionalInterface
+    public interface Upload {
+        void run() throws Exception;
+    }
+
+    @ConfigProperty(name = "erixa.upload.max-concurrent-per-endpoint", defaultValue = "4")
+    int maxConcurrentPerEndpoint = 4;
+
+    @ConfigProperty(name = "erixa.upload.retries", defaultValue = "2")
+    int retries = 2;
+
+    @ConfigProperty(name = "erixa.upload.retry-backoff-ms", defaultValue = "500")
+    long retryBackoffMs = 500;
+
+    private final Map<String, Semaphore> endpointPermits = new ConcurrentHashMap<>();
+
+    @Inject
+    RetryEngine retryEngine;
+
+    /**
+     * Waits for a permit of the endpoint, the returned future completes when the upload is done.
+     */
+    public CompletableFuture<Void> submit(String endpoint, Upload upload) {
+        Semaphore permits = endpointPermits.computeIfAbsent(endpoint, e -> new Semaphore(Math.max(1, maxConcurrentPerEndpoint)));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        RetryPolicy retryPolicy = new RetryPolicy(retries + 1, retryBackoffMs, retryBackoffMs << retries, 0.5, Long.MAX_VALUE);
+        CompletableFuture<Void> result;
+        try {
+            result = retryEngine.callAsync(RetryEngine.ERIXA, retryPolicy, () -> {
+                upload.run();
+                return null;
+            }, ErixaUploadExecutor::isRetryable);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return result.whenComplete((v, throwable) -> permits.release());
+    }
+
+    /**
+     * The upload is not idempotent, it is only repeated if it did not reach eRiXa or eRiXa failed.
+     */
+    static boolean isRetryable(Throwable t) {
+        if (t instanceof ErixaStatusException) {
+            return ((ErixaStatusException) t).getStatusCode() >= 500;
+        }
+        return RetryEngine.isNotSent(t);
+    }
+}
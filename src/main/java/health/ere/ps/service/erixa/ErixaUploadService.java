@@ -1,19 +1,21 @@
 package health.ere.ps.service.erixa;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Base64;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
 import jakarta.enterprise.event.ObservesAsync;
 import jakarta.inject.Inject;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import health.ere.ps.config.UserConfig;
 import health.ere.ps.event.erixa.ErixaEvent;
 import health.ere.ps.event.erixa.SendToPharmacyEvent;
@@ -25,10 +27,16 @@ import health.ere.ps.model.erixa.api.mapping.PrescriptionData;
 import health.ere.ps.model.erixa.api.mapping.PrescriptionDoctorData;
 import health.ere.ps.model.erixa.api.mapping.Role;
 import health.ere.ps.model.erixa.api.mapping.UserDetails;
+import health.ere.ps.service.outbox.OutboxHandler;
+import health.ere.ps.service.outbox.OutboxService;
 import health.ere.ps.websocket.ExceptionWithReplyToException;
 
 @ApplicationScoped
-public class ErixaUploadService {
+public class ErixaUploadService implements OutboxHandler {
+
+    static final String OUTBOX_KIND = "erixa";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
     @Inject
     ErixaAPIInterface apiInterface;
@@ -37,19 +45,21 @@ public class ErixaUploadService {
     UserConfig userConfig;
 
     @Inject
-    Event<Exception> exceptionEvent;
+    ErixaUploadExecutor uploadExecutor;
 
-    private final ObjectMapper mapper;
-    private final SimpleDateFormat simpleDateFormat, timestampFormat;
+    @Inject
+    OutboxService outboxService;
 
-    private static Logger log = Logger.getLogger(ErixaUploadService.class.getName());
+    @Inject
+    Event<Exception> exceptionEvent;
 
+    // immutable and thread safe, the observers run concurrently on async threads
+    private static final DateTimeFormatter FILE_NAME_DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy")
+            .withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'hh:mm:ss'Z'")
+            .withZone(ZoneId.systemDefault());
 
-    public ErixaUploadService() {
-        mapper = new ObjectMapper();
-        simpleDateFormat = new SimpleDateFormat("dd-MM-yyyy");
-        timestampFormat = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss'Z'");
-    }
+    private static Logger log = Logger.getLogger(ErixaUploadService.class.getName());
 
     public void generatePrescriptionBundle(@ObservesAsync ErixaEvent erixaEvent) {
         if("SendToPharmacy".equals(erixaEvent.processType)){
@@ -67,8 +77,30 @@ public class ErixaUploadService {
         PrescriptionTransferEntry details = event.getDetails();
 
         DoctorUploadToDrugstorePrescriptionModel model = buildBody(event.getDocument(), details);
-        String json = mapper.writeValueAsString(model);
-        apiInterface.uploadToDrugstore(json);
+        // persisted first, the upload survives restarts and eRiXa outages
+        outboxService.enqueue(OUTBOX_KIND, OBJECT_MAPPER.writeValueAsString(model))
+            .whenComplete((result, throwable) -> {
+                if(throwable != null) {
+                    log.log(Level.WARNING, "Problem during uploading to pharmacy", throwable);
+                    Exception exception = throwable instanceof Exception ? (Exception) throwable : new RuntimeException(throwable);
+                    exceptionEvent.fireAsync(new ExceptionWithReplyToException(exception, event.getReplyTo(), event.getReplyToMessageId()));
+                }
+            });
+    }
+
+    @Override
+    public String getKind() {
+        return OUTBOX_KIND;
+    }
+
+    @Override
+    public void deliver(String payload) throws Exception {
+        DoctorUploadToDrugstorePrescriptionModel model = OBJECT_MAPPER.readValue(payload, DoctorUploadToDrugstorePrescriptionModel.class);
+        try {
+            uploadExecutor.submit(apiInterface.getUploadToDrugstoreURL(), () -> apiInterface.uploadToDrugstore(model)).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
     }
 
     private DoctorUploadToDrugstorePrescriptionModel buildBody(String document, PrescriptionTransferEntry details) {
@@ -89,7 +121,7 @@ public class ErixaUploadService {
     }
 
     private String getFileName(PrescriptionTransferEntry details) {
-        String date = simpleDateFormat.format(details.getCreationDateTime());
+        String date = FILE_NAME_DATE_FORMAT.format(details.getCreationDateTime().toInstant());
         String name = String.format("%s %s", details.getFirstName(), details.getLastName());
         String receiver = getDrugstoreEmail();
 
@@ -97,7 +129,20 @@ public class ErixaUploadService {
     }
 
     private int getFileSize(String base64Document) {
-        return Base64.getDecoder().decode(base64Document).length;
+        return decodedBase64Length(base64Document);
+    }
+
+    /**
+     * Length of the decoded data, computed from the encoded length and the padding
+     * instead of decoding the whole document.
+     */
+    static int decodedBase64Length(String base64) {
+        int length = base64.length();
+        int padding = 0;
+        while (padding < 2 && length - padding > 0 && base64.charAt(length - padding - 1) == '=') {
+            padding++;
+        }
+        return (int) ((long) length * 3 / 4) - padding;
     }
 
     private void interpolateDrugstoreDetails(DoctorUploadToDrugstorePrescriptionModel model) {
@@ -150,8 +195,7 @@ public class ErixaUploadService {
     }
 
     private String parseBirthday(Date birthday) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss'Z'");
-        return dateFormat.format(birthday);
+        return TIMESTAMP_FORMAT.format(birthday.toInstant());
     }
 
     private PrescriptionDoctorData getDoctorData() {
@@ -160,6 +204,6 @@ public class ErixaUploadService {
     }
 
     private String toTimestamp(Date date){
-        return timestampFormat.format(date);
+        return TIMESTAMP_FORMAT.format(date.toInstant());
     }
 }
@@ -0,0 +1,84 @@
+package health.ere.ps.service.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task for every item on up to parallelism threads of a pool, the calling thread works
+ * on the items as well. Items are taken from a shared counter, so the caller only waits for
+ * items that a pool thread already started. That cannot deadlock when the caller itself runs
+ * on the same pool or the pool is saturated, in the worst case the caller does all the work.
+ */
+public final class FanOut {
+
+    @FunctionalInterface
+    public interface Task<T, R> {
+        R apply(T item) throws Exception;
+    }
+
+    private FanOut() {
+    }
+
+    /**
+     * @return the results in the order of the items
+     * @throws Exception the first failure of a task after all tasks finished, the others are suppressed
+     */
+    public static <T, R> List<R> map(List<T> items, Executor executor, int parallelism, Task<T, R> task) throws Exception {
+        int count = items.size();
+        Object[] results = new Object[count];
+        Throwable[] failures = new Throwable[count];
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(count);
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < count) {
+                try {
+                    results[i] = task.apply(items.get(i));
+                } catch (Throwable t) {
+                    failures[i] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        int helpers = Math.min(parallelism, count) - 1;
+        for (int i = 0; i < helpers && next.get() < count; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // the pool is saturated, the caller does the rest
+                break;
+            }
+        }
+        worker.run();
+        done.await();
+
+        Throwable failure = null;
+        for (Throwable t : failures) {
+            if (t == null) {
+                continue;
+            }
+            if (failure == null) {
+                failure = t;
+            } else {
+                failure.addSuppressed(t);
+            }
+        }
+        if (failure instanceof Exception) {
+            throw (Exception) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        List<R> list = new ArrayList<>(count);
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            R r = (R) result;
+            list.add(r);
+        }
+        return list;
+    }
+}
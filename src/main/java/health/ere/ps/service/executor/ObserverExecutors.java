@@ -0,0 +1,137 @@
+package health.ere.ps.service.executor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.NotificationOptions;
+
+/**
+ * Executors of the async observers per {@link Workload}, instead of the one default executor
+ * of the container. A burst of sign and upload batches or receipt rendering then does not
+ * delay PIN verification or status requests. The services run their own background work on
+ * these pools too, and share one scheduler thread that only hands tasks over to the pools.
+ *
+ * Configuration per workload, e.g. ere.observer.interactive.threads:
+ * threads, queue-size and virtual-threads (false, needs Java 21). When the queue of a pool
+ * that does not run saturated tasks in the caller is full, firing the event fails with a
+ * RejectedExecutionException, which is returned to the client.
+ */
+@ApplicationScoped
+public class ObserverExecutors {
+
+    private static final Logger log = Logger.getLogger(ObserverExecutors.class.getName());
+
+    private final Map<Workload, ObserverPool> pools = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        pools.values().forEach(ObserverPool::shutdown);
+    }
+
+    public ObserverPool getPool(Workload workload) {
+        return pools.computeIfAbsent(workload, this::createPool);
+    }
+
+    /**
+     * Fires the event to the async observers on the pool of the workload.
+     */
+    public <T> CompletionStage<T> fireAsync(Event<T> event, T payload, Workload workload) {
+        return event.fireAsync(payload, NotificationOptions.ofExecutor(getPool(workload)));
+    }
+
+    /**
+     * Runs the action on the scheduler thread after the delay. The action must only hand its
+     * work over to a pool, so that it does not delay the other scheduled tasks.
+     */
+    public ScheduledFuture<?> schedule(Runnable action, long delay, TimeUnit unit) {
+        return scheduler().schedule(action, delay, unit);
+    }
+
+    /**
+     * Runs the task on the pool of the workload, first after the initial delay and then every
+     * delay. A run is skipped while the previous one did not finish or the pool is saturated,
+     * so runs never overlap. Cancelling the returned future stops further runs.
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit, Workload workload) {
+        AtomicBoolean running = new AtomicBoolean();
+        return scheduler().scheduleWithFixedDelay(() -> {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                getPool(workload).execute(() -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "Scheduled task on the " + workload.getConfigName() + " pool failed", e);
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+                log.warning("Skipped a scheduled task: " + e.getMessage());
+            }
+        }, initialDelay, delay, unit);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new TreeMap<>();
+        pools.forEach((workload, pool) -> statistics.put(workload.getConfigName(), pool.getStatistics()));
+        return statistics;
+    }
+
+    private ObserverPool createPool(Workload workload) {
+        int threads = configValue(workload, "threads", workload.getDefaultThreads(), Integer.class);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new ObserverPool(workload.getConfigName(), threads,
+            configValue(workload, "queue-size", workload.getDefaultQueueSize(), Integer.class),
+            workload.isCallerRunsWhenSaturated(),
+            configValue(workload, "virtual-threads", false, Boolean.class));
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "ere-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    private static <T> T configValue(Workload workload, String key, T defaultValue, Class<T> type) {
+        try {
+            return ConfigProvider.getConfig().getOptionalValue("ere.observer." + workload.getConfigName() + "." + key, type)
+                .orElse(defaultValue);
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package health.ere.ps.service.executor;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of one {@link Workload} with a bounded queue. Counts the rejected and the
+ * caller run tasks and how long the tasks waited in the queue, which shows when a pool is
+ * too small before the queue is full.
+ */
+public class ObserverPool implements Executor {
+
+    private static final Logger log = Logger.getLogger(ObserverPool.class.getName());
+
+    private final String name;
+    private final int queueSize;
+    private final boolean callerRunsWhenSaturated;
+    private final boolean virtualThreads;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder totalQueueWaitMillis = new LongAdder();
+    private final LongAccumulator maxQueueWaitMillis = new LongAccumulator(Long::max, 0);
+    private final LongAccumulator maxQueued = new LongAccumulator(Long::max, 0);
+
+    ObserverPool(String name, int threads, int queueSize, boolean callerRunsWhenSaturated, boolean virtualThreads) {
+        this.name = name;
+        this.queueSize = queueSize;
+        this.callerRunsWhenSaturated = callerRunsWhenSaturated;
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory("ere-observer-" + name + "-") : null;
+        this.virtualThreads = threadFactory != null;
+        if (threadFactory == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "ere-observer-" + name + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long queuedAt = System.nanoTime();
+        Runnable timed = () -> {
+            long waited = (System.nanoTime() - queuedAt) / 1_000_000;
+            started.increment();
+            totalQueueWaitMillis.add(waited);
+            maxQueueWaitMillis.accumulate(waited);
+            command.run();
+        };
+        try {
+            executor.execute(timed);
+            maxQueued.accumulate(executor.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            if (callerRunsWhenSaturated && !executor.isShutdown()) {
+                callerRuns.increment();
+                timed.run();
+                return;
+            }
+            rejected.increment();
+            throw new RejectedExecutionException("The " + name + " observers are saturated, " + queueSize + " events are queued", e);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        long count = started.sum();
+        statistics.put("threads", executor.getMaximumPoolSize());
+        statistics.put("virtualThreads", virtualThreads);
+        statistics.put("active", executor.getActiveCount());
+        statistics.put("queued", executor.getQueue().size());
+        statistics.put("maxQueued", maxQueued.get());
+        statistics.put("queueCapacity", queueSize);
+        statistics.put("completed", executor.getCompletedTaskCount());
+        statistics.put("rejected", rejected.sum());
+        statistics.put("callerRuns", callerRuns.sum());
+        statistics.put("averageQueueWaitMs", count == 0 ? 0 : totalQueueWaitMillis.sum() / count);
+        statistics.put("maxQueueWaitMs", maxQueueWaitMillis.get());
+        return statistics;
+    }
+
+    /**
+     * Thread.ofVirtual() is only there from Java 21 on, the app is built for Java 17.
+     *
+     * @return null if the JVM has no virtual threads
+     */
+    static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warning("Virtual threads need Java 21, using platform threads for " + prefix + "*");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package health.ere.ps.service.executor;
+
+/**
+ * Classes of async observers that get their own executor, so a burst of one class does not
+ * delay the others. Threads 0 means one per available processor.
+ */
+public enum Workload {
+
+    /**
+     * Short user facing requests: status, cards, PINs, signature mode, settings, VZD search.
+     */
+    INTERACTIVE("interactive", 8, 200, false),
+
+    /**
+     * Batches that mostly wait for the connector and the Fachdienste: sign and upload, abort, eRiXa.
+     */
+    WORKFLOW("workflow", 16, 1000, false),
+
+    /**
+     * CPU bound rendering of the previews and the HTML of bundles that are ready to sign. When
+     * the queue is full firing fails like for the interactive pool, the rendering never runs
+     * on the firing thread, e.g. the websocket onMessage thread.
+     */
+    RENDERING("rendering", 0, 1000, false),
+
+    /**
+     * CPU bound text extraction of the pages of scanned Muster 16 forms. The pages are split by
+     * a caller that waits for them, so when the queue is full the caller extracts itself.
+     */
+    EXTRACTION("extraction", 0, 100, true),
+
+    /**
+     * Bulk ingestion of scanned Muster 16 forms from a ZIP or the watched directory. The
+     * submitters are limited by ere.ingest.max-in-flight, when the queue is full anyway the
+     * submitter ingests itself.
+     */
+    INGESTION("ingestion", 0, 100, true),
+
+    /**
+     * Jobs behind /workflow/async/* and /workflow/jobs/*. When the queue is full the job is
+     * rejected instead of waiting longer than the client does.
+     */
+    JOBS("jobs", 16, 100, false),
+
+    /**
+     * Background work without a waiting client: VZD index refreshes and outbox deliveries.
+     */
+    BACKGROUND("background", 4, 1000, false);
+
+    private final String configName;
+    private final int defaultThreads;
+    private final int defaultQueueSize;
+    private final boolean callerRunsWhenSaturated;
+
+    Workload(String configName, int defaultThreads, int defaultQueueSize, boolean callerRunsWhenSaturated) {
+        this.configName = configName;
+        this.defaultThreads = defaultThreads;
+        this.defaultQueueSize = defaultQueueSize;
+        this.callerRunsWhenSaturated = callerRunsWhenSaturated;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    int getDefaultThreads() {
+        return defaultThreads;
+    }
+
+    int getDefaultQueueSize() {
+        return defaultQueueSize;
+    }
+
+    boolean isCallerRunsWhenSaturated() {
+        return callerRunsWhenSaturated;
+    }
+}
@@ -0,0 +1,152 @@
+package health.ere.ps.service.extractor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import health.ere.ps.model.muster16.MedicationString;
+import health.ere.ps.model.muster16.Muster16PrescriptionForm;
+
+/**
+ * Maps the fields extracted by the {@link SVGExtractor} from a printed Muster 16 to a
+ * {@link Muster16PrescriptionForm}. The fields are split into their non blank lines, the
+ * addresses and medications are recognized by simple patterns.
+ */
+public final class Muster16FormMapper {
+
+    private static final Pattern STREET = Pattern.compile("^(.*?)\\s+(\\d+\\s*[a-zA-Z]?)$");
+    private static final Pattern ZIP_CITY = Pattern.compile("^(?:D\\s*-?\\s*)?(\\d{5})\\s+(.+)$");
+    private static final Pattern PZN = Pattern.compile("PZN[:\\s]*(\\d{7,8})");
+    private static final Pattern DOSAGE = Pattern.compile("\\d+\\s*-\\s*\\d+\\s*-\\s*\\d+(\\s*-\\s*\\d+)?");
+    private static final Pattern PHONE = Pattern.compile("^(?:Tel\\.?|Telefon)?[:\\s]*([+\\d][\\d /-]{5,})$");
+    private static final Pattern FAX = Pattern.compile("^Fax\\.?[:\\s]*(.+)$");
+    private static final Pattern SEPARATOR_LINE = Pattern.compile("^[-*\\s]*$");
+
+    private Muster16FormMapper() {
+    }
+
+    public static Muster16PrescriptionForm toForm(Map<String, String> fields) {
+        Muster16PrescriptionForm form = new Muster16PrescriptionForm();
+        form.setInsuranceCompany(firstLine(fields.get("insurance")));
+        form.setInsuranceCompanyId(firstLine(fields.get("payor")));
+        form.setPatientInsuranceId(firstLine(fields.get("insuranceNumber")));
+        form.setPatientStatus(firstLine(fields.get("status")));
+        form.setPatientDateOfBirth(firstLine(fields.get("birthdate")));
+        form.setClinicId(firstLine(fields.get("locationNumber")));
+        form.setPractitionerId(firstLine(fields.get("practitionerNumber")));
+        form.setPrescriptionDate(firstLine(fields.get("date")));
+        form.setWithPayment(!firstLine(fields.get("withPayment")).isEmpty());
+        form.setPatientNamePrefix(new ArrayList<>());
+
+        List<String> nameAndAddress = lines(fields.get("nameAndAddress"));
+        if (nameAndAddress.size() > 0) {
+            form.setPatientLastName(nameAndAddress.get(0));
+        }
+        if (nameAndAddress.size() > 1) {
+            form.setPatientFirstName(nameAndAddress.get(1));
+        }
+        for (String line : nameAndAddress.subList(Math.min(2, nameAndAddress.size()), nameAndAddress.size())) {
+            Matcher zipCity = ZIP_CITY.matcher(line);
+            Matcher street = STREET.matcher(line);
+            if (zipCity.matches()) {
+                form.setPatientZipCode(zipCity.group(1));
+                form.setPatientCity(zipCity.group(2));
+            } else if (street.matches()) {
+                form.setPatientStreetName(street.group(1));
+                form.setPatientStreetNumber(street.group(2));
+            }
+        }
+
+        mapPractitioner(form, lines(fields.get("practitionerText")));
+        form.setPrescriptionList(medications(fields.get("medication")));
+        return form;
+    }
+
+    private static void mapPractitioner(Muster16PrescriptionForm form, List<String> lines) {
+        for (String line : lines) {
+            Matcher zipCity = ZIP_CITY.matcher(line);
+            Matcher fax = FAX.matcher(line);
+            Matcher phone = PHONE.matcher(line);
+            if (zipCity.matches()) {
+                form.setPractitionerZipCode(zipCity.group(1));
+                form.setPractitionerCity(zipCity.group(2));
+            } else if (fax.matches()) {
+                form.setPractitionerFax(fax.group(1).trim());
+            } else if (phone.matches()) {
+                form.setPractitionerPhone(phone.group(1).trim());
+            } else if (form.getPractitionerLastName() == null && line.contains(" ") && !Character.isDigit(line.charAt(0))) {
+                String name = line;
+                if (name.startsWith("Dr.")) {
+                    form.setPractitionerNamePrefix("Dr.");
+                    name = name.substring(3).trim();
+                }
+                int lastSpace = name.lastIndexOf(' ');
+                form.setPractitionerFirstName(lastSpace > 0 ? name.substring(0, lastSpace) : "");
+                form.setPractitionerLastName(name.substring(lastSpace + 1));
+            } else if (form.getPractitionerStreetName() == null) {
+                Matcher street = STREET.matcher(line);
+                if (street.matches()) {
+                    form.setPractitionerStreetName(street.group(1));
+                    form.setPractitionerStreetNumber(street.group(2));
+                }
+            }
+        }
+    }
+
+    /**
+     * A medication starts on a line with an upper case letter, following lines that start with
+     * a digit, a lower case letter or the PZN are its instructions.
+     */
+    private static List<MedicationString> medications(String field) {
+        List<List<String>> entries = new ArrayList<>();
+        for (String line : lines(field)) {
+            if (SEPARATOR_LINE.matcher(line).matches()) {
+                continue;
+            }
+            boolean continuation = !Character.isUpperCase(line.charAt(0)) || line.startsWith("PZN");
+            if (continuation && !entries.isEmpty()) {
+                entries.get(entries.size() - 1).add(line);
+            } else {
+                entries.add(new ArrayList<>(List.of(line)));
+            }
+        }
+        List<MedicationString> medications = new ArrayList<>();
+        for (List<String> entry : entries) {
+            String text = String.join(" ", entry);
+            Matcher dosage = DOSAGE.matcher(text);
+            Matcher pzn = PZN.matcher(text);
+            String dosageText = dosage.find() ? dosage.group().replaceAll("\\s", "") : null;
+            String pznText = pzn.find() ? pzn.group(1) : null;
+            String name = clean(entry.get(0));
+            String instructions = entry.size() > 1 ? clean(String.join(" ", entry.subList(1, entry.size()))) : null;
+            medications.add(new MedicationString(name, null, null,
+                dosageText != null ? dosageText : instructions, instructions, pznText));
+        }
+        return medications;
+    }
+
+    private static String clean(String text) {
+        return DOSAGE.matcher(PZN.matcher(text).replaceAll("")).replaceAll("").replaceAll("[()»«]", "").replaceAll("\\s+", " ").trim();
+    }
+
+    static List<String> lines(String field) {
+        List<String> lines = new ArrayList<>();
+        if (field == null) {
+            return lines;
+        }
+        for (String line : field.split("\\R")) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty()) {
+                lines.add(trimmed);
+            }
+        }
+        return lines;
+    }
+
+    private static String firstLine(String field) {
+        List<String> lines = lines(field);
+        return lines.isEmpty() ? "" : lines.get(0);
+    }
+}
@@ -4,9 +4,11 @@ import java.awt.Color;
 import java.awt.geom.Rectangle2D.Float;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,12 +16,7 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
 import jakarta.enterprise.event.ObservesAsync;
 import jakarta.inject.Inject;
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -30,12 +27,14 @@ import org.apache.pdfbox.text.PDFTextStripperByArea;
 import health.ere.ps.config.UserConfig;
 import health.ere.ps.event.PDDocumentEvent;
 import health.ere.ps.event.SVGExtractorResultEvent;
+import health.ere.ps.service.executor.FanOut;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
 
 @ApplicationScoped
 public class SVGExtractor {
 
     private static final Logger log = Logger.getLogger(SVGExtractor.class.getName());
-    private final String DEFAULT_TEMPLATE = "/svg-extract-templates/Muster-16-Template.svg";
 
     @Inject
     Event<Exception> exceptionEvent;
@@ -43,10 +42,14 @@ public class SVGExtractor {
     Event<SVGExtractorResultEvent> sVGExtractorResultEvent;
     @Inject
     UserConfig userConfig;
+    @Inject
+    ObserverExecutors observerExecutors;
 
     private boolean debugRectangles = false;
 
-    private SVGExtractorConfiguration configuration;
+    private volatile SVGExtractorConfiguration configuration;
+
+    private volatile SVGTemplateLayout layout;
 
     public SVGExtractor() {
     }
@@ -56,7 +59,7 @@ public class SVGExtractor {
         this(userConfig.getMuster16TemplateConfiguration());
     }
 
-    SVGExtractor(String muster16TemplateProfileName) {
+    public SVGExtractor(String muster16TemplateProfileName) {
         setTemplateProfile(muster16TemplateProfileName);
     }
 
@@ -73,8 +76,15 @@ public class SVGExtractor {
         setTemplateProfile(userConfig.getMuster16TemplateConfiguration());
         log.info("SVGExtractor.analyzeDocument");
         try {
-            Map<String, String> extractResult = extract(pDDocumentEvent.getPDDocument());
-            sVGExtractorResultEvent.fireAsync(new SVGExtractorResultEvent(extractResult));
+            List<Map<String, String>> extractResults = extractPages(pDDocumentEvent.getPDDocument());
+            for (int i = 0; i < extractResults.size(); i++) {
+                // e.g. the back page of a scanned form
+                if (isBlank(extractResults.get(i))) {
+                    log.info("Skipping page " + (i + 1) + ", it has no text in the fields");
+                    continue;
+                }
+                sVGExtractorResultEvent.fireAsync(new SVGExtractorResultEvent(extractResults.get(i)));
+            }
         } catch (Exception e) {
             log.log(Level.SEVERE, "Could not extract results", e);
             exceptionEvent.fireAsync(e);
@@ -82,51 +92,134 @@ public class SVGExtractor {
     }
 
     public Map<String, String> extract(PDDocument document) throws IOException, XMLStreamException {
-        PDPage page = document.getDocumentCatalog().getPages().get(0);
+        SVGTemplateLayout layout = getLayout();
+        Map<String, String> map = extractPage(document, 0, layout);
+        if (debugRectangles)
+            saveDebugFile(document, layout.getConfiguration());
+        return map;
+    }
+
+    /**
+     * Extracts the fields of every page on the calling thread with one text stripper.
+     */
+    public List<Map<String, String>> extractPages(PDDocument document) throws IOException, XMLStreamException {
+        SVGTemplateLayout layout = getLayout();
+        List<Map<String, String>> maps = extractPages(document, 0, document.getNumberOfPages(), layout);
+        if (debugRectangles)
+            saveDebugFile(document, layout.getConfiguration());
+        return maps;
+    }
+
+    /**
+     * Extracts the fields of every page of the PDF, e.g. of a scanned stack of prescriptions.
+     * The pages are split into ranges that are extracted in parallel on the extraction pool,
+     * each by one text stripper. A PDDocument must not be used by several threads, so every
+     * range but one is extracted from its own copy that is loaded from the bytes.
+     */
+    public List<Map<String, String>> extractPages(byte[] pdf) throws IOException, XMLStreamException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            int pages = document.getNumberOfPages();
+            int chunks = Math.min(pages, Runtime.getRuntime().availableProcessors());
+            if (chunks <= 1 || observerExecutors == null || debugRectangles) {
+                return extractPages(document);
+            }
+            SVGTemplateLayout layout = getLayout();
+            List<int[]> ranges = new ArrayList<>(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                ranges.add(new int[] {pages * chunk / chunks, pages * (chunk + 1) / chunks});
+            }
+            AtomicBoolean loadedInUse = new AtomicBoolean();
+            List<List<Map<String, String>>> results;
+            try {
+                results = FanOut.map(ranges, observerExecutors.getPool(Workload.EXTRACTION), chunks, range -> {
+                    if (loadedInUse.compareAndSet(false, true)) {
+                        return extractPages(document, range[0], range[1], layout);
+                    }
+                    try (PDDocument copy = PDDocument.load(pdf)) {
+                        return extractPages(copy, range[0], range[1], layout);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            List<Map<String, String>> maps = new ArrayList<>(pages);
+            results.forEach(maps::addAll);
+            return maps;
+        }
+    }
+
+    /**
+     * @return true if no field has text, e.g. for the back page or a blank page of a scan
+     */
+    public static boolean isBlank(Map<String, String> fields) {
+        for (String value : fields.values()) {
+            if (value != null && !value.isBlank()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Map<String, String>> extractPages(PDDocument document, int from, int to, SVGTemplateLayout layout) throws IOException {
+        PDFTextStripperByArea textStripper = textStripper(layout);
+        List<Map<String, String>> maps = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            maps.add(extractPage(document, i, layout, textStripper));
+        }
+        return maps;
+    }
+
+    /**
+     * Extracts all fields of the page in one pass of a single text stripper.
+     */
+    Map<String, String> extractPage(PDDocument document, int pageIndex, SVGTemplateLayout layout) throws IOException {
+        return extractPage(document, pageIndex, layout, textStripper(layout));
+    }
+
+    /**
+     * The stripper keeps its regions and is reset by every extraction, so it is reused for the
+     * pages of a range.
+     */
+    private Map<String, String> extractPage(PDDocument document, int pageIndex, SVGTemplateLayout layout,
+                                            PDFTextStripperByArea textStripper) throws IOException {
+        PDPage page = document.getPage(pageIndex);
+        SVGExtractorConfiguration configuration = layout.getConfiguration();
         if (configuration.ROTATE_DEGREE != 0) {
             page.setRotation(configuration.ROTATE_DEGREE);
         }
+        if (debugRectangles) {
+            drawRectangles(document, page, layout);
+        }
+        textStripper.extractRegions(page);
         Map<String, String> map = new HashMap<>();
-        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-        XMLEventReader reader = xmlInputFactory.createXMLEventReader(getTemplate());
-        boolean rectFetchMode = false;
-
-        while (reader.hasNext()) {
-            XMLEvent nextEvent = reader.nextEvent();
-            if (nextEvent.isStartElement()) {
-                StartElement startElement = nextEvent.asStartElement();
-                String localPart = startElement.getName().getLocalPart();
-
-                if ("g".equals(localPart)
-                        && "fields".equals(startElement.getAttributeByName(new QName("id")).getValue())) {
-                    rectFetchMode = true;
-                } else if (rectFetchMode && "rect".equals(localPart)) {
-                    String id = startElement.getAttributeByName(new QName("id")).getValue();
-                    float x = java.lang.Float.parseFloat(startElement.getAttributeByName(new QName("x")).getValue()) * configuration.SCALE + configuration.X_OFFSET;
-                    float y = java.lang.Float.parseFloat(startElement.getAttributeByName(new QName("y")).getValue()) * configuration.SCALE + configuration.Y_OFFSET;
-                    float width = java.lang.Float.parseFloat(startElement.getAttributeByName(new QName("width")).getValue()) * configuration.SCALE;
-                    float height = java.lang.Float.parseFloat(startElement.getAttributeByName(new QName("height")).getValue()) * configuration.SCALE;
-                    if (debugRectangles) {
-                        PDPageContentStream contentStream = new PDPageContentStream(document, page, AppendMode.APPEND, true);
-                        if (configuration.ROTATE_DEGREE == 90)
-                            contentStream.addRect(y, x, height, width);
-                        else
-                            contentStream.addRect(x, y, width, height);
-                        contentStream.setStrokingColor(Color.RED);
-                        //Drawing a rectangle
-                        contentStream.stroke();
-                        contentStream.close();
-                    }
-                    String text = extractTextAtPosition(document, id, x, y, width, height);
-                    map.put(id, text);
-                }
-            }
+        for (String id : layout.getRegions().keySet()) {
+            map.put(id, textStripper.getTextForRegion(id));
         }
-        if (debugRectangles)
-            saveDebugFile(document);
         return map;
     }
 
+    private static PDFTextStripperByArea textStripper(SVGTemplateLayout layout) throws IOException {
+        PDFTextStripperByArea textStripper = new PDFTextStripperByArea();
+        layout.getRegions().forEach(textStripper::addRegion);
+        return textStripper;
+    }
+
+    private void drawRectangles(PDDocument document, PDPage page, SVGTemplateLayout layout) throws IOException {
+        try (PDPageContentStream contentStream = new PDPageContentStream(document, page, AppendMode.APPEND, true)) {
+            for (Float rect : layout.getRegions().values()) {
+                if (layout.getConfiguration().ROTATE_DEGREE == 90)
+                    contentStream.addRect(rect.y, rect.x, rect.height, rect.width);
+                else
+                    contentStream.addRect(rect.x, rect.y, rect.width, rect.height);
+            }
+            contentStream.setStrokingColor(Color.RED);
+            //Drawing the rectangles
+            contentStream.stroke();
+        }
+    }
+
     public String extractTextAtPosition(PDDocument document, String id, float x, float y, float width, float height) throws IOException {
         PDFTextStripperByArea textStripper;
         textStripper = new PDFTextStripperByArea();
@@ -140,18 +233,20 @@ public class SVGExtractor {
         return textStripper.getTextForRegion(id);
     }
 
-    private void saveDebugFile(PDDocument document) throws IOException {
+    private void saveDebugFile(PDDocument document, SVGExtractorConfiguration configuration) throws IOException {
         final File file = new File("target/SVGExtractor-" + configuration.NAME + ".pdf");
         document.save(file);
         document.close();
     }
 
-    private String getTemplatePath() {
-        return configuration.MUSTER_16_TEMPLATE != null ? configuration.MUSTER_16_TEMPLATE : DEFAULT_TEMPLATE;
-    }
-
-    private InputStream getTemplate() {
-        return SVGExtractor.class.getResourceAsStream(getTemplatePath());
+    private SVGTemplateLayout getLayout() throws XMLStreamException {
+        SVGTemplateLayout layout = this.layout;
+        SVGExtractorConfiguration configuration = this.configuration;
+        if (layout == null || layout.getConfiguration() != configuration) {
+            layout = SVGTemplateLayout.of(configuration);
+            this.layout = layout;
+        }
+        return layout;
     }
 
     void setTemplateProfile(String name){
@@ -0,0 +1,126 @@
+package health.ere.ps.service.extractor;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * The field regions of a Muster 16 SVG template, scaled and moved by an
+ * {@link SVGExtractorConfiguration}. The templates are parsed once per path and cached, the
+ * extraction of a document only reads the regions.
+ */
+final class SVGTemplateLayout {
+
+    static final String DEFAULT_TEMPLATE = "/svg-extract-templates/Muster-16-Template.svg";
+
+    private static final Map<String, List<Field>> TEMPLATES = new ConcurrentHashMap<>();
+
+    private static final QName ID = new QName("id");
+    private static final QName X = new QName("x");
+    private static final QName Y = new QName("y");
+    private static final QName WIDTH = new QName("width");
+    private static final QName HEIGHT = new QName("height");
+
+    private final SVGExtractorConfiguration configuration;
+    private final Map<String, Rectangle2D.Float> regions;
+
+    private SVGTemplateLayout(SVGExtractorConfiguration configuration, Map<String, Rectangle2D.Float> regions) {
+        this.configuration = configuration;
+        this.regions = regions;
+    }
+
+    static SVGTemplateLayout of(SVGExtractorConfiguration configuration) throws XMLStreamException {
+        return of(configuration, getFields(getTemplatePath(configuration)));
+    }
+
+    /**
+     * Parses the template without the cache.
+     */
+    static SVGTemplateLayout parse(SVGExtractorConfiguration configuration) throws XMLStreamException {
+        return of(configuration, parse(getTemplatePath(configuration)));
+    }
+
+    private static SVGTemplateLayout of(SVGExtractorConfiguration configuration, List<Field> fields) {
+        Map<String, Rectangle2D.Float> regions = new LinkedHashMap<>();
+        for (Field field : fields) {
+            regions.put(field.id(), new Rectangle2D.Float(
+                field.x() * configuration.SCALE + configuration.X_OFFSET,
+                field.y() * configuration.SCALE + configuration.Y_OFFSET,
+                field.width() * configuration.SCALE,
+                field.height() * configuration.SCALE));
+        }
+        return new SVGTemplateLayout(configuration, Collections.unmodifiableMap(regions));
+    }
+
+    SVGExtractorConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * The regions by field id in the order of the template.
+     */
+    Map<String, Rectangle2D.Float> getRegions() {
+        return regions;
+    }
+
+    static String getTemplatePath(SVGExtractorConfiguration configuration) {
+        return configuration.MUSTER_16_TEMPLATE != null ? configuration.MUSTER_16_TEMPLATE : DEFAULT_TEMPLATE;
+    }
+
+    private static List<Field> getFields(String templatePath) throws XMLStreamException {
+        List<Field> fields = TEMPLATES.get(templatePath);
+        if (fields == null) {
+            fields = parse(templatePath);
+            TEMPLATES.putIfAbsent(templatePath, fields);
+        }
+        return fields;
+    }
+
+    private static List<Field> parse(String templatePath) throws XMLStreamException {
+        try (InputStream template = SVGTemplateLayout.class.getResourceAsStream(templatePath)) {
+            if (template == null) {
+                throw new XMLStreamException("Muster 16 template not found: " + templatePath);
+            }
+            List<Field> fields = new ArrayList<>();
+            XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(template);
+            boolean rectFetchMode = false;
+            while (reader.hasNext()) {
+                XMLEvent nextEvent = reader.nextEvent();
+                if (nextEvent.isStartElement()) {
+                    StartElement startElement = nextEvent.asStartElement();
+                    String localPart = startElement.getName().getLocalPart();
+
+                    if ("g".equals(localPart) && "fields".equals(startElement.getAttributeByName(ID).getValue())) {
+                        rectFetchMode = true;
+                    } else if (rectFetchMode && "rect".equals(localPart)) {
+                        fields.add(new Field(startElement.getAttributeByName(ID).getValue(),
+                            Float.parseFloat(startElement.getAttributeByName(X).getValue()),
+                            Float.parseFloat(startElement.getAttributeByName(Y).getValue()),
+                            Float.parseFloat(startElement.getAttributeByName(WIDTH).getValue()),
+                            Float.parseFloat(startElement.getAttributeByName(HEIGHT).getValue())));
+                    }
+                }
+            }
+            reader.close();
+            return List.copyOf(fields);
+        } catch (IOException e) {
+            throw new XMLStreamException("Could not read Muster 16 template: " + templatePath, e);
+        }
+    }
+
+    private record Field(String id, float x, float y, float width, float height) {
+    }
+}
@@ -1,12 +1,20 @@
 package health.ere.ps.service.fhir.bundle;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -39,10 +47,15 @@ import org.hl7.fhir.r4.model.StringType;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import health.ere.ps.model.muster16.MedicationString;
 import health.ere.ps.model.muster16.Muster16PrescriptionForm;
+import health.ere.ps.service.executor.FanOut;
 
 public class PrescriptionBundlesBuilder implements IBundlesBuilder {
-    protected static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
-    protected static final String DEFAULT_SHORT_DATE_FORMAT = "dd.MM.yy";
+    // lenient like SimpleDateFormat, out of range days and months roll over: 31.02.21 is 03.03.2021
+    protected static final DateTimeFormatter DEFAULT_DATE_FORMAT = DateTimeFormatter.ofPattern("uuuu-M-d", Locale.GERMANY)
+            .withResolverStyle(ResolverStyle.LENIENT);
+
+    // the dd.MM.yy formatter of the current day, see getShortDateFormat
+    private static volatile ShortDateFormat shortDateFormat;
 
     protected final Muster16PrescriptionForm muster16PrescriptionForm;
 
@@ -61,23 +74,93 @@ public class PrescriptionBundlesBuilder implements IBundlesBuilder {
         this.pruefnummer = pruefnummer;
     }
 
-    protected static String getDateFormat(String date) {
-        return StringUtils.isBlank(date) || date.length() == 8 ? DEFAULT_SHORT_DATE_FORMAT :
+    protected static DateTimeFormatter getDateFormat(String date) {
+        return StringUtils.isBlank(date) || date.length() == 8 ? getShortDateFormat() :
                 DEFAULT_DATE_FORMAT;
     }
 
+    /**
+     * dd.MM.yy like SimpleDateFormat: two digit years are in the 100 years from 80 years before
+     * today and the date is resolved leniently. The formatter is built again when the day changes.
+     */
+    static DateTimeFormatter getShortDateFormat() {
+        LocalDate baseDate = LocalDate.now().minusYears(80);
+        ShortDateFormat format = shortDateFormat;
+        if (format == null || !format.baseDate().equals(baseDate)) {
+            format = new ShortDateFormat(baseDate, new DateTimeFormatterBuilder()
+                    .appendPattern("dd.MM.")
+                    .appendValueReduced(ChronoField.YEAR, 2, 2, baseDate)
+                    .toFormatter(Locale.GERMANY)
+                    .withResolverStyle(ResolverStyle.LENIENT));
+            shortDateFormat = format;
+        }
+        return format.formatter();
+    }
+
+    /**
+     * Parses the date like SimpleDateFormat.parse: trailing text is ignored, the date is the
+     * start of the day in the default time zone.
+     */
+    static Date parseDate(String date) {
+        if (date == null) {
+            throw new DateTimeException("No date");
+        }
+        TemporalAccessor parsed = getDateFormat(date).parse(date, new ParsePosition(0));
+        return Date.from(LocalDate.from(parsed).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * The patient, practitioner, organization, coverage and authoring date are built once per
+     * form. Every bundle gets copies of the resources, so changing one bundle does not change
+     * the others.
+     */
     @Override
     public List<Bundle> createBundles() {
-        List<Bundle> bundles = new ArrayList<>();
-
-        muster16PrescriptionForm.getPrescriptionList().forEach(medicationString ->
-                bundles.add(createBundleForMedication(medicationString)));
+        List<MedicationString> prescriptionList = muster16PrescriptionForm.getPrescriptionList();
+        List<Bundle> bundles = new ArrayList<>(prescriptionList.size());
+        if (prescriptionList.isEmpty()) {
+            return bundles;
+        }
+        FormResources formResources = createFormResources();
+        prescriptionList.forEach(medicationString ->
+                bundles.add(createBundleForMedication(medicationString, formResources)));
 
         return bundles;
     }
 
+    /**
+     * Builds the bundles of several forms on up to parallelism threads of the executor, the
+     * calling thread builds bundles as well. The results are in the order of the forms.
+     */
+    public static List<List<Bundle>> createBundles(List<Muster16PrescriptionForm> forms, String pruefnummer,
+            Executor executor, int parallelism) {
+        try {
+            return FanOut.map(forms, executor, parallelism, form -> new PrescriptionBundlesBuilder(form, pruefnummer).createBundles());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     public Bundle createBundleForMedication(MedicationString medication) {
+        return createBundleForMedication(medication, createFormResources());
+    }
+
+    private FormResources createFormResources() {
+        Patient patientResource = createPatientResource();
+        Practitioner practitionerResource = createPractitionerResource();
+        Coverage coverageResource = createCoverageResource(patientResource.getId());
+        Organization organizationResource = createOrganizationResource();
+        return new FormResources(patientResource, practitionerResource, coverageResource, organizationResource,
+                parseAuthoredOn());
+    }
+
+    private Bundle createBundleForMedication(MedicationString medication, FormResources formResources) {
         Bundle bundle = new Bundle();
 
         bundle.setId(UUID.randomUUID().toString());
@@ -90,23 +173,24 @@ public class PrescriptionBundlesBuilder implements IBundlesBuilder {
         bundle.setType(Bundle.BundleType.DOCUMENT);
 
         // Add patient resource.
-        Patient patientResource = createPatientResource();
+        Patient patientResource = formResources.patient().copy();
 
         // Add practitioner resource.
-        Practitioner practitionerResource = createPractitionerResource();
+        Practitioner practitionerResource = formResources.practitioner().copy();
 
         // Add medication resource.
         Medication medicationResource = createMedicationResource(medication);
         
         // Add coverage resource.
-        Coverage coverageResource = createCoverageResource(patientResource.getId());
+        Coverage coverageResource = formResources.coverage().copy();
 
         // Add medication request resource.
         MedicationRequest medicationRequestResource = createMedicationRequest(
-                medicationResource.getId(), patientResource.getId(), practitionerResource.getId(), coverageResource.getId());
+                medicationResource.getId(), patientResource.getId(), practitionerResource.getId(), coverageResource.getId(),
+                formResources.authoredOn());
         
         // Add organization resource.
-        Organization organizationResource = createOrganizationResource();
+        Organization organizationResource = formResources.organization().copy();
 
         // Add composition resource.
         Composition compositionResource = createComposition(medicationRequestResource.getId(), patientResource.getId(),
@@ -218,9 +302,8 @@ public class PrescriptionBundlesBuilder implements IBundlesBuilder {
         String patientBirthDate = muster16PrescriptionForm.getPatientDateOfBirth();
 
         try {
-            patient.setBirthDate(new SimpleDateFormat(getDateFormat(patientBirthDate), Locale.GERMANY)
-                    .parse(patientBirthDate));
-        } catch (ParseException e) {
+            patient.setBirthDate(parseDate(patientBirthDate));
+        } catch (DateTimeException e) {
             log.warning("Could not parse this birthdate when creating the bundle:" + patientBirthDate);
         }
 
@@ -437,7 +520,19 @@ public class PrescriptionBundlesBuilder implements IBundlesBuilder {
         return medication;
     }
 
-    private MedicationRequest createMedicationRequest(String medicationId, String patientId, String practitionerId, String coverageId) {
+    private Date parseAuthoredOn() {
+        String prescriptionDate = muster16PrescriptionForm.getPrescriptionDate();
+
+        try {
+            return parseDate(prescriptionDate);
+        } catch (DateTimeException e) {
+            log.warning("Could not set AuthoredOn Date when creating the bundle:" + prescriptionDate);
+            return new Date();
+        }
+    }
+
+    private MedicationRequest createMedicationRequest(String medicationId, String patientId, String practitionerId, String coverageId,
+                                                      Date authoredOn) {
         MedicationRequest medicationRequest = new MedicationRequest();
 
         medicationRequest.setId(UUID.randomUUID().toString());
@@ -466,15 +561,7 @@ public class PrescriptionBundlesBuilder implements IBundlesBuilder {
 
         medicationRequest.getSubject().setReference("Patient/" + patientId);
 
-        String prescriptionDate = muster16PrescriptionForm.getPrescriptionDate();
-
-        try {
-            medicationRequest.setAuthoredOn(new SimpleDateFormat(getDateFormat(prescriptionDate), Locale.GERMANY)
-                    .parse(prescriptionDate));
-        } catch (ParseException e) {
-            log.warning("Could not set AuthoredOn Date when creating the bundle:" + prescriptionDate);
-            medicationRequest.setAuthoredOn(new Date());
-        }
+        medicationRequest.setAuthoredOn(new Date(authoredOn.getTime()));
         medicationRequest.getAuthoredOnElement().setPrecision(TemporalPrecisionEnum.DAY);
 
 
@@ -565,4 +652,11 @@ public class PrescriptionBundlesBuilder implements IBundlesBuilder {
 
         return composition;
     }
+
+    private record FormResources(Patient patient, Practitioner practitioner, Coverage coverage, Organization organization,
+                                 Date authoredOn) {
+    }
+
+    private record ShortDateFormat(LocalDate baseDate, DateTimeFormatter formatter) {
+    }
 }
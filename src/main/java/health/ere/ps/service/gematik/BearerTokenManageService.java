@@ -1,7 +1,11 @@
 package health.ere.ps.service.gematik;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
@@ -22,7 +26,13 @@ public class BearerTokenManageService {
     BearerTokenService bearerTokenService;
 
     //In the future it should be managed automatically by the webclient, including its renewal
-    Map<RuntimeConfig, String> bearerToken = new HashMap<>();
+    // read and written by concurrent workflows, e.g. the tasks of a bulk abort
+    Map<RuntimeConfig, String> bearerToken = Collections.synchronizedMap(new HashMap<>());
+    // one token request per runtime config, concurrent callers wait for the running one
+    private final Map<TokenRequestKey, CompletableFuture<String>> tokenRequests = new ConcurrentHashMap<>();
+
+    private record TokenRequestKey(RuntimeConfig runtimeConfig) {
+    }
 
 
     public void setBearerToken(String bearerToken) {
@@ -37,10 +47,52 @@ public class BearerTokenManageService {
      * Requests a new userConfig if the current one is expired
      */
     public void requestNewAccessTokenIfNecessary(RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
-        if (StringUtils.isEmpty(getBearerToken(runtimeConfig)) || isExpired(bearerToken.get(runtimeConfig))) {
-            log.info("Request new bearer token.");
-            String bearerTokenString = bearerTokenService.requestBearerToken(runtimeConfig, replyTo, replyToMessageId);
-            bearerToken.put(runtimeConfig, bearerTokenString);
+        if (!needsNewToken(runtimeConfig)) {
+            return;
+        }
+        TokenRequestKey key = new TokenRequestKey(runtimeConfig);
+        CompletableFuture<String> request = new CompletableFuture<>();
+        CompletableFuture<String> running = tokenRequests.putIfAbsent(key, request);
+        if (running != null) {
+            try {
+                running.join();
+                return;
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            // a request that finished since the first check already stored a new token
+            if (needsNewToken(runtimeConfig)) {
+                log.info("Request new bearer token.");
+                String bearerTokenString = bearerTokenService.requestBearerToken(runtimeConfig, replyTo, replyToMessageId);
+                bearerToken.put(runtimeConfig, bearerTokenString);
+            }
+            request.complete(getBearerToken(runtimeConfig));
+        } catch (RuntimeException | Error e) {
+            request.completeExceptionally(e);
+            throw e;
+        } finally {
+            tokenRequests.remove(key, request);
+        }
+    }
+
+    private boolean needsNewToken(RuntimeConfig runtimeConfig) {
+        String token = getBearerToken(runtimeConfig);
+        return StringUtils.isEmpty(token) || isExpired(token);
+    }
+
+    /**
+     * Drops the bearer token of the runtime config, e.g. after it was rejected with a 401, so
+     * the next call requests a new one.
+     */
+    public void invalidateBearerToken(RuntimeConfig runtimeConfig) {
+        synchronized (bearerToken) {
+            bearerToken.keySet().removeIf(key -> key == runtimeConfig
+                || (key != null && runtimeConfig != null && key.hashCode() == runtimeConfig.hashCode()));
         }
     }
 
@@ -49,15 +101,17 @@ public class BearerTokenManageService {
     }
 
     public String getBearerToken(RuntimeConfig runtimeConfig) {
-        if(runtimeConfig != null) {
-            int hashCode = runtimeConfig.hashCode();
-            for(RuntimeConfig runtimeConfig2 : bearerToken.keySet()) {
-                if(runtimeConfig2 != null && runtimeConfig2.hashCode() == hashCode) {
-                    runtimeConfig = runtimeConfig2;
+        synchronized (bearerToken) {
+            if(runtimeConfig != null) {
+                int hashCode = runtimeConfig.hashCode();
+                for(RuntimeConfig runtimeConfig2 : bearerToken.keySet()) {
+                    if(runtimeConfig2 != null && runtimeConfig2.hashCode() == hashCode) {
+                        runtimeConfig = runtimeConfig2;
+                    }
                 }
             }
+            return bearerToken.get(runtimeConfig);
         }
-        return bearerToken.get(runtimeConfig);
     }
 
     /**
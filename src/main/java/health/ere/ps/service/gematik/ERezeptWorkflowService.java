@@ -3,6 +3,7 @@ package health.ere.ps.service.gematik;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -14,7 +15,13 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -26,6 +33,8 @@ import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.c14n.InvalidCanonicalizerException;
 import org.apache.xml.security.parser.XMLParserException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Coding;
@@ -68,10 +77,20 @@ import health.ere.ps.event.ReadyToSignBundlesEvent;
 import health.ere.ps.event.SignAndUploadBundlesEvent;
 import health.ere.ps.exception.connector.ConnectorCardsException;
 import health.ere.ps.exception.gematik.ERezeptWorkflowException;
+import health.ere.ps.jsonb.ThrowableAdapter;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.retry.CircuitBreakerOpenException;
+import health.ere.ps.retry.RetryEngine;
+import health.ere.ps.retry.RetryPolicy;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
+import health.ere.ps.service.connector.provider.ConnectorTenant;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+import health.ere.ps.service.executor.FanOut;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
 import health.ere.ps.service.fhir.FHIRService;
+import health.ere.ps.trace.Span;
+import health.ere.ps.trace.Tracer;
 import health.ere.ps.vau.VAUEngine;
 import health.ere.ps.websocket.ExceptionWithReplyToException;
 import jakarta.annotation.PostConstruct;
@@ -123,6 +142,19 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
     Event<GetSignatureModeResponseEvent> getSignatureModeResponseEvent;
     @Inject
     Event<GetCardsResponseEvent> getCardsResponseEvent;
+    @Inject
+    RetryEngine retryEngine;
+    @Inject
+    WorkflowJournal workflowJournal;
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    // connector faults that may succeed on another attempt: internal error, resource busy
+    @ConfigProperty(name = "ere.retry.connector.transient-fault-codes", defaultValue = "4001,4011")
+    List<Integer> transientConnectorFaultCodes = List.of(4001, 4011);
+
+    @ConfigProperty(name = "ere.workflow.abort-concurrency", defaultValue = "8")
+    int abortConcurrency = 8;
 
     Client client;
     private String userIdForComfortSignature;
@@ -175,6 +207,12 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * necessary processing
      */
     public void onSignAndUploadBundlesEvent(@ObservesAsync SignAndUploadBundlesEvent signAndUploadBundlesEvent) {
+        try (Span span = Tracer.startSpan("workflow.sign-and-upload", signAndUploadBundlesEvent.getTraceContext())) {
+            signAndUploadBundles(signAndUploadBundlesEvent, span);
+        }
+    }
+
+    private void signAndUploadBundles(SignAndUploadBundlesEvent signAndUploadBundlesEvent, Span span) {
         requestNewAccessTokenIfNecessary(signAndUploadBundlesEvent.getRuntimeConfig(), signAndUploadBundlesEvent.getReplyTo(), signAndUploadBundlesEvent.getId());
 
         List<List<Bundle>> listOfListOfBundles = signAndUploadBundlesEvent.listOfListOfBundles;
@@ -194,8 +232,10 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         }
         log.info(String.format("Getting access codes for %d bundles.",
                 bundles.size()));
+        span.setAttribute("bundles", bundles.size());
 
         List<BundleWithAccessCodeOrThrowable> unflatten = createMultipleERezeptsOnPrescriptionServer(bundles, signAndUploadBundlesEvent.getFlowtype(), signAndUploadBundlesEvent.getRuntimeConfig(), signAndUploadBundlesEvent.getReplyTo(), signAndUploadBundlesEvent.getId());
+        span.setAttribute("errors", unflatten.stream().filter(b -> b.getThrowable() != null).count());
         Iterator<BundleWithAccessCodeOrThrowable> it = unflatten.iterator();
         // unflatten bundles again
         for(int i = 0;i<listOfListOfBundles.size();i++) {
@@ -211,13 +251,19 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         log.info(String.format("Firing event to create prescription receipts for %d bundles.",
                 bundleWithAccessCodeOrThrowable.size()));
         BundlesWithAccessCodeEvent bundleWithAccessCode = new BundlesWithAccessCodeEvent(bundleWithAccessCodeOrThrowable, signAndUploadBundlesEvent.getReplyTo(), signAndUploadBundlesEvent.getId());
+        bundleWithAccessCode.setTraceContext(span.getContext());
         if("169".equals(signAndUploadBundlesEvent.getFlowtype())) {
             bundleWithAccessCode.setFlowtype(signAndUploadBundlesEvent.getFlowtype());
             bundleWithAccessCode.setToKimAddress(signAndUploadBundlesEvent.getToKimAddress());
             bundleWithAccessCode.setKimConfigMap(signAndUploadBundlesEvent.getKimConfigMap());
             bundleWithAccessCode.setNoteToPharmacy(signAndUploadBundlesEvent.getNoteToPharmacy());
         }
-        bundlesWithAccessCodeEvent.fireAsync(bundleWithAccessCode);
+        // the KIM and eRiXa observers send the prescriptions, so the event stays on the workflow pool
+        if(observerExecutors != null) {
+            observerExecutors.fireAsync(bundlesWithAccessCodeEvent, bundleWithAccessCode, Workload.WORKFLOW);
+        } else {
+            bundlesWithAccessCodeEvent.fireAsync(bundleWithAccessCode);
+        }
     }
 
 
@@ -240,6 +286,16 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
 
     public List<BundleWithAccessCodeOrThrowable> createMultipleERezeptsOnPrescriptionServer(List<Bundle> bundles,
         String flowtype, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
+        WorkflowJournal.Batch journalBatch = workflowJournal != null ? workflowJournal.begin(runtimeConfig) : WorkflowJournal.Batch.NONE;
+        try {
+            return createMultipleERezeptsOnPrescriptionServer(bundles, flowtype, runtimeConfig, replyTo, replyToMessageId, journalBatch);
+        } finally {
+            journalBatch.end();
+        }
+    }
+
+    private List<BundleWithAccessCodeOrThrowable> createMultipleERezeptsOnPrescriptionServer(List<Bundle> bundles,
+        String flowtype, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId, WorkflowJournal.Batch journalBatch) {
         List<BundleWithAccessCodeOrThrowable> bundleWithAccessCodes = new ArrayList<>();
         List<Task> tasks = new ArrayList<>();
         for (Bundle bundle : bundles) {
@@ -258,6 +314,9 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
                     log.log(Level.WARNING, "Could not determine flowtype", ex);
                 }
                 Task task = createERezeptTask(true, runtimeConfig, flowtype);
+                if(task != null) {
+                    journalBatch.taskCreated(tasks.size(), task.getIdElement().getIdPart(), getAccessCode(task));
+                }
                 tasks.add(task);
                 bundleWithAccessCodes.add(new BundleWithAccessCodeOrThrowable());
             } catch (Throwable t) {
@@ -284,13 +343,20 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
             }
             i++;
         }
-        uploadSignedBundle(bundles, runtimeConfig, replyTo, replyToMessageId, bundleWithAccessCodes, tasks);
+        // signing can take long, the created tasks must not get lost meanwhile
+        journalBatch.sync();
+        uploadSignedBundle(bundles, runtimeConfig, replyTo, replyToMessageId, bundleWithAccessCodes, tasks, journalBatch);
 
         return bundleWithAccessCodes;
     }
 
     void uploadSignedBundle(List<Bundle> bundles, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId,
             List<BundleWithAccessCodeOrThrowable> bundleWithAccessCodes, List<Task> tasks) {
+        uploadSignedBundle(bundles, runtimeConfig, replyTo, replyToMessageId, bundleWithAccessCodes, tasks, WorkflowJournal.Batch.NONE);
+    }
+
+    void uploadSignedBundle(List<Bundle> bundles, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId,
+            List<BundleWithAccessCodeOrThrowable> bundleWithAccessCodes, List<Task> tasks, WorkflowJournal.Batch journalBatch) {
         int i;
         try {
             List<SignResponse> signedDocuments = signBundleWithIdentifiers(bundles, false, runtimeConfig, replyTo, replyToMessageId);
@@ -325,8 +391,10 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
                     if(task != null && signedDocument.getSignatureObject() != null && signedDocument.getSignatureObject().getBase64Signature() != null) {
                         byte[] signedBundle = signedDocument.getSignatureObject().getBase64Signature().getValue();
                         bundleWithAccessCode.setSignedBundle(signedBundle);
+                        journalBatch.signed(i, signedBundle);
                         updateERezeptTask(task, bundleWithAccessCode.getAccessCode(),
                             signedBundle, runtimeConfig);
+                        journalBatch.activated(i);
                     }
                 } catch(Throwable t) {
                     bundleWithAccessCode.setThrowable(t);
@@ -407,7 +475,6 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * This function adds the E-Rezept to the previously created task.
      */
     public void updateERezeptTask(String taskId, String accessCode, byte[] signedBytes, boolean firstTry, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
-        requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
         Parameters parameters = new Parameters();
         ParametersParameterComponent ePrescriptionParameter = new ParametersParameterComponent();
         ePrescriptionParameter.setName("ePrescription");
@@ -416,34 +483,105 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         binary.setContent(signedBytes);
         ePrescriptionParameter.setResource(binary);
         parameters.addParameter(ePrescriptionParameter);
+        String parametersString = fhirContext.newXmlParser().encodeResourceToString(parameters);
 
-        try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task")
-                .path("/" + taskId).path("/$activate").request()
-                .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode)
-                .post(Entity.entity(fhirContext.newXmlParser().encodeResourceToString(parameters),
-                        "application/fhir+xml; charset=utf-8"))) {
-
-            String taskString = new String(response.readEntity(java.io.InputStream.class).readAllBytes(), "ISO-8859-1");
-            log.fine("Response when trying to activate the task: " + taskString);
+        try (Span span = Tracer.startSpan("task.activate").setAttribute("task.id", taskId)) {
+            try {
+                activateERezeptTask(taskId, accessCode, parametersString, firstTry, runtimeConfig, replyTo, replyToMessageId);
+            } catch (RuntimeException e) {
+                span.setError(e);
+                throw e;
+            }
+        }
+    }
 
-            if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
-                if(firstTry) {
-                    log.warning("Was not able to $activate on first try. Status:" +response.getStatus()+" Response: " + taskString);
-                    updateERezeptTask(taskId, accessCode, signedBytes, false, runtimeConfig, replyTo, replyToMessageId);
-                } else {
+    private void activateERezeptTask(String taskId, String accessCode, String parametersString, boolean firstTry, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
+        // $activate is not idempotent, a task that was activated before a timeout fails with 403 on the next attempt
+        callPrescriptionServer(firstTry, RetryEngine::isRetryableBeforeSent, () -> {
+            requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
+            try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task")
+                    .path("/" + taskId).path("/$activate").request()
+                    .header("User-Agent", appConfig.getUserAgent())
+                    .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode)
+                    .post(Entity.entity(parametersString, "application/fhir+xml; charset=utf-8"))) {
+
+                String taskString = new String(response.readEntity(java.io.InputStream.class).readAllBytes(), "ISO-8859-1");
+                log.fine("Response when trying to activate the task: " + taskString);
+
+                if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
+                    log.warning("Was not able to $activate. Status:" +response.getStatus()+" Response: " + taskString);
+                    invalidateBearerTokenIfUnauthorized(response.getStatus(), runtimeConfig);
                     Response.ResponseBuilder responseBuilder = Response.status(response.getStatus());
                     responseBuilder.entity(taskString);
                     Response responseError = responseBuilder.build();
                     throw new WebApplicationException(responseError);
                 }
+                log.fine("Task $activate Response: " + taskString);
             }
-            log.fine("Task $activate Response: " + taskString);
-        } catch (IOException e) {
+            return null;
+        });
+    }
+
+    /**
+     * Calls the prescription server through the retry engine. Without firstTry the call is not retried.
+     */
+    private <T> T callPrescriptionServer(boolean firstTry, Callable<T> action) {
+        return callPrescriptionServer(firstTry, RetryEngine::isRetryableHttp, action);
+    }
+
+    private <T> T callPrescriptionServer(boolean firstTry, Predicate<Throwable> retryOn, Callable<T> action) {
+        try {
+            return retryEngine.call(RetryEngine.PRESCRIPTION_SERVER, retryPolicy(RetryEngine.PRESCRIPTION_SERVER, firstTry),
+                    action, retryOn);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private RetryPolicy retryPolicy(String target, boolean firstTry) {
+        return firstTry ? retryEngine.getTarget(target).getPolicy() : RetryPolicy.NONE;
+    }
+
+    /**
+     * The prescription server rejected the bearer token, a retried attempt requests a new one.
+     */
+    private void invalidateBearerTokenIfUnauthorized(int status, RuntimeConfig runtimeConfig) {
+        if (status == Response.Status.UNAUTHORIZED.getStatusCode()) {
+            invalidateBearerToken(runtimeConfig);
+        }
+    }
+
+    /**
+     * Every connector has its own circuit breaker, a broken connector of one tenant does not
+     * reject the calls of the others.
+     */
+    String connectorRetryTarget(RuntimeConfig runtimeConfig) {
+        String connectorBaseURL = runtimeConfig != null ? runtimeConfig.getConnectorBaseURL() : null;
+        if (connectorBaseURL == null && userConfig != null) {
+            connectorBaseURL = userConfig.getConnectorBaseURL();
+        }
+        return RetryEngine.keyed(RetryEngine.CONNECTOR, connectorBaseURL);
+    }
+
+    /**
+     * Connections that could not be established and the connector faults in
+     * ere.retry.connector.transient-fault-codes. A timeout after the request was sent is not
+     * retried, the connector may have signed already. Other faults, e.g. a wrong card handle,
+     * a blocked PIN or an invalid document, fail the same way on every attempt.
+     */
+    boolean isRetryableConnectorFailure(Throwable t) {
+        if (RetryEngine.isNotSent(t)) {
+            return true;
+        }
+        BigInteger errorCode = ThrowableAdapter.extractErrorCode(t);
+        return errorCode.signum() != 0 && transientConnectorFaultCodes.contains(errorCode.intValue());
+    }
+
     /**
      * Adds the identifiers to the bundle.
      *
@@ -526,149 +664,74 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
     public List<SignResponse> signBundleWithIdentifiers(List<Bundle> bundles, boolean wait10secondsAfterJobNumber, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId, boolean firstTry)
             throws ERezeptWorkflowException {
 
-        List<SignResponse> signResponses = null;
-
         if (runtimeConfig != null && runtimeConfig.isSendPreview()) {
             readyToSignBundlesEvent.fireAsync(new ReadyToSignBundlesEvent(bundles, replyTo, replyToMessageId));
         }
 
-        try {
-            OptionalInputs optionalInputs = new OptionalInputs();
-            optionalInputs.setSignatureType("urn:ietf:rfc:5652");
-            optionalInputs.setIncludeEContent(true);
-            
-            List<SignRequest> signRequests = bundles.stream().map(bundle -> {
-                byte[] canonXmlBytes;
-                try {
-                    canonXmlBytes = getCanonicalXmlBytes(bundle);
-                } catch (InvalidCanonicalizerException | XMLParserException | CanonicalizationException
-                        | IOException e) {
-                    log.log(Level.SEVERE, "Could not get canonical XML", e);
-                    exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, replyTo, replyToMessageId));
-                    return null;
-                }
-                SignRequest signRequest = new SignRequest();
-                DocumentType document = new DocumentType();
-                document.setShortText("E-Rezept");
-                Base64Data base64Data = new Base64Data();
-                base64Data.setMimeType("text/plain; charset=utf-8");
-                base64Data.setValue(canonXmlBytes);
-                document.setBase64Data(base64Data);
-                signRequest.setOptionalInputs(optionalInputs);
-                if(bundle.getIdentifier() != null) {
-                    signRequest.setRequestID(bundle.getIdentifier().getValue());
-                } else if(bundle.getId() != null) {
-                    signRequest.setRequestID(bundle.getId());
-                } else {
-                    bundle.setId(UUID.randomUUID().toString());
-                    signRequest.setRequestID(bundle.getId());
-                }
-                signRequest.setDocument(document);
-                signRequest.setIncludeRevocationInfo(appConfig.includeRevocationInfoEnabled());
-                return signRequest;
-            }).collect(Collectors.toList());
-
-            if (wait10secondsAfterJobNumber) {
-                // Wait 10 seconds to start titus test case
-                log.info(
-                        "Waiting 10 seconds. Please enable titus test case on https://frontend.titus.ti-dienste.de/#/erezept/vps/testsuiterun");
-                try {
-                    Thread.sleep(1000 * 10);
-                } catch (InterruptedException e) {
-                    log.log(Level.SEVERE, "Could not wait", e);
-                }
+        OptionalInputs optionalInputs = new OptionalInputs();
+        optionalInputs.setSignatureType("urn:ietf:rfc:5652");
+        optionalInputs.setIncludeEContent(true);
+        
+        List<SignRequest> signRequests = bundles.stream().map(bundle -> {
+            byte[] canonXmlBytes;
+            try (Span span = Tracer.startSpan("canonicalize")) {
+                canonXmlBytes = getCanonicalXmlBytes(bundle);
+                span.setAttribute("bytes", canonXmlBytes.length);
+            } catch (InvalidCanonicalizerException | XMLParserException | CanonicalizationException
+                    | IOException e) {
+                log.log(Level.SEVERE, "Could not get canonical XML", e);
+                exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, replyTo, replyToMessageId));
+                return null;
             }
-            String signatureServiceCardHandle = getSignatureServiceCardHandle(runtimeConfig);
-            if ("PTV4+".equals(runtimeConfig != null && runtimeConfig.getConnectorVersion() != null ? runtimeConfig.getConnectorVersion() : userConfig.getConnectorVersion())) {
-                List<de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest> signRequestsV755 = signRequests.stream().map(signRequest -> {
-                    de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest signRequestV755 = new de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest();
-                    de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest.OptionalInputs optionalInputsC755 = new de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest.OptionalInputs();
-                    optionalInputsC755.setSignatureType(optionalInputs.getSignatureType());
-                    optionalInputsC755.setIncludeEContent(optionalInputs.isIncludeEContent());
-                    signRequestV755.setOptionalInputs(optionalInputsC755);
-                    signRequestV755.setRequestID(signRequest.getRequestID());
-                    de.gematik.ws.conn.signatureservice.v7_5_5.DocumentType documentV755 = new de.gematik.ws.conn.signatureservice.v7_5_5.DocumentType();
-                    documentV755.setBase64Data(signRequest.getDocument().getBase64Data());
-                    documentV755.setShortText(signRequest.getDocument().getShortText());
-                    signRequestV755.setDocument(documentV755);
-                    signRequestV755.setIncludeRevocationInfo(signRequest.isIncludeRevocationInfo());
-                    return signRequestV755;
-                }).collect(Collectors.toList());
-
-                List<de.gematik.ws.conn.signatureservice.v7_5_5.SignResponse> signResponsesV755;
-                ContextType contextType = connectorServicesProvider.getContextType(runtimeConfig);
-                if(runtimeConfig != null && runtimeConfig.getUserId() != null && !"".equals(runtimeConfig.getUserId())) {
-                    contextType.setUserId(runtimeConfig.getUserId());
-                } else {
-                    if(userIdForComfortSignature != null) {
-                        contextType.setUserId(userIdForComfortSignature);
-                    }
-                }
-                // if we don't have a user id, generate one
-                if(contextType.getUserId() == null || "".equals(contextType.getUserId())) {
-                    contextType.setUserId(UUID.randomUUID().toString());
-                }
-                if(appConfig.enableBatchSign()) {
-                    String jobNumber = connectorServicesProvider.getSignatureServicePortTypeV755(runtimeConfig).getJobNumber(connectorServicesProvider.getContextType(runtimeConfig));
-            
-                    signResponsesV755 = connectorServicesProvider.getSignatureServicePortTypeV755(runtimeConfig).signDocument(signatureServiceCardHandle,
-                            appConfig.getConnectorCrypt(),contextType, (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
-                            jobNumber, signRequestsV755);
-                } else {
-                    signResponsesV755 = signRequestsV755.stream().map(signRequestV755 -> {
-                        String jobNumber;
-                        try {
-                            jobNumber = connectorServicesProvider.getSignatureServicePortTypeV755(runtimeConfig).getJobNumber(connectorServicesProvider.getContextType(runtimeConfig));
-                            
-                            List<de.gematik.ws.conn.signatureservice.v7_5_5.SignResponse> list = connectorServicesProvider.getSignatureServicePortTypeV755(runtimeConfig).signDocument(signatureServiceCardHandle,
-                            appConfig.getConnectorCrypt(), contextType, (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
-                            jobNumber, Arrays.asList(signRequestV755));
-                            return list.get(0);
-                        } catch (FaultMessage e) {
-                            exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, replyTo, replyToMessageId));
-                            return null;
-                        }
-                    }).collect(Collectors.toList());
-                }
-
-                List<SignResponse> signResponses744 = signResponsesV755.stream().map(signResponseV755 -> {
-                    if(signResponseV755 != null) {
-                        SignResponse signResponse744 = new SignResponse();
-                        signResponse744.setRequestID(signResponseV755.getRequestID());
-                        signResponse744.setSignatureObject(signResponseV755.getSignatureObject());
-                        signResponse744.setStatus(signResponseV755.getStatus());
-                        return signResponse744;
-                    }
-                    return null;
-                }).collect(Collectors.toList());
-
-                signResponses = signResponses744;
-                // PTV4, could be PTV3 as well, to be refactored in a future task
+            SignRequest signRequest = new SignRequest();
+            DocumentType document = new DocumentType();
+            document.setShortText("E-Rezept");
+            Base64Data base64Data = new Base64Data();
+            base64Data.setMimeType("text/plain; charset=utf-8");
+            base64Data.setValue(canonXmlBytes);
+            document.setBase64Data(base64Data);
+            signRequest.setOptionalInputs(optionalInputs);
+            if(bundle.getIdentifier() != null) {
+                signRequest.setRequestID(bundle.getIdentifier().getValue());
+            } else if(bundle.getId() != null) {
+                signRequest.setRequestID(bundle.getId());
             } else {
-                if(appConfig.enableBatchSign()) {
-                    signResponses = connectorServicesProvider.getSignatureServicePortType(runtimeConfig).signDocument(signatureServiceCardHandle,
-                            connectorServicesProvider.getContextType(runtimeConfig), (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
-                            connectorServicesProvider.getSignatureServicePortType(runtimeConfig).getJobNumber(connectorServicesProvider.getContextType(runtimeConfig)), signRequests);
-                 } else {
-                    signResponses = signRequests.stream().map(signRequest-> {
-                        List<SignResponse> list;
-                        try {
-                            list = connectorServicesProvider.getSignatureServicePortType(runtimeConfig).signDocument(signatureServiceCardHandle,
-                            connectorServicesProvider.getContextType(runtimeConfig), (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
-                            connectorServicesProvider.getSignatureServicePortType(runtimeConfig).getJobNumber(connectorServicesProvider.getContextType(runtimeConfig)), Arrays.asList(signRequest));
-                        } catch (FaultMessage e) {
-                            exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, replyTo, replyToMessageId));
-                            return null;
-                        }
-                        return list.get(0);
-                    }).collect(Collectors.toList());
-                 } 
+                bundle.setId(UUID.randomUUID().toString());
+                signRequest.setRequestID(bundle.getId());
             }
-        } catch (ConnectorCardsException | FaultMessage e) {
-            if(firstTry) {
-                log.log(Level.WARNING, "Exception signing bundles with identifiers on first try.", e);
-                return signBundleWithIdentifiers(bundles, wait10secondsAfterJobNumber, runtimeConfig, replyTo, replyToMessageId, false);
-            } else {
+            signRequest.setDocument(document);
+            signRequest.setIncludeRevocationInfo(appConfig.includeRevocationInfoEnabled());
+            return signRequest;
+        }).collect(Collectors.toList());
+
+        if (wait10secondsAfterJobNumber) {
+            // Wait 10 seconds to start titus test case
+            log.info(
+                    "Waiting 10 seconds. Please enable titus test case on https://frontend.titus.ti-dienste.de/#/erezept/vps/testsuiterun");
+            try {
+                Thread.sleep(1000 * 10);
+            } catch (InterruptedException e) {
+                log.log(Level.SEVERE, "Could not wait", e);
+            }
+        }
+
+        List<SignResponse> signResponses;
+        try (Span span = Tracer.startSpan("sign").setAttribute("documents", signRequests.size())) {
+            try {
+                signResponses = retryEngine.call(connectorRetryTarget(runtimeConfig), retryPolicy(RetryEngine.CONNECTOR, firstTry),
+                        () -> signDocuments(signRequests, optionalInputs, runtimeConfig, replyTo, replyToMessageId),
+                        this::isRetryableConnectorFailure);
+            } catch (ConnectorCardsException | FaultMessage | CircuitBreakerOpenException e) {
+                span.setError(e);
+                throw new ERezeptWorkflowException("Exception signing bundles with identifiers.", e);
+            } catch (RuntimeException e) {
+                span.setError(e);
+                throw e;
+            } catch (Exception e) {
+                span.setError(e);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
                 throw new ERezeptWorkflowException("Exception signing bundles with identifiers.", e);
             }
         }
@@ -691,6 +754,100 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         return signResponses;
     }
 
+    private List<SignResponse> signDocuments(List<SignRequest> signRequests, OptionalInputs optionalInputs, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId)
+            throws ConnectorCardsException, FaultMessage {
+        List<SignResponse> signResponses;
+        String signatureServiceCardHandle = getSignatureServiceCardHandle(runtimeConfig);
+        // provider, ports and context are resolved once for all documents of the batch
+        ConnectorTenant tenant = connectorServicesProvider.getTenant(runtimeConfig);
+        if ("PTV4+".equals(runtimeConfig != null && runtimeConfig.getConnectorVersion() != null ? runtimeConfig.getConnectorVersion() : userConfig.getConnectorVersion())) {
+            List<de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest> signRequestsV755 = signRequests.stream().map(signRequest -> {
+                de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest signRequestV755 = new de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest();
+                de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest.OptionalInputs optionalInputsC755 = new de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest.OptionalInputs();
+                optionalInputsC755.setSignatureType(optionalInputs.getSignatureType());
+                optionalInputsC755.setIncludeEContent(optionalInputs.isIncludeEContent());
+                signRequestV755.setOptionalInputs(optionalInputsC755);
+                signRequestV755.setRequestID(signRequest.getRequestID());
+                de.gematik.ws.conn.signatureservice.v7_5_5.DocumentType documentV755 = new de.gematik.ws.conn.signatureservice.v7_5_5.DocumentType();
+                documentV755.setBase64Data(signRequest.getDocument().getBase64Data());
+                documentV755.setShortText(signRequest.getDocument().getShortText());
+                signRequestV755.setDocument(documentV755);
+                signRequestV755.setIncludeRevocationInfo(signRequest.isIncludeRevocationInfo());
+                return signRequestV755;
+            }).collect(Collectors.toList());
+
+            List<de.gematik.ws.conn.signatureservice.v7_5_5.SignResponse> signResponsesV755;
+            ContextType contextType = tenant.copyContextType();
+            if(runtimeConfig != null && runtimeConfig.getUserId() != null && !"".equals(runtimeConfig.getUserId())) {
+                contextType.setUserId(runtimeConfig.getUserId());
+            } else {
+                if(userIdForComfortSignature != null) {
+                    contextType.setUserId(userIdForComfortSignature);
+                }
+            }
+            // if we don't have a user id, generate one
+            if(contextType.getUserId() == null || "".equals(contextType.getUserId())) {
+                contextType.setUserId(UUID.randomUUID().toString());
+            }
+            if(appConfig.enableBatchSign()) {
+                String jobNumber = tenant.getSignatureServicePortTypeV755().getJobNumber(tenant.getContextType());
+        
+                signResponsesV755 = tenant.getSignatureServicePortTypeV755().signDocument(signatureServiceCardHandle,
+                        appConfig.getConnectorCrypt(),contextType, (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
+                        jobNumber, signRequestsV755);
+            } else {
+                signResponsesV755 = signRequestsV755.stream().map(signRequestV755 -> {
+                    String jobNumber;
+                    try {
+                        jobNumber = tenant.getSignatureServicePortTypeV755().getJobNumber(tenant.getContextType());
+                        
+                        List<de.gematik.ws.conn.signatureservice.v7_5_5.SignResponse> list = tenant.getSignatureServicePortTypeV755().signDocument(signatureServiceCardHandle,
+                        appConfig.getConnectorCrypt(), contextType, (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
+                        jobNumber, Arrays.asList(signRequestV755));
+                        return list.get(0);
+                    } catch (FaultMessage e) {
+                        exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, replyTo, replyToMessageId));
+                        return null;
+                    }
+                }).collect(Collectors.toList());
+            }
+
+            List<SignResponse> signResponses744 = signResponsesV755.stream().map(signResponseV755 -> {
+                if(signResponseV755 != null) {
+                    SignResponse signResponse744 = new SignResponse();
+                    signResponse744.setRequestID(signResponseV755.getRequestID());
+                    signResponse744.setSignatureObject(signResponseV755.getSignatureObject());
+                    signResponse744.setStatus(signResponseV755.getStatus());
+                    return signResponse744;
+                }
+                return null;
+            }).collect(Collectors.toList());
+
+            signResponses = signResponses744;
+            // PTV4, could be PTV3 as well, to be refactored in a future task
+        } else {
+            if(appConfig.enableBatchSign()) {
+                signResponses = tenant.getSignatureServicePortType().signDocument(signatureServiceCardHandle,
+                        tenant.getContextType(), (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
+                        tenant.getSignatureServicePortType().getJobNumber(tenant.getContextType()), signRequests);
+             } else {
+                signResponses = signRequests.stream().map(signRequest-> {
+                    List<SignResponse> list;
+                    try {
+                        list = tenant.getSignatureServicePortType().signDocument(signatureServiceCardHandle,
+                        tenant.getContextType(), (runtimeConfig != null && runtimeConfig.getTvMode() != null) ? runtimeConfig.getTvMode() : userConfig.getTvMode(),
+                        tenant.getSignatureServicePortType().getJobNumber(tenant.getContextType()), Arrays.asList(signRequest));
+                    } catch (FaultMessage e) {
+                        exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, replyTo, replyToMessageId));
+                        return null;
+                    }
+                    return list.get(0);
+                }).collect(Collectors.toList());
+             } 
+        }
+        return signResponses;
+    }
+
     /**
      * Gets the canonical XML for the bundle using ALGO_ID_C14N11_OMIT_COMMENTS.
      * 
@@ -742,7 +899,6 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * @return
      */
     public Task createERezeptTask(boolean firstTry, RuntimeConfig runtimeConfig, String flowtype) {
-        requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
         // https://github.com/gematik/api-erp/blob/master/docs/erp_bereitstellen.adoc#e-rezept-erstellen
         // POST to https://prescriptionserver.telematik/Task/$create
 
@@ -757,27 +913,39 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         String parameterString = fhirContext.newXmlParser().encodeResourceToString(parameters);
         log.fine("Parameter String: " + parameterString);
 
-        try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task/$create").request()
-                .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
-                .post(Entity.entity(parameterString, "application/fhir+xml; charset=utf-8"))) {
-
-            String taskString = response.readEntity(String.class);
-
-            // if this was the first try, try again, this will request a new bearer token
-            if(firstTry && response.getStatus() == 401) {
-                log.warning("401 when trying to create e prescription. Retrying.");
-                return createERezeptTask(false, runtimeConfig, flowtype);
+        try (Span span = Tracer.startSpan("task.create").setAttribute("flowtype", flowtype)) {
+            try {
+                return postERezeptTask(parameterString, firstTry, runtimeConfig);
+            } catch (RuntimeException e) {
+                span.setError(e);
+                throw e;
             }
+        }
+    }
 
-            if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
-                Response.ResponseBuilder responseBuilder = Response.status(response.getStatus());
-                responseBuilder.entity(taskString);
-                throw new WebApplicationException(responseBuilder.build());
+    private Task postERezeptTask(String parameterString, boolean firstTry, RuntimeConfig runtimeConfig) {
+        // $create is not idempotent: a timeout or 5xx may come after the task was created, so only
+        // a 401 with a new bearer token and a failed connect are retried
+        return callPrescriptionServer(firstTry, RetryEngine::isRetryableBeforeSent, () -> {
+            requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+            try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task/$create").request()
+                    .header("User-Agent", appConfig.getUserAgent())
+                    .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
+                    .post(Entity.entity(parameterString, "application/fhir+xml; charset=utf-8"))) {
+
+                String taskString = response.readEntity(String.class);
+
+                if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
+                    log.warning("Status " + response.getStatus() + " when trying to create e prescription.");
+                    invalidateBearerTokenIfUnauthorized(response.getStatus(), runtimeConfig);
+                    Response.ResponseBuilder responseBuilder = Response.status(response.getStatus());
+                    responseBuilder.entity(taskString);
+                    throw new WebApplicationException(responseBuilder.build());
+                }
+                log.info("Task Response: " + taskString);
+                return fhirContext.newXmlParser().parseResource(Task.class, new StringReader(taskString));
             }
-            log.info("Task Response: " + taskString);
-            return fhirContext.newXmlParser().parseResource(Task.class, new StringReader(taskString));
-        }
+        });
     }
 
     public void abortERezeptTask(String taskId, String accessCode) {
@@ -791,18 +959,101 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * @return
      */
     public void abortERezeptTask(RuntimeConfig runtimeConfig, String taskId, String accessCode) {
-        requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+        callPrescriptionServer(true, RetryEngine::isRetryableBeforeSent, () -> {
+            requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+            postAbort(runtimeConfig, bearerToken.get(runtimeConfig), taskId, accessCode);
+            return null;
+        });
+    }
+
+    /**
+     * Reads the status of a task, e.g. to find out whether it was activated before the
+     * application was interrupted.
+     */
+    public Task.TaskStatus getERezeptTaskStatus(RuntimeConfig runtimeConfig, String taskId, String accessCode) {
+        return callPrescriptionServer(true, () -> {
+            requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+            try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task").path("/" + taskId)
+                    .request("application/fhir+xml").header("User-Agent", appConfig.getUserAgent())
+                    .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode).get()) {
+                String taskString = response.readEntity(String.class);
+                if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
+                    invalidateBearerTokenIfUnauthorized(response.getStatus(), runtimeConfig);
+                    throw new WebApplicationException(Response.status(response.getStatus()).entity(taskString).build());
+                }
+                IBaseResource resource = fhirContext.newXmlParser().parseResource(new StringReader(taskString));
+                if (resource instanceof Task) {
+                    return ((Task) resource).getStatus();
+                }
+                // the task with its referenced resources
+                for (Bundle.BundleEntryComponent entry : ((Bundle) resource).getEntry()) {
+                    if (entry.getResource() instanceof Task) {
+                        return ((Task) entry.getResource()).getStatus();
+                    }
+                }
+                throw new ERezeptWorkflowException("No task " + taskId + " in the response of the prescription server");
+            }
+        });
+    }
+
+    /**
+     * Aborts the tasks concurrently on the workflow pool, at most ere.workflow.abort-concurrency
+     * at a time. The bearer token is requested once for the whole batch, an attempt that is
+     * retried after a 401 requests a new one.
+     *
+     * @param statusListener is called for every task as soon as it was aborted or failed, may be null
+     * @return the status of every task in the order of the entries
+     */
+    public List<AbortTaskStatus> abortERezeptTasks(RuntimeConfig runtimeConfig, List<AbortTaskEntry> abortTaskEntries,
+            Consumer<AbortTaskStatus> statusListener, Session replyTo, String replyToMessageId) {
+        requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
+        Executor executor = observerExecutors != null ? observerExecutors.getPool(Workload.WORKFLOW) : Runnable::run;
+        try {
+            return FanOut.map(abortTaskEntries, executor, abortConcurrency, abortTaskEntry -> {
+                AbortTaskStatus abortTaskStatus = new AbortTaskStatus(abortTaskEntry);
+                try {
+                    callPrescriptionServer(true, RetryEngine::isRetryableBeforeSent, () -> {
+                        // read in every attempt, the token may have been dropped after a 401
+                        String batchBearerToken = getBearerToken(runtimeConfig);
+                        if (batchBearerToken == null) {
+                            requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
+                            batchBearerToken = getBearerToken(runtimeConfig);
+                        }
+                        postAbort(runtimeConfig, batchBearerToken, abortTaskEntry.getId(), abortTaskEntry.getAccessCode());
+                        return null;
+                    });
+                    abortTaskStatus.setStatus(AbortTaskStatus.Status.OK);
+                } catch (Throwable t) {
+                    abortTaskStatus.setThrowable(t);
+                    abortTaskStatus.setStatus(AbortTaskStatus.Status.ERROR);
+                }
+                if (statusListener != null) {
+                    statusListener.accept(abortTaskStatus);
+                }
+                return abortTaskStatus;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            // every task catches its own failures
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void postAbort(RuntimeConfig runtimeConfig, String bearerToken, String taskId, String accessCode) {
         try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task").path("/" + taskId).path("/$abort")
-                .request().header("User-Agent", appConfig.getUserAgent()).header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode)
+                .request().header("User-Agent", appConfig.getUserAgent()).header("Authorization", "Bearer " + bearerToken).header("X-AccessCode", accessCode)
                 .post(Entity.entity("", "application/fhir+xml; charset=utf-8"))) {
             String taskString = response.readEntity(String.class);
             // if it is not successful
             if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
+                invalidateBearerTokenIfUnauthorized(response.getStatus(), runtimeConfig);
                 Response.ResponseBuilder responseBuilder = Response.status(response.getStatus());
                 responseBuilder.entity(taskString);
                 throw new WebApplicationException(responseBuilder.build());
             }
-            
+
             log.info("Task $abort Response: " + taskString);
         }
     }
@@ -812,22 +1063,25 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * @param abortTasksEvent event that contains the task to abort
      */
     public void onAbortTasksEvent(@ObservesAsync AbortTasksEvent abortTasksEvent) {
-        requestNewAccessTokenIfNecessary(abortTasksEvent.getRuntimeConfig(), abortTasksEvent.getReplyTo(), abortTasksEvent.getId());
-        List<AbortTaskStatus> abortTaskStatusList = new ArrayList<>();
-        for (AbortTaskEntry abortTaskEntry : abortTasksEvent.getTasks()) {
-            AbortTaskStatus abortTaskStatus = new AbortTaskStatus(abortTaskEntry);
-
-            try {
-                abortERezeptTask(abortTasksEvent.getRuntimeConfig(), abortTaskEntry.getId(), abortTaskEntry.getAccessCode());
-                abortTaskStatus.setStatus(AbortTaskStatus.Status.OK);
-            } catch (Throwable t) {
-                abortTaskStatus.setThrowable(t);
-                abortTaskStatus.setStatus(AbortTaskStatus.Status.ERROR);
+        // every status event is fired when the previous one was delivered, so the final one comes last
+        Object sequenceLock = new Object();
+        CompletionStage<?>[] sent = { CompletableFuture.completedFuture(null) };
+        Consumer<AbortTasksStatusEvent> fireInSequence = event -> {
+            synchronized (sequenceLock) {
+                sent[0] = sent[0].handle((result, t) -> null).thenCompose(v -> abortTasksStatusEvent.fireAsync(event));
             }
-
-            abortTaskStatusList.add(abortTaskStatus);
+        };
+        Consumer<AbortTaskStatus> statusListener = null;
+        if (abortTasksEvent.isStreamStatus()) {
+            statusListener = abortTaskStatus -> {
+                AbortTasksStatusEvent update = new AbortTasksStatusEvent(List.of(abortTaskStatus), abortTasksEvent.getReplyTo(), abortTasksEvent.getId());
+                update.setPartial(true);
+                fireInSequence.accept(update);
+            };
         }
-        abortTasksStatusEvent.fireAsync(new AbortTasksStatusEvent(abortTaskStatusList, abortTasksEvent.getReplyTo(), abortTasksEvent.getId()));
+        List<AbortTaskStatus> abortTaskStatusList = abortERezeptTasks(abortTasksEvent.getRuntimeConfig(), abortTasksEvent.getTasks(),
+                statusListener, abortTasksEvent.getReplyTo(), abortTasksEvent.getId());
+        fireInSequence.accept(new AbortTasksStatusEvent(abortTaskStatusList, abortTasksEvent.getReplyTo(), abortTasksEvent.getId()));
     }
 
     /**
@@ -1024,8 +1278,16 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         EventServicePortType eventServicePortType = connectorServicesProvider.getEventServicePortType(runtimeConfig); // todo: if runtimeconfig without userid/hba/smcb: connectorBaseURL ignored ! request to http://ti-konnektor/eventservice
         if(eventServicePortType == null) {
             throw new RuntimeException("EventServicePortType is null. This normally means that the connector configuration is not correct.");
-        } else {
-            return eventServicePortType.getCards(parameter);
+        }
+        try {
+            return retryEngine.call(connectorRetryTarget(runtimeConfig), () -> eventServicePortType.getCards(parameter), RetryEngine::isTransient);
+        } catch (de.gematik.ws.conn.eventservice.wsdl.v7.FaultMessage | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
     }
 
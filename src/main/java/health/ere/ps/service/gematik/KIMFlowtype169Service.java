@@ -2,60 +2,64 @@ package health.ere.ps.service.gematik;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.naming.Context;
-import javax.naming.NamingEnumeration;
-import javax.naming.SizeLimitExceededException;
-import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.SearchControls;
-import javax.naming.directory.SearchResult;
-import javax.naming.ldap.InitialLdapContext;
-import javax.naming.ldap.LdapContext;
-
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Bundle;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.event.BundlesWithAccessCodeEvent;
 import health.ere.ps.event.VZDSearchEvent;
 import health.ere.ps.event.VZDSearchResultEvent;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
-import health.ere.ps.service.common.security.SSLSocketFactory;
-import health.ere.ps.service.common.security.SecretsManagerService;
+import health.ere.ps.service.outbox.OutboxHandler;
+import health.ere.ps.service.outbox.OutboxService;
+import health.ere.ps.trace.Span;
+import health.ere.ps.trace.TraceContext;
+import health.ere.ps.trace.Tracer;
 import health.ere.ps.websocket.ExceptionWithReplyToException;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
 import jakarta.enterprise.event.ObservesAsync;
 import jakarta.inject.Inject;
-import jakarta.mail.Authenticator;
 import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
 import jakarta.mail.Multipart;
-import jakarta.mail.PasswordAuthentication;
 import jakarta.mail.Session;
-import jakarta.mail.Transport;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.internet.MimeMultipart;
 
 @ApplicationScoped
-public class KIMFlowtype169Service {
+public class KIMFlowtype169Service implements OutboxHandler {
+
+    static final String OUTBOX_KIND = "kim";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private static Logger log = Logger.getLogger(KIMFlowtype169Service.class.getName());
 
     @Inject
-    SecretsManagerService secretsManagerService;
+    VZDSearchService vzdSearchService;
+
+    @Inject
+    KIMSmtpTransportPool smtpTransportPool;
+
+    @Inject
+    OutboxService outboxService;
 
     @Inject
     Event<VZDSearchResultEvent> vZDSearchResultEvent;
@@ -63,6 +67,12 @@ public class KIMFlowtype169Service {
     @Inject
     Event<Exception> exceptionEvent;
 
+    @ConfigProperty(name = "ere.kim.smtp.password")
+    Optional<String> configuredSmtpPassword = Optional.empty();
+
+    // the SMTP passwords sent by the clients, only kept in memory and never written to the outbox
+    private final Map<String, String> smtpPasswords = new ConcurrentHashMap<>();
+
     static Pattern HOST_WITH_PORT = Pattern.compile("^(.*):([0-9]+)$");
     static Pattern PROTOCOL_HOST_WITH_PORT = Pattern.compile("^(smtps?)://(.[^:]*)(:([0-9]+))?$");
 
@@ -72,48 +82,81 @@ public class KIMFlowtype169Service {
     }
 
     public void sendERezeptToKIMAddress(String fromKimAddress, String toKimAddress, String noteToPharmacy, String smtpHostServer, String smtpUser, String smtpPassword, String eRezeptToken) {
+        sendERezeptsToKIMAddress(fromKimAddress, toKimAddress, noteToPharmacy, smtpHostServer, smtpUser, smtpPassword, List.of(eRezeptToken));
+    }
+
+    /**
+     * Sends one message per token over the pooled connections of the sender.
+     */
+    public void sendERezeptsToKIMAddress(String fromKimAddress, String toKimAddress, String noteToPharmacy, String smtpHostServer, String smtpUser, String smtpPassword, List<String> eRezeptTokens) {
         try {
-            Properties props = createProperties(smtpHostServer);
+            deliverERezepts(fromKimAddress, toKimAddress, noteToPharmacy, smtpHostServer, smtpUser, smtpPassword, eRezeptTokens);
+	    } catch (Exception e) {
+	      log.log(Level.WARNING, "Error during sending E-Prescription", e);
+	    }
+    }
 
-            Session session = Session.getInstance(props, new Authenticator() {
-                @Override
-                protected PasswordAuthentication getPasswordAuthentication() {
-                    return new PasswordAuthentication(smtpUser, smtpPassword);
-                }
-            });
-            MimeMessage msg = new MimeMessage(session);
-            //set message headers
-            msg.addHeader("X-KIM-Dienstkennung", "eRezept;Zuweisung;V1.0");
-            msg.addHeader("X-KIM-Encounter-Id", UUID.randomUUID().toString());
+    int deliverERezepts(String fromKimAddress, String toKimAddress, String noteToPharmacy, String smtpHostServer, String smtpUser, String smtpPassword, List<String> eRezeptTokens) throws Exception {
+        KIMSmtpTransportPool.Sender sender = smtpTransportPool.getSender(smtpHostServer, smtpUser, smtpPassword);
+        List<MimeMessage> messages = new ArrayList<>();
+        for(String eRezeptToken : eRezeptTokens) {
+            messages.add(createMessage(sender.getSession(), fromKimAddress, toKimAddress, noteToPharmacy, eRezeptToken));
+        }
+        log.info(messages.size()+" messages are ready");
+        int sent = sender.sendAll(messages);
 
-            msg.setFrom(new InternetAddress(fromKimAddress));
+        log.info(sent+" of "+messages.size()+" E-Mails sent successfully to: "+toKimAddress);
+        return sent;
+    }
 
-            msg.setReplyTo(InternetAddress.parse(fromKimAddress, false));
+    @Override
+    public String getKind() {
+        return OUTBOX_KIND;
+    }
 
-            msg.setSubject("E-Rezept direkte Zuweisung", "UTF-8");
+    @Override
+    public void deliver(String payload) throws Exception {
+        KIMDelivery delivery = OBJECT_MAPPER.readValue(payload, KIMDelivery.class);
+        // every attempt of the outbox is a span of the workflow that enqueued the delivery
+        try (Span span = Tracer.startSpan("kim.send", delivery.traceContext)) {
+            try {
+                deliverERezepts(delivery.fromKimAddress, delivery.toKimAddress, delivery.noteToPharmacy, delivery.smtpHostServer, delivery.smtpUser,
+                    getSmtpPassword(delivery.smtpHostServer, delivery.smtpUser), List.of(delivery.eRezeptToken));
+            } catch (Exception e) {
+                span.setError(e);
+                throw e;
+            }
+        }
+    }
 
+    static MimeMessage createMessage(Session session, String fromKimAddress, String toKimAddress, String noteToPharmacy, String eRezeptToken) throws MessagingException {
+        MimeMessage msg = new MimeMessage(session);
+        //set message headers
+        msg.addHeader("X-KIM-Dienstkennung", "eRezept;Zuweisung;V1.0");
+        msg.addHeader("X-KIM-Encounter-Id", UUID.randomUUID().toString());
 
-            MimeBodyPart textPart = new MimeBodyPart();
-            textPart.setText(noteToPharmacy, "utf-8");
+        msg.setFrom(new InternetAddress(fromKimAddress));
 
-            MimeBodyPart erezeptTokenPart = new MimeBodyPart();
-            erezeptTokenPart.setText(eRezeptToken, "utf8");
-            
-            Multipart multiPart = new MimeMultipart();
-            multiPart.addBodyPart(textPart); // <-- first
-            multiPart.addBodyPart(erezeptTokenPart); // <-- second
-            msg.setContent(multiPart);
+        msg.setReplyTo(InternetAddress.parse(fromKimAddress, false));
 
-            msg.setSentDate(new Date());
+        msg.setSubject("E-Rezept direkte Zuweisung", "UTF-8");
 
-            msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toKimAddress, false));
-            log.info("Message is ready");
-            Transport.send(msg);  
 
-            log.info("E-Mail sent successfully to: "+toKimAddress);
-	    } catch (Exception e) {
-	      log.log(Level.WARNING, "Error during sending E-Prescription", e);
-	    }
+        MimeBodyPart textPart = new MimeBodyPart();
+        textPart.setText(noteToPharmacy, "utf-8");
+
+        MimeBodyPart erezeptTokenPart = new MimeBodyPart();
+        erezeptTokenPart.setText(eRezeptToken, "utf8");
+
+        Multipart multiPart = new MimeMultipart();
+        multiPart.addBodyPart(textPart); // <-- first
+        multiPart.addBodyPart(erezeptTokenPart); // <-- second
+        msg.setContent(multiPart);
+
+        msg.setSentDate(new Date());
+
+        msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toKimAddress, false));
+        return msg;
     }
 
     static Properties createProperties(String smtpHostServer) {
@@ -146,76 +189,55 @@ public class KIMFlowtype169Service {
     }
 
     public List<Map<String,Object>> search(RuntimeConfig runtimeConfig, String searchDisplayName) {
-    	List<Map<String,Object>> list = new ArrayList<>();
-    	if(searchDisplayName == null || searchDisplayName.length() < 3) {
-    		return list;
-    	}
-    	try {
-            Hashtable<String, String> env = new Hashtable<>();
-            env.put(Context.SECURITY_PROTOCOL, "ssl");
-            env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-            env.put(Context.PROVIDER_URL, "ldaps://"+runtimeConfig.getConnectorAddress()+":636/");
-            env.put(Context.SECURITY_AUTHENTICATION, "none");
-
-            if(secretsManagerService != null && runtimeConfig != null && runtimeConfig.getConfigurations() != null) {
-                SSLSocketFactory.delegate = secretsManagerService.createSSLContext(runtimeConfig.getConfigurations()).getSocketFactory();
-            }
+        return vzdSearchService.search(runtimeConfig, searchDisplayName);
+    }
 
-            env.put("java.naming.ldap.factory.socket", "health.ere.ps.service.common.security.SSLSocketFactory");
-
-            LdapContext ctx = new InitialLdapContext(env, null);
-            ctx.setRequestControls(null);
-            NamingEnumeration<?> namingEnum = ctx.search("dc=data,dc=vzd", "(&(professionOID=1.2.276.0.76.4.54)(|(displayName=*"+searchDisplayName+"*)(rfc822mailbox=*"+searchDisplayName+"*)))", getSimpleSearchControls());
-            while (namingEnum.hasMore ()) {
-                SearchResult result = (SearchResult) namingEnum.next();
-                Attributes attrs = result.getAttributes();
-                Map<String, Object> map = new HashMap<>();
-                NamingEnumeration<? extends Attribute> enumeration = attrs.getAll();
-                while(enumeration.hasMore()) {
-                	Attribute attribute = enumeration.next();
-                	map.put(attribute.getID(), attribute.get());
-                }
-                list.add(map);
-            } 
-            namingEnum.close();
-            ctx.close();
-        } catch (Exception e) {
-            if(e instanceof SizeLimitExceededException) {
-                log.info("Received more than expected LDAP entries. "+e.getMessage());
-            } else {
-                log.log(Level.WARNING, "Could not search LDAP", e);
-                throw new RuntimeException(e);
-            }
-        } finally {
-            if(secretsManagerService != null) {
-                SSLSocketFactory.delegate = null;
-            }
+    public void onBundlesWithAccessCodeEvent(@ObservesAsync BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
+        if(!"169".equals(bundlesWithAccessCodeEvent.getFlowtype())) {
+            return;
+        }
+        try (Span span = Tracer.startSpan("kim", bundlesWithAccessCodeEvent.getTraceContext())) {
+            enqueueKIMDelivery(bundlesWithAccessCodeEvent, span);
         }
-    	return list;
-    }
-    
-    private SearchControls getSimpleSearchControls() {
-        SearchControls searchControls = new SearchControls();
-        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-        searchControls.setTimeLimit(30000);
-        return searchControls;
     }
 
-    public void onBundlesWithAccessCodeEvent(@ObservesAsync BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
+    private void enqueueKIMDelivery(BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent, Span span) {
         try {
-            if("169".equals(bundlesWithAccessCodeEvent.getFlowtype())) {
-                Map<String,String> kimConfigMap = bundlesWithAccessCodeEvent.getKimConfigMap();
+            Map<String,String> kimConfigMap = bundlesWithAccessCodeEvent.getKimConfigMap();
 		if("true".equals(kimConfigMap.get("preventKIMMail"))) {
 		    log.info("Please do not send a KIM E-Mail");
 		    return;
 		}
-                for(List<BundleWithAccessCodeOrThrowable> list : bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable()) {
-                    for(BundleWithAccessCodeOrThrowable bundle : list) {
-                        sendERezeptToKIMAddress(kimConfigMap.get("fromKimAddress"), bundlesWithAccessCodeEvent.getToKimAddress(), bundlesWithAccessCodeEvent.getNoteToPharmacy(), kimConfigMap.get("smtpHostServer"), getSmtpUser(kimConfigMap), kimConfigMap.get("smtpPassword"), getERezeptToken(bundle.getBundle(), bundle.getAccessCode()));
-                    }
+            String smtpHostServer = kimConfigMap.get("smtpHostServer");
+            String smtpUser = getSmtpUser(kimConfigMap);
+            if(kimConfigMap.get("smtpPassword") != null) {
+                smtpPasswords.put(smtpHostServer + "|" + smtpUser, kimConfigMap.get("smtpPassword"));
+            }
+            // one outbox entry per message, a partially sent batch is not sent again
+            List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+            for(List<BundleWithAccessCodeOrThrowable> list : bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable()) {
+                for(BundleWithAccessCodeOrThrowable bundle : list) {
+                    KIMDelivery delivery = new KIMDelivery();
+                    delivery.fromKimAddress = kimConfigMap.get("fromKimAddress");
+                    delivery.toKimAddress = bundlesWithAccessCodeEvent.getToKimAddress();
+                    delivery.noteToPharmacy = bundlesWithAccessCodeEvent.getNoteToPharmacy();
+                    delivery.smtpHostServer = smtpHostServer;
+                    delivery.smtpUser = smtpUser;
+                    delivery.eRezeptToken = getERezeptToken(bundle.getBundle(), bundle.getAccessCode());
+                    delivery.traceContext = span.getContext();
+                    deliveries.add(outboxService.enqueue(OUTBOX_KIND, OBJECT_MAPPER.writeValueAsString(delivery)));
                 }
             }
+            span.setAttribute("messages", deliveries.size());
+            CompletableFuture.allOf(deliveries.toArray(new CompletableFuture[0]))
+                .whenComplete((result, t) -> {
+                    if(t != null) {
+                        Exception e = t instanceof Exception ? (Exception) t : new RuntimeException(t);
+                        exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getId()));
+                    }
+                });
         } catch (Throwable t) {
+            span.setError(t);
             log.log(Level.WARNING, "Could not send kim E-Mail", t);
             Exception e = (t instanceof Throwable ? new RuntimeException(t) : (Exception) t);
             exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getId()));
@@ -237,7 +259,32 @@ public class KIMFlowtype169Service {
         return "Task/"+bundle.getIdentifier().getValue()+"/$accept?ac="+accessCode;
     }
 
+    /**
+     * The password the client sent last for the sender, or ere.kim.smtp.password after a restart.
+     */
+    String getSmtpPassword(String smtpHostServer, String smtpUser) {
+        String smtpPassword = smtpPasswords.get(smtpHostServer + "|" + smtpUser);
+        if(smtpPassword != null) {
+            return smtpPassword;
+        }
+        return configuredSmtpPassword.orElseThrow(() -> new IllegalStateException("No SMTP password for " + smtpUser
+            + ", it is not stored in the outbox. Set ere.kim.smtp.password or send the batch again."));
+    }
+
     private String getSmtpUser(Map<String, String> kimConfigMap) {
         return kimConfigMap.get("fromKimAddress")+"#"+kimConfigMap.get("smtpFdServer")+"#"+kimConfigMap.get("mandant-id")+"#"+kimConfigMap.get("client-system-id")+"#"+kimConfigMap.get("workplace-id");
     }
+
+    /**
+     * Outbox payload of one KIM message. The SMTP password is not part of it.
+     */
+    public static class KIMDelivery {
+        public String fromKimAddress;
+        public String toKimAddress;
+        public String noteToPharmacy;
+        public String smtpHostServer;
+        public String smtpUser;
+        public String eRezeptToken;
+        public TraceContext traceContext;
+    }
 }
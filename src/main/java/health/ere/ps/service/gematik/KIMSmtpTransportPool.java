@@ -0,0 +1,254 @@
+package health.ere.ps.service.gematik;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.retry.RetryEngine;
+import health.ere.ps.service.executor.FanOut;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Keeps authenticated SMTP connections to the KIM client module per sender, so a batch
+ * of prescriptions is sent over already open connections instead of one TLS handshake
+ * and login per message.
+ */
+@ApplicationScoped
+public class KIMSmtpTransportPool {
+
+    private static final Logger log = Logger.getLogger(KIMSmtpTransportPool.class.getName());
+
+    @Inject
+    RetryEngine retryEngine;
+
+    @ConfigProperty(name = "ere.kim.smtp.max-connections-per-sender", defaultValue = "2")
+    int maxConnectionsPerSender = 2;
+
+    @ConfigProperty(name = "ere.kim.smtp.idle-timeout-ms", defaultValue = "30000")
+    long idleTimeoutMs = 30000;
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    private final Map<String, Sender> senders = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    void shutdown() {
+        senders.values().forEach(Sender::closeAll);
+    }
+
+    public Sender getSender(String smtpHostServer, String smtpUser, String smtpPassword) {
+        String key = smtpHostServer + "|" + smtpUser + "|" + Objects.hashCode(smtpPassword);
+        return senders.computeIfAbsent(key, k -> new Sender(smtpHostServer, smtpUser, smtpPassword));
+    }
+
+    public class Sender {
+
+        private final Session session;
+        private final String smtpUser;
+        private final String smtpPassword;
+        private final Semaphore connections = new Semaphore(maxConnectionsPerSender);
+        private final Deque<PooledTransport> idle = new ConcurrentLinkedDeque<>();
+
+        Sender(String smtpHostServer, String smtpUser, String smtpPassword) {
+            this.session = Session.getInstance(KIMFlowtype169Service.createProperties(smtpHostServer));
+            this.smtpUser = smtpUser;
+            this.smtpPassword = smtpPassword;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * Sends the messages over up to max-connections-per-sender connections, the calling
+         * thread sends one chunk itself. Connection failures are retried with the remaining
+         * messages.
+         *
+         * @return the number of messages accepted by the server
+         * @throws PartialSendException if the server rejected a message or the retries are
+         * exhausted, with the messages that were sent and the ones that were not
+         */
+        public int sendAll(List<MimeMessage> messages) throws Exception {
+            for (MimeMessage message : messages) {
+                // Transport.send does this, sendMessage does not
+                message.saveChanges();
+            }
+            int connectionCount = Math.max(1, Math.min(maxConnectionsPerSender, messages.size()));
+            List<Chunk> chunks = new ArrayList<>();
+            for (int i = 0; i < connectionCount; i++) {
+                chunks.add(new Chunk());
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                chunks.get(i % connectionCount).pending.add(messages.get(i));
+            }
+            FanOut.map(chunks, executor(), connectionCount, this::sendWithRetry);
+
+            List<MimeMessage> sent = new ArrayList<>();
+            List<MimeMessage> unsent = new ArrayList<>();
+            Exception failure = null;
+            for (Chunk chunk : chunks) {
+                sent.addAll(chunk.sent);
+                unsent.addAll(chunk.rejected);
+                unsent.addAll(chunk.pending);
+                for (Exception e : chunk.failures) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (!unsent.isEmpty()) {
+                throw new PartialSendException(sent, unsent, failure);
+            }
+            return sent.size();
+        }
+
+        private Chunk sendWithRetry(Chunk chunk) throws InterruptedException {
+            try {
+                retryEngine.call(RetryEngine.KIM, () -> {
+                    sendPending(chunk);
+                    return null;
+                }, RetryEngine::isTransient);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // the messages stay pending and are reported as unsent
+                chunk.failures.add(e);
+            }
+            return chunk;
+        }
+
+        private void sendPending(Chunk chunk) throws MessagingException, InterruptedException {
+            connections.acquire();
+            Transport transport = null;
+            try {
+                transport = borrow();
+                while (!chunk.pending.isEmpty()) {
+                    MimeMessage message = chunk.pending.peek();
+                    try {
+                        transport.sendMessage(message, message.getAllRecipients());
+                        chunk.sent.add(message);
+                    } catch (MessagingException e) {
+                        if (RetryEngine.isTransient(e) || !transport.isConnected()) {
+                            // the message stays pending and is sent over a new connection
+                            throw e;
+                        }
+                        log.log(Level.WARNING, "KIM message was rejected", e);
+                        chunk.rejected.add(message);
+                        chunk.failures.add(e);
+                    }
+                    chunk.pending.poll();
+                }
+                release(transport);
+                transport = null;
+            } finally {
+                if (transport != null) {
+                    close(transport);
+                }
+                connections.release();
+            }
+        }
+
+        private Transport borrow() throws MessagingException {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - pooled.idleSince < idleTimeoutMs && pooled.transport.isConnected()) {
+                    return pooled.transport;
+                }
+                close(pooled.transport);
+            }
+            Transport transport = session.getTransport("smtp");
+            transport.connect(smtpUser, smtpPassword);
+            return transport;
+        }
+
+        private void release(Transport transport) {
+            idle.offerFirst(new PooledTransport(transport));
+        }
+
+        void closeAll() {
+            PooledTransport pooled;
+            while ((pooled = idle.poll()) != null) {
+                close(pooled.transport);
+            }
+        }
+
+        int getIdleCount() {
+            return idle.size();
+        }
+    }
+
+    private static void close(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.log(Level.FINE, "Could not close SMTP connection", e);
+        }
+    }
+
+    private Executor executor() {
+        return observerExecutors != null ? observerExecutors.getPool(Workload.WORKFLOW) : Runnable::run;
+    }
+
+    /**
+     * Some messages of a batch were not accepted by the server.
+     */
+    public static class PartialSendException extends MessagingException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<MimeMessage> sent;
+        private final transient List<MimeMessage> unsent;
+
+        PartialSendException(List<MimeMessage> sent, List<MimeMessage> unsent, Exception cause) {
+            super(unsent.size() + " of " + (sent.size() + unsent.size()) + " KIM messages were not sent", cause);
+            this.sent = sent;
+            this.unsent = unsent;
+        }
+
+        public List<MimeMessage> getSent() {
+            return sent;
+        }
+
+        public List<MimeMessage> getUnsent() {
+            return unsent;
+        }
+    }
+
+    private static class Chunk {
+        final Deque<MimeMessage> pending = new ArrayDeque<>();
+        final List<MimeMessage> sent = new ArrayList<>();
+        final List<MimeMessage> rejected = new ArrayList<>();
+        final List<Exception> failures = new ArrayList<>();
+    }
+
+    private static class PooledTransport {
+        final Transport transport;
+        final long idleSince = System.currentTimeMillis();
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
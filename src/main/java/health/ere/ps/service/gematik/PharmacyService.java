@@ -1,6 +1,15 @@
 package health.ere.ps.service.gematik;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -10,11 +19,15 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.xml.ws.Holder;
 
-import org.bouncycastle.cms.CMSProcessableByteArray;
-import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedDataParser;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Task;
@@ -31,6 +44,9 @@ import health.ere.ps.config.UserConfig;
 import health.ere.ps.exception.common.security.SecretsManagerException;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+import health.ere.ps.service.executor.FanOut;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
 import health.ere.ps.service.fhir.FHIRService;
 
 @ApplicationScoped
@@ -47,9 +63,14 @@ public class PharmacyService extends BearerTokenManageService {
     MultiConnectorServicesProvider connectorServicesProvider;
     @Inject
     ConnectorCardsService connectorCardsService;
+    @Inject
+    ObserverExecutors observerExecutors;
 
     private static final FhirContext fhirContext = FHIRService.getFhirContext();
 
+    @ConfigProperty(name = "ere.pharmacy.accept-concurrency", defaultValue = "4")
+    int acceptConcurrency = 4;
+
     Client client;
 
     @PostConstruct
@@ -80,11 +101,20 @@ public class PharmacyService extends BearerTokenManageService {
             smcbHandle = PrefillPrescriptionService.getFirstCardOfType(eventService, CardTypeType.SMC_B, context);
             runtimeConfig.setSMCBHandle(smcbHandle);
         }
-        requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+        // the token is requested from the IDP while the eGK is read
+        RuntimeConfig tokenRuntimeConfig = runtimeConfig;
+        CompletableFuture<Void> token;
+        try {
+            token = CompletableFuture.runAsync(() -> requestNewAccessTokenIfNecessary(tokenRuntimeConfig, null, null), executor());
+        } catch (RejectedExecutionException e) {
+            requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+            token = CompletableFuture.completedFuture(null);
+        }
         log.info(egkHandle+" "+smcbHandle);
         connectorServicesProvider.getVSDServicePortType(runtimeConfig).readVSD(egkHandle, smcbHandle, true, true,
                 context, persoenlicheVersichertendaten, allgemeineVersicherungsdaten, geschuetzteVersichertendaten,
                 vSD_Status, pruefungsnachweis);
+        token.join();
 
         String pnw = Base64.getEncoder().encodeToString(pruefungsnachweis.value);
 
@@ -94,63 +124,124 @@ public class PharmacyService extends BearerTokenManageService {
                 .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
                 .get()) {
 
-            String bundleString = response.readEntity(String.class);
-            
-            if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
-                throw new WebApplicationException("Error on "+appConfig.getPrescriptionServiceURL()+" "+bundleString, response.getStatus());
-            }
-            return fhirContext.newXmlParser().parseResource(Bundle.class, bundleString);
+            return readBundle(response);
         }
     
     }
 
     public Bundle accept(String token, RuntimeConfig runtimeConfig) {
         requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
-        String secret = "";
-        String prescriptionId = "";
-        try (Response response = client.target(appConfig.getPrescriptionServiceURL()+token).request()
-                .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
-                .post(Entity.entity("", "application/fhir+xml; charset=UTF-8"))) {
+        return accept(token, bearerToken.get(runtimeConfig));
+    }
 
-            String bundleString = response.readEntity(String.class);
-            
-            if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
-                throw new WebApplicationException("Error on "+appConfig.getPrescriptionServiceURL()+" "+bundleString, response.getStatus());
+    /**
+     * Accepts the tokens concurrently on the workflow pool with one bearer token, at most
+     * ere.pharmacy.accept-concurrency at the same time.
+     *
+     * @return the prescription bundles in the order of the tokens, null for a token that could not be processed
+     */
+    public List<Bundle> acceptAll(List<String> tokens, RuntimeConfig runtimeConfig) {
+        requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+        String batchBearerToken = getBearerToken(runtimeConfig);
+        try {
+            return FanOut.map(tokens, executor(), acceptConcurrency, token -> accept(token, batchBearerToken));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            // every token catches its own failures
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Bundle accept(String token, String acceptBearerToken) {
+        String prescriptionId = "";
+        try {
+            Bundle bundle;
+            try (Response response = client.target(appConfig.getPrescriptionServiceURL()+token).request()
+                    .header("User-Agent", appConfig.getUserAgent())
+                    .header("Authorization", "Bearer " + acceptBearerToken)
+                    .post(Entity.entity("", "application/fhir+xml; charset=UTF-8"))) {
+                bundle = readBundle(response);
             }
-            Bundle bundle = fhirContext.newXmlParser().parseResource(Bundle.class, bundleString);
             Task task = (Task) bundle.getEntry().get(0).getResource();
-            secret = task.getIdentifier().stream().filter(t -> "https://gematik.de/fhir/erp/NamingSystem/GEM_ERP_NS_Secret".equals(t.getSystem())).map(t -> t.getValue()).findAny().orElse(null);
+            String secret = task.getIdentifier().stream().filter(t -> "https://gematik.de/fhir/erp/NamingSystem/GEM_ERP_NS_Secret".equals(t.getSystem())).map(t -> t.getValue()).findAny().orElse(null);
             Binary binary = (Binary) bundle.getEntry().get(1).getResource();
-            byte[] pkcs7Data = binary.getData();
-            CMSSignedData signedData = new CMSSignedData(pkcs7Data);
-            CMSProcessableByteArray signedContent = (CMSProcessableByteArray) signedData.getSignedContent();
-            byte[] data = (byte[]) signedContent.getContent();
-
-            response.close();
             
             prescriptionId = task.getIdentifier().stream().filter(t -> "https://gematik.de/fhir/erp/NamingSystem/GEM_ERP_NS_PrescriptionId".equals(t.getSystem())).map(t -> t.getValue()).findAny().orElse(null);
 
-            try (Response response2 = client.target(appConfig.getPrescriptionServiceURL()).path("/Task/"+prescriptionId+"/$reject")
-                .queryParam("secret", secret).request()
-                .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
-                .post(Entity.entity("", "application/fhir+xml; charset=UTF-8"))) {
-                    String rejectResponse = response2.readEntity(String.class);
-                    if (Response.Status.Family.familyOf(response2.getStatus()) != Response.Status.Family.SUCCESSFUL) {
-                        log.warning("Could not reject "+token+"prescriptionId: "+prescriptionId+" secret: "+secret+" "+rejectResponse);
-                    }
-                    response2.close();
-                }
+            // the accepted task is locked at the pharmacy until it is rejected, the reject
+            // is done before the prescription is returned so that a restart can not skip it
+            reject(prescriptionId, secret, acceptBearerToken);
 
             // todo: print bundle to pdf if configured
 
-            return fhirContext.newXmlParser().parseResource(Bundle.class, new String(data));
+            return parseSignedContent(binary.getData());
         } catch(Throwable t) {
-            log.log(Level.SEVERE, "Could not process "+token+"prescriptionId: "+prescriptionId+" secret: "+secret+" ", t);
+            log.log(Level.SEVERE, "Could not process prescriptionId: "+prescriptionId, t);
             return null;
         }
 
     }
 
+    private void reject(String prescriptionId, String secret, String rejectBearerToken) {
+        try (Response response2 = client.target(appConfig.getPrescriptionServiceURL()).path("/Task/"+prescriptionId+"/$reject")
+            .queryParam("secret", secret).request()
+            .header("User-Agent", appConfig.getUserAgent())
+            .header("Authorization", "Bearer " + rejectBearerToken)
+            .post(Entity.entity("", "application/fhir+xml; charset=UTF-8"))) {
+                if (Response.Status.Family.familyOf(response2.getStatus()) != Response.Status.Family.SUCCESSFUL) {
+                    String rejectResponse = response2.readEntity(String.class);
+                    log.warning("Could not reject prescriptionId: "+prescriptionId+" "+rejectResponse);
+                }
+        } catch(Throwable t) {
+            log.log(Level.WARNING, "Could not reject prescriptionId: "+prescriptionId, t);
+        }
+    }
+
+    private Executor executor() {
+        return observerExecutors != null ? observerExecutors.getPool(Workload.WORKFLOW) : Runnable::run;
+    }
+
+    /**
+     * The charset of the Content-Type, UTF-8 if there is none or it is not supported.
+     */
+    static Charset charset(MediaType mediaType) {
+        String charset = mediaType != null ? mediaType.getParameters().get(MediaType.CHARSET_PARAMETER) : null;
+        if (charset != null) {
+            try {
+                return Charset.forName(charset);
+            } catch (IllegalArgumentException e) {
+                log.warning("Unsupported charset " + charset + ", reading the response as UTF-8");
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Parses the bundle from the response without copying it into a String first, in the
+     * charset of the response.
+     */
+    private Bundle readBundle(Response response) throws IOException {
+        if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
+            String bundleString = response.readEntity(String.class);
+            throw new WebApplicationException("Error on "+appConfig.getPrescriptionServiceURL()+" "+bundleString, response.getStatus());
+        }
+        try (InputStream in = response.readEntity(InputStream.class)) {
+            return fhirContext.newXmlParser().parseResource(Bundle.class, new InputStreamReader(in, charset(response.getMediaType())));
+        }
+    }
+
+    /**
+     * Parses the prescription bundle while it is read from the PKCS#7 structure.
+     */
+    static Bundle parseSignedContent(byte[] pkcs7Data) throws CMSException, OperatorCreationException, IOException {
+        CMSSignedDataParser signedDataParser = new CMSSignedDataParser(new JcaDigestCalculatorProviderBuilder().build(), pkcs7Data);
+        try (InputStream signedContent = signedDataParser.getSignedContent().getContentStream()) {
+            return fhirContext.newXmlParser().parseResource(Bundle.class, new InputStreamReader(signedContent, StandardCharsets.UTF_8));
+        } finally {
+            signedDataParser.close();
+        }
+    }
+
 }
@@ -9,10 +9,20 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -29,7 +39,6 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.crypto.CryptoException;
-import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Address.AddressType;
 import org.hl7.fhir.r4.model.Annotation;
 import org.hl7.fhir.r4.model.BooleanType;
@@ -76,6 +85,8 @@ import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.event.BundlesEvent;
 import health.ere.ps.event.PrefillBundleEvent;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
 import health.ere.ps.service.idp.crypto.CryptoLoader;
 import health.ere.ps.service.kbv.KBVFHIRUtil;
 import health.ere.ps.websocket.ExceptionWithReplyToException;
@@ -85,6 +96,7 @@ import jakarta.enterprise.event.ObservesAsync;
 import jakarta.inject.Inject;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
 import jakarta.xml.ws.Holder;
 
 @ApplicationScoped
@@ -94,6 +106,9 @@ public class PrefillPrescriptionService {
 
 	static JAXBContext jaxbContext;
 
+	// Unmarshallers are not thread safe, idle ones are kept here for the next VSD documents
+	private static final Queue<Unmarshaller> UNMARSHALLERS = new ConcurrentLinkedQueue<>();
+
 	static Pattern STREET_AND_NUMBER = Pattern.compile("(.*) ([^ ]*)$");
 
 	static {
@@ -114,6 +129,9 @@ public class PrefillPrescriptionService {
 	@Inject
 	Event<Exception> exceptionEvent;
 
+	@Inject
+	ObserverExecutors observerExecutors;
+
         public Bundle get(RuntimeConfig runtimeConfig)
 			throws FaultMessage, de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage, JAXBException,
 			de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, CryptoException, IOException,
@@ -125,14 +143,30 @@ public class PrefillPrescriptionService {
 			throws FaultMessage, de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage, JAXBException,
 			de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, CryptoException, IOException,
 			InvalidNameException, CertificateEncodingException {
-		// Get data from egk
+		PrefillTimings timings = new PrefillTimings();
 		ContextType context = connectorServicesProvider.getContextType(runtimeConfig);
 
-		EventServicePortType eventService = connectorServicesProvider.getEventServicePortType(runtimeConfig);
+		// one getCards call for all card types instead of one per type
+		long start = System.currentTimeMillis();
+		String egkHandle = egkHandleParameter;
+		String smcbHandle = runtimeConfig != null ? runtimeConfig.getSMCBHandle() : null;
+		String hbaHandle = runtimeConfig != null ? runtimeConfig.getEHBAHandle() : null;
+		if (egkHandle == null || smcbHandle == null || hbaHandle == null) {
+			Map<CardTypeType, String> cardHandles = getFirstCardHandles(
+					connectorServicesProvider.getEventServicePortType(runtimeConfig), context);
+			egkHandle = egkHandle != null ? egkHandle : cardHandles.get(CardTypeType.EGK);
+			smcbHandle = smcbHandle != null ? smcbHandle : cardHandles.get(CardTypeType.SMC_B);
+			hbaHandle = hbaHandle != null ? hbaHandle : cardHandles.get(CardTypeType.HBA);
+		}
+		timings.record("getCards", start);
 
-		String egkHandle = egkHandleParameter != null ? egkHandleParameter : getFirstCardOfType(eventService, CardTypeType.EGK, context);
-		String smcbHandle = (runtimeConfig != null && runtimeConfig.getSMCBHandle() != null) ? runtimeConfig.getSMCBHandle() : getFirstCardOfType(eventService, CardTypeType.SMC_B, context);
-		String hbaHandle = (runtimeConfig != null && runtimeConfig.getEHBAHandle() != null) ? runtimeConfig.getEHBAHandle() : getFirstCardOfType(eventService, CardTypeType.HBA, context);
+		// the certificate reads do not depend on the VSD read, they run while the eGK is read
+		CertificateServicePortType certificateService = connectorServicesProvider
+				.getCertificateServicePortType(runtimeConfig);
+		CertificateReadTask<Practitioner> practitionerRead = readCertificateAsync(hbaHandle, timings, "hbaCertificate",
+				handle -> hbaHandle2Practitioner(handle, runtimeConfig, certificateService, copyOf(context)));
+		CertificateReadTask<Organization> organizationRead = readCertificateAsync(smcbHandle, timings, "smcbCertificate",
+				handle -> smcbHandle2Organization(handle, runtimeConfig, certificateService, copyOf(context)));
 
 		Patient patient = null;
 		Coverage coverage = null;
@@ -142,42 +176,28 @@ public class PrefillPrescriptionService {
 			Holder<byte[]> geschuetzteVersichertendaten = new Holder<>();
 			Holder<VSDStatusType> vSD_Status = new Holder<>();
 			Holder<byte[]> pruefungsnachweis = new Holder<>();
+			start = System.currentTimeMillis();
 			connectorServicesProvider.getVSDServicePortType(runtimeConfig).readVSD(egkHandle, smcbHandle, false, false,
 					context, persoenlicheVersichertendaten, allgemeineVersicherungsdaten, geschuetzteVersichertendaten,
 					vSD_Status, pruefungsnachweis);
+			timings.record("readVSD", start);
 
-			InputStream isPersoenlicheVersichertendaten = new GZIPInputStream(
-					new ByteArrayInputStream(persoenlicheVersichertendaten.value));
-			UCPersoenlicheVersichertendatenXML schaumberg = (UCPersoenlicheVersichertendatenXML) jaxbContext
-					.createUnmarshaller().unmarshal(isPersoenlicheVersichertendaten);
+			start = System.currentTimeMillis();
+			UCPersoenlicheVersichertendatenXML schaumberg = unmarshalGzip(persoenlicheVersichertendaten.value,
+					UCPersoenlicheVersichertendatenXML.class);
 			patient = KBVFHIRUtil.UCPersoenlicheVersichertendatenXML2Patient(schaumberg);
 
-			InputStream isAllgemeineVersicherungsdaten = new GZIPInputStream(
-					new ByteArrayInputStream(allgemeineVersicherungsdaten.value));
-			UCAllgemeineVersicherungsdatenXML versicherung = (UCAllgemeineVersicherungsdatenXML) jaxbContext
-					.createUnmarshaller().unmarshal(isAllgemeineVersicherungsdaten);
-			InputStream isVersichungKennzeichen = new GZIPInputStream(
-					new ByteArrayInputStream(geschuetzteVersichertendaten.value));
-			UCGeschuetzteVersichertendatenXML versichungKennzeichen = (UCGeschuetzteVersichertendatenXML) jaxbContext
-					.createUnmarshaller().unmarshal(isVersichungKennzeichen);
+			UCAllgemeineVersicherungsdatenXML versicherung = unmarshalGzip(allgemeineVersicherungsdaten.value,
+					UCAllgemeineVersicherungsdatenXML.class);
+			UCGeschuetzteVersichertendatenXML versichungKennzeichen = unmarshalGzip(geschuetzteVersichertendaten.value,
+					UCGeschuetzteVersichertendatenXML.class);
 			coverage = KBVFHIRUtil.UCAllgemeineVersicherungsdatenXML2Coverage(versicherung,
 					patient.getIdElement().getIdPart(), versichungKennzeichen);
+			timings.record("unmarshalVSD", start);
 		}
 
-		CertificateServicePortType certificateService = connectorServicesProvider
-				.getCertificateServicePortType(runtimeConfig);
-
-		Practitioner practitioner = null;
-
-		if (hbaHandle != null) {
-			practitioner = hbaHandle2Practitioner(hbaHandle, runtimeConfig, certificateService, context);
-		}
-
-		Organization organization = null;
-
-		if (smcbHandle != null) {
-			organization = smcbHandle2Organization(smcbHandle, runtimeConfig, certificateService, context);
-		}
+		Practitioner practitioner = await(practitionerRead);
+		Organization organization = await(organizationRead);
 
 		Medication medication = createMedicationResource();
 
@@ -188,9 +208,150 @@ public class PrefillPrescriptionService {
 		Bundle bundle = KBVFHIRUtil.assembleBundle(practitioner, organization, patient, coverage, medication,
 				medicationRequest, null, null);
 
+		log.info("Prefill timings: " + timings);
 		return bundle;
 	}
 
+	@FunctionalInterface
+	interface CertificateRead<T> {
+		T read(String cardHandle) throws Exception;
+	}
+
+	/**
+	 * Starts the read on the interactive pool, or on the calling thread when the pool is saturated.
+	 * Completes with null if there is no card handle.
+	 */
+	<T> CertificateReadTask<T> readCertificateAsync(String cardHandle, PrefillTimings timings, String step,
+			CertificateRead<T> certificateRead) {
+		CertificateReadTask<T> task = new CertificateReadTask<>(cardHandle, timings, step, certificateRead);
+		if (cardHandle == null || observerExecutors == null) {
+			task.run();
+			return task;
+		}
+		try {
+			observerExecutors.getPool(Workload.INTERACTIVE).execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+		return task;
+	}
+
+	/**
+	 * A certificate read that runs once, on the pool or on the thread that waits for it. The
+	 * prefill itself runs on the interactive pool, so a waiting thread runs a read that is still
+	 * queued instead of blocking a pool thread on it, like {@link health.ere.ps.service.executor.FanOut}.
+	 */
+	static class CertificateReadTask<T> implements Runnable {
+		private final String cardHandle;
+		private final PrefillTimings timings;
+		private final String step;
+		private final CertificateRead<T> certificateRead;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		CertificateReadTask(String cardHandle, PrefillTimings timings, String step, CertificateRead<T> certificateRead) {
+			this.cardHandle = cardHandle;
+			this.timings = timings;
+			this.step = step;
+			this.certificateRead = certificateRead;
+		}
+
+		@Override
+		public void run() {
+			if (!started.compareAndSet(false, true)) {
+				return;
+			}
+			if (cardHandle == null) {
+				future.complete(null);
+				return;
+			}
+			long start = System.currentTimeMillis();
+			try {
+				future.complete(certificateRead.read(cardHandle));
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			} finally {
+				timings.record(step, start);
+			}
+		}
+	}
+
+	/**
+	 * Waits for a certificate read and rethrows its original exception.
+	 */
+	static <T> T await(CertificateReadTask<T> task)
+			throws de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, CryptoException,
+			InvalidNameException, CertificateEncodingException {
+		// runs the read here if no pool thread started it yet, otherwise it is already running
+		task.run();
+		try {
+			return task.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage) {
+				throw (de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage) cause;
+			} else if (cause instanceof CryptoException) {
+				throw (CryptoException) cause;
+			} else if (cause instanceof InvalidNameException) {
+				throw (InvalidNameException) cause;
+			} else if (cause instanceof CertificateEncodingException) {
+				throw (CertificateEncodingException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	static <T> T unmarshalGzip(byte[] gzipped, Class<T> type) throws IOException, JAXBException {
+		Unmarshaller unmarshaller = UNMARSHALLERS.poll();
+		if (unmarshaller == null) {
+			unmarshaller = jaxbContext.createUnmarshaller();
+		}
+		try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			return type.cast(unmarshaller.unmarshal(inputStream));
+		} finally {
+			UNMARSHALLERS.offer(unmarshaller);
+		}
+	}
+
+	/**
+	 * Duration per prefill step in ms, steps may be recorded from several threads.
+	 */
+	static class PrefillTimings {
+		private final long start = System.currentTimeMillis();
+		private final Map<String, Long> steps = Collections.synchronizedMap(new LinkedHashMap<>());
+
+		void record(String step, long stepStart) {
+			steps.put(step, System.currentTimeMillis() - stepStart);
+		}
+
+		Map<String, Long> getSteps() {
+			return steps;
+		}
+
+		@Override
+		public String toString() {
+			synchronized (steps) {
+				return steps + " total=" + (System.currentTimeMillis() - start);
+			}
+		}
+	}
+
+	static ContextType copyOf(ContextType context) {
+		ContextType copy = new ContextType();
+		copy.setMandantId(context.getMandantId());
+		copy.setClientSystemId(context.getClientSystemId());
+		copy.setWorkplaceId(context.getWorkplaceId());
+		copy.setUserId(context.getUserId());
+		return copy;
+	}
+
 	private Organization smcbHandle2Organization(String hbaHandle, RuntimeConfig runtimeConfig,
 			CertificateServicePortType certificateService, ContextType context)
 			throws de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, CryptoException,
@@ -358,6 +519,24 @@ public class PrefillPrescriptionService {
 		}
 	}
 
+	/**
+	 * Handle of the first card of every type from a single getCards call.
+	 */
+	static Map<CardTypeType, String> getFirstCardHandles(EventServicePortType eventService, ContextType context)
+			throws FaultMessage {
+		GetCards parameter = new GetCards();
+		parameter.setContext(context);
+		GetCardsResponse getCardsResponse = eventService.getCards(parameter);
+
+		Map<CardTypeType, String> cardHandles = new EnumMap<>(CardTypeType.class);
+		for (CardInfoType card : getCardsResponse.getCards().getCard()) {
+			if (card.getCardType() != null) {
+				cardHandles.putIfAbsent(card.getCardType(), card.getCardHandle());
+			}
+		}
+		return cardHandles;
+	}
+
 	private Medication createMedicationResource() {
 		Medication medication = new Medication();
 
@@ -473,27 +652,33 @@ public class PrefillPrescriptionService {
 	public Bundle getTestPrescriptionBundle(RuntimeConfig runtimeConfig) throws FaultMessage, de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, InvalidNameException, CertificateEncodingException, CryptoException, ParseException {
 
 		ContextType context = connectorServicesProvider.getContextType(runtimeConfig);
-		EventServicePortType eventService = connectorServicesProvider.getEventServicePortType(runtimeConfig);
 
-		String smcbHandle = (runtimeConfig.getSMCBHandle() != null) ? runtimeConfig.getSMCBHandle() : getFirstCardOfType(eventService, CardTypeType.SMC_B, context);
-		String hbaHandle = (runtimeConfig.getEHBAHandle() != null) ? runtimeConfig.getEHBAHandle() : getFirstCardOfType(eventService, CardTypeType.HBA, context);
+		String smcbHandle = runtimeConfig.getSMCBHandle();
+		String hbaHandle = runtimeConfig.getEHBAHandle();
+		if (smcbHandle == null || hbaHandle == null) {
+			Map<CardTypeType, String> cardHandles = getFirstCardHandles(
+					connectorServicesProvider.getEventServicePortType(runtimeConfig), context);
+			smcbHandle = smcbHandle != null ? smcbHandle : cardHandles.get(CardTypeType.SMC_B);
+			hbaHandle = hbaHandle != null ? hbaHandle : cardHandles.get(CardTypeType.HBA);
+		}
+		if (hbaHandle == null) {
+			throw new RuntimeException("No HBA found");
+		}
+		if (smcbHandle == null) {
+			throw new RuntimeException("No SMC-B found");
+		}
 
 		CertificateServicePortType certificateService = connectorServicesProvider.getCertificateServicePortType(runtimeConfig);
+		PrefillTimings timings = new PrefillTimings();
+		CertificateReadTask<Practitioner> practitionerRead = readCertificateAsync(hbaHandle, timings, "hbaCertificate",
+				handle -> hbaHandle2Practitioner(handle, runtimeConfig, certificateService, copyOf(context)));
+		CertificateReadTask<Organization> organizationRead = readCertificateAsync(smcbHandle, timings, "smcbCertificate",
+				handle -> smcbHandle2Organization(handle, runtimeConfig, certificateService, copyOf(context)));
 
-		Practitioner practitioner = null;
-		if (hbaHandle != null) {
-			practitioner = hbaHandle2Practitioner(hbaHandle, runtimeConfig, certificateService, context);
-		} else {
-			throw new RuntimeException("No HBA found");
-		}
+		Practitioner practitioner = await(practitionerRead);
 		practitioner.getIdentifier().get(0).setValue("999999999");
 
-		Organization organization = null;
-		if (smcbHandle != null) {
-			organization = smcbHandle2Organization(smcbHandle, runtimeConfig, certificateService, context);
-		} else {
-			throw new RuntimeException("No SMC-B found");
-		}
+		Organization organization = await(organizationRead);
 		organization.getIdentifier().get(0).setValue("999999999");
 		organization.getTelecom().get(0).setValue("0123456789");
 
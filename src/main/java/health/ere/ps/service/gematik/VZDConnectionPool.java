@@ -0,0 +1,170 @@
+package health.ere.ps.service.gematik;
+
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.service.common.security.SSLSocketFactory;
+import health.ere.ps.service.common.security.SecretsManagerService;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Keeps idle LDAP connections to the VZD of every connector, so searches do not pay
+ * for a TLS handshake each time. A connection that failed is closed instead of being
+ * returned to the pool.
+ */
+@ApplicationScoped
+public class VZDConnectionPool {
+
+    private static final Logger log = Logger.getLogger(VZDConnectionPool.class.getName());
+
+    @Inject
+    SecretsManagerService secretsManagerService;
+
+    /**
+     * Replaces ldaps://connector:636/, e.g. ldap://localhost:10389/ for a local test server.
+     */
+    @ConfigProperty(name = "ere.vzd.url")
+    Optional<String> vzdUrl = Optional.empty();
+
+    @ConfigProperty(name = "ere.vzd.pool.max-idle", defaultValue = "4")
+    int maxIdle = 4;
+
+    @ConfigProperty(name = "ere.vzd.pool.idle-timeout-ms", defaultValue = "60000")
+    long idleTimeoutMs = 60000;
+
+    private final Map<String, Deque<PooledContext>> idle = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface LdapAction<T> {
+        T execute(LdapContext context) throws NamingException;
+    }
+
+    @PreDestroy
+    void closeAll() {
+        idle.values().forEach(contexts -> {
+            PooledContext pooled;
+            while ((pooled = contexts.poll()) != null) {
+                close(pooled.context);
+            }
+        });
+    }
+
+    public <T> T execute(RuntimeConfig runtimeConfig, LdapAction<T> action) throws NamingException {
+        String providerUrl = getProviderUrl(runtimeConfig);
+        String key = providerUrl + "|" + Objects.hashCode(clientCertificate(runtimeConfig));
+        LdapContext context = borrow(key, runtimeConfig, providerUrl);
+        boolean healthy = false;
+        try {
+            T result = action.execute(context);
+            healthy = true;
+            return result;
+        } finally {
+            if (healthy) {
+                release(key, context);
+            } else {
+                close(context);
+            }
+        }
+    }
+
+    public String getProviderUrl(RuntimeConfig runtimeConfig) {
+        return vzdUrl.orElseGet(() -> "ldaps://" + runtimeConfig.getConnectorAddress() + ":636/");
+    }
+
+    int getIdleCount() {
+        return idle.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    private LdapContext borrow(String key, RuntimeConfig runtimeConfig, String providerUrl) throws NamingException {
+        Deque<PooledContext> contexts = idle.get(key);
+        if (contexts != null) {
+            PooledContext pooled;
+            while ((pooled = contexts.pollFirst()) != null) {
+                if (System.currentTimeMillis() - pooled.idleSince < idleTimeoutMs) {
+                    return pooled.context;
+                }
+                close(pooled.context);
+            }
+        }
+        return open(runtimeConfig, providerUrl);
+    }
+
+    private void release(String key, LdapContext context) {
+        Deque<PooledContext> contexts = idle.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+        if (contexts.size() < maxIdle) {
+            contexts.offerFirst(new PooledContext(context));
+        } else {
+            close(context);
+        }
+    }
+
+    private LdapContext open(RuntimeConfig runtimeConfig, String providerUrl) throws NamingException {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, providerUrl);
+        env.put(Context.SECURITY_AUTHENTICATION, "none");
+        if (!providerUrl.startsWith("ldaps:")) {
+            return newContext(env);
+        }
+        env.put(Context.SECURITY_PROTOCOL, "ssl");
+        env.put("java.naming.ldap.factory.socket", "health.ere.ps.service.common.security.SSLSocketFactory");
+        // the socket factory is looked up statically while connecting, so connections are opened one at a time
+        synchronized (SSLSocketFactory.class) {
+            try {
+                if (secretsManagerService != null && runtimeConfig != null && runtimeConfig.getConfigurations() != null) {
+                    SSLSocketFactory.delegate = secretsManagerService.createSSLContext(runtimeConfig.getConfigurations()).getSocketFactory();
+                }
+                return newContext(env);
+            } finally {
+                if (secretsManagerService != null) {
+                    SSLSocketFactory.delegate = null;
+                }
+            }
+        }
+    }
+
+    private static LdapContext newContext(Hashtable<String, String> env) throws NamingException {
+        LdapContext context = new InitialLdapContext(env, null);
+        context.setRequestControls(null);
+        return context;
+    }
+
+    private static String clientCertificate(RuntimeConfig runtimeConfig) {
+        return runtimeConfig == null || runtimeConfig.getConfigurations() == null ? null
+                : runtimeConfig.getConfigurations().getClientCertificate();
+    }
+
+    private static void close(LdapContext context) {
+        try {
+            context.close();
+        } catch (NamingException e) {
+            log.log(Level.FINE, "Could not close LDAP context", e);
+        }
+    }
+
+    private static class PooledContext {
+        final LdapContext context;
+        final long idleSince = System.currentTimeMillis();
+
+        PooledContext(LdapContext context) {
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package health.ere.ps.service.gematik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable substring index over the pharmacy entries of one VZD. The display name and the
+ * mail address are indexed by trigram, a search term matches entries that contain each of
+ * the words of the term, like the *term* filter of the VZD search. Changes create a new index.
+ */
+public class VZDPharmacyIndex {
+
+    // attribute names are case insensitive in LDAP
+    static final Set<String> INDEXED_ATTRIBUTES = Set.of("displayname", "mail", "rfc822mailbox");
+
+    private static final int GRAM = 3;
+
+    private final Map<String, Map<String, Object>> entries;
+    private final List<Map<String, Object>> attributes;
+    private final String[] texts;
+    private final Map<String, int[]> grams;
+    private final long refreshedAt;
+
+    private VZDPharmacyIndex(Map<String, Map<String, Object>> entries, long refreshedAt) {
+        this.entries = entries;
+        this.refreshedAt = refreshedAt;
+        this.attributes = new ArrayList<>(entries.values());
+        this.texts = new String[attributes.size()];
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (int id = 0; id < texts.length; id++) {
+            texts[id] = text(attributes.get(id));
+            for (String gram : grams(texts[id])) {
+                postings.computeIfAbsent(gram, g -> new ArrayList<>()).add(id);
+            }
+        }
+        this.grams = new HashMap<>(postings.size() * 4 / 3 + 1);
+        postings.forEach((gram, ids) -> grams.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    public static VZDPharmacyIndex of(Map<String, Map<String, Object>> entries, long refreshedAt) {
+        return new VZDPharmacyIndex(new LinkedHashMap<>(entries), refreshedAt);
+    }
+
+    /**
+     * @return a new index with the changed entries added or replaced and the removed ones dropped
+     */
+    public VZDPharmacyIndex withChanges(Map<String, Map<String, Object>> changed, Collection<String> removed, long refreshedAt) {
+        Map<String, Map<String, Object>> merged = new LinkedHashMap<>(entries);
+        merged.keySet().removeAll(removed);
+        merged.putAll(changed);
+        return new VZDPharmacyIndex(merged, refreshedAt);
+    }
+
+    public List<Map<String, Object>> search(String term, int limit) {
+        List<String> words = split(term);
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (words.isEmpty()) {
+            return result;
+        }
+        int[] candidates = candidates(words);
+        int count = candidates != null ? candidates.length : texts.length;
+        for (int i = 0; i < count && result.size() < limit; i++) {
+            int id = candidates != null ? candidates[i] : i;
+            if (containsAll(texts[id], words)) {
+                result.add(new HashMap<>(attributes.get(id)));
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    /**
+     * @return the ids having all trigrams of the words in ascending order, or null if no word
+     * is long enough to have one and all entries have to be checked
+     */
+    private int[] candidates(List<String> words) {
+        Set<String> termGrams = new LinkedHashSet<>();
+        words.forEach(word -> termGrams.addAll(grams(word)));
+        if (termGrams.isEmpty()) {
+            return null;
+        }
+        List<int[]> lists = new ArrayList<>(termGrams.size());
+        for (String gram : termGrams) {
+            int[] ids = grams.get(gram);
+            if (ids == null) {
+                return new int[0];
+            }
+            lists.add(ids);
+        }
+        // start with the rarest gram, the intersection only shrinks
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        int[] candidates = lists.get(0);
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists.get(i));
+        }
+        return candidates;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static boolean containsAll(String text, List<String> words) {
+        for (String word : words) {
+            if (!text.contains(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the indexed values, separated by a line break so that no word spans two of them
+    private static String text(Map<String, Object> attributes) {
+        StringBuilder text = new StringBuilder();
+        attributes.forEach((attribute, value) -> {
+            if (value instanceof String && INDEXED_ATTRIBUTES.contains(attribute.toLowerCase(Locale.ROOT))) {
+                text.append(((String) value).toLowerCase(Locale.GERMAN)).append('\n');
+            }
+        });
+        return text.toString();
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            String gram = text.substring(i, i + GRAM);
+            if (gram.indexOf('\n') < 0) {
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+
+    private static List<String> split(String term) {
+        List<String> words = new ArrayList<>();
+        for (String word : term.toLowerCase(Locale.GERMAN).split("\\s+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
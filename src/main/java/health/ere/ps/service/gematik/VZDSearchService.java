@@ -0,0 +1,279 @@
+package health.ere.ps.service.gematik;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.SizeLimitExceededException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Searches pharmacies in the VZD of the connector.
+ *
+ * Results of the VZD are cached per connector and search term. In addition every
+ * connector gets a local index of all its pharmacies that is loaded on the background pool
+ * of {@link ObserverExecutors} and refreshed with the entries modified since the last
+ * refresh. Once the index is complete, searches are answered from it by substring without
+ * contacting the VZD.
+ * Deleted entries are not returned by the VZD, they are dropped by the full refresh
+ * every ere.vzd.index.full-refresh-minutes. If the VZD does not return all pharmacies
+ * because of its size limit the index is not used and searches go to the VZD until the
+ * next full refresh succeeds.
+ */
+@ApplicationScoped
+public class VZDSearchService {
+
+    private static final Logger log = Logger.getLogger(VZDSearchService.class.getName());
+
+    static final String BASE_DN = "dc=data,dc=vzd";
+    static final String PHARMACY_OID = "1.2.276.0.76.4.54";
+    static final String PHARMACY_FILTER = "(professionOID=" + PHARMACY_OID + ")";
+
+    private static final DateTimeFormatter GENERALIZED_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+    // tolerate clock differences between the connector and us
+    private static final long MODIFY_TIMESTAMP_SKEW_MS = 5 * 60 * 1000;
+
+    @Inject
+    VZDConnectionPool connectionPool;
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    @ConfigProperty(name = "ere.vzd.cache-ttl-seconds", defaultValue = "300")
+    long cacheTtlSeconds = 300;
+
+    @ConfigProperty(name = "ere.vzd.cache-size", defaultValue = "1000")
+    int cacheSize = 1000;
+
+    @ConfigProperty(name = "ere.vzd.index.enabled", defaultValue = "true")
+    boolean indexEnabled = true;
+
+    @ConfigProperty(name = "ere.vzd.index.refresh-minutes", defaultValue = "15")
+    long indexRefreshMinutes = 15;
+
+    @ConfigProperty(name = "ere.vzd.index.full-refresh-minutes", defaultValue = "360")
+    long indexFullRefreshMinutes = 360;
+
+    @ConfigProperty(name = "ere.vzd.index.max-results", defaultValue = "100")
+    int indexMaxResults = 100;
+
+    // least recently used searches are evicted first
+    private final Map<String, CachedSearch> cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSearch> eldest) {
+            return size() > cacheSize;
+        }
+    });
+    private final Map<String, PharmacyDirectory> directories = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    void shutdown() {
+        for (PharmacyDirectory directory : directories.values()) {
+            if (directory.refreshes != null) {
+                directory.refreshes.cancel(false);
+            }
+        }
+    }
+
+    public List<Map<String, Object>> search(RuntimeConfig runtimeConfig, String searchDisplayName) {
+        if (searchDisplayName == null || searchDisplayName.length() < 3) {
+            return new ArrayList<>();
+        }
+        String providerUrl = connectionPool.getProviderUrl(runtimeConfig);
+        if (indexEnabled) {
+            PharmacyDirectory directory = directories.computeIfAbsent(providerUrl, url -> startDirectory(runtimeConfig));
+            directory.runtimeConfig = runtimeConfig;
+            VZDPharmacyIndex index = directory.index;
+            if (index != null) {
+                return index.search(searchDisplayName, indexMaxResults);
+            }
+        }
+
+        String key = providerUrl + "|" + searchDisplayName.toLowerCase(Locale.ROOT);
+        CachedSearch cached = cache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt > System.currentTimeMillis()) {
+                return new ArrayList<>(cached.results);
+            }
+            cache.remove(key);
+        }
+        String term = escapeFilterValue(searchDisplayName);
+        List<Map<String, Object>> results;
+        try {
+            results = new ArrayList<>(query(runtimeConfig, "(&" + PHARMACY_FILTER + "(|(displayName=*" + term
+                    + "*)(rfc822mailbox=*" + term + "*)))").entries.values());
+        } catch (NamingException e) {
+            log.log(Level.WARNING, "Could not search LDAP", e);
+            throw new RuntimeException(e);
+        }
+        putCache(key, results);
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Loads all pharmacies or the entries modified since the last refresh into the index.
+     * Modified entries that are no longer pharmacies are removed from it.
+     */
+    void refresh(PharmacyDirectory directory) {
+        long now = System.currentTimeMillis();
+        long fullRefreshMs = TimeUnit.MINUTES.toMillis(indexFullRefreshMinutes);
+        if (directory.truncated && now - directory.lastFullRefresh < fullRefreshMs) {
+            return;
+        }
+        VZDPharmacyIndex index = directory.index;
+        boolean full = index == null || now - directory.lastFullRefresh >= fullRefreshMs;
+        String filter = full ? PHARMACY_FILTER : "(modifyTimestamp>="
+                + GENERALIZED_TIME.format(Instant.ofEpochMilli(index.getRefreshedAt() - MODIFY_TIMESTAMP_SKEW_MS)) + ")";
+        try {
+            Entries entries = query(directory.runtimeConfig, filter);
+            if (entries.truncated && full) {
+                log.warning("VZD returned fewer pharmacies than it has, searches are sent to the VZD directly");
+                directory.truncated = true;
+                directory.lastFullRefresh = now;
+                directory.index = null;
+                return;
+            }
+            if (entries.truncated) {
+                // too many changes at once, load everything again on the next run
+                directory.lastFullRefresh = 0;
+                return;
+            }
+            if (full) {
+                directory.index = VZDPharmacyIndex.of(entries.entries, now);
+                directory.lastFullRefresh = now;
+                directory.truncated = false;
+                log.info("Loaded " + entries.entries.size() + " pharmacies from the VZD");
+            } else {
+                directory.index = index.withChanges(entries.entries, entries.notPharmacies, now);
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not refresh the pharmacy index", e);
+        }
+    }
+
+    private PharmacyDirectory startDirectory(RuntimeConfig runtimeConfig) {
+        PharmacyDirectory directory = new PharmacyDirectory(runtimeConfig);
+        directory.refreshes = observerExecutors.scheduleWithFixedDelay(() -> refresh(directory), 0, indexRefreshMinutes,
+                TimeUnit.MINUTES, Workload.BACKGROUND);
+        return directory;
+    }
+
+    private Entries query(RuntimeConfig runtimeConfig, String filter) throws NamingException {
+        return connectionPool.execute(runtimeConfig, context -> {
+            Entries entries = new Entries();
+            NamingEnumeration<SearchResult> namingEnum = context.search(BASE_DN, filter, getSimpleSearchControls());
+            try {
+                while (namingEnum.hasMore()) {
+                    SearchResult result = namingEnum.next();
+                    Attribute professionOID = result.getAttributes().get("professionOID");
+                    if (professionOID == null || !professionOID.contains(PHARMACY_OID)) {
+                        entries.notPharmacies.add(result.getNameInNamespace());
+                        continue;
+                    }
+                    Map<String, Object> map = new HashMap<>();
+                    NamingEnumeration<? extends Attribute> enumeration = result.getAttributes().getAll();
+                    while (enumeration.hasMore()) {
+                        Attribute attribute = enumeration.next();
+                        map.put(attribute.getID(), attribute.get());
+                    }
+                    entries.entries.put(result.getNameInNamespace(), map);
+                }
+            } catch (SizeLimitExceededException e) {
+                log.info("Received more than expected LDAP entries. " + e.getMessage());
+                entries.truncated = true;
+            } finally {
+                namingEnum.close();
+            }
+            return entries;
+        });
+    }
+
+    private void putCache(String key, List<Map<String, Object>> results) {
+        cache.put(key, new CachedSearch(results, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(cacheTtlSeconds)));
+    }
+
+    int getCacheCount() {
+        return cache.size();
+    }
+
+    private SearchControls getSimpleSearchControls() {
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        searchControls.setTimeLimit(30000);
+        return searchControls;
+    }
+
+    /**
+     * Escapes the characters with a special meaning in LDAP filters (RFC 4515).
+     */
+    static String escapeFilterValue(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\': escaped.append("\\5c"); break;
+                case '*': escaped.append("\\2a"); break;
+                case '(': escaped.append("\\28"); break;
+                case ')': escaped.append("\\29"); break;
+                case '\0': escaped.append("\\00"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static class PharmacyDirectory {
+        volatile RuntimeConfig runtimeConfig;
+        volatile VZDPharmacyIndex index;
+        volatile long lastFullRefresh;
+        volatile boolean truncated;
+        volatile ScheduledFuture<?> refreshes;
+
+        PharmacyDirectory(RuntimeConfig runtimeConfig) {
+            this.runtimeConfig = runtimeConfig;
+        }
+    }
+
+    private static class Entries {
+        final Map<String, Map<String, Object>> entries = new LinkedHashMap<>();
+        final Set<String> notPharmacies = new HashSet<>();
+        boolean truncated;
+    }
+
+    private static class CachedSearch {
+        final List<Map<String, Object>> results;
+        final long expiresAt;
+
+        CachedSearch(List<Map<String, Object>> results, long expiresAt) {
+            this.results = results;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
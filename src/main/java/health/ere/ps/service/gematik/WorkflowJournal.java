@@ -0,0 +1,698 @@
+package health.ere.ps.service.gematik;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hl7.fhir.r4.model.Task;
+
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.config.UserConfig;
+import health.ere.ps.model.config.UserConfigurations;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Write-ahead journal of the tasks that a sign and upload batch created on the
+ * prescription server.
+ *
+ * Records are written with length and CRC32 and forced to disk in groups every
+ * sync-interval-ms, and before the batch starts signing. The begin record holds the runtime
+ * config of the tenant. When the application was stopped in the middle of a batch, the tasks
+ * of that batch that are still drafts on the prescription server are aborted with the runtime
+ * config of their tenant after the next start. A task is read first, as it may have been
+ * activated before its record was written. Tasks that can not be read or aborted
+ * after recovery-attempts are moved to parked.log and tried again after the next start.
+ * The journal is truncated whenever no batch is running and nothing is left to recover.
+ */
+@Startup
+@ApplicationScoped
+public class WorkflowJournal {
+
+    private static final Logger log = Logger.getLogger(WorkflowJournal.class.getName());
+
+    private static final byte BEGIN = 1;
+    private static final byte TASK = 2;
+    private static final byte SIGNED = 3;
+    private static final byte ACTIVATED = 4;
+    private static final byte ABORTED = 5;
+    private static final byte END = 6;
+
+    // the tenant keys of the runtime config, the others are its user configurations
+    private static final String CONFIGURATION_PREFIX = "configurations.";
+
+    @Inject
+    ERezeptWorkflowService eRezeptWorkflowService;
+
+    @Inject
+    UserConfig userConfig;
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    @ConfigProperty(name = "ere.workflow-journal.directory", defaultValue = "workflow-journal")
+    String directory = "workflow-journal";
+
+    @ConfigProperty(name = "ere.workflow-journal.sync-interval-ms", defaultValue = "50")
+    long syncIntervalMs = 50;
+
+    @ConfigProperty(name = "ere.workflow-journal.recovery-attempts", defaultValue = "5")
+    int recoveryAttempts = 5;
+
+    @ConfigProperty(name = "ere.workflow-journal.recovery-backoff-ms", defaultValue = "10000")
+    long recoveryBackoffMs = 10000;
+
+    private final Set<String> openBatches = new HashSet<>();
+    private FileChannel channel;
+    private ScheduledFuture<?> syncs;
+    private final CompletableFuture<Void> recovered = new CompletableFuture<>();
+    private boolean dirty;
+    private int unresolved;
+
+    @PostConstruct
+    void init() throws IOException {
+        List<JournaledTask> incomplete = open();
+        if (!incomplete.isEmpty()) {
+            log.warning(incomplete.size() + " tasks of interrupted sign and upload batches are checked and aborted");
+            recover(incomplete);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (syncs != null) {
+            syncs.cancel(false);
+        }
+        // stops the attempts that were not started yet
+        recovered.cancel(false);
+        try {
+            sync();
+            synchronized (this) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not close workflow journal", e);
+        }
+    }
+
+    /**
+     * Replays the journal.
+     *
+     * @return the tasks of interrupted batches that were not activated or aborted
+     */
+    synchronized List<JournaledTask> open() throws IOException {
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        Path file = dir.resolve("workflow.log");
+        Path parked = dir.resolve("parked.log");
+        Map<String, JournaledTask> tasks = new LinkedHashMap<>();
+        Set<String> ended = new HashSet<>();
+        if (Files.exists(file)) {
+            replay(file, tasks, ended);
+        }
+        boolean created = !Files.exists(file);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (created) {
+            restrictPermissions(file);
+        }
+        if (Files.exists(parked)) {
+            Map<String, JournaledTask> parkedTasks = new LinkedHashMap<>();
+            replay(parked, parkedTasks, new HashSet<>());
+            // back into the journal, the batches of parked tasks have no end record
+            for (JournaledTask task : parkedTasks.values()) {
+                tasks.put(task.getBatchId() + "/" + task.getIndex(), task);
+                ended.remove(task.getBatchId());
+                writeTask(channel, task);
+            }
+            channel.force(false);
+            Files.delete(parked);
+        }
+        List<JournaledTask> incomplete = new ArrayList<>();
+        for (JournaledTask task : tasks.values()) {
+            if (!ended.contains(task.getBatchId()) && task.getState() != State.ACTIVATED && task.getState() != State.ABORTED) {
+                incomplete.add(task);
+            }
+        }
+        unresolved = incomplete.size();
+        compactIfIdle();
+        if (observerExecutors != null) {
+            syncs = observerExecutors.scheduleWithFixedDelay(() -> {
+                try {
+                    sync();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Could not sync workflow journal", e);
+                }
+            }, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS, Workload.BACKGROUND);
+        }
+        return incomplete;
+    }
+
+    /**
+     * Aborts the given tasks that are still drafts, the others are marked as activated or
+     * aborted. Failures are tried again recovery-attempts times, then the tasks are parked.
+     * The attempts run on the background pool, no thread is held between them.
+     *
+     * @return completes when every task is resolved or parked
+     */
+    CompletableFuture<Void> recover(List<JournaledTask> incomplete) {
+        scheduleRecovery(new ArrayList<>(incomplete), 1, 0);
+        return recovered;
+    }
+
+    private void scheduleRecovery(List<JournaledTask> remaining, int attempt, long delayMs) {
+        Runnable recovery = () -> recover(remaining, attempt);
+        if (observerExecutors == null) {
+            CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS).execute(recovery);
+            return;
+        }
+        observerExecutors.schedule(() -> {
+            try {
+                observerExecutors.getPool(Workload.BACKGROUND).execute(recovery);
+            } catch (RejectedExecutionException e) {
+                // the pool is saturated, the attempt is not counted
+                scheduleRecovery(remaining, attempt, recoveryBackoffMs);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void recover(List<JournaledTask> remaining, int attempt) {
+        if (recovered.isDone()) {
+            return;
+        }
+        try {
+            boolean last = attempt >= recoveryAttempts;
+            remaining.removeIf(task -> resolve(task, last));
+            if (last) {
+                remaining.forEach(this::park);
+                remaining.clear();
+            }
+            if (!remaining.isEmpty()) {
+                scheduleRecovery(remaining, attempt + 1,
+                        Math.min(recoveryBackoffMs << Math.min(attempt - 1, 10), TimeUnit.MINUTES.toMillis(5)));
+                return;
+            }
+            sync();
+            synchronized (this) {
+                compactIfIdle();
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not sync workflow journal", e);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Could not recover workflow journal", e);
+        }
+        recovered.complete(null);
+    }
+
+    /**
+     * @return true if the task is activated or aborted now
+     */
+    private boolean resolve(JournaledTask task, boolean last) {
+        try {
+            RuntimeConfig runtimeConfig = runtimeConfig(task.getTenant());
+            Task.TaskStatus status = eRezeptWorkflowService.getERezeptTaskStatus(runtimeConfig, task.getTaskId(), task.getAccessCode());
+            if (status == Task.TaskStatus.DRAFT) {
+                eRezeptWorkflowService.abortERezeptTask(runtimeConfig, task.getTaskId(), task.getAccessCode());
+                write(ABORTED, task.getBatchId(), out -> out.writeInt(task.getIndex()));
+                log.info("Aborted task " + task.getTaskId() + " of an interrupted sign and upload batch");
+            } else if (status == Task.TaskStatus.CANCELLED) {
+                write(ABORTED, task.getBatchId(), out -> out.writeInt(task.getIndex()));
+            } else if (status == Task.TaskStatus.READY || status == Task.TaskStatus.INPROGRESS || status == Task.TaskStatus.COMPLETED) {
+                // activated before the record was written, it is a valid prescription
+                write(ACTIVATED, task.getBatchId(), out -> out.writeInt(task.getIndex()));
+                log.info("Task " + task.getTaskId() + " of an interrupted sign and upload batch is " + status + ", it is kept");
+            } else {
+                throw new IllegalStateException("Task " + task.getTaskId() + " has the unexpected status " + status);
+            }
+            synchronized (this) {
+                unresolved--;
+            }
+            return true;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not check or abort task " + task.getTaskId()
+                + (last ? ", it is parked until the next restart" : ", it is tried again"), e);
+            return false;
+        }
+    }
+
+    /**
+     * Moves the task to parked.log, so the journal can be truncated meanwhile.
+     */
+    private void park(JournaledTask task) {
+        Path file = Path.of(directory).resolve("parked.log");
+        boolean created = !Files.exists(file);
+        try (FileChannel parked = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (created) {
+                restrictPermissions(file);
+            }
+            writeTask(parked, task);
+            parked.force(false);
+            synchronized (this) {
+                unresolved--;
+            }
+        } catch (IOException e) {
+            // stays unresolved, the journal keeps it
+            log.log(Level.WARNING, "Could not park task " + task.getTaskId(), e);
+        }
+    }
+
+    public Batch begin() {
+        return begin(null);
+    }
+
+    /**
+     * @param runtimeConfig the tenant of the batch, null for the default configuration
+     */
+    public Batch begin(RuntimeConfig runtimeConfig) {
+        String batchId = UUID.randomUUID().toString();
+        synchronized (this) {
+            openBatches.add(batchId);
+        }
+        Batch batch = new Batch(this, batchId);
+        Map<String, String> tenant = tenant(runtimeConfig);
+        write(BEGIN, batchId, out -> writeTenant(out, tenant));
+        return batch;
+    }
+
+    /**
+     * The values that are needed to rebuild the runtime config, e.g. to request a bearer token
+     * with the SMC-B of the tenant. Empty for the default configuration.
+     */
+    static Map<String, String> tenant(RuntimeConfig runtimeConfig) {
+        Map<String, String> tenant = new LinkedHashMap<>();
+        if (runtimeConfig == null) {
+            return tenant;
+        }
+        putIfPresent(tenant, "eHBAHandle", runtimeConfig.getEHBAHandle());
+        putIfPresent(tenant, "SMCBHandle", runtimeConfig.getSMCBHandle());
+        putIfPresent(tenant, "idpBaseURL", runtimeConfig.getIdpBaseURL());
+        putIfPresent(tenant, "idpClientId", runtimeConfig.getIdpClientId());
+        putIfPresent(tenant, "idpAuthRequestRedirectURL", runtimeConfig.getIdpAuthRequestRedirectURL());
+        putIfPresent(tenant, "prescriptionServerURL", runtimeConfig.getPrescriptionServerURL());
+        runtimeConfig.getConfigurations().properties()
+                .forEach((key, value) -> putIfPresent(tenant, CONFIGURATION_PREFIX + key, (String) value));
+        return tenant;
+    }
+
+    private static void putIfPresent(Map<String, String> tenant, String key, String value) {
+        if (value != null && !value.isEmpty()) {
+            tenant.put(key, value);
+        }
+    }
+
+    /**
+     * Rebuilds the runtime config of a journaled tenant on top of the current user config.
+     */
+    RuntimeConfig runtimeConfig(Map<String, String> tenant) {
+        if (tenant.isEmpty()) {
+            return null;
+        }
+        RuntimeConfig runtimeConfig = new RuntimeConfig(tenant.get("eHBAHandle"), tenant.get("SMCBHandle"));
+        if (userConfig != null) {
+            runtimeConfig.copyValuesFromUserConfig(userConfig);
+        }
+        runtimeConfig.setIdpBaseURL(tenant.get("idpBaseURL"));
+        runtimeConfig.setIdpClientId(tenant.get("idpClientId"));
+        runtimeConfig.setIdpAuthRequestRedirectURL(tenant.get("idpAuthRequestRedirectURL"));
+        runtimeConfig.setPrescriptionServerURL(tenant.get("prescriptionServerURL"));
+        Properties properties = new Properties();
+        tenant.forEach((key, value) -> {
+            if (key.startsWith(CONFIGURATION_PREFIX)) {
+                properties.setProperty(key.substring(CONFIGURATION_PREFIX.length()), value);
+            }
+        });
+        runtimeConfig.updateProperties(new UserConfigurations(properties));
+        return runtimeConfig;
+    }
+
+    // values are written with their length, a client certificate exceeds the limit of writeUTF
+    private static void writeTenant(DataOutputStream out, Map<String, String> tenant) throws IOException {
+        out.writeInt(tenant.size());
+        for (Map.Entry<String, String> entry : tenant.entrySet()) {
+            out.writeUTF(entry.getKey());
+            byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static Map<String, String> readTenant(DataInputStream in) throws IOException {
+        Map<String, String> tenant = new LinkedHashMap<>();
+        // begin records of older versions have no tenant
+        if (in.available() == 0) {
+            return tenant;
+        }
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            tenant.put(key, new String(value, StandardCharsets.UTF_8));
+        }
+        return tenant;
+    }
+
+    /**
+     * Forces the records written so far to disk.
+     */
+    public void sync() throws IOException {
+        FileChannel toSync;
+        synchronized (this) {
+            if (!dirty || channel == null) {
+                return;
+            }
+            dirty = false;
+            toSync = channel;
+        }
+        // writers are not blocked while the disk is busy
+        toSync.force(false);
+    }
+
+    private void end(String batchId) {
+        write(END, batchId, out -> { });
+        synchronized (this) {
+            openBatches.remove(batchId);
+            try {
+                compactIfIdle();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Could not truncate workflow journal", e);
+            }
+        }
+    }
+
+    private void compactIfIdle() throws IOException {
+        if (openBatches.isEmpty() && unresolved == 0 && channel.size() > 0) {
+            channel.truncate(0);
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    private void write(byte type, String batchId, RecordWriter fields) {
+        try {
+            ByteBuffer record = record(type, batchId, fields);
+            synchronized (this) {
+                if (channel == null) {
+                    return;
+                }
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                dirty = true;
+            }
+        } catch (IOException e) {
+            // the batch itself must not fail because of the journal
+            log.log(Level.WARNING, "Could not write to workflow journal", e);
+        }
+    }
+
+    /**
+     * Writes the records that restore the task and its state.
+     */
+    private static void writeTask(FileChannel target, JournaledTask task) throws IOException {
+        List<ByteBuffer> records = new ArrayList<>();
+        records.add(record(BEGIN, task.getBatchId(), out -> writeTenant(out, task.getTenant())));
+        records.add(record(TASK, task.getBatchId(), out -> {
+            out.writeInt(task.getIndex());
+            out.writeUTF(task.getTaskId());
+            out.writeUTF(task.getAccessCode());
+        }));
+        if (task.getSignedHash() != null) {
+            records.add(record(SIGNED, task.getBatchId(), out -> {
+                out.writeInt(task.getIndex());
+                out.writeUTF(task.getSignedHash());
+            }));
+        }
+        for (ByteBuffer record : records) {
+            while (record.hasRemaining()) {
+                target.write(record);
+            }
+        }
+    }
+
+    private static ByteBuffer record(byte type, String batchId, RecordWriter fields) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(type);
+        out.writeUTF(batchId);
+        fields.write(out);
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer record = ByteBuffer.allocate(8 + bytes.length);
+        record.putInt(bytes.length);
+        record.putInt((int) crc.getValue());
+        record.put(bytes);
+        record.flip();
+        return record;
+    }
+
+    private void replay(Path file, Map<String, JournaledTask> tasks, Set<String> ended) throws IOException {
+        long validLength = 0;
+        long fileLength = Files.size(file);
+        Map<String, Map<String, String>> tenants = new HashMap<>();
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            while (validLength < fileLength) {
+                int length = data.readInt();
+                int crc = data.readInt();
+                if (length < 0 || validLength + 8 + length > fileLength) {
+                    throw new EOFException("Record exceeds the journal");
+                }
+                byte[] body = new byte[length];
+                data.readFully(body);
+                CRC32 actual = new CRC32();
+                actual.update(body);
+                if (crc != (int) actual.getValue()) {
+                    throw new IOException("Checksum mismatch");
+                }
+                apply(body, tasks, tenants, ended);
+                validLength += 8 + length;
+            }
+        } catch (IOException | RuntimeException e) {
+            // the last records were not written completely
+            log.warning("Workflow journal " + file + " is damaged after " + validLength + " bytes: " + e);
+            try (FileChannel damaged = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                damaged.truncate(validLength);
+            }
+        }
+    }
+
+    private static void apply(byte[] body, Map<String, JournaledTask> tasks, Map<String, Map<String, String>> tenants,
+            Set<String> ended) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        String batchId = in.readUTF();
+        switch (type) {
+            case BEGIN:
+                tenants.put(batchId, readTenant(in));
+                break;
+            case TASK: {
+                int index = in.readInt();
+                JournaledTask task = new JournaledTask(batchId, index, in.readUTF(), in.readUTF(),
+                        tenants.getOrDefault(batchId, Map.of()));
+                tasks.put(batchId + "/" + index, task);
+                break;
+            }
+            case SIGNED: {
+                JournaledTask task = tasks.get(batchId + "/" + in.readInt());
+                if (task != null) {
+                    task.signedHash = in.readUTF();
+                    task.state = State.SIGNED;
+                }
+                break;
+            }
+            case ACTIVATED:
+            case ABORTED: {
+                JournaledTask task = tasks.get(batchId + "/" + in.readInt());
+                if (task != null) {
+                    task.state = type == ACTIVATED ? State.ACTIVATED : State.ABORTED;
+                }
+                break;
+            }
+            case END:
+                ended.add(batchId);
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void restrictPermissions(Path file) {
+        // the journal contains access codes and the configurations of the tenants
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            log.fine("Could not restrict permissions of " + file);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public enum State {
+        CREATED, SIGNED, ACTIVATED, ABORTED
+    }
+
+    /**
+     * Journals the steps of one sign and upload batch, indexes are the positions of the bundles in the batch.
+     */
+    public static class Batch {
+
+        /** Used when no journal is available, does nothing. */
+        public static final Batch NONE = new Batch(null, null);
+
+        private final WorkflowJournal journal;
+        private final String id;
+
+        Batch(WorkflowJournal journal, String id) {
+            this.journal = journal;
+            this.id = id;
+        }
+
+        public void taskCreated(int index, String taskId, String accessCode) {
+            if (journal != null && taskId != null && accessCode != null) {
+                journal.write(TASK, id, out -> {
+                    out.writeInt(index);
+                    out.writeUTF(taskId);
+                    out.writeUTF(accessCode);
+                });
+            }
+        }
+
+        public void signed(int index, byte[] signedBundle) {
+            if (journal != null) {
+                String hash = sha256(signedBundle);
+                journal.write(SIGNED, id, out -> {
+                    out.writeInt(index);
+                    out.writeUTF(hash);
+                });
+            }
+        }
+
+        public void activated(int index) {
+            if (journal != null) {
+                journal.write(ACTIVATED, id, out -> out.writeInt(index));
+            }
+        }
+
+        /**
+         * Forces the records of the batch to disk, before a long running step.
+         */
+        public void sync() {
+            if (journal != null) {
+                try {
+                    journal.sync();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Could not sync workflow journal", e);
+                }
+            }
+        }
+
+        /**
+         * The results of the batch were handed to the caller, nothing has to be recovered.
+         */
+        public void end() {
+            if (journal != null) {
+                journal.end(id);
+            }
+        }
+    }
+
+    public static class JournaledTask {
+        private final String batchId;
+        private final int index;
+        private final String taskId;
+        private final String accessCode;
+        private final Map<String, String> tenant;
+        private String signedHash;
+        private State state = State.CREATED;
+
+        JournaledTask(String batchId, int index, String taskId, String accessCode, Map<String, String> tenant) {
+            this.batchId = batchId;
+            this.index = index;
+            this.taskId = taskId;
+            this.accessCode = accessCode;
+            this.tenant = tenant;
+        }
+
+        public String getBatchId() {
+            return batchId;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getTaskId() {
+            return taskId;
+        }
+
+        public String getAccessCode() {
+            return accessCode;
+        }
+
+        /**
+         * The journaled runtime config, empty for the default configuration.
+         */
+        public Map<String, String> getTenant() {
+            return tenant;
+        }
+
+        public String getSignedHash() {
+            return signedHash;
+        }
+
+        public State getState() {
+            return state;
+        }
+    }
+}
@@ -3,7 +3,8 @@ package health.ere.ps.service.idp;
 import health.ere.ps.config.AppConfig;
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.model.idp.client.IdpTokenResult;
-import health.ere.ps.retry.Retrier;
+import health.ere.ps.retry.RetryEngine;
+import health.ere.ps.retry.RetryPolicy;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.certificate.CardCertificateReaderService;
 import health.ere.ps.service.idp.client.IdpClient;
@@ -13,11 +14,15 @@ import io.quarkus.runtime.Startup;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
+import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
 import jakarta.websocket.Session;
 
 import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,26 +38,47 @@ public class BearerTokenService {
     @Inject
     IdpClient idpClient;
     @Inject
+    Instance<IdpClient> idpClients;
+    @Inject
     CardCertificateReaderService cardCertificateReaderService;
     @Inject
     ConnectorCardsService connectorCardsService;
     @Inject
     Event<Exception> exceptionEvent;
+    @Inject
+    RetryEngine retryEngine;
 
+    /**
+     * IDP clients of tenants that configure their own IDP in the runtime config.
+     */
+    private final Map<IdpTenant, IdpClient> tenantIdpClients = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void init() throws Exception {
-        Thread thread = new Thread(() -> {
-            List<Integer> retrySeconds = appConfig.getIdpInitializationRetriesSeconds();
-            int retryPeriodMs = appConfig.getIdpInitializationPeriodMs();
-            boolean initialized = Retrier.callAndRetry(retrySeconds, retryPeriodMs, this::initializeIdp, bool -> bool);
-            if (!initialized) {
-                String msg = String.format("Failed to init IDP client within %d seconds", retryPeriodMs / 1000);
-                throw new RuntimeException(msg);
+        int retryPeriodMs = appConfig.getIdpInitializationPeriodMs();
+        RetryPolicy retryPolicy = idpInitializationPolicy(appConfig.getIdpInitializationRetriesSeconds(), retryPeriodMs);
+        retryEngine.callAsync(RetryEngine.IDP, retryPolicy, () -> {
+            if (!initializeIdp()) {
+                throw new IllegalStateException("IDP client not initialized");
+            }
+            return true;
+        }, e -> true).whenComplete((initialized, t) -> {
+            if (t != null) {
+                log.log(Level.SEVERE, String.format("Failed to init IDP client within %d seconds", retryPeriodMs / 1000), t);
             }
         });
-        thread.setDaemon(true);
-        thread.start();
+    }
+
+    /**
+     * Backoff from the smallest to the largest configured retry delay until the period is over.
+     */
+    static RetryPolicy idpInitializationPolicy(List<Integer> retrySeconds, int retryPeriodMs) {
+        List<Integer> retries = retrySeconds.stream().filter(Objects::nonNull).sorted().toList();
+        if (retries.isEmpty()) {
+            return RetryPolicy.NONE;
+        }
+        return new RetryPolicy(Integer.MAX_VALUE, retries.get(0) * 1000L, retries.get(retries.size() - 1) * 1000L,
+                0.2, retryPeriodMs);
     }
 
     private Boolean initializeIdp() {
@@ -68,7 +94,15 @@ public class BearerTokenService {
     }
 
     public IdpClient getIdpClient(RuntimeConfig runtimeConfig) {
-        return idpClient;
+        IdpTenant tenant = IdpTenant.of(runtimeConfig, appConfig);
+        if (tenant.equals(IdpTenant.of(null, appConfig))) {
+            return idpClient;
+        }
+        return tenantIdpClients.computeIfAbsent(tenant, key -> {
+            IdpClient tenantIdpClient = idpClients.get();
+            tenantIdpClient.init(key.clientId(), key.redirectUrl(), key.baseUrl() + IdpHttpClientService.DISCOVERY_DOCUMENT_URI, true);
+            return tenantIdpClient;
+        });
     }
 
     public String requestBearerToken() {
@@ -89,7 +123,9 @@ public class BearerTokenService {
             X509Certificate x509Certificate = cardCertificateReaderService.retrieveSmcbCardCertificate(
                 cardHandle, runtimeConfig
             );
-            IdpTokenResult idpTokenResult = idpClient.login(x509Certificate, runtimeConfig);
+            IdpTokenResult idpTokenResult = retryEngine.call(RetryEngine.IDP,
+                () -> getIdpClient(runtimeConfig).initializeClientIfNecessary().login(x509Certificate, runtimeConfig),
+                RetryEngine::isTransient);
 
             return idpTokenResult.getAccessToken().getRawString();
         } catch (Exception e) {
@@ -98,4 +134,16 @@ public class BearerTokenService {
             throw new RuntimeException(e);
         }
     }
+
+    record IdpTenant(String baseUrl, String clientId, String redirectUrl) {
+
+        static IdpTenant of(RuntimeConfig runtimeConfig, AppConfig appConfig) {
+            boolean present = runtimeConfig != null;
+            return new IdpTenant(
+                present && runtimeConfig.getIdpBaseURL() != null ? runtimeConfig.getIdpBaseURL() : appConfig.getIdpBaseURL(),
+                present && runtimeConfig.getIdpClientId() != null ? runtimeConfig.getIdpClientId() : appConfig.getIdpClientId(),
+                present && runtimeConfig.getIdpAuthRequestRedirectURL() != null ? runtimeConfig.getIdpAuthRequestRedirectURL() : appConfig.getIdpAuthRequestRedirectURL()
+            );
+        }
+    }
 }
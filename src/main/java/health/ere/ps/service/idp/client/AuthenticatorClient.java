@@ -20,6 +20,7 @@ import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -34,6 +35,7 @@ import jakarta.ws.rs.core.Response;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.RestClientBuilder;
 import org.jose4j.jwt.JwtClaims;
 
@@ -70,6 +72,18 @@ public class AuthenticatorClient {
 
     private static Logger log = Logger.getLogger(AuthenticatorClient.class.getName());
 
+    @ConfigProperty(name = "ere.idp.http.connection-pool-size", defaultValue = "50")
+    int connectionPoolSize = 50;
+
+    @ConfigProperty(name = "ere.idp.http.max-pooled-per-route", defaultValue = "20")
+    int maxPooledPerRoute = 20;
+
+    /**
+     * REST client proxies by endpoint URL. Every proxy keeps its own pool of keep-alive
+     * connections, so the logins of all tenants reuse the TLS connections to the IDP.
+     */
+    private final Map<String, IdpHttpClientService> idpHttpClientServices = new ConcurrentHashMap<>();
+
     public AuthenticatorClient() {
 
     }
@@ -137,7 +151,7 @@ public class AuthenticatorClient {
             return AuthenticationResponse.builder()
                 .code(extractParameterValue(location, "code"))
                 .location(location)
-                /*.ssoToken(extractParameterValue(location, "ssotoken"))*/
+                .ssoToken(UriUtils.extractParameterValueOptional(location, "ssotoken").orElse(null))
                 .build();
         } catch(WebApplicationException ex) {
             throw new IdpClientException("Unexpected Server-Response: " + ex.getResponse().getStatus() + " " + ex.getResponse().readEntity(String.class));
@@ -277,6 +291,7 @@ public class AuthenticatorClient {
         return DiscoveryDocumentResponse.builder()
                 .authorizationEndpoint(discoveryClaims.get("authorization_endpoint").toString())
                 .tokenEndpoint(discoveryClaims.get("token_endpoint").toString())
+                .ssoEndpoint(Optional.ofNullable(discoveryClaims.get("sso_endpoint")).map(Object::toString).orElse(null))
                 .idpSig(retrieveServerCertFromLocation(discoveryClaims.get("uri_puk_idp_sig").toString()))
                 .idpEnc(retrieveServerPuKFromLocation(discoveryClaims.get("uri_puk_idp_enc").toString()))
                 .build();
@@ -346,18 +361,25 @@ public class AuthenticatorClient {
 
     public IdpHttpClientService getIdpHttpClientInstanceByUrl(String url)
             throws IdpClientException {
-        IdpHttpClientService idpHttpClientService;
+        IdpHttpClientService idpHttpClientService = idpHttpClientServices.get(url);
+        if (idpHttpClientService != null) {
+            return idpHttpClientService;
+        }
+
+        URL baseUrl;
 
         try {
-            idpHttpClientService = RestClientBuilder.newBuilder()
-                    .baseUrl(new URL(url))
-                    .connectTimeout(5000, java.util.concurrent.TimeUnit.MILLISECONDS)
-                    .build(IdpHttpClientService.class);
+            baseUrl = new URL(url);
         } catch (MalformedURLException e) {
             throw new IdpClientException("Bad URL: " + url, e);
         }
 
-        return idpHttpClientService;
+        return idpHttpClientServices.computeIfAbsent(url, key -> RestClientBuilder.newBuilder()
+                .baseUrl(baseUrl)
+                .connectTimeout(5000, java.util.concurrent.TimeUnit.MILLISECONDS)
+                .property("resteasy.connectionPoolSize", connectionPoolSize)
+                .property("resteasy.maxPooledPerRoute", maxPooledPerRoute)
+                .build(IdpHttpClientService.class));
     }
 
     public JsonObject getJsonObject(Response response) {
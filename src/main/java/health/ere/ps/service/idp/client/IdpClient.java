@@ -5,10 +5,13 @@ import static org.jose4j.jws.AlgorithmIdentifiers.RSA_PSS_USING_SHA256;
 import java.security.PublicKey;
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
 import java.util.Base64;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import jakarta.enterprise.context.Dependent;
@@ -66,6 +69,12 @@ public class IdpClient implements IIdpClient {
     @ConfigProperty(name = "ere.workflow-service.prescription.server.url")
     String prescriptionServiceURL;
 
+    @ConfigProperty(name = "ere.idp.sso-token.enabled", defaultValue = "true")
+    boolean ssoTokenEnabled = true;
+
+    @ConfigProperty(name = "ere.idp.sso-token.expiry-margin-seconds", defaultValue = "60")
+    long ssoTokenExpiryMarginSeconds = 60;
+
     private final CodeChallengeMethod codeChallengeMethod = CodeChallengeMethod.S256;
 
     @Inject
@@ -79,7 +88,13 @@ public class IdpClient implements IIdpClient {
     private String redirectUrl;
     private String discoveryDocumentUrl;
     private boolean shouldVerifyState;
-    private DiscoveryDocumentResponse discoveryDocumentResponse;
+    private volatile DiscoveryDocumentResponse discoveryDocumentResponse;
+
+    /**
+     * SSO tokens by SMC-B certificate. As long as they are valid, a login only needs the
+     * unsigned challenge and no ExternalAuthenticate of the connector.
+     */
+    final Map<X509Certificate, SsoToken> ssoTokens = new ConcurrentHashMap<>();
 
     public IdpClient() {
     }
@@ -154,10 +169,20 @@ public class IdpClient implements IIdpClient {
 
     public IdpTokenResult login(X509Certificate x509Certificate, RuntimeConfig runtimeConfig) throws IdpJoseException,
             IdpClientException, IdpException {
-        smcbAuthenticatorService.setX509Certificate(x509Certificate);
-        return login(x509Certificate, (pair) -> {
-            return smcbAuthenticatorService.signIdpChallenge(pair, runtimeConfig);
+        SsoToken ssoToken = getValidSsoToken(x509Certificate);
+        if (ssoToken != null) {
+            try {
+                return loginWithSsoToken(ssoToken);
+            } catch (IdpClientException | IdpException | RuntimeException e) {
+                ssoTokens.remove(x509Certificate, ssoToken);
+                logger.info("Login with SSO token failed, signing the challenge with the SMC-B: " + e.getMessage());
+            }
+        }
+        IdpTokenResult idpTokenResult = login(x509Certificate, (pair) -> {
+            return smcbAuthenticatorService.signIdpChallenge(pair, x509Certificate, runtimeConfig);
         });
+        rememberSsoToken(x509Certificate, idpTokenResult);
+        return idpTokenResult;
     }
 
     private IdpTokenResult login(final X509Certificate certificate,
@@ -166,24 +191,8 @@ public class IdpClient implements IIdpClient {
         assertThatClientIsInitialized();
 
         final String codeVerifier = ClientUtilities.generateCodeVerifier();
-        final String nonce = RandomStringUtils.randomAlphanumeric(20);
-
-        // Authorization
         final String state = RandomStringUtils.randomAlphanumeric(20);
-        logger.debug("Performing Authorization with remote-URL: " +
-                discoveryDocumentResponse.getAuthorizationEndpoint());
-        final AuthorizationResponse authorizationResponse =
-                authenticatorClient
-                        .doAuthorizationRequest(AuthorizationRequest.builder()
-                                .clientId(clientId)
-                                .link(discoveryDocumentResponse.getAuthorizationEndpoint())
-                                .codeChallenge(ClientUtilities.generateCodeChallenge(codeVerifier))
-                                .codeChallengeMethod(codeChallengeMethod)
-                                .redirectUri(redirectUrl)
-                                .state(state)
-                                .scopes(prescriptionServiceURL.equals("https://erp-dev.zentral.erp.splitdns.ti-dienste.de") ? scopes_rudev : scopes)
-                                .nonce(nonce)
-                                .build());
+        final AuthorizationResponse authorizationResponse = authorize(codeVerifier, state);
 
         IdpJwe idpJwe = new IdpJwe(signServerChallenge(
                 authorizationResponse.getAuthenticationChallenge().getChallenge().getRawString(),
@@ -199,6 +208,50 @@ public class IdpClient implements IIdpClient {
                                         discoveryDocumentResponse.getAuthorizationEndpoint())
                                 .signedChallenge(idpJwe)
                                 .build());
+
+        return retrieveAccessToken(authenticationResponse, state, codeVerifier, authenticationResponse.getSsoToken());
+    }
+
+    private IdpTokenResult loginWithSsoToken(SsoToken ssoToken) throws IdpClientException, IdpException {
+        final String codeVerifier = ClientUtilities.generateCodeVerifier();
+        final String state = RandomStringUtils.randomAlphanumeric(20);
+        final AuthorizationResponse authorizationResponse = authorize(codeVerifier, state);
+
+        logger.debug("Performing Authentication with SSO token with remote-URL: " +
+                discoveryDocumentResponse.getSsoEndpoint());
+        final AuthenticationResponse authenticationResponse =
+                authenticatorClient
+                        .performAuthenticationWithSsoToken(AuthenticationRequest.builder()
+                                .authenticationEndpointUrl(discoveryDocumentResponse.getSsoEndpoint())
+                                .ssoToken(ssoToken.rawString())
+                                .challengeToken(authorizationResponse.getAuthenticationChallenge().getChallenge())
+                                .build());
+
+        return retrieveAccessToken(authenticationResponse, state, codeVerifier, ssoToken.rawString());
+    }
+
+    private AuthorizationResponse authorize(String codeVerifier, String state) throws IdpClientException, IdpException {
+        final String nonce = RandomStringUtils.randomAlphanumeric(20);
+
+        // Authorization
+        logger.debug("Performing Authorization with remote-URL: " +
+                discoveryDocumentResponse.getAuthorizationEndpoint());
+        return authenticatorClient
+                .doAuthorizationRequest(AuthorizationRequest.builder()
+                        .clientId(clientId)
+                        .link(discoveryDocumentResponse.getAuthorizationEndpoint())
+                        .codeChallenge(ClientUtilities.generateCodeChallenge(codeVerifier))
+                        .codeChallengeMethod(codeChallengeMethod)
+                        .redirectUri(redirectUrl)
+                        .state(state)
+                        .scopes(prescriptionServiceURL.equals("https://erp-dev.zentral.erp.splitdns.ti-dienste.de") ? scopes_rudev : scopes)
+                        .nonce(nonce)
+                        .build());
+    }
+
+    private IdpTokenResult retrieveAccessToken(AuthenticationResponse authenticationResponse, String state,
+                                               String codeVerifier, String ssoToken)
+            throws IdpClientException, IdpException {
         if (shouldVerifyState) {
             final String stringInTokenUrl = UriUtils
                     .extractParameterValue(authenticationResponse.getLocation(), "state");
@@ -214,13 +267,38 @@ public class IdpClient implements IIdpClient {
                 .tokenUrl(discoveryDocumentResponse.getTokenEndpoint())
                 .clientId(clientId)
                 .code(authenticationResponse.getCode())
-                .ssoToken(authenticationResponse.getSsoToken())
+                .ssoToken(ssoToken)
                 .redirectUrl(redirectUrl)
                 .codeVerifier(codeVerifier)
                 .idpEnc(discoveryDocumentResponse.getIdpEnc())
                 .build());
     }
 
+    private SsoToken getValidSsoToken(X509Certificate x509Certificate) {
+        if (!ssoTokenEnabled || x509Certificate == null || discoveryDocumentResponse == null
+                || StringUtils.isEmpty(discoveryDocumentResponse.getSsoEndpoint())) {
+            return null;
+        }
+        SsoToken ssoToken = ssoTokens.get(x509Certificate);
+        if (ssoToken != null && ssoToken.expiresAt().isBefore(ZonedDateTime.now().plusSeconds(ssoTokenExpiryMarginSeconds))) {
+            ssoTokens.remove(x509Certificate, ssoToken);
+            return null;
+        }
+        return ssoToken;
+    }
+
+    private void rememberSsoToken(X509Certificate x509Certificate, IdpTokenResult idpTokenResult) {
+        IdpJwe ssoToken = idpTokenResult.getSsoToken();
+        if (!ssoTokenEnabled || x509Certificate == null || ssoToken == null || ssoToken.getRawString() == null) {
+            return;
+        }
+        try {
+            ssoTokens.put(x509Certificate, new SsoToken(ssoToken.getRawString(), ssoToken.getExpiresAt()));
+        } catch (RuntimeException e) {
+            logger.debug("SSO token without expiry is not used for later logins: " + e.getMessage());
+        }
+    }
+
     private void assertThatIdpIdentityIsValid(final PkiIdentity idpIdentity) {
         Objects.requireNonNull(idpIdentity);
         Objects.requireNonNull(idpIdentity.getCertificate());
@@ -244,7 +322,21 @@ public class IdpClient implements IIdpClient {
         return this;
     }
 
+    /**
+     * Retrieves the discovery document only if no earlier call did, so clients of other
+     * tenants are initialized on their first login.
+     */
+    public synchronized IdpClient initializeClientIfNecessary() throws IdpClientException, IdpException, IdpJoseException {
+        if (discoveryDocumentResponse == null) {
+            initializeClient();
+        }
+        return this;
+    }
+
     public String getDiscoveryDocumentUrl() {
         return discoveryDocumentUrl;
     }
+
+    record SsoToken(String rawString, ZonedDateTime expiresAt) {
+    }
 }
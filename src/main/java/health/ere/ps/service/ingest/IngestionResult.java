@@ -0,0 +1,75 @@
+package health.ere.ps.service.ingest;
+
+import java.util.List;
+
+/**
+ * The outcome of one page of an ingested document: the number of bundles built from it and
+ * the validation errors of the bundles, or the failure when no bundles could be built. The
+ * bundles of a page with errors are not sent to the clients. A page without text, e.g. the
+ * back page of a scan, is skipped.
+ */
+public class IngestionResult {
+
+    private final String source;
+    private final int page;
+    private final int bundles;
+    private final List<String> errors;
+    private final String failure;
+    private final boolean skipped;
+
+    IngestionResult(String source, int page, int bundles, List<String> errors, String failure) {
+        this(source, page, bundles, errors, failure, false);
+    }
+
+    private IngestionResult(String source, int page, int bundles, List<String> errors, String failure, boolean skipped) {
+        this.source = source;
+        this.page = page;
+        this.bundles = bundles;
+        this.errors = errors;
+        this.failure = failure;
+        this.skipped = skipped;
+    }
+
+    static IngestionResult failed(String source, int page, Exception e) {
+        return new IngestionResult(source, page, 0, List.of(), e.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+
+    static IngestionResult skipped(String source, int page) {
+        return new IngestionResult(source, page, 0, List.of(), null, true);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getBundles() {
+        return bundles;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return true if the bundles of the page were sent to the clients
+     */
+    public boolean isSent() {
+        return bundles > 0 && errors.isEmpty() && failure == null;
+    }
+}
@@ -0,0 +1,205 @@
+package health.ere.ps.service.ingest;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Watches ere.ingest.directory for the PDFs and ZIPs of a scanning station and submits them to
+ * the {@link Muster16IngestionService}. A file is submitted when its size did not change for
+ * ere.ingest.settle-ms, so a scan that is still being written is not read, and while the
+ * ingestion service has capacity, so the watch thread never blocks. Afterwards it is moved to
+ * processed/ or, if it could not be read, to failed/. When the watch service lost events the
+ * directory is listed again.
+ */
+@Startup
+@ApplicationScoped
+public class Muster16DirectoryWatcher {
+
+    private static final Logger log = Logger.getLogger(Muster16DirectoryWatcher.class.getName());
+
+    @ConfigProperty(name = "ere.ingest.directory")
+    Optional<String> directory = Optional.empty();
+
+    @ConfigProperty(name = "ere.ingest.settle-ms", defaultValue = "1000")
+    long settleMs = 1000;
+
+    @Inject
+    Muster16IngestionService ingestionService;
+
+    // file to its size at the last poll
+    private final Map<Path, Long> pending = new HashMap<>();
+    // submitted files until they are moved
+    private final Set<Path> submitted = ConcurrentHashMap.newKeySet();
+    private Path inbox;
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    void init() {
+        if (directory.isEmpty()) {
+            return;
+        }
+        inbox = Path.of(directory.get());
+        try {
+            Files.createDirectories(inbox.resolve("processed"));
+            Files.createDirectories(inbox.resolve("failed"));
+            watchService = FileSystems.getDefault().newWatchService();
+            inbox.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Could not watch " + inbox + " for Muster 16 scans", e);
+            return;
+        }
+        // files that arrived while the app was stopped
+        scan();
+        running = true;
+        watchThread = new Thread(this::watchLoop, "ere-ingest-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("Ingesting Muster 16 scans from " + inbox);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not close the watch service", e);
+        }
+    }
+
+    private void watchLoop() {
+        while (running) {
+            try {
+                WatchKey key = watchService.poll(settleMs, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            log.info("Missed events of " + inbox + ", listing it again");
+                            scan();
+                        } else if (event.context() instanceof Path name) {
+                            add(inbox.resolve(name));
+                        }
+                    }
+                    key.reset();
+                }
+                submitSettled();
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void scan() {
+        try (Stream<Path> files = Files.list(inbox)) {
+            files.sorted().forEach(this::add);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not list " + inbox, e);
+        }
+    }
+
+    private void add(Path file) {
+        if (isIngestible(file) && !submitted.contains(file)) {
+            pending.putIfAbsent(file, -1L);
+        }
+    }
+
+    private void submitSettled() {
+        Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && ingestionService.hasCapacity()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            Path file = entry.getKey();
+            long size;
+            try {
+                size = Files.size(file);
+            } catch (IOException e) {
+                // moved or deleted by someone else
+                iterator.remove();
+                continue;
+            }
+            if (size > 0 && size == entry.getValue()) {
+                iterator.remove();
+                submit(file);
+            } else {
+                entry.setValue(size);
+            }
+        }
+    }
+
+    /**
+     * Submits the file without reading it, the ingestion service reads it when it is ingested.
+     */
+    void submit(Path file) {
+        CompletableFuture<List<IngestionResult>> future;
+        submitted.add(file);
+        try {
+            if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                future = ingestionService.submitZip(file);
+            } else {
+                future = ingestionService.submit(file);
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not read " + file, e);
+            move(file, "failed");
+            return;
+        }
+        future.whenComplete((results, throwable) -> {
+            boolean failed = throwable != null || results.stream().anyMatch(IngestionResult::isFailed);
+            move(file, failed ? "failed" : "processed");
+        });
+    }
+
+    private void move(Path file, String target) {
+        try {
+            Files.move(file, inbox.resolve(target).resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not move " + file + " to " + target, e);
+        } finally {
+            submitted.remove(file);
+        }
+    }
+
+    private static boolean isIngestible(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return (name.endsWith(".pdf") || name.endsWith(".zip")) && Files.isRegularFile(file);
+    }
+}
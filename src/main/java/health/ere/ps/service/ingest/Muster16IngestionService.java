@@ -0,0 +1,362 @@
+package health.ere.ps.service.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hl7.fhir.r4.model.Bundle;
+
+import ca.uhn.fhir.parser.IParser;
+import health.ere.ps.config.UserConfig;
+import health.ere.ps.event.BundlesEvent;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+import health.ere.ps.service.extractor.Muster16FormMapper;
+import health.ere.ps.service.extractor.SVGExtractor;
+import health.ere.ps.service.extractor.TemplateProfile;
+import health.ere.ps.service.fhir.FHIRService;
+import health.ere.ps.service.fhir.bundle.PrescriptionBundlesBuilder;
+import health.ere.ps.validation.fhir.bundle.PrescriptionBundleValidator;
+
+/**
+ * Ingests scanned Muster 16 forms in bulk, e.g. the stack of a scanning station at the end of
+ * the day. Every PDF is loaded, extracted, built into bundles and validated on the ingestion
+ * pool. The bundles of a page are sent as a BundlesEvent as soon as they are valid, pages
+ * without text like the back pages of a scan are skipped.
+ *
+ * At most ere.ingest.max-in-flight documents are ingested at once, further submissions are
+ * queued without blocking the caller. Documents of ZIP files and of the watched directory are
+ * read only when they are ingested. A document may have at most ere.ingest.max-document-bytes
+ * and a ZIP at most ere.ingest.max-zip-entries entries, so a zip bomb cannot exhaust the heap.
+ */
+@ApplicationScoped
+public class Muster16IngestionService {
+
+    private static final Logger log = Logger.getLogger(Muster16IngestionService.class.getName());
+
+    @Inject
+    UserConfig userConfig;
+
+    @Inject
+    PrescriptionBundleValidator prescriptionBundleValidator;
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    @Inject
+    Event<BundlesEvent> bundleEvent;
+
+    @ConfigProperty(name = "ere.ingest.max-in-flight", defaultValue = "32")
+    int maxInFlight = 32;
+
+    @ConfigProperty(name = "ere.ingest.max-document-bytes", defaultValue = "52428800")
+    int maxDocumentBytes = 50 * 1024 * 1024;
+
+    @ConfigProperty(name = "ere.ingest.max-zip-entries", defaultValue = "1000")
+    int maxZipEntries = 1000;
+
+    private final Map<String, SVGExtractor> extractors = new ConcurrentHashMap<>();
+    // documents that wait for one of the maxInFlight slots
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // bytes of the documents that are read and not yet ingested
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bundles = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Submits a PDF, it is queued while ere.ingest.max-in-flight documents are being ingested.
+     */
+    public CompletableFuture<List<IngestionResult>> submit(String source, byte[] pdf) {
+        return submit(source, () -> pdf);
+    }
+
+    /**
+     * Submits a PDF file, it is read when it is ingested.
+     */
+    public CompletableFuture<List<IngestionResult>> submit(Path file) {
+        return submit(file.getFileName().toString(), () -> {
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                return read(inputStream);
+            }
+        });
+    }
+
+    /**
+     * Submits the PDFs of an uploaded ZIP. The upload is spooled to a temporary file, so like
+     * with {@link #submitZip(Path)} every entry is read when it is ingested. The returned future
+     * completes when all of them are ingested, then the file is deleted.
+     *
+     * @throws IOException if the ZIP has more than ere.ingest.max-zip-entries entries
+     */
+    public CompletableFuture<List<IngestionResult>> submitZip(InputStream inputStream) throws IOException {
+        Path spooled = Files.createTempFile("ere-ingest-", ".zip");
+        CompletableFuture<List<IngestionResult>> future;
+        try {
+            Files.copy(inputStream, spooled, StandardCopyOption.REPLACE_EXISTING);
+            future = submitZip(spooled);
+        } catch (IOException | RuntimeException e) {
+            delete(spooled);
+            throw e;
+        }
+        return future.whenComplete((results, throwable) -> delete(spooled));
+    }
+
+    /**
+     * Submits the PDFs of a ZIP file, every entry is read when it is ingested.
+     *
+     * @throws IOException if the file is no ZIP or has more than ere.ingest.max-zip-entries entries
+     */
+    public CompletableFuture<List<IngestionResult>> submitZip(Path file) throws IOException {
+        ZipFile zipFile = new ZipFile(file.toFile());
+        List<CompletableFuture<List<IngestionResult>>> futures = new ArrayList<>();
+        try {
+            checkEntryCount(zipFile.size());
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (isPdf(entry)) {
+                    futures.add(submit(entry.getName(), () -> {
+                        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                            return read(inputStream);
+                        }
+                    }));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            zipFile.close();
+            throw e;
+        }
+        return all(futures).whenComplete((results, throwable) -> {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Could not close " + file, e);
+            }
+        });
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("maxInFlight", maxInFlight);
+        statistics.put("inFlight", inFlight.get());
+        statistics.put("waiting", waiting.size());
+        statistics.put("bufferedBytes", bufferedBytes.get());
+        statistics.put("documents", documents.sum());
+        statistics.put("pages", pages.sum());
+        statistics.put("bundles", bundles.sum());
+        statistics.put("invalid", invalid.sum());
+        statistics.put("skipped", skipped.sum());
+        statistics.put("failed", failed.sum());
+        return statistics;
+    }
+
+    /**
+     * @return false while documents are queued, e.g. for the directory watcher to leave further
+     * files in the directory
+     */
+    public boolean hasCapacity() {
+        return inFlight.get() < Math.max(1, maxInFlight) && waiting.isEmpty();
+    }
+
+    List<IngestionResult> ingest(String source, byte[] pdf) {
+        try {
+            if (pdf.length > maxDocumentBytes) {
+                throw new IOException(source + " is larger than " + maxDocumentBytes + " bytes");
+            }
+            List<Map<String, String>> extracted = getExtractor().extractPages(pdf);
+            List<IngestionResult> results = new ArrayList<>(extracted.size());
+            for (int i = 0; i < extracted.size(); i++) {
+                results.add(ingestPage(source, i + 1, extracted.get(i)));
+            }
+            return results;
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            return List.of(failed(source, e));
+        }
+    }
+
+    private IngestionResult ingestPage(String source, int page, Map<String, String> fields) {
+        pages.increment();
+        if (SVGExtractor.isBlank(fields)) {
+            skipped.increment();
+            return IngestionResult.skipped(source, page);
+        }
+        try {
+            List<Bundle> pageBundles = new PrescriptionBundlesBuilder(Muster16FormMapper.toForm(fields), userConfig.getPruefnummer())
+                .createBundles();
+            if (pageBundles.isEmpty()) {
+                skipped.increment();
+                return IngestionResult.skipped(source, page);
+            }
+            // parsers are not thread safe
+            IParser jsonParser = FHIRService.getFhirContext().newJsonParser();
+            List<String> errors = new ArrayList<>();
+            for (Bundle bundle : pageBundles) {
+                prescriptionBundleValidator.validateResource(jsonParser.encodeResourceToString(bundle), errors);
+            }
+            bundles.add(pageBundles.size());
+            if (!errors.isEmpty()) {
+                // the clients only get bundles that they can sign
+                invalid.increment();
+            } else {
+                bundleEvent.fireAsync(new BundlesEvent(pageBundles));
+            }
+            return new IngestionResult(source, page, pageBundles.size(), errors, null);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Could not create bundles for page " + page + " of " + source, e);
+            failed.increment();
+            return IngestionResult.failed(source, page, e);
+        }
+    }
+
+    /**
+     * Runs the ingestion of the document in one of the maxInFlight slots, the document is read
+     * when the ingestion starts.
+     */
+    private CompletableFuture<List<IngestionResult>> submit(String source, Callable<byte[]> pdf) {
+        documents.increment();
+        CompletableFuture<List<IngestionResult>> result = new CompletableFuture<>();
+        waiting.add(() -> {
+            try {
+                getExecutor().execute(() -> {
+                    try {
+                        result.complete(ingest(source, pdf));
+                    } finally {
+                        finished();
+                    }
+                });
+            } catch (RuntimeException e) {
+                result.complete(List.of(failed(source, e)));
+                finished();
+            }
+        });
+        startWaiting();
+        return result;
+    }
+
+    private List<IngestionResult> ingest(String source, Callable<byte[]> pdf) {
+        byte[] bytes;
+        try {
+            bytes = pdf.call();
+        } catch (Exception e) {
+            return List.of(failed(source, e));
+        }
+        bufferedBytes.addAndGet(bytes.length);
+        try {
+            return ingest(source, bytes);
+        } finally {
+            bufferedBytes.addAndGet(-bytes.length);
+        }
+    }
+
+    private void finished() {
+        inFlight.decrementAndGet();
+        startWaiting();
+    }
+
+    private void startWaiting() {
+        while (!waiting.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= Math.max(1, maxInFlight)) {
+                // the document that finishes next starts the waiting ones
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable next = waiting.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+            } else {
+                next.run();
+            }
+        }
+    }
+
+    /**
+     * Reads at most maxDocumentBytes, a zip entry can be much larger than its compressed size.
+     */
+    private byte[] read(InputStream inputStream) throws IOException {
+        byte[] bytes = inputStream.readNBytes(maxDocumentBytes);
+        if (bytes.length == maxDocumentBytes && inputStream.read() != -1) {
+            throw new IOException("Document is larger than " + maxDocumentBytes + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not delete " + file, e);
+        }
+    }
+
+    private void checkEntryCount(int entries) throws IOException {
+        if (entries > maxZipEntries) {
+            throw new IOException("ZIP has more than " + maxZipEntries + " entries");
+        }
+    }
+
+    private IngestionResult failed(String source, Exception e) {
+        log.log(Level.WARNING, "Could not ingest " + source, e);
+        failed.increment();
+        return IngestionResult.failed(source, 0, e);
+    }
+
+    private static boolean isPdf(ZipEntry entry) {
+        return !entry.isDirectory() && entry.getName().toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    private static CompletableFuture<List<IngestionResult>> all(List<CompletableFuture<List<IngestionResult>>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<IngestionResult> results = new ArrayList<>();
+            futures.forEach(future -> results.addAll(future.join()));
+            return results;
+        });
+    }
+
+    /**
+     * One extractor per template profile. It has no pool, the pages of a document are
+     * extracted on the thread of the document.
+     */
+    private SVGExtractor getExtractor() {
+        String profile = userConfig.getMuster16TemplateConfiguration();
+        return extractors.computeIfAbsent(profile != null ? profile : TemplateProfile.DENS.name(), SVGExtractor::new);
+    }
+
+    private Executor getExecutor() {
+        return observerExecutors != null ? observerExecutors.getPool(Workload.INGESTION) : Runnable::run;
+    }
+}
@@ -0,0 +1,155 @@
+package health.ere.ps.service.job;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long running workflow call that is executed by the {@link JobService}. The getters
+ * are the job status that is returned by the jobs endpoint.
+ */
+public class Job<T> {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED, TIMED_OUT
+    }
+
+    private final String id;
+    private final String type;
+    private final boolean interruptible;
+    private final long createdAt = System.currentTimeMillis();
+    private final CompletableFuture<T> completion = new CompletableFuture<>();
+    private volatile Status status = Status.QUEUED;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile boolean rejected;
+    private volatile Future<?> future;
+
+    Job(String id, String type, boolean interruptible) {
+        this.id = id;
+        this.type = type;
+        this.interruptible = interruptible;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return false if the job is not cancelled or timed out once it runs
+     */
+    public boolean isInterruptible() {
+        return interruptible;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return true if the saturated jobs pool did not accept the job, it may be submitted again later
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    public T getResult() {
+        return status == Status.DONE ? completion.getNow(null) : null;
+    }
+
+    /**
+     * Completes with the result, or exceptionally with the failure, a {@link CancellationException}
+     * or a {@link TimeoutException}.
+     */
+    public CompletionStage<T> completion() {
+        return completion;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * @return false if the job was cancelled while it was queued
+     */
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        return true;
+    }
+
+    void run(Callable<T> action) {
+        try {
+            T result = action.call();
+            if (finish(Status.DONE, null)) {
+                completion.complete(result);
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    void fail(Throwable t) {
+        if (finish(Status.FAILED, t.toString())) {
+            completion.completeExceptionally(t);
+        }
+    }
+
+    void reject(RejectedExecutionException e) {
+        rejected = true;
+        fail(e);
+    }
+
+    /**
+     * Interrupts the thread that runs the job, so retries and waits of the connector and
+     * prescription server calls stop. A SOAP or HTTP call that is already running is not
+     * stopped by the interrupt, it ends with its own timeout and its outcome is discarded. A
+     * job that is not interruptible can only be cancelled while it is queued.
+     */
+    boolean cancel(Status cancelStatus) {
+        String message = cancelStatus == Status.TIMED_OUT ? "Job " + id + " timed out" : "Job " + id + " was cancelled";
+        synchronized (this) {
+            if ((status == Status.RUNNING && !interruptible) || !finish(cancelStatus, message)) {
+                return false;
+            }
+        }
+        Future<?> running = future;
+        if (running != null) {
+            running.cancel(true);
+        }
+        completion.completeExceptionally(cancelStatus == Status.TIMED_OUT ? new TimeoutException(message) : new CancellationException(message));
+        return true;
+    }
+
+    private synchronized boolean finish(Status finalStatus, String finalError) {
+        if (status != Status.QUEUED && status != Status.RUNNING) {
+            return false;
+        }
+        error = finalError;
+        finishedAt = System.currentTimeMillis();
+        status = finalStatus;
+        return true;
+    }
+}
@@ -0,0 +1,101 @@
+package health.ere.ps.service.job;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Runs long running workflow calls off the HTTP worker threads on the bounded jobs pool. An
+ * interruptible job is cancelled after the timeout, which starts when the job runs, and its
+ * status can be polled until the retention time is over. Cancelling interrupts the job thread
+ * but does not abort connector SOAP I/O that is already in progress. Timeouts and the removal
+ * after the retention time run on the scheduler of {@link ObserverExecutors}. A job that the
+ * saturated pool rejects fails with a RejectedExecutionException, the resource answers it
+ * with 503 and Retry-After.
+ */
+@ApplicationScoped
+public class JobService {
+
+    @ConfigProperty(name = "ere.jobs.timeout-seconds", defaultValue = "300")
+    long timeoutSeconds = 300;
+
+    @ConfigProperty(name = "ere.jobs.retention-minutes", defaultValue = "15")
+    long retentionMinutes = 15;
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    private final Map<String, Job<?>> jobs = new ConcurrentHashMap<>();
+    Executor executor;
+
+    @PostConstruct
+    void init() {
+        executor = observerExecutors.getPool(Workload.JOBS);
+    }
+
+    public <T> Job<T> submit(String type, Callable<T> action) {
+        return submit(type, true, action);
+    }
+
+    /**
+     * @param interruptible false for calls that must not be stopped halfway, e.g. because they
+     *                      create or activate a Task. Once such a job runs it is neither timed
+     *                      out nor cancelled and completes with the real outcome.
+     * @return the job, failed with a RejectedExecutionException if the jobs pool is saturated
+     */
+    public <T> Job<T> submit(String type, boolean interruptible, Callable<T> action) {
+        Job<T> job = new Job<>(UUID.randomUUID().toString(), type, interruptible);
+        jobs.put(job.getId(), job);
+        job.completion().whenComplete((result, t) ->
+            observerExecutors.schedule(() -> jobs.remove(job.getId()), retentionMinutes, TimeUnit.MINUTES));
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            if (!job.start()) {
+                return;
+            }
+            ScheduledFuture<?> timeout = interruptible
+                ? observerExecutors.schedule(() -> job.cancel(Job.Status.TIMED_OUT), timeoutSeconds, TimeUnit.SECONDS)
+                : null;
+            try {
+                job.run(action);
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+        }, null);
+        job.setFuture(task);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            job.reject(e);
+        }
+        return job;
+    }
+
+    public Optional<Job<?>> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * @return false if there is no such job, it already finished or it is not interruptible and runs
+     */
+    public boolean cancel(String id) {
+        Job<?> job = jobs.get(id);
+        return job != null && job.cancel(Job.Status.CANCELLED);
+    }
+}
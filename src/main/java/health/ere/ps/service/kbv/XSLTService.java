@@ -1,11 +1,11 @@
 package health.ere.ps.service.kbv;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -17,20 +17,22 @@ import jakarta.enterprise.event.ObservesAsync;
 import jakarta.inject.Inject;
 import javax.xml.XMLConstants;
 import javax.xml.transform.ErrorListener;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Bundle;
 
 import ca.uhn.fhir.context.FhirContext;
 import health.ere.ps.event.HTMLBundlesEvent;
 import health.ere.ps.event.ReadyToSignBundlesEvent;
+import health.ere.ps.service.executor.FanOut;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
 import health.ere.ps.service.fhir.FHIRService;
 import health.ere.ps.websocket.ExceptionWithReplyToException;
 
@@ -41,19 +43,46 @@ public class XSLTService {
 
     private static final FhirContext fhirContext = FHIRService.getFhirContext();
 
+    private static final ErrorListener ERROR_LISTENER = new ErrorListener() {
+        private static final String MSG = "Error in XSLT:";
+
+        @Override
+        public void warning(TransformerException exception) {
+            log.warning(MSG + exception);
+
+        }
+
+        @Override
+        public void fatalError(TransformerException exception) {
+            log.severe(MSG + exception);
+
+        }
+
+        @Override
+        public void error(TransformerException exception) {
+            log.severe(MSG + exception);
+        }
+    };
+
     @Inject
     Event<Exception> exceptionEvent;
 
     @Inject
     Event<HTMLBundlesEvent> hTMLBundlesEvent;
 
-    Transformer transformer;
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    @ConfigProperty(name = "ere.xslt.render-concurrency", defaultValue = "4")
+    int renderConcurrency = 4;
+
+    // compiled stylesheet, thread safe, every transformation creates its own Transformer from it
+    Templates templates;
 
     @PostConstruct
     public void init() {
 
         try {
-            // Step 4: Setup JAXP using identity transformer
             TransformerFactory factory = TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl", null);
             factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
             factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
@@ -65,32 +94,12 @@ public class XSLTService {
             String systemId = this.getClass().getResource(xslPath).toExternalForm();
             StreamSource xslt = new StreamSource(inputStream, systemId);
             xslt.setPublicId(systemId);
-            factory.setErrorListener(new ErrorListener() {
-                private static final String MSG = "Error in XSLT:";
-
-                @Override
-                public void warning(TransformerException exception) {
-                    log.warning(MSG + exception);
+            factory.setErrorListener(ERROR_LISTENER);
 
-                }
-
-                @Override
-                public void fatalError(TransformerException exception) {
-                    log.severe(MSG + exception);
-
-                }
-
-                @Override
-                public void error(TransformerException exception) {
-                    log.severe(MSG + exception);
-                }
-            });
-
-            transformer = factory.newTransformer(xslt);
+            templates = factory.newTemplates(xslt);
         } catch (Exception e) {
             log.log(Level.SEVERE, "Could not init XSLTService", e);
         }
-
     }
 
     public String generateHtmlForBundle(Bundle bundle) throws IOException, TransformerException {
@@ -99,25 +108,12 @@ public class XSLTService {
     }
 
     public String generateHtmlForString(String xmlString) throws IOException, TransformerException {
-        File xml = Files.createTempFile("bundle-", ".xml").toFile();
-        Files.write(xml.toPath(), xmlString.getBytes(StandardCharsets.UTF_8));
-
-        // Step 2: Set up output stream.
-        // Note: Using BufferedOutputStream for performance reasons (helpful with
-        // FileOutputStreams).
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-        // Step 5: Setup input and output for XSLT transformation
-        // Setup input stream
-        Source src = new StreamSource(xml);
+        Transformer transformer = templates.newTransformer();
+        transformer.setErrorListener(ERROR_LISTENER);
 
-        // Resulting SAX events (the generated FO) must be piped through to FOP
-        Result res = new StreamResult(out);
-
-        // Step 6: Start XSLT transformation and FOP processing
-        transformer.transform(src, res);
-
-        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        StringWriter out = new StringWriter(xmlString.length());
+        transformer.transform(new StreamSource(new StringReader(xmlString)), new StreamResult(out));
+        return out.toString();
     }
 
     public void onReadyToSignBundlesEvent(@ObservesAsync ReadyToSignBundlesEvent readyToSignBundlesEvent) {
@@ -127,14 +123,17 @@ public class XSLTService {
         List<String> htmlBundlesList;
 
         try {
-            htmlBundlesList = readyToSignBundlesEvent.listOfListOfBundles.stream().flatMap(l -> l.stream()).map(bundle -> {
+            // the bundles are rendered on the rendering pool, the result keeps the order of the bundles
+            List<Bundle> bundles = readyToSignBundlesEvent.listOfListOfBundles.stream().flatMap(l -> l.stream()).collect(Collectors.toList());
+            Executor executor = observerExecutors != null ? observerExecutors.getPool(Workload.RENDERING) : Runnable::run;
+            htmlBundlesList = FanOut.map(bundles, executor, renderConcurrency, bundle -> {
                 try {
                     return generateHtmlForBundle(bundle);
                 } catch (Exception e) {
                     exceptionEvent.fireAsync(new ExceptionWithReplyToException(e, readyToSignBundlesEvent.getReplyTo(), readyToSignBundlesEvent.getReplyToMessageId()));
                     return "";
                 }
-            }).collect(Collectors.toList());
+            });
             hTMLBundlesEvent.fireAsync(new HTMLBundlesEvent(htmlBundlesList, readyToSignBundlesEvent.getReplyTo(), readyToSignBundlesEvent.getReplyToMessageId()));
         } catch(Exception ex) {
             exceptionEvent.fireAsync(new ExceptionWithReplyToException(ex, readyToSignBundlesEvent.getReplyTo(), readyToSignBundlesEvent.getReplyToMessageId()));
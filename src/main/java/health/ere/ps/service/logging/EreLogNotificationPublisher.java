@@ -0,0 +1,201 @@
+package health.ere.ps.service.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.inject.spi.CDI;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import health.ere.ps.event.EreLogNotificationBatchEvent;
+import health.ere.ps.event.EreLogNotificationEvent;
+import health.ere.ps.service.common.util.BundleJsonInfoExtractor;
+
+/**
+ * Decouples log notification publishing from the logging thread.
+ *
+ * {@link EreLogger} only puts a pending notification into a lock-free ring buffer. A
+ * single daemon thread drains the buffer every batch interval, extracts the bundle
+ * info and fires one {@link EreLogNotificationBatchEvent} per interval. Notifications
+ * of the same system context above the configured rate per second are dropped, as
+ * are notifications that do not fit into the buffer.
+ *
+ * Configuration (read once on first use):
+ * ere.logging.notification.batch-interval-ms (default 250)
+ * ere.logging.notification.buffer-size (default 1024)
+ * ere.logging.notification.rate-limit-per-second (default 20, per system context)
+ */
+public class EreLogNotificationPublisher {
+
+    private static final Logger log = Logger.getLogger(EreLogNotificationPublisher.class.getName());
+
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private static volatile EreLogNotificationPublisher instance;
+
+    private final NotificationRingBuffer<PendingNotification> buffer;
+    private final long batchIntervalMs;
+    private final int rateLimitPerSecond;
+    private final Map<String, RateWindow> rateWindows = new ConcurrentHashMap<>();
+    private final AtomicLong droppedFull = new AtomicLong();
+    private final AtomicLong droppedRateLimited = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+    private Event<EreLogNotificationBatchEvent> batchEvent;
+
+    EreLogNotificationPublisher(int bufferSize, long batchIntervalMs, int rateLimitPerSecond) {
+        this.buffer = new NotificationRingBuffer<>(bufferSize);
+        this.batchIntervalMs = batchIntervalMs;
+        this.rateLimitPerSecond = rateLimitPerSecond;
+    }
+
+    public static EreLogNotificationPublisher getInstance() {
+        EreLogNotificationPublisher publisher = instance;
+        if (publisher == null) {
+            synchronized (EreLogNotificationPublisher.class) {
+                publisher = instance;
+                if (publisher == null) {
+                    publisher = new EreLogNotificationPublisher(
+                            configValue("ere.logging.notification.buffer-size", 1024),
+                            configValue("ere.logging.notification.batch-interval-ms", 250),
+                            configValue("ere.logging.notification.rate-limit-per-second", 20));
+                    publisher.start();
+                    instance = publisher;
+                }
+            }
+        }
+        return publisher;
+    }
+
+    /**
+     * Never blocks and never throws, it is called from within {@link EreLogger}.
+     */
+    public boolean publish(List<String> systemContextList, String simpleLogMessage, String status,
+                           String logMessage, List<String> logMessageDetails, String bundleJson) {
+        if (!tryAcquire(String.join(",", systemContextList))) {
+            droppedRateLimited.incrementAndGet();
+            return false;
+        }
+        if (!buffer.offer(new PendingNotification(systemContextList, simpleLogMessage, status,
+                logMessage, logMessageDetails, bundleJson))) {
+            droppedFull.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long getDroppedFullCount() {
+        return droppedFull.get();
+    }
+
+    public long getDroppedRateLimitedCount() {
+        return droppedRateLimited.get();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    public int getPendingCount() {
+        return buffer.size();
+    }
+
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ere-log-notification-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::deliverPending, batchIntervalMs, batchIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    void deliverPending() {
+        try {
+            List<PendingNotification> pending = new ArrayList<>();
+            while (buffer.drainTo(pending, MAX_BATCH_SIZE) > 0) {
+                List<EreLogNotificationEvent> notifications = new ArrayList<>(pending.size());
+                for (PendingNotification notification : pending) {
+                    notifications.add(notification.toEvent());
+                }
+                pending.clear();
+                fire(new EreLogNotificationBatchEvent(notifications));
+                delivered.addAndGet(notifications.size());
+            }
+        } catch (RuntimeException e) {
+            // the scheduler would stop on an exception, keep it alive
+            log.log(Level.WARNING, "Could not deliver log notifications", e);
+        }
+    }
+
+    void fire(EreLogNotificationBatchEvent event) {
+        if (batchEvent == null) {
+            try {
+                batchEvent = CDI.current().getBeanManager().getEvent().select(EreLogNotificationBatchEvent.class);
+            } catch (IllegalStateException e) {
+                // no CDI container e.g. in plain unit tests
+                return;
+            }
+        }
+        batchEvent.fireAsync(event);
+    }
+
+    boolean tryAcquire(String systemContext) {
+        long second = System.currentTimeMillis() / 1000;
+        RateWindow window = rateWindows.computeIfAbsent(systemContext, key -> new RateWindow());
+        long windowSecond = window.second.get();
+        if (windowSecond != second && window.second.compareAndSet(windowSecond, second)) {
+            window.count.set(0);
+        }
+        return window.count.incrementAndGet() <= rateLimitPerSecond;
+    }
+
+    private static int configValue(String name, int defaultValue) {
+        try {
+            return ConfigProvider.getConfig().getOptionalValue(name, Integer.class).orElse(defaultValue);
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    private static class RateWindow {
+        final AtomicLong second = new AtomicLong();
+        final AtomicInteger count = new AtomicInteger();
+    }
+
+    private static class PendingNotification {
+        final List<String> systemContextList;
+        final String simpleLogMessage;
+        final String status;
+        final String logMessage;
+        final List<String> logMessageDetails;
+        final String bundleJson;
+
+        PendingNotification(List<String> systemContextList, String simpleLogMessage, String status,
+                            String logMessage, List<String> logMessageDetails, String bundleJson) {
+            this.systemContextList = systemContextList;
+            this.simpleLogMessage = simpleLogMessage;
+            this.status = status;
+            this.logMessage = logMessage;
+            this.logMessageDetails = logMessageDetails;
+            this.bundleJson = bundleJson;
+        }
+
+        EreLogNotificationEvent toEvent() {
+            // bundle info extraction parses the whole bundle, so it is done on the publisher thread
+            return new EreLogNotificationEvent(systemContextList, simpleLogMessage, status, logMessage,
+                    logMessageDetails, BundleJsonInfoExtractor.extractDefaultBundleInfoFromBundleJson(bundleJson));
+        }
+    }
+}
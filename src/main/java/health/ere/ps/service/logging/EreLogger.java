@@ -10,11 +10,7 @@ import java.text.MessageFormat;
 import java.util.List;
 import java.util.stream.Collectors;
 
-import jakarta.enterprise.event.Event;
-import jakarta.enterprise.inject.spi.CDI;
-
 import health.ere.ps.event.EreLogNotificationEvent;
-import health.ere.ps.service.common.util.BundleJsonInfoExtractor;
 
 /**
  * This class decorates a JBoss Logger to allow for enhancing log statements with system context
@@ -374,18 +370,13 @@ public class EreLogger extends Logger {
                             .map(ctx -> ctx.getSysContext())
                             .collect(Collectors.toList()) : List.of();
 
-            EreLogNotificationEvent event =
-                    new EreLogNotificationEvent(sysContexts,
-                            StringUtils.defaultString(getSimpleLogMessage()),
-                            StringUtils.defaultString(getStatus()),
-                            StringUtils.defaultString(getLogMessage()),
-                            ListUtils.defaultIfNull(getLogDetails(), null),
-                            BundleJsonInfoExtractor.extractDefaultBundleInfoFromBundleJson(
-                                    getBundleJson()));
-            Event<EreLogNotificationEvent> ereLogNotificationEvent =
-                    CDI.current().select(Event.class).get();
-
-            ereLogNotificationEvent.fireAsync(event);
+            // delivered asynchronously and in batches, see EreLogNotificationPublisher
+            EreLogNotificationPublisher.getInstance().publish(sysContexts,
+                    StringUtils.defaultString(getSimpleLogMessage()),
+                    StringUtils.defaultString(getStatus()),
+                    StringUtils.defaultString(getLogMessage()),
+                    ListUtils.defaultIfNull(getLogDetails(), null),
+                    getBundleJson());
         }
     }
 }
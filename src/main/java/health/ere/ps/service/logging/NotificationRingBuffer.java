@@ -0,0 +1,68 @@
+package health.ere.ps.service.logging;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with many producers and a single consumer.
+ *
+ * Producers claim a sequence with a CAS on the tail and publish the value into the
+ * slot afterwards. The consumer stops at the first slot that is not published yet,
+ * so values are always drained in claim order. When the buffer is full offer returns
+ * false instead of blocking the logging thread.
+ */
+final class NotificationRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    NotificationRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    boolean offer(T value) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) (sequence & mask), value);
+        return true;
+    }
+
+    /**
+     * Must only be called from the single consumer thread.
+     */
+    int drainTo(List<T> target, int maxElements) {
+        long sequence = head;
+        int drained = 0;
+        while (drained < maxElements) {
+            int index = (int) (sequence & mask);
+            T value = slots.get(index);
+            if (value == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            target.add(value);
+            sequence++;
+            drained++;
+        }
+        head = sequence;
+        return drained;
+    }
+
+    int size() {
+        return (int) (tail.get() - head);
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,32 @@
+package health.ere.ps.service.outbox;
+
+public class OutboxEntry {
+
+    private final String id;
+    private final String kind;
+    private final String payload;
+    private final long createdAt;
+
+    public OutboxEntry(String id, String kind, String payload, long createdAt) {
+        this.id = id;
+        this.kind = kind;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
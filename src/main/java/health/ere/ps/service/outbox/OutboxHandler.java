@@ -0,0 +1,12 @@
+package health.ere.ps.service.outbox;
+
+/**
+ * Delivers outbox entries of one kind. Deliveries are at least once, an entry can be
+ * delivered again if the process stops between the delivery and its acknowledgement.
+ */
+public interface OutboxHandler {
+
+    String getKind();
+
+    void deliver(String payload) throws Exception;
+}
@@ -0,0 +1,309 @@
+package health.ere.ps.service.outbox;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of outbox entries in segment files.
+ *
+ * Every record is written with its length and a CRC32, so a record that was torn by
+ * a crash is detected and cut off when the journal is opened. Enqueued entries are
+ * forced to disk before {@link #append} returns, acknowledgements are not, losing one
+ * only leads to another delivery. A segment is deleted once all its entries and the
+ * ones of all older segments are acknowledged.
+ *
+ * Parked entries are moved to a separate file, so they do not keep their segment and all
+ * newer ones. They are enqueued again when the journal is opened after a restart.
+ */
+public class OutboxJournal implements Closeable {
+
+    private static final Logger log = Logger.getLogger(OutboxJournal.class.getName());
+
+    private static final byte ENQUEUE = 1;
+    private static final byte ACK = 2;
+    private static final String PREFIX = "outbox-";
+    private static final String SUFFIX = ".log";
+    private static final String PARKED = "parked.log";
+
+    private final Path directory;
+    private final long segmentSize;
+    // pending entry ids of every segment that still exists, oldest first
+    private final TreeMap<Long, Set<String>> pendingBySegment = new TreeMap<>();
+    private final Map<String, Long> segmentOf = new HashMap<>();
+    private FileChannel active;
+    private long activeSegment;
+
+    public OutboxJournal(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Replays the segments on disk.
+     *
+     * @return the entries that were enqueued and not acknowledged, in order
+     */
+    public synchronized List<OutboxEntry> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        Map<String, OutboxEntry> pending = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            replay(segments.get(i), pending, i == segments.size() - 1);
+        }
+        activeSegment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+        openActive();
+        rollIfFull();
+        deleteAcknowledgedSegments();
+        Path parked = directory.resolve(PARKED);
+        if (Files.exists(parked)) {
+            List<OutboxEntry> parkedEntries = new ArrayList<>();
+            read(parked, body -> parkedEntries.add(parseEntry(body)));
+            for (OutboxEntry entry : parkedEntries) {
+                // still pending if the process stopped while parking it
+                if (pending.putIfAbsent(entry.getId(), entry) == null) {
+                    append(entry);
+                }
+            }
+            Files.delete(parked);
+        }
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized void append(OutboxEntry entry) throws IOException {
+        byte[] record = enqueueRecord(entry);
+        rollIfFull();
+        write(active, record);
+        active.force(false);
+        pendingBySegment.get(activeSegment).add(entry.getId());
+        segmentOf.put(entry.getId(), activeSegment);
+    }
+
+    /**
+     * Moves a pending entry to the parked file, its segment no longer waits for it.
+     */
+    public synchronized void park(OutboxEntry entry) throws IOException {
+        Path file = directory.resolve(PARKED);
+        boolean created = !Files.exists(file);
+        try (FileChannel parked = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (created) {
+                restrictPermissions(file);
+            }
+            write(parked, enqueueRecord(entry));
+            parked.force(false);
+        }
+        ack(entry.getId());
+    }
+
+    public synchronized void ack(String id) throws IOException {
+        Long segment = segmentOf.remove(id);
+        if (segment == null) {
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(ACK);
+        out.writeUTF(id);
+        rollIfFull();
+        write(active, body.toByteArray());
+        pendingBySegment.get(segment).remove(id);
+        deleteAcknowledgedSegments();
+    }
+
+    public synchronized int getSegmentCount() {
+        return pendingBySegment.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.close();
+        }
+    }
+
+    private void replay(long segment, Map<String, OutboxEntry> pending, boolean last) throws IOException {
+        Set<String> segmentPending = new HashSet<>();
+        pendingBySegment.put(segment, segmentPending);
+        Path file = segmentFile(segment);
+        long validLength = read(file, body -> apply(segment, body, pending, segmentPending));
+        if (last && validLength < Files.size(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    /**
+     * @return the length of the complete records, a damaged tail is skipped
+     */
+    private static long read(Path file, RecordHandler handler) throws IOException {
+        long validLength = 0;
+        long fileLength = Files.size(file);
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            while (validLength < fileLength) {
+                int length = data.readInt();
+                int crc = data.readInt();
+                if (length < 0 || validLength + 8 + length > fileLength) {
+                    throw new EOFException("Record exceeds the file");
+                }
+                byte[] body = new byte[length];
+                data.readFully(body);
+                if (crc != crc(body)) {
+                    throw new IOException("Checksum mismatch");
+                }
+                handler.handle(body);
+                validLength += 8 + length;
+            }
+        } catch (IOException | RuntimeException e) {
+            // the tail of the file was not written completely
+            log.warning("Outbox file " + file + " is damaged after " + validLength + " bytes: " + e);
+        }
+        return validLength;
+    }
+
+    private void apply(long segment, byte[] body, Map<String, OutboxEntry> pending, Set<String> segmentPending) throws IOException {
+        if (body.length > 0 && body[0] == ACK) {
+            String id = new DataInputStream(new ByteArrayInputStream(body, 1, body.length - 1)).readUTF();
+            pending.remove(id);
+            Long enqueuedIn = segmentOf.remove(id);
+            if (enqueuedIn != null) {
+                pendingBySegment.get(enqueuedIn).remove(id);
+            }
+            return;
+        }
+        OutboxEntry entry = parseEntry(body);
+        pending.put(entry.getId(), entry);
+        segmentPending.add(entry.getId());
+        segmentOf.put(entry.getId(), segment);
+    }
+
+    private static OutboxEntry parseEntry(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        if (type != ENQUEUE) {
+            throw new IOException("Unknown record type " + type);
+        }
+        String id = in.readUTF();
+        String kind = in.readUTF();
+        long createdAt = in.readLong();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return new OutboxEntry(id, kind, new String(payload, StandardCharsets.UTF_8), createdAt);
+    }
+
+    private static byte[] enqueueRecord(OutboxEntry entry) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(ENQUEUE);
+        out.writeUTF(entry.getId());
+        out.writeUTF(entry.getKind());
+        out.writeLong(entry.getCreatedAt());
+        byte[] payload = entry.getPayload().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(payload.length);
+        out.write(payload);
+        return body.toByteArray();
+    }
+
+    private static void write(FileChannel channel, byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length);
+        record.putInt(crc(body));
+        record.put(body);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private void rollIfFull() throws IOException {
+        if (active.size() < segmentSize) {
+            return;
+        }
+        active.close();
+        activeSegment++;
+        openActive();
+        deleteAcknowledgedSegments();
+    }
+
+    private void openActive() throws IOException {
+        Path file = segmentFile(activeSegment);
+        boolean created = !Files.exists(file);
+        active = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (created) {
+            restrictPermissions(file);
+        }
+        pendingBySegment.computeIfAbsent(activeSegment, s -> new HashSet<>());
+    }
+
+    private void deleteAcknowledgedSegments() throws IOException {
+        while (!pendingBySegment.isEmpty()) {
+            long oldest = pendingBySegment.firstKey();
+            if (oldest == activeSegment || !pendingBySegment.get(oldest).isEmpty()) {
+                return;
+            }
+            // acknowledgements in this segment can only refer to it or older, already deleted segments
+            Files.deleteIfExists(segmentFile(oldest));
+            pendingBySegment.remove(oldest);
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                .forEach(name -> segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()))));
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private Path segmentFile(long segment) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, segment, SUFFIX));
+    }
+
+    private static int crc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    @FunctionalInterface
+    private interface RecordHandler {
+        void handle(byte[] body) throws IOException;
+    }
+
+    private static void restrictPermissions(Path file) {
+        // entries contain prescriptions
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            log.fine("Could not restrict permissions of " + file);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package health.ere.ps.service.outbox;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Any;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+
+/**
+ * Durable outbox for deliveries to slow or unreliable endpoints like KIM and eRiXa.
+ *
+ * Entries are written to the {@link OutboxJournal} before {@link #enqueue} returns and
+ * delivered by at most ere.outbox.workers tasks on the background pool of
+ * {@link ObserverExecutors} with exponential backoff. Entries that are still pending after a
+ * restart are delivered again. An entry that failed max-attempts times is parked: it is moved
+ * to the parked file of the journal and tried again after the next restart.
+ */
+@Startup
+@ApplicationScoped
+public class OutboxService {
+
+    private static final Logger log = Logger.getLogger(OutboxService.class.getName());
+
+    @Inject
+    @Any
+    Instance<OutboxHandler> handlerInstances;
+
+    @Inject
+    ObserverExecutors observerExecutors;
+
+    @ConfigProperty(name = "ere.outbox.directory", defaultValue = "outbox")
+    String directory = "outbox";
+
+    @ConfigProperty(name = "ere.outbox.segment-size-bytes", defaultValue = "16777216")
+    long segmentSizeBytes = 16 * 1024 * 1024;
+
+    @ConfigProperty(name = "ere.outbox.workers", defaultValue = "4")
+    int workerCount = 4;
+
+    @ConfigProperty(name = "ere.outbox.max-attempts", defaultValue = "10")
+    int maxAttempts = 10;
+
+    @ConfigProperty(name = "ere.outbox.initial-backoff-ms", defaultValue = "1000")
+    long initialBackoffMs = 1000;
+
+    @ConfigProperty(name = "ere.outbox.max-backoff-ms", defaultValue = "300000")
+    long maxBackoffMs = 300000;
+
+    final Map<String, OutboxHandler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    // entries that are due, taken by up to workerCount runners on the background pool
+    private final ConcurrentLinkedQueue<Pending> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger runners = new AtomicInteger();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder parked = new LongAdder();
+    private final LongAdder deliveryMillis = new LongAdder();
+    private final long startedAt = System.currentTimeMillis();
+
+    private OutboxJournal journal;
+    private volatile boolean closed;
+
+    @PostConstruct
+    void init() throws IOException {
+        journal = new OutboxJournal(Path.of(directory), segmentSizeBytes);
+        for (OutboxEntry entry : journal.open()) {
+            recovered.increment();
+            submit(new Pending(entry));
+        }
+        if (recovered.sum() > 0) {
+            log.info("Delivering " + recovered.sum() + " outbox entries from before the restart");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        closed = true;
+        // the pool is shared, wait until the runners delivered the ready entries
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        try {
+            while (runners.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not close outbox journal", e);
+        }
+    }
+
+    /**
+     * Persists the entry and delivers it in the background.
+     *
+     * @return completes when the entry was delivered or parked, only within this process
+     */
+    public CompletableFuture<Void> enqueue(String kind, String payload) throws IOException {
+        Pending entry = new Pending(new OutboxEntry(UUID.randomUUID().toString(), kind, payload, System.currentTimeMillis()));
+        journal.append(entry.entry);
+        enqueued.increment();
+        submit(entry);
+        return entry.result;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        long deliveredCount = delivered.sum();
+        statistics.put("backlog", pending.size());
+        statistics.put("oldestPendingAgeMs", pending.values().stream()
+            .mapToLong(p -> now - p.entry.getCreatedAt()).max().orElse(0));
+        statistics.put("enqueued", enqueued.sum());
+        statistics.put("recovered", recovered.sum());
+        statistics.put("delivered", deliveredCount);
+        statistics.put("failedAttempts", failedAttempts.sum());
+        statistics.put("parked", parked.sum());
+        statistics.put("averageDeliveryMs", deliveredCount == 0 ? 0 : deliveryMillis.sum() / deliveredCount);
+        statistics.put("deliveredPerMinute", deliveredCount * 60000.0 / Math.max(1, now - startedAt));
+        statistics.put("segments", journal.getSegmentCount());
+        return statistics;
+    }
+
+    private void submit(Pending entry) {
+        pending.put(entry.entry.getId(), entry);
+        ready.add(entry);
+        dispatch();
+    }
+
+    /**
+     * Starts runners on the background pool until there are workerCount of them or no entry
+     * is ready. When the pool is saturated the entries wait and dispatching is tried again.
+     */
+    private void dispatch() {
+        while (!closed && !ready.isEmpty()) {
+            int running = runners.get();
+            if (running >= workerCount) {
+                return;
+            }
+            if (!runners.compareAndSet(running, running + 1)) {
+                continue;
+            }
+            try {
+                observerExecutors.getPool(Workload.BACKGROUND).execute(this::run);
+            } catch (RejectedExecutionException e) {
+                runners.decrementAndGet();
+                observerExecutors.schedule(this::dispatch, Math.max(initialBackoffMs, 100), TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            Pending entry;
+            while ((entry = ready.poll()) != null) {
+                deliver(entry);
+            }
+        } finally {
+            runners.decrementAndGet();
+        }
+        // an entry may have been added after the last poll
+        dispatch();
+    }
+
+    private void deliver(Pending entry) {
+        try {
+            handler(entry.entry.getKind()).deliver(entry.entry.getPayload());
+        } catch (Exception e) {
+            failedAttempts.increment();
+            entry.attempts++;
+            if (entry.attempts >= maxAttempts) {
+                parked.increment();
+                pending.remove(entry.entry.getId());
+                try {
+                    journal.park(entry.entry);
+                } catch (IOException parkFailure) {
+                    log.log(Level.WARNING, "Could not park outbox entry " + entry.entry.getId(), parkFailure);
+                }
+                log.log(Level.SEVERE, "Outbox entry " + entry.entry.getId() + " (" + entry.entry.getKind()
+                    + ") failed " + entry.attempts + " times, it is tried again after the next restart", e);
+                entry.result.completeExceptionally(e);
+                return;
+            }
+            long delay = Math.min(maxBackoffMs, initialBackoffMs << Math.min(entry.attempts - 1, 30));
+            log.log(Level.WARNING, "Outbox entry " + entry.entry.getId() + " (" + entry.entry.getKind()
+                + ") failed, retrying in " + delay + " ms: " + e);
+            observerExecutors.schedule(() -> {
+                ready.add(entry);
+                dispatch();
+            }, delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        try {
+            journal.ack(entry.entry.getId());
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not acknowledge outbox entry " + entry.entry.getId(), e);
+        }
+        pending.remove(entry.entry.getId());
+        delivered.increment();
+        deliveryMillis.add(System.currentTimeMillis() - entry.entry.getCreatedAt());
+        entry.result.complete(null);
+    }
+
+    private OutboxHandler handler(String kind) {
+        OutboxHandler handler = handlers.get(kind);
+        if (handler == null) {
+            for (OutboxHandler candidate : handlerInstances) {
+                handlers.putIfAbsent(candidate.getKind(), candidate);
+            }
+            handler = handlers.get(kind);
+        }
+        if (handler == null) {
+            throw new IllegalStateException("No outbox handler for " + kind);
+        }
+        return handler;
+    }
+
+    private static class Pending {
+        final OutboxEntry entry;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        int attempts;
+
+        Pending(OutboxEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
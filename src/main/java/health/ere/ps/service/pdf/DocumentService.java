@@ -49,6 +49,8 @@ import health.ere.ps.event.ERezeptWithDocumentsEvent;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.model.pdf.ERezeptDocument;
 import health.ere.ps.service.fhir.FHIRService;
+import health.ere.ps.trace.Span;
+import health.ere.ps.trace.Tracer;
 import health.ere.ps.websocket.ExceptionWithReplyToException;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -171,6 +173,13 @@ public class DocumentService {
 
 
     public void onBundlesWithAccessCodes(@ObservesAsync BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
+        try (Span span = Tracer.startSpan("receipts", bundlesWithAccessCodeEvent.getTraceContext())) {
+            span.setAttribute("prescriptions", bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable().size());
+            createPrescriptionReceipts(bundlesWithAccessCodeEvent);
+        }
+    }
+
+    private void createPrescriptionReceipts(BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
         log.info(String.format("About to create prescription receipts for %d bundles",
                 bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable().size()));
         bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable().forEach(bundles -> {
@@ -185,8 +194,9 @@ public class DocumentService {
                     ERezeptDocument eRezeptDocument = null;
                     if(!containsThrowables(subList)) {
                         log.info("Now creating prescription receipts");
-                        try {
+                        try (Span span = Tracer.startSpan("pdf").setAttribute("bundles", subList.size())) {
                             boas = generateERezeptPdf(subList);
+                            span.setAttribute("bytes", boas.size());
                             eRezeptDocument = new ERezeptDocument(subList, boas.size() > 0 ? boas.toByteArray() : null);
                         } catch (IOException | FOPException | TransformerException e) {
                             log.severe("Could not generate ERezept PDF:" + e);
@@ -200,8 +210,10 @@ public class DocumentService {
                 
                 
                     log.info("Created prescription receipts");
-                    eRezeptDocumentsEvent.fireAsync(new ERezeptWithDocumentsEvent(eRezeptDocument != null ? List.of(eRezeptDocument) : new ArrayList(),
-                        bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
+                    ERezeptWithDocumentsEvent documentsEvent = new ERezeptWithDocumentsEvent(eRezeptDocument != null ? List.of(eRezeptDocument) : new ArrayList(),
+                        bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId());
+                    documentsEvent.setTraceContext(Tracer.currentContext());
+                    eRezeptDocumentsEvent.fireAsync(documentsEvent);
                     log.info("Sending prescription receipts results.");
                 }
             } catch (Exception ex) {
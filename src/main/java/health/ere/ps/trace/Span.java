@@ -0,0 +1,105 @@
+package health.ere.ps.trace;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A timed stage of a workflow. It is the current span of the thread until it is closed,
+ * so it has to be used with try-with-resources on the thread that started it.
+ */
+public class Span implements AutoCloseable {
+
+    static final Span NOOP = new Span();
+
+    private final String name;
+    private final TraceContext context;
+    private final String parentSpanId;
+    private final TraceContext previous;
+    private final Consumer<Span> exporter;
+    private final long startEpochNanos;
+    private final long startNanoTime;
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private long endEpochNanos;
+    private String errorMessage;
+    private boolean closed;
+
+    private Span() {
+        this(null, null, null, null, null);
+    }
+
+    Span(String name, TraceContext context, String parentSpanId, TraceContext previous, Consumer<Span> exporter) {
+        this.name = name;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.previous = previous;
+        this.exporter = exporter;
+        Instant now = Instant.now();
+        this.startEpochNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        this.startNanoTime = System.nanoTime();
+    }
+
+    /**
+     * @param value a String, Number or Boolean, anything else is exported as its toString
+     */
+    public Span setAttribute(String key, Object value) {
+        if (this != NOOP && value != null) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public Span setError(Throwable t) {
+        if (this != NOOP) {
+            errorMessage = t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+        }
+        return this;
+    }
+
+    /**
+     * @return the context to put on events fired in this span, null if tracing is disabled
+     */
+    public TraceContext getContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        if (this == NOOP || closed) {
+            return;
+        }
+        closed = true;
+        endEpochNanos = startEpochNanos + (System.nanoTime() - startNanoTime);
+        Tracer.restore(previous);
+        exporter.accept(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    public long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * @return null if the stage did not fail
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
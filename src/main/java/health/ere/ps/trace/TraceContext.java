@@ -0,0 +1,45 @@
+package health.ere.ps.trace;
+
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Trace and span id of a span in the W3C and OpenTelemetry format. It is carried on the
+ * events, so the spans of the observers of an event become children of the span that fired it.
+ */
+public record TraceContext(String traceId, String spanId) {
+
+    static TraceContext root() {
+        return new TraceContext(randomId(16), randomId(8));
+    }
+
+    TraceContext child() {
+        return new TraceContext(traceId, randomId(8));
+    }
+
+    /**
+     * @return the context as W3C traceparent header, e.g. for log correlation
+     */
+    public String toTraceparent() {
+        return "00-" + traceId + "-" + spanId + "-01";
+    }
+
+    private static String randomId(int bytes) {
+        byte[] id = new byte[bytes];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // an id of only zeros is invalid
+        do {
+            random.nextBytes(id);
+        } while (isZero(id));
+        return HexFormat.of().formatHex(id);
+    }
+
+    private static boolean isZero(byte[] id) {
+        for (byte b : id) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
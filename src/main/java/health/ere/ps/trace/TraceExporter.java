@@ -0,0 +1,233 @@
+package health.ere.ps.trace;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * Exports the finished spans in batches as OTLP/JSON, either to the HTTP endpoint of an
+ * OpenTelemetry collector or appended to a file with one export request per line, which
+ * the otlpjsonfile receiver of the collector can read.
+ *
+ * The spans are queued, the workflow threads never wait for the export. If the queue is
+ * full the span is dropped.
+ */
+@Startup
+@ApplicationScoped
+public class TraceExporter {
+
+    private static final Logger log = Logger.getLogger(TraceExporter.class.getName());
+
+    static final String NONE = "none";
+    static final String FILE = "file";
+    static final String OTLP = "otlp";
+
+    // OTLP SpanKind and StatusCode
+    private static final int SPAN_KIND_INTERNAL = 1;
+    private static final int STATUS_CODE_OK = 1;
+    private static final int STATUS_CODE_ERROR = 2;
+
+    @ConfigProperty(name = "ere.tracing.exporter", defaultValue = NONE)
+    String exporter = NONE;
+
+    @ConfigProperty(name = "ere.tracing.file", defaultValue = "traces.jsonl")
+    String file = "traces.jsonl";
+
+    @ConfigProperty(name = "ere.tracing.otlp-endpoint", defaultValue = "http://localhost:4318/v1/traces")
+    String otlpEndpoint = "http://localhost:4318/v1/traces";
+
+    @ConfigProperty(name = "ere.tracing.service-name", defaultValue = "ere-ps-app")
+    String serviceName = "ere-ps-app";
+
+    @ConfigProperty(name = "ere.tracing.queue-size", defaultValue = "4096")
+    int queueSize = 4096;
+
+    @ConfigProperty(name = "ere.tracing.batch-size", defaultValue = "512")
+    int batchSize = 512;
+
+    @ConfigProperty(name = "ere.tracing.flush-interval-ms", defaultValue = "1000")
+    long flushIntervalMs = 1000;
+
+    private final LongAdder exported = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private BlockingQueue<Span> queue;
+    private HttpClient httpClient;
+    private Thread exportThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    void init() {
+        if (!FILE.equals(exporter) && !OTLP.equals(exporter)) {
+            if (!NONE.equals(exporter)) {
+                log.warning("Unknown ere.tracing.exporter " + exporter + ", tracing is disabled");
+            }
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        if (OTLP.equals(exporter)) {
+            httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        }
+        running = true;
+        exportThread = new Thread(this::exportLoop, "ere-trace-export");
+        exportThread.setDaemon(true);
+        exportThread.start();
+        Tracer.setExporter(this::offer);
+        log.info("Exporting traces to " + (FILE.equals(exporter) ? file : otlpEndpoint));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (!running) {
+            return;
+        }
+        Tracer.setExporter(null);
+        running = false;
+        // not interrupted, that would close the file channel of a running export
+        try {
+            exportThread.join(flushIntervalMs + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Span> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        export(remaining);
+    }
+
+    void offer(Span span) {
+        if (!queue.offer(span)) {
+            dropped.increment();
+        }
+    }
+
+    private void exportLoop() {
+        while (running) {
+            try {
+                Span first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Span> batch = new ArrayList<>();
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                export(batch);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    void export(List<Span> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        String json = toOtlpJson(batch, serviceName);
+        try {
+            if (FILE.equals(exporter)) {
+                Files.writeString(Path.of(file), json + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } else {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(otlpEndpoint))
+                    .timeout(Duration.ofSeconds(10))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json))
+                    .build();
+                HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() / 100 != 2) {
+                    throw new IOException("Status " + response.statusCode() + " from " + otlpEndpoint);
+                }
+            }
+            exported.add(batch.size());
+        } catch (IOException e) {
+            dropped.add(batch.size());
+            log.log(Level.WARNING, "Could not export " + batch.size() + " spans", e);
+        } catch (InterruptedException e) {
+            dropped.add(batch.size());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getExported() {
+        return exported.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * An ExportTraceServiceRequest in the JSON encoding of OTLP: ids in hex, 64 bit integers as strings.
+     */
+    static String toOtlpJson(List<Span> spans, String serviceName) {
+        JsonArrayBuilder spanArray = Json.createArrayBuilder();
+        for (Span span : spans) {
+            JsonObjectBuilder spanObject = Json.createObjectBuilder()
+                .add("traceId", span.getContext().traceId())
+                .add("spanId", span.getContext().spanId());
+            if (span.getParentSpanId() != null) {
+                spanObject.add("parentSpanId", span.getParentSpanId());
+            }
+            JsonArrayBuilder attributes = Json.createArrayBuilder();
+            span.getAttributes().forEach((key, value) -> attributes.add(attribute(key, value)));
+            JsonObjectBuilder status = Json.createObjectBuilder();
+            if (span.getErrorMessage() != null) {
+                status.add("code", STATUS_CODE_ERROR).add("message", span.getErrorMessage());
+            } else {
+                status.add("code", STATUS_CODE_OK);
+            }
+            spanArray.add(spanObject
+                .add("name", span.getName())
+                .add("kind", SPAN_KIND_INTERNAL)
+                .add("startTimeUnixNano", String.valueOf(span.getStartEpochNanos()))
+                .add("endTimeUnixNano", String.valueOf(span.getEndEpochNanos()))
+                .add("attributes", attributes)
+                .add("status", status));
+        }
+        return Json.createObjectBuilder()
+            .add("resourceSpans", Json.createArrayBuilder().add(Json.createObjectBuilder()
+                .add("resource", Json.createObjectBuilder()
+                    .add("attributes", Json.createArrayBuilder().add(attribute("service.name", serviceName))))
+                .add("scopeSpans", Json.createArrayBuilder().add(Json.createObjectBuilder()
+                    .add("scope", Json.createObjectBuilder().add("name", "health.ere.ps"))
+                    .add("spans", spanArray)))))
+            .build().toString();
+    }
+
+    private static JsonObjectBuilder attribute(String key, Object value) {
+        JsonObjectBuilder anyValue = Json.createObjectBuilder();
+        if (value instanceof Boolean b) {
+            anyValue.add("boolValue", b);
+        } else if (value instanceof Double || value instanceof Float) {
+            anyValue.add("doubleValue", ((Number) value).doubleValue());
+        } else if (value instanceof Number n) {
+            anyValue.add("intValue", String.valueOf(n.longValue()));
+        } else {
+            anyValue.add("stringValue", String.valueOf(value));
+        }
+        return Json.createObjectBuilder().add("key", key).add("value", anyValue);
+    }
+}
@@ -0,0 +1,58 @@
+package health.ere.ps.trace;
+
+import java.util.function.Consumer;
+
+/**
+ * Starts the spans of the workflow stages. The observers of the async events run on other
+ * threads, so the context is carried on the events and passed as parent explicitly; within
+ * a thread the current span is the parent. Without an exporter, see {@link TraceExporter},
+ * every span is a no-op.
+ */
+public final class Tracer {
+
+    private static final ThreadLocal<TraceContext> current = new ThreadLocal<>();
+    private static volatile Consumer<Span> exporter;
+
+    private Tracer() {
+    }
+
+    /**
+     * Starts a child of the current span of the thread, or a new trace.
+     */
+    public static Span startSpan(String name) {
+        return startSpan(name, current.get());
+    }
+
+    /**
+     * @param parent the context of an event, null starts a new trace
+     */
+    public static Span startSpan(String name, TraceContext parent) {
+        Consumer<Span> spanExporter = exporter;
+        if (spanExporter == null) {
+            return Span.NOOP;
+        }
+        TraceContext context = parent == null ? TraceContext.root() : parent.child();
+        Span span = new Span(name, context, parent == null ? null : parent.spanId(), current.get(), spanExporter);
+        current.set(context);
+        return span;
+    }
+
+    /**
+     * @return the context of the current span of the thread, null if there is none
+     */
+    public static TraceContext currentContext() {
+        return current.get();
+    }
+
+    static void restore(TraceContext previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    static void setExporter(Consumer<Span> spanExporter) {
+        exporter = spanExporter;
+    }
+}
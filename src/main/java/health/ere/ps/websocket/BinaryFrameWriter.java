@@ -0,0 +1,134 @@
+package health.ere.ps.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.Session;
+
+import health.ere.ps.event.ERezeptWithDocumentsEvent;
+import health.ere.ps.jsonb.BundleAdapter;
+import health.ere.ps.jsonb.ThrowableAdapter;
+import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.model.pdf.ERezeptDocument;
+
+/**
+ * Sends ERezeptWithDocuments messages to sessions that negotiated binary framing.
+ *
+ * A text frame with a JSON header is sent first. The header has the same structure
+ * as the JSON message but every PDF and signed bundle is replaced by a reference
+ * {"part": n, "length": bytes, "chunks": k}. The referenced data follows as binary
+ * frames. Every binary frame starts with four big endian ints: transfer id, part,
+ * chunk index and chunk count. The header and the frames are queued as one unit on the
+ * {@link SessionSender} of the session, so they do not interleave with other messages.
+ */
+class BinaryFrameWriter {
+
+    static final int PREFIX_LENGTH = 16;
+
+    private static final AtomicInteger transferIds = new AtomicInteger();
+
+    // the FHIR parser of the adapter is not thread safe, a writer is used for one event
+    private final BundleAdapter bundleAdapter = new BundleAdapter();
+    private final ThrowableAdapter throwableAdapter = new ThrowableAdapter();
+    private final int chunkSize;
+
+    BinaryFrameWriter(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Binary chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    void send(Session session, ERezeptWithDocumentsEvent eRezeptDocumentsEvent, SendHandler handler) {
+        int transferId = transferIds.incrementAndGet();
+        List<byte[]> parts = new ArrayList<>();
+
+        JsonArrayBuilder documents = Json.createArrayBuilder();
+        for (ERezeptDocument eRezeptDocument : eRezeptDocumentsEvent.getERezeptWithDocuments()) {
+            JsonArrayBuilder bundles = Json.createArrayBuilder();
+            for (BundleWithAccessCodeOrThrowable bundleWithAccessCodeOrThrowable : eRezeptDocument.getBundleWithAccessCodeOrThrowables()) {
+                JsonObjectBuilder bundle = toJsonObject(bundleWithAccessCodeOrThrowable);
+                if (bundleWithAccessCodeOrThrowable.getSignedBundle() != null) {
+                    bundle.add("signedBundle", partReference(parts, bundleWithAccessCodeOrThrowable.getSignedBundle()));
+                }
+                bundles.add(bundle);
+            }
+            JsonObjectBuilder document = Json.createObjectBuilder().add("bundleWithAccessCodeOrThrowables", bundles);
+            if (eRezeptDocument.getPdfDocument() != null) {
+                document.add("pdfDocument", partReference(parts, eRezeptDocument.getPdfDocument()));
+            }
+            documents.add(document);
+        }
+
+        JsonObject header = Json.createObjectBuilder()
+                .add("type", "ERezeptWithDocuments")
+                .add("framing", Websocket.FRAMING_BINARY)
+                .add("transferId", transferId)
+                .add("parts", parts.size())
+                .add("payload", documents)
+                .add("replyToMessageId", String.valueOf(eRezeptDocumentsEvent.getReplyToMessageId()))
+                .build();
+
+        List<Object> frames = new ArrayList<>();
+        frames.add(header.toString());
+        for (int part = 0; part < parts.size(); part++) {
+            addFrames(frames, transferId, part, parts.get(part));
+        }
+        SessionSender.of(session).sendAll(frames, handler);
+    }
+
+    int chunkCount(int length) {
+        return Math.max(1, (length + chunkSize - 1) / chunkSize);
+    }
+
+    private JsonObject partReference(List<byte[]> parts, byte[] data) {
+        parts.add(data);
+        return Json.createObjectBuilder()
+                .add("part", parts.size() - 1)
+                .add("length", data.length)
+                .add("chunks", chunkCount(data.length))
+                .build();
+    }
+
+    private void addFrames(List<Object> frames, int transferId, int part, byte[] data) {
+        int chunks = chunkCount(data.length);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int offset = chunk * chunkSize;
+            int length = Math.min(chunkSize, data.length - offset);
+            ByteBuffer frame = ByteBuffer.allocate(PREFIX_LENGTH + length);
+            frame.putInt(transferId).putInt(part).putInt(chunk).putInt(chunks).put(data, offset, length).flip();
+            frames.add(frame);
+        }
+    }
+
+    /**
+     * The bundle as Jsonb would write it with the adapters of the websocket, in the same
+     * property order and without nulls, but without the signed bundle.
+     */
+    private JsonObjectBuilder toJsonObject(BundleWithAccessCodeOrThrowable bundleWithAccessCodeOrThrowable) {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        if (bundleWithAccessCodeOrThrowable.getAccessCode() != null) {
+            builder.add("accessCode", bundleWithAccessCodeOrThrowable.getAccessCode());
+        }
+        if (bundleWithAccessCodeOrThrowable.getBundle() != null) {
+            builder.add("bundle", bundleAdapter.adaptToJson(bundleWithAccessCodeOrThrowable.getBundle()));
+        }
+        if (bundleWithAccessCodeOrThrowable.getMedicationRequestId() != null) {
+            builder.add("medicationRequestId", bundleWithAccessCodeOrThrowable.getMedicationRequestId());
+        }
+        if (bundleWithAccessCodeOrThrowable.getTaskId() != null) {
+            builder.add("taskId", bundleWithAccessCodeOrThrowable.getTaskId());
+        }
+        if (bundleWithAccessCodeOrThrowable.getThrowable() != null) {
+            builder.add("throwable", throwableAdapter.adaptToJson(bundleWithAccessCodeOrThrowable.getThrowable()));
+        }
+        return builder;
+    }
+}
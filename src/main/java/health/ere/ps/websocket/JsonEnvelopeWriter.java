@@ -0,0 +1,50 @@
+package health.ere.ps.websocket;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import jakarta.json.Json;
+import jakarta.json.bind.Jsonb;
+
+/**
+ * Writes the {"type": ..., "payload": ..., "replyToMessageId": ...} envelope of outgoing
+ * websocket messages. The payload is serialized directly into the same buffer as the
+ * envelope instead of being concatenated from intermediate strings.
+ */
+final class JsonEnvelopeWriter {
+
+    @FunctionalInterface
+    interface PayloadWriter {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private JsonEnvelopeWriter() {
+    }
+
+    static String write(Jsonb jsonb, String type, Object payload, String replyToMessageId) {
+        return write(type, writer -> jsonb.toJson(payload, writer), replyToMessageId);
+    }
+
+    static String writeRaw(String type, String payloadJson, String replyToMessageId) {
+        return write(type, writer -> writer.write(payloadJson), replyToMessageId);
+    }
+
+    static String write(String type, PayloadWriter payloadWriter, String replyToMessageId) {
+        StringWriter writer = new StringWriter(256);
+        try {
+            writer.write("{\"type\":");
+            writer.write(Json.createValue(type).toString());
+            writer.write(",\"payload\":");
+            payloadWriter.writeTo(writer);
+            writer.write(",\"replyToMessageId\":");
+            // keeps the "null" string for messages without id, clients rely on it
+            writer.write(Json.createValue(String.valueOf(replyToMessageId)).toString());
+            writer.write('}');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package health.ere.ps.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+
+/**
+ * The single send path of a websocket session. The async remote endpoint allows only one
+ * send in flight, so every message is queued and the next one is sent from the completion
+ * handler of the previous one. No caller blocks on the network.
+ *
+ * Messages that are queued together with {@link #sendAll(List, SendHandler)}, e.g. the
+ * header and the frames of a binary transfer, are not interleaved with other messages.
+ */
+class SessionSender {
+
+    static final String PROPERTY = "ere.websocket.sender";
+
+    private final Session session;
+    private final Queue<Pending> queue = new ArrayDeque<>();
+    private boolean sending;
+
+    SessionSender(Session session) {
+        this.session = session;
+    }
+
+    static SessionSender of(Session session) {
+        synchronized (session) {
+            return (SessionSender) session.getUserProperties().computeIfAbsent(PROPERTY, key -> new SessionSender(session));
+        }
+    }
+
+    /**
+     * Sends a String, a ByteBuffer or an object for the encoders of the endpoint.
+     */
+    void sendObject(Object message, SendHandler handler) {
+        sendAll(List.of(message), handler);
+    }
+
+    /**
+     * Queues all messages at once, the handler is called for every message.
+     */
+    void sendAll(List<?> messages, SendHandler handler) {
+        synchronized (this) {
+            for (Object message : messages) {
+                queue.add(new Pending(message, handler));
+            }
+            if (sending) {
+                return;
+            }
+            sending = true;
+        }
+        sendNext();
+    }
+
+    private void sendNext() {
+        Pending next;
+        synchronized (this) {
+            next = queue.poll();
+            if (next == null) {
+                sending = false;
+                return;
+            }
+        }
+        SendHandler completion = result -> {
+            try {
+                next.handler.onResult(result);
+            } finally {
+                sendNext();
+            }
+        };
+        try {
+            RemoteEndpoint.Async remote = session.getAsyncRemote();
+            if (next.message instanceof ByteBuffer) {
+                remote.sendBinary((ByteBuffer) next.message, completion);
+            } else {
+                remote.sendObject(next.message, completion);
+            }
+        } catch (RuntimeException e) {
+            // e.g. the session was closed meanwhile
+            completion.onResult(new SendResult(e));
+        }
+    }
+
+    private static class Pending {
+        private final Object message;
+        private final SendHandler handler;
+
+        Pending(Object message, SendHandler handler) {
+            this.message = message;
+            this.handler = handler;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -51,6 +52,7 @@ import health.ere.ps.event.ChangePinEvent;
 import health.ere.ps.event.ChangePinResponseEvent;
 import health.ere.ps.event.DeactivateComfortSignatureEvent;
 import health.ere.ps.event.ERezeptWithDocumentsEvent;
+import health.ere.ps.event.EreLogNotificationBatchEvent;
 import health.ere.ps.event.EreLogNotificationEvent;
 import health.ere.ps.event.GetCardsEvent;
 import health.ere.ps.event.GetCardsResponseEvent;
@@ -80,10 +82,14 @@ import health.ere.ps.jsonb.ThrowableAdapter;
 import health.ere.ps.model.config.UserConfigurations;
 import health.ere.ps.model.websocket.OutgoingPayload;
 import health.ere.ps.service.config.UserConfigurationService;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
 import health.ere.ps.service.fhir.FHIRService;
 import health.ere.ps.service.fhir.XmlPrescriptionProcessor;
 import health.ere.ps.service.fhir.bundle.EreBundle;
 import health.ere.ps.service.logging.EreLogger;
+import health.ere.ps.trace.Span;
+import health.ere.ps.trace.Tracer;
 import health.ere.ps.validation.fhir.bundle.PrescriptionBundleValidator;
 import health.ere.ps.websocket.encoder.ResponseEventEncoder;
 import message.processor.incoming.IncomingBundleMessageProcessor;
@@ -143,6 +149,9 @@ public class Websocket {
     @Inject
     Event<VZDSearchEvent> vZDSearchEvent;
     
+    @Inject
+    ObserverExecutors observerExecutors;
+
     @Inject
     PrescriptionBundleValidator prescriptionBundleValidator;
     @Inject
@@ -156,8 +165,17 @@ public class Websocket {
     @ConfigProperty(name = "ere.websocket.erezeptdocuments.reply-to-all", defaultValue = "false")
     boolean erezeptdocumentsReplyToAll = false;
 
+    @ConfigProperty(name = "ere.websocket.binary.chunk-size", defaultValue = "65536")
+    int binaryChunkSize = DEFAULT_BINARY_CHUNK_SIZE;
+
+    static final int DEFAULT_BINARY_CHUNK_SIZE = 65536;
+
+    static final String FRAMING_PROPERTY = "ere.websocket.framing";
+    static final String FRAMING_JSON = "json";
+    static final String FRAMING_BINARY = "binary";
+
     static JsonbConfig customConfig = new JsonbConfig()
-            .setProperty(JsonbConfig.FORMATTING, true)
+            .setProperty(JsonbConfig.FORMATTING, false)
             .withAdapters(new BundleAdapter())
             .withAdapters(new ByteAdapter())
             .withAdapters(new ThrowableAdapter())
@@ -264,85 +282,103 @@ public class Websocket {
         try (JsonReader jsonReader = Json.createReader(new StringReader(message))) {
             JsonObject object = jsonReader.readObject();
             messageId = object.getString("id", null);
-            if ("SignAndUploadBundles".equals(object.getString("type"))) {
-                processSignAndUploadBundles(senderSession, messageId, object);
-            } else if ("ValidateBundles".equals(object.getString("type"))) {
-                JsonObject bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
-                senderSession.getAsyncRemote().sendObject(
-                    bundlesValidationResultMessage.toString(),
-                    result -> {
-                        if (!result.isOK()) {
-                            ereLog.fatal("Unable to sent bundlesValidationResult event: " + result.getException());
-                        }
-                    });
-            } else if ("XMLBundle".equals(object.getString("type"))) {
-                Bundle[] bundles = XmlPrescriptionProcessor.parseFromString(object.getString("payload"));
-                if(appConfig.getXmlBundleDirectProcess()) {
-                    SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(bundles, object, senderSession, messageId);
-                    signAndUploadBundlesEvent.fireAsync(event);   
-                }
-                onFhirBundle(new BundlesEvent(Arrays.asList(bundles), null, messageId));
-            } else if ("PreviewOnly".equals(object.getString("type"))) { // todo: not final access-code and eRz-Id in here, just a preview!
-                readyToSignBundlesEvent.fireAsync(new ReadyToSignBundlesEvent(object, senderSession, messageId));
-            } else if ("AbortTasks".equals(object.getString("type"))) {
-                abortTasksEvent.fireAsync(new AbortTasksEvent(object, senderSession, messageId));
-            } else if ("ErixaEvent".equals(object.getString("type"))) {
-                ErixaEvent event = new ErixaEvent(object, senderSession, messageId);
-                erixaEvent.fireAsync(event);
-            } else if ("DeactivateComfortSignature".equals(object.getString("type"))) {
-                DeactivateComfortSignatureEvent event = new DeactivateComfortSignatureEvent(object, senderSession, messageId);
-                deactivateComfortSignatureEvent.fireAsync(event);
-            } else if ("ActivateComfortSignature".equals(object.getString("type"))) {
-                ActivateComfortSignatureEvent event = new ActivateComfortSignatureEvent(object, senderSession, messageId);
-                activateComfortSignatureEvent.fireAsync(event);
-            } else if ("GetSignatureMode".equals(object.getString("type"))) {
-                GetSignatureModeEvent event = new GetSignatureModeEvent(object, senderSession, messageId);
-                getSignatureModeEvent.fireAsync(event);
-            } else if ("GetCards".equals(object.getString("type"))) {
-                GetCardsEvent event = new GetCardsEvent(object, senderSession, messageId);
-                getCardsEvent.fireAsync(event);
-            } else if ("ChangePin".equals(object.getString("type"))) {
-                ChangePinEvent event = new ChangePinEvent(object, senderSession, messageId);
-                changePinEvent.fireAsync(event);
-            } else if ("VerifyPin".equals(object.getString("type"))) {
-                VerifyPinEvent event = new VerifyPinEvent(object, senderSession, messageId);
-                verifyPinEvent.fireAsync(event);
-            } else if ("UnblockPin".equals(object.getString("type"))) {
-                UnblockPinEvent event = new UnblockPinEvent(object, senderSession, messageId);
-                unblockPinEvent.fireAsync(event);
-            } else if ("GetPinStatus".equals(object.getString("type"))) {
-                GetPinStatusEvent event = new GetPinStatusEvent(object, senderSession, messageId);
-                getPinStatusEvent.fireAsync(event);
-            } else if ("PrefillBundle".equals(object.getString("type"))) {
-                PrefillBundleEvent event = new PrefillBundleEvent(object, senderSession, messageId);
-                prefillBundleEvent.fireAsync(event);
-            } else if("VZDSearch".equals(object.getString("type"))) {
-                VZDSearchEvent event = new VZDSearchEvent(object, senderSession, messageId);
-                vZDSearchEvent.fireAsync(event);
-            }  else if ("RequestSettings".equals(object.getString("type"))) {
-                UserConfigurations userConfigurations = userConfigurationService.getConfig();
-                String payload = jsonbFactory.toJson(userConfigurations);
-                senderSession.getAsyncRemote().sendObject(
-                    "{\"type\": \"Settings\", \"payload\": " + payload + ", \"replyToMessageId\": \""+messageId+"\"}",
-                    result -> {
-                        if (!result.isOK()) {
-                            ereLog.fatal("Unable to send settings event: " + result.getException());
+            String type = object.getString("type");
+            switch (type) {
+                case "SignAndUploadBundles":
+                    processSignAndUploadBundles(senderSession, messageId, object);
+                    break;
+                case "ValidateBundles":
+                    JsonObject bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
+                    SessionSender.of(senderSession).sendObject(
+                        bundlesValidationResultMessage.toString(),
+                        result -> {
+                            if (!result.isOK()) {
+                                ereLog.fatal("Unable to sent bundlesValidationResult event: " + result.getException());
+                            }
+                        });
+                    break;
+                case "XMLBundle":
+                    Bundle[] bundles = XmlPrescriptionProcessor.parseFromString(object.getString("payload"));
+                    if(appConfig.getXmlBundleDirectProcess()) {
+                        try (Span span = Tracer.startSpan("websocket.receive").setAttribute("message.type", "XMLBundle")) {
+                            SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(bundles, object, senderSession, messageId);
+                            event.setTraceContext(span.getContext());
+                            fireAsync(signAndUploadBundlesEvent, event, Workload.WORKFLOW);
                         }
-                    });
-            } else if("SaveSettings".equals(object.getString("type"))) {
-                String userConfiguration = object.getJsonObject("payload").toString();
-                UserConfigurations userConfigurations = jsonbFactory.fromJson(userConfiguration, UserConfigurations.class);
-                saveSettingsEvent.fireAsync(new SaveSettingsEvent(userConfigurations, senderSession, messageId));
-            } else if("RequestStatus".equals(object.getString("type"))) {
-                requestStatusEvent.fireAsync(new RequestStatusEvent(object, senderSession, messageId));
-            } else if ("Publish".equals(object.getString("type"))) {
-                sendMessage(object.getString("payload"), "Unable to publish event");
-            } else if ("AllKBVExamples".equals(object.getString("type"))) {
-                sendAllKBVExamples(object.getString("folder", "../src/test/resources/examples-kbv-fhir-erp-v1-0-2"), senderSession);
-            } else if ("SimulateException".equals(object.getString("type"))) {
-                onException(simulateException(object));
-            } else {
-                processIncomingMessage(object, senderSession);
+                    }
+                    onFhirBundle(new BundlesEvent(Arrays.asList(bundles), null, messageId));
+                    break;
+                case "NegotiateFraming":
+                    negotiateFraming(object, senderSession, messageId);
+                    break;
+                case "PreviewOnly": // todo: not final access-code and eRz-Id in here, just a preview!
+                    fireAsync(readyToSignBundlesEvent, new ReadyToSignBundlesEvent(object, senderSession, messageId), Workload.RENDERING);
+                    break;
+                case "AbortTasks":
+                    fireAsync(abortTasksEvent, new AbortTasksEvent(object, senderSession, messageId), Workload.WORKFLOW);
+                    break;
+                case "ErixaEvent":
+                    fireAsync(erixaEvent, new ErixaEvent(object, senderSession, messageId), Workload.WORKFLOW);
+                    break;
+                case "DeactivateComfortSignature":
+                    fireAsync(deactivateComfortSignatureEvent, new DeactivateComfortSignatureEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "ActivateComfortSignature":
+                    fireAsync(activateComfortSignatureEvent, new ActivateComfortSignatureEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "GetSignatureMode":
+                    fireAsync(getSignatureModeEvent, new GetSignatureModeEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "GetCards":
+                    fireAsync(getCardsEvent, new GetCardsEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "ChangePin":
+                    fireAsync(changePinEvent, new ChangePinEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "VerifyPin":
+                    fireAsync(verifyPinEvent, new VerifyPinEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "UnblockPin":
+                    fireAsync(unblockPinEvent, new UnblockPinEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "GetPinStatus":
+                    fireAsync(getPinStatusEvent, new GetPinStatusEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "PrefillBundle":
+                    fireAsync(prefillBundleEvent, new PrefillBundleEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "VZDSearch":
+                    fireAsync(vZDSearchEvent, new VZDSearchEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "RequestSettings":
+                    UserConfigurations userConfigurations = userConfigurationService.getConfig();
+                    SessionSender.of(senderSession).sendObject(
+                        JsonEnvelopeWriter.write(jsonbFactory, "Settings", userConfigurations, messageId),
+                        result -> {
+                            if (!result.isOK()) {
+                                ereLog.fatal("Unable to send settings event: " + result.getException());
+                            }
+                        });
+                    break;
+                case "SaveSettings":
+                    String userConfiguration = object.getJsonObject("payload").toString();
+                    fireAsync(saveSettingsEvent, new SaveSettingsEvent(jsonbFactory.fromJson(userConfiguration, UserConfigurations.class), senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "RequestStatus":
+                    fireAsync(requestStatusEvent, new RequestStatusEvent(object, senderSession, messageId), Workload.INTERACTIVE);
+                    break;
+                case "Publish":
+                    sendMessage(object.getString("payload"), "Unable to publish event");
+                    break;
+                case "AllKBVExamples":
+                    sendAllKBVExamples(object.getString("folder", "../src/test/resources/examples-kbv-fhir-erp-v1-0-2"), senderSession);
+                    break;
+                case "SimulateException":
+                    onException(simulateException(object));
+                    break;
+                default:
+                    // hand over the original message, the processors work on strings
+                    processIncomingMessage(object, message, senderSession);
             }
         } catch(Exception ex) {
             ereLog.warn("Could not process message", ex);
@@ -351,29 +387,79 @@ public class Websocket {
     }
 
     private void processSignAndUploadBundles(Session senderSession, String messageId, JsonObject object) {
-        boolean bundlesValid = true;
-        JsonObject bundlesValidationResultMessage = null;
-        if(!object.getBoolean("ignoreValidation", false)) {
-            bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
-            
-            bundlesValid = bundlesValidationResultMessage.getJsonArray("payload")
-            .stream().filter(jo -> jo instanceof JsonObject)
-                .map(jo -> ((JsonObject) jo).getBoolean("valid"))
-                .filter(b -> !b)
-                .count() == 0;
+        // root of the trace, the spans of the workflow observers are its children
+        try (Span span = Tracer.startSpan("websocket.receive")
+                .setAttribute("message.type", "SignAndUploadBundles").setAttribute("message.id", messageId)) {
+            boolean bundlesValid = true;
+            JsonObject bundlesValidationResultMessage = null;
+            if(!object.getBoolean("ignoreValidation", false)) {
+                try (Span validationSpan = Tracer.startSpan("validation")) {
+                    bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
+
+                    bundlesValid = bundlesValidationResultMessage.getJsonArray("payload")
+                    .stream().filter(jo -> jo instanceof JsonObject)
+                        .map(jo -> ((JsonObject) jo).getBoolean("valid"))
+                        .filter(b -> !b)
+                        .count() == 0;
+                    validationSpan.setAttribute("valid", bundlesValid);
+                }
+            }
+            if(bundlesValid) {
+                SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(object, senderSession, messageId);
+                event.setTraceContext(span.getContext());
+                fireAsync(signAndUploadBundlesEvent, event, Workload.WORKFLOW);
+            } else {
+                SessionSender.of(senderSession).sendObject(
+                    bundlesValidationResultMessage == null ? "{}" : bundlesValidationResultMessage.toString(),
+                    result -> {
+                        if (!result.isOK()) {
+                            ereLog.fatal("Unable to send bundlesValidationResult event: " + result.getException());
+                        }
+                    });
+            }
         }
-        if(bundlesValid) {
-            SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(object, senderSession, messageId);
-            signAndUploadBundlesEvent.fireAsync(event);
+    }
+
+    /**
+     * Interactive requests and batch workflows are observed on their own pools.
+     */
+    private <T> void fireAsync(Event<T> event, T payload, Workload workload) {
+        if(observerExecutors != null) {
+            observerExecutors.fireAsync(event, payload, workload);
         } else {
-            senderSession.getAsyncRemote().sendObject(
-                bundlesValidationResultMessage == null ? "{}" : bundlesValidationResultMessage.toString(),
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send bundlesValidationResult event: " + result.getException());
-                    }
-                });
+            event.fireAsync(payload);
+        }
+    }
+
+    void negotiateFraming(JsonObject object, Session senderSession, String messageId) {
+        JsonObject payload = object.getJsonObject("payload");
+        String framing = payload != null ? payload.getString("framing", FRAMING_JSON) : FRAMING_JSON;
+        if(!FRAMING_BINARY.equals(framing)) {
+            framing = FRAMING_JSON;
+        }
+        senderSession.getUserProperties().put(FRAMING_PROPERTY, framing);
+        SessionSender.of(senderSession).sendObject(
+            JsonEnvelopeWriter.write(jsonbFactory, "NegotiateFramingResponse", Map.of("framing", framing, "chunkSize", getBinaryChunkSize()), messageId),
+            result -> {
+                if (!result.isOK()) {
+                    ereLog.fatal("Unable to send NegotiateFramingResponse: " + result.getException());
+                }
+            });
+    }
+
+    /**
+     * The configured chunk size, the default if it is not positive.
+     */
+    int getBinaryChunkSize() {
+        if(binaryChunkSize <= 0) {
+            ereLog.warn("Invalid ere.websocket.binary.chunk-size " + binaryChunkSize + ", using " + DEFAULT_BINARY_CHUNK_SIZE);
+            return DEFAULT_BINARY_CHUNK_SIZE;
         }
+        return binaryChunkSize;
+    }
+
+    static boolean isBinaryFraming(Session session) {
+        return FRAMING_BINARY.equals(session.getUserProperties().get(FRAMING_PROPERTY));
     }
 
     Exception simulateException(JsonObject object) {
@@ -387,15 +473,15 @@ public class Websocket {
     }
 
     public void onFhirBundle(@ObservesAsync BundlesEvent bundlesEvent) {
-        String bundlesString = generateJson(bundlesEvent);
+        String bundlesMessage = JsonEnvelopeWriter.writeRaw("Bundles", generateJson(bundlesEvent), bundlesEvent.getReplyToMessageId());
         Set<Session> localSessions = new HashSet<>();
         if(bundlesEvent.getReplyTo() != null) {
             localSessions.add(bundlesEvent.getReplyTo());
         } else {
             localSessions = sessions;
         }
-        localSessions.forEach(session -> session.getAsyncRemote().sendObject(
-                "{\"type\": \"Bundles\", \"payload\": " + bundlesString + ", \"replyToMessageId\": \""+bundlesEvent.getReplyToMessageId()+"\"}",
+        localSessions.forEach(session -> SessionSender.of(session).sendObject(
+                bundlesMessage,
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send bundlesEvent: " + result.getException());
@@ -404,11 +490,8 @@ public class Websocket {
     }
 
     public void onAbortTasksStatusEvent(@ObservesAsync AbortTasksStatusEvent abortTasksStatusEvent) {
-        
-        String abortTasksStatusString = generateJson(abortTasksStatusEvent);
-        
-        abortTasksStatusEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"AbortTasksStatus\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+abortTasksStatusEvent.getReplyToMessageId()+"\"}",
+        SessionSender.of(abortTasksStatusEvent.getReplyTo()).sendObject(
+                JsonEnvelopeWriter.write(jsonbFactory, abortTasksStatusEvent.isPartial() ? "AbortTaskStatusUpdate" : "AbortTasksStatus", abortTasksStatusEvent.getTasks(), abortTasksStatusEvent.getReplyToMessageId()),
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send bundlesEvent: " + result.getException());
@@ -417,11 +500,8 @@ public class Websocket {
     }
 
     public void onGetCardsResponseEvent(@ObservesAsync GetCardsResponseEvent getCardsResponseEvent) {
-        
-        String abortTasksStatusString = generateJson(getCardsResponseEvent);
-        
-        getCardsResponseEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"GetCardsResponse\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+getCardsResponseEvent.getReplyToMessageId()+"\"}",
+        SessionSender.of(getCardsResponseEvent.getReplyTo()).sendObject(
+                JsonEnvelopeWriter.write(jsonbFactory, "GetCardsResponse", getCardsResponseEvent, getCardsResponseEvent.getReplyToMessageId()),
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to get cards response: " + result.getException());
@@ -430,10 +510,8 @@ public class Websocket {
     }
 
     public void onGetSignatureModeResponseEvent(@ObservesAsync GetSignatureModeResponseEvent getSignatureModeResponseEvent) {
-        
-        String abortTasksStatusString = generateJson(getSignatureModeResponseEvent);
-        getSignatureModeResponseEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"GetSignatureModeResponse\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+getSignatureModeResponseEvent.getReplyToMessageId()+"\"}",
+        SessionSender.of(getSignatureModeResponseEvent.getReplyTo()).sendObject(
+                JsonEnvelopeWriter.write(jsonbFactory, "GetSignatureModeResponse", getSignatureModeResponseEvent, getSignatureModeResponseEvent.getReplyToMessageId()),
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send getSignatureModeResponseEvent: " + result.getException());
@@ -442,10 +520,8 @@ public class Websocket {
     }
 
     public void onChangePinResponseEvent(@ObservesAsync ChangePinResponseEvent changePinResponseEvent) {
-        
-        String changePinResponseString = generateJson(changePinResponseEvent);
-        changePinResponseEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"ChangePinResponse\", \"payload\": " + changePinResponseString + ", \"replyToMessageId\": \""+changePinResponseEvent.getReplyToMessageId()+"\"}",
+        SessionSender.of(changePinResponseEvent.getReplyTo()).sendObject(
+                JsonEnvelopeWriter.write(jsonbFactory, "ChangePinResponse", changePinResponseEvent.getChangePinResponse(), changePinResponseEvent.getReplyToMessageId()),
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send changePinResponseEvent: " + result.getException());
@@ -455,7 +531,7 @@ public class Websocket {
 
     public void onStatusResponseEvent(@ObservesAsync StatusResponseEvent statusResponseEvent) {
         
-        statusResponseEvent.getReplyTo().getAsyncRemote().sendObject(statusResponseEvent,
+        SessionSender.of(statusResponseEvent.getReplyTo()).sendObject(statusResponseEvent,
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send StatusResponseEvent: " + result.getException());
@@ -465,7 +541,7 @@ public class Websocket {
 
     public void onVZDSearchResultEvent(@ObservesAsync VZDSearchResultEvent vZDSearchResultEvent) {
         
-        vZDSearchResultEvent.getReplyTo().getAsyncRemote().sendObject(vZDSearchResultEvent,
+        SessionSender.of(vZDSearchResultEvent.getReplyTo()).sendObject(vZDSearchResultEvent,
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send VZDSearchResultEvent: " + result.getException());
@@ -475,7 +551,7 @@ public class Websocket {
 
     public void onVerifyPinResponseEvent(@ObservesAsync VerifyPinResponseEvent verifyPinResponseEvent) {
         
-        verifyPinResponseEvent.getReplyTo().getAsyncRemote().sendObject(verifyPinResponseEvent,
+        SessionSender.of(verifyPinResponseEvent.getReplyTo()).sendObject(verifyPinResponseEvent,
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send VerifyPinResponseEvent: " + result.getException());
@@ -485,7 +561,7 @@ public class Websocket {
 
     public void onUnblockPinResponseEvent(@ObservesAsync UnblockPinResponseEvent unblockPinResponseEvent) {
         
-        unblockPinResponseEvent.getReplyTo().getAsyncRemote().sendObject(unblockPinResponseEvent,
+        SessionSender.of(unblockPinResponseEvent.getReplyTo()).sendObject(unblockPinResponseEvent,
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send UnblockPinResponseEvent: " + result.getException());
@@ -495,7 +571,7 @@ public class Websocket {
 
     public void onGetPinStatusResponseEvent(@ObservesAsync GetPinStatusResponseEvent getPinStatusResponseEvent) {
         
-        getPinStatusResponseEvent.getReplyTo().getAsyncRemote().sendObject(getPinStatusResponseEvent,
+        SessionSender.of(getPinStatusResponseEvent.getReplyTo()).sendObject(getPinStatusResponseEvent,
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send GetPinStatusResponseEvent: " + result.getException());
@@ -504,8 +580,8 @@ public class Websocket {
     }
 
     public void onSaveSettingsResponseEvent(@ObservesAsync SaveSettingsResponseEvent saveSettingsResponseEvent) {
-        saveSettingsResponseEvent.getReplyTo().getAsyncRemote().sendObject(
-        "{\"type\": \"SaveSettingsResponseEvent\", \"payload\": " + jsonbFactory.toJson(saveSettingsResponseEvent) + ", \"replyToMessageId\": \""+saveSettingsResponseEvent.getReplyToMessageId()+"\"}",
+        SessionSender.of(saveSettingsResponseEvent.getReplyTo()).sendObject(
+                JsonEnvelopeWriter.write(jsonbFactory, "SaveSettingsResponseEvent", saveSettingsResponseEvent, saveSettingsResponseEvent.getReplyToMessageId()),
                 result -> {
                     if (!result.isOK()) {
                         ereLog.fatal("Unable to send SaveSettingsResponseEvent: " + result.getException());
@@ -513,22 +589,6 @@ public class Websocket {
                 });
     }
 
-    String generateJson(GetSignatureModeResponseEvent getSignatureModeResponseEvent) {
-        return jsonbFactory.toJson(getSignatureModeResponseEvent);
-    }
-
-    String generateJson(GetCardsResponseEvent getCardsResponseEvent) {
-        return jsonbFactory.toJson(getCardsResponseEvent);
-    }
-
-    String generateJson(AbortTasksStatusEvent abortTasksStatusEvent) {
-        return jsonbFactory.toJson(abortTasksStatusEvent.getTasks());
-    }
-
-    String generateJson(ChangePinResponseEvent changePinResponseEvent) {
-        return jsonbFactory.toJson(changePinResponseEvent.getChangePinResponse());
-    }
-
     String generateJson(VerifyPinResponseEvent verifyPinResponseEvent) {
         return jsonbFactory.toJson(verifyPinResponseEvent.getVerifyPinResponse());
     }
@@ -542,20 +602,48 @@ public class Websocket {
     }
 
     public void onERezeptDocuments(@ObservesAsync ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
-        String jsonPayload = generateJson(eRezeptDocumentsEvent);
+        try (Span span = Tracer.startSpan("websocket.send", eRezeptDocumentsEvent.getTraceContext())) {
+            span.setAttribute("message.id", eRezeptDocumentsEvent.getReplyToMessageId());
+            sendERezeptDocuments(eRezeptDocumentsEvent);
+        }
+    }
+
+    private void sendERezeptDocuments(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
         ereLog.info("Sending prescription receipt payload to front-end.");
-        ereLog.trace("Receipt Payload: " +
-                jsonPayload);
 
-                Set<Session> localSessions = new HashSet<>();
+        Set<Session> localSessions = new HashSet<>();
         if(eRezeptDocumentsEvent.getReplyTo() != null && !erezeptdocumentsReplyToAll) {
             localSessions.add(eRezeptDocumentsEvent.getReplyTo());
         } else {
             localSessions = sessions;
         }
-        localSessions.forEach(session -> {
-
-            session.getAsyncRemote().sendObject(
+        // the json payload is only built if at least one session still uses json framing
+        String jsonPayload = null;
+        BinaryFrameWriter binaryFrameWriter = null;
+        for(Session session : localSessions) {
+            if(isBinaryFraming(session)) {
+                if(binaryFrameWriter == null) {
+                    removeSignatureIfConfigured(eRezeptDocumentsEvent);
+                    binaryFrameWriter = new BinaryFrameWriter(getBinaryChunkSize());
+                }
+                try {
+                    binaryFrameWriter.send(session, eRezeptDocumentsEvent, result -> {
+                        if (!result.isOK()) {
+                            ereLog.fatal("Unable to send binary eRezeptWithDocumentsEvent: " +
+                                    result.getException());
+                        }
+                    });
+                } catch(RuntimeException ex) {
+                    ereLog.fatal("Unable to send binary eRezeptWithDocumentsEvent: " + ex);
+                }
+                continue;
+            }
+            if(jsonPayload == null) {
+                jsonPayload = generateJson(eRezeptDocumentsEvent);
+                ereLog.trace("Receipt Payload: " +
+                        jsonPayload);
+            }
+            SessionSender.of(session).sendObject(
                 jsonPayload,
                 result -> {
                     if (!result.isOK()) {
@@ -563,18 +651,21 @@ public class Websocket {
                                 result.getException());
                     }
                 });
-        });
+        }
     }
 
     public String generateJson(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+        removeSignatureIfConfigured(eRezeptDocumentsEvent);
+
+        return JsonEnvelopeWriter.write(jsonbFactory, "ERezeptWithDocuments", eRezeptDocumentsEvent.getERezeptWithDocuments(), eRezeptDocumentsEvent.getReplyToMessageId());
+    }
+
+    private void removeSignatureIfConfigured(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
         if(removeSignatureFromMessage) {
             eRezeptDocumentsEvent.getERezeptWithDocuments().stream()
                 .flatMap(ezd -> ezd.getBundleWithAccessCodeOrThrowables().stream())
                 .forEach(bundleWithAccessCodeOrThrowables -> bundleWithAccessCodeOrThrowables.setSignedBundle(null));
         }
-
-        return "{\"type\": \"ERezeptWithDocuments\", \"payload\": " +
-                jsonbFactory.toJson(eRezeptDocumentsEvent.getERezeptWithDocuments()) + ", \"replyToMessageId\": \""+eRezeptDocumentsEvent.getReplyToMessageId()+"\"}";
     }
 
     String generateJson(BundlesEvent bundlesEvent) {
@@ -621,9 +712,11 @@ public class Websocket {
         final Exception exception = exceptionFromReplyTo != null ? exceptionFromReplyTo : exceptionParam;
         final String replyToMessageId = replyToMessageIdFromException != null ? replyToMessageIdFromException : "";
 
+        final String exceptionMessage = JsonEnvelopeWriter.write(jsonbFactory, "Exception", exception, replyToMessageId);
+
         localSessions.forEach(session -> {
-            session.getAsyncRemote()
-                .sendObject("{\"type\": \"Exception\", \"payload\": "+jsonbFactory.toJson(exception)+", \"replyToMessageId\": \""+replyToMessageId+"\"}", result -> {
+            SessionSender.of(session)
+                .sendObject(exceptionMessage, result -> {
                     if (result.getException() != null) {
                         ereLog.fatal("Unable to send message: " + result.getException());
                     }
@@ -631,41 +724,43 @@ public class Websocket {
         });
     }
 
-    public void onEreLogNotificationEvent(@ObservesAsync EreLogNotificationEvent event) {
-        sessions.forEach(session -> {
+    public void onEreLogNotificationBatchEvent(@ObservesAsync EreLogNotificationBatchEvent batchEvent) {
+        for (EreLogNotificationEvent event : batchEvent.getNotifications()) {
             OutgoingPayload<EreLogNotificationEvent> outgoingPayload = new OutgoingPayload<>(event);
 
             outgoingPayload.setType("Notification");
 
-            session.getAsyncRemote()
-                    .sendObject(outgoingPayload.toString(), result -> {
+            // serialized once for all sessions
+            String notification = outgoingPayload.toString();
+            sessions.forEach(session -> SessionSender.of(session)
+                    .sendObject(notification, result -> {
                         if (result.getException() != null) {
                             ereLog.fatal("Unable to send message: " + result.getException());
                         }
-                    });
-        });
+                    }));
+        }
     }
 
     public void onHTMLBundlesEvent(@ObservesAsync HTMLBundlesEvent event) {
-        event.getReplyTo().getAsyncRemote()
-        .sendObject("{\"type\": \"HTMLBundles\", \"payload\": " +
-        jsonbFactory.toJson(event.getBundles()) + ", \"replyToMessageId\": \""+event.getReplyToMessageId()+"\"}", result -> {
+        SessionSender.of(event.getReplyTo())
+        .sendObject(JsonEnvelopeWriter.write(jsonbFactory, "HTMLBundles", event.getBundles(), event.getReplyToMessageId()), result -> {
             if (result.getException() != null) {
                 ereLog.fatal("Unable to send message: " + result.getException());
             }
         });
     }
 
-    private void processIncomingMessage(JsonObject object, Session senderSession) {
+    private void processIncomingMessage(JsonObject object, String message, Session senderSession) {
         String messageId = object.getString("id", "");
         for (IncomingMessageProcessor messageProcessor : messageProcessors) {
-            if (messageProcessor.canProcess(object.toString())) {
+            if (messageProcessor.canProcess(message)) {
                 if (messageProcessor instanceof IncomingBundleMessageProcessor) {
-                    String response = messageProcessor.process(object.toString());
-                    JsonObject bundlesJSON = Json.createReader(new StringReader(response)).readObject();
-                    processSignAndUploadBundles(senderSession, messageId, bundlesJSON);
+                    String response = messageProcessor.process(message);
+                    try (JsonReader jsonReader = Json.createReader(new StringReader(response))) {
+                        processSignAndUploadBundles(senderSession, messageId, jsonReader.readObject());
+                    }
                 } else {
-                    messageProcessor.process(object.toString());
+                    messageProcessor.process(message);
                 }
             }
         }
@@ -673,7 +768,7 @@ public class Websocket {
 
     private void sendMessage(String message, String errorMessage) {
         final String processedMessage = processOutgoing(message);
-        sessions.forEach(session -> session.getAsyncRemote().sendObject(processedMessage, result -> {
+        sessions.forEach(session -> SessionSender.of(session).sendObject(processedMessage, result -> {
             if (result.getException() != null)
                 ereLog.fatal(errorMessage);
         }));
@@ -0,0 +1,41 @@
+package health.ere.ps.config.interceptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.config.interceptor.ConfigUpdateObserver.Reload;
+import health.ere.ps.event.config.UserConfigurationsUpdateEvent;
+import health.ere.ps.model.config.UserConfigurations;
+
+public class ConfigUpdateObserverTest {
+
+    @Test
+    void testUnrelatedKeysDoNotReload() {
+        ConfigUpdateObserver observer = new ConfigUpdateObserver();
+        observer.handleUpdateProperties(new UserConfigurationsUpdateEvent(new UserConfigurations(),
+                Set.of("erixaHotfolder", "muster16TemplateProfile", "pruefnummer")));
+
+        assertTrue(observer.pullReloads().isEmpty());
+    }
+
+    @Test
+    void testReloadsAreCollectedUntilPulled() {
+        ConfigUpdateObserver observer = new ConfigUpdateObserver();
+        observer.handleUpdateProperties(new UserConfigurationsUpdateEvent(new UserConfigurations(), Set.of("mandantId")));
+        observer.handleUpdateProperties(new UserConfigurationsUpdateEvent(new UserConfigurations(), Set.of("clientCertificate")));
+
+        assertEquals(EnumSet.allOf(Reload.class), observer.pullReloads());
+        assertTrue(observer.pullReloads().isEmpty());
+    }
+
+    @Test
+    void testUnknownChangesReloadEverything() {
+        assertEquals(EnumSet.allOf(Reload.class), ConfigUpdateObserver.reloadsFor(null));
+        assertEquals(EnumSet.of(Reload.CONNECTOR_SERVICES), ConfigUpdateObserver.reloadsFor(Set.of("connectorBaseURL")));
+    }
+}
@@ -0,0 +1,221 @@
+package health.ere.ps.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+
+public class RetryEngineTest {
+
+    private static final RetryPolicy FAST = new RetryPolicy(3, 1, 4, 0, 10000);
+
+    @Test
+    void testDelayDoublesUpToMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0, 60000);
+        assertEquals(100, policy.delayMs(1));
+        assertEquals(200, policy.delayMs(2));
+        assertEquals(800, policy.delayMs(4));
+        assertEquals(1000, policy.delayMs(5));
+        assertEquals(1000, policy.delayMs(100));
+    }
+
+    @Test
+    void testJitterOnlyReducesDelay() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0.5, 60000);
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.delayMs(2);
+            assertTrue(delay > 100 && delay <= 200, "delay " + delay);
+        }
+    }
+
+    @Test
+    void testRetriesTransientFailures() throws Exception {
+        RetryEngine retryEngine = new RetryEngine();
+        AtomicInteger executions = new AtomicInteger();
+
+        String result = retryEngine.call("test", FAST, () -> {
+            if (executions.incrementAndGet() < 3) {
+                throw new IOException("connection reset");
+            }
+            return "OK";
+        }, RetryEngine::isTransient);
+
+        assertEquals("OK", result);
+        assertEquals(3, executions.get());
+        assertEquals(2, retryEngine.getTarget("test").getRetries());
+        assertEquals(1, retryEngine.getTarget("test").getSuccesses());
+    }
+
+    @Test
+    void testBlockingCallDoesNotSleepBeyondCap() {
+        RetryEngine retryEngine = new RetryEngine();
+        retryEngine.blockingMaxSleepMs = 150;
+        AtomicInteger executions = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy(10, 100, 100, 0, 60000);
+
+        assertThrows(IOException.class, () -> retryEngine.call("test", policy, () -> {
+            executions.incrementAndGet();
+            throw new IOException("connection reset");
+        }, RetryEngine::isTransient));
+
+        // the second delay of 100 ms would exceed the cap of 150 ms
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testDoesNotRetryOtherFailures() {
+        RetryEngine retryEngine = new RetryEngine();
+        AtomicInteger executions = new AtomicInteger();
+
+        assertThrows(IllegalArgumentException.class, () -> retryEngine.call("test", FAST, () -> {
+            executions.incrementAndGet();
+            throw new IllegalArgumentException();
+        }, RetryEngine::isTransient));
+
+        assertEquals(1, executions.get());
+        assertEquals(CircuitBreaker.State.CLOSED, retryEngine.getTarget("test").getCircuitBreaker().getState());
+    }
+
+    @Test
+    void testCircuitBreakerOpensAndProbes() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 1000, now::get);
+
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+
+        now.set(1000);
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        now.set(2000);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void testBudgetLimitsRetries() {
+        AtomicLong now = new AtomicLong();
+        RetryBudget retryBudget = new RetryBudget(0.5, 1, 2, now::get);
+
+        assertTrue(retryBudget.tryWithdraw());
+        assertTrue(retryBudget.tryWithdraw());
+        assertFalse(retryBudget.tryWithdraw());
+
+        retryBudget.deposit();
+        retryBudget.deposit();
+        assertTrue(retryBudget.tryWithdraw());
+
+        now.set(1000);
+        assertTrue(retryBudget.tryWithdraw());
+        assertFalse(retryBudget.tryWithdraw());
+    }
+
+    @Test
+    void testCallAsyncCompletesAfterRetries() throws Exception {
+        RetryEngine retryEngine = new RetryEngine();
+        retryEngine.observerExecutors = new ObserverExecutors();
+        AtomicInteger executions = new AtomicInteger();
+        try {
+            CompletableFuture<Integer> result = retryEngine.callAsync("test", FAST, () -> {
+                if (executions.incrementAndGet() < 2) {
+                    throw new IOException("timeout");
+                }
+                return executions.get();
+            }, RetryEngine::isTransient);
+
+            assertEquals(2, result.get(5, TimeUnit.SECONDS));
+        } finally {
+            retryEngine.observerExecutors.shutdown();
+        }
+    }
+
+    @Test
+    void testCallAsyncFailsWhenAttemptsAreExhausted() {
+        RetryEngine retryEngine = new RetryEngine();
+        retryEngine.observerExecutors = new ObserverExecutors();
+        try {
+            CompletableFuture<Object> result = retryEngine.callAsync("test", FAST, () -> {
+                throw new IOException("timeout");
+            }, RetryEngine::isTransient);
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IOException);
+            assertEquals(3, retryEngine.getTarget("test").getAttempts());
+            assertEquals(1, retryEngine.getTarget("test").getFailures());
+        } finally {
+            retryEngine.observerExecutors.shutdown();
+        }
+    }
+
+    @Test
+    void testCallAsyncFailsWhenTheExecutorRejects() {
+        RetryEngine retryEngine = new RetryEngine();
+
+        CompletableFuture<Object> result = retryEngine.callAsync("test", FAST, () -> "OK", RetryEngine::isTransient,
+            command -> {
+                throw new RejectedExecutionException("The workflow observers are saturated");
+            });
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    void testOpenBreakerFailsFast() {
+        RetryEngine retryEngine = new RetryEngine();
+        RetryPolicy slow = new RetryPolicy(3, 10000, 10000, 0, 60000);
+        CircuitBreaker circuitBreaker = retryEngine.getTarget("test").getCircuitBreaker();
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.recordFailure();
+        }
+        AtomicInteger executions = new AtomicInteger();
+
+        long start = System.currentTimeMillis();
+        assertThrows(CircuitBreakerOpenException.class, () -> retryEngine.call("test", slow, () -> executions.incrementAndGet(), RetryEngine::isTransient));
+
+        assertEquals(0, executions.get());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    void testKeyedTargetsHaveTheirOwnBreaker() {
+        RetryEngine retryEngine = new RetryEngine();
+        String connectorA = RetryEngine.keyed(RetryEngine.CONNECTOR, "https://connector-a");
+        String connectorB = RetryEngine.keyed(RetryEngine.CONNECTOR, "https://connector-b");
+        for (int i = 0; i < 5; i++) {
+            retryEngine.getTarget(connectorA).getCircuitBreaker().recordFailure();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, retryEngine.getTarget(connectorA).getCircuitBreaker().getState());
+        assertEquals(CircuitBreaker.State.CLOSED, retryEngine.getTarget(connectorB).getCircuitBreaker().getState());
+        assertEquals(RetryEngine.CONNECTOR, RetryEngine.keyed(RetryEngine.CONNECTOR, null));
+    }
+
+    @Test
+    void testOnlyUnsentRequestsAndUnauthorizedAreRetriedBeforeSent() {
+        assertTrue(RetryEngine.isRetryableBeforeSent(new jakarta.ws.rs.ProcessingException(new java.net.ConnectException("refused"))));
+        assertTrue(RetryEngine.isRetryableBeforeSent(new jakarta.ws.rs.WebApplicationException(401)));
+        assertFalse(RetryEngine.isRetryableBeforeSent(new jakarta.ws.rs.ProcessingException(new java.net.SocketTimeoutException())));
+        assertFalse(RetryEngine.isRetryableBeforeSent(new jakarta.ws.rs.WebApplicationException(503)));
+        assertFalse(RetryEngine.isRetryableBeforeSent(new jakarta.ws.rs.WebApplicationException(429)));
+    }
+}
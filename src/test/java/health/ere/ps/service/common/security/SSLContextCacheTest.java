@@ -0,0 +1,60 @@
+package health.ere.ps.service.common.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.jupiter.api.Test;
+
+public class SSLContextCacheTest {
+
+    @Test
+    void testContextIsCreatedOncePerFingerprint() throws Exception {
+        byte[] keystore = "keystore".getBytes(StandardCharsets.UTF_8);
+        String fingerprint = SSLContextCache.fingerprint(keystore, "secret");
+        assertNotEquals(fingerprint, SSLContextCache.fingerprint(keystore, "other"));
+        AtomicInteger created = new AtomicInteger();
+        SSLContextCache.SSLContextFactory factory = () -> {
+            created.incrementAndGet();
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            return sslContext;
+        };
+
+        SSLContextCache.CachedSSLContext first = SSLContextCache.get(fingerprint, factory);
+        SSLContextCache.CachedSSLContext second = SSLContextCache.get(fingerprint, factory);
+
+        assertSame(first, second);
+        assertSame(first.getSocketFactory(), second.getSocketFactory());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void testUnusedContextIsEvicted() throws Exception {
+        String fingerprint = SSLContextCache.fingerprint("old keystore".getBytes(StandardCharsets.UTF_8), "secret");
+        SSLContextCache.CachedSSLContext cached = SSLContextCache.get(fingerprint, () -> {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            return sslContext;
+        });
+        assertTrue(SSLContextCache.isCached(fingerprint));
+
+        // the providers using the old keystore were rebuilt
+        cached = null;
+        for (int i = 0; i < 50 && SSLContextCache.isCached(fingerprint); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertFalse(SSLContextCache.isCached(fingerprint));
+        assertFalse(((Map<?, ?>) SSLContextCache.getStatistics().get("keystores")).containsKey(fingerprint.substring(0, 12)));
+    }
+}
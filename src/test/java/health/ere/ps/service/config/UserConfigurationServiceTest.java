@@ -0,0 +1,104 @@
+package health.ere.ps.service.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import health.ere.ps.event.config.UserConfigurationsUpdateEvent;
+import health.ere.ps.model.config.UserConfigurations;
+import jakarta.enterprise.event.Event;
+
+public class UserConfigurationServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private UserConfigurationService userConfigurationService;
+    private Event<UserConfigurationsUpdateEvent> configurationsUpdateEvent;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() throws IOException {
+        Path file = tempDir.resolve("user.properties");
+        try (FileWriter writer = new FileWriter(file.toFile())) {
+            writer.write("connectorBaseURL=https://connector\nerixaHotfolder=/tmp/erixa\n");
+        }
+        configurationsUpdateEvent = mock(Event.class);
+        userConfigurationService = new UserConfigurationService();
+        userConfigurationService.configFilePath = file.toString();
+        userConfigurationService.configurationsUpdateEvent = configurationsUpdateEvent;
+    }
+
+    @Test
+    void testUpdatePublishesChangedKeys() {
+        UserConfigurations config = userConfigurationService.getConfig();
+        config.setErixaHotfolder("/tmp/other");
+        userConfigurationService.updateConfig(config);
+
+        ArgumentCaptor<UserConfigurationsUpdateEvent> event = ArgumentCaptor.forClass(UserConfigurationsUpdateEvent.class);
+        verify(configurationsUpdateEvent).fireAsync(event.capture());
+        assertTrue(event.getValue().getChangedKeys().contains("erixaHotfolder"));
+        assertFalse(event.getValue().getChangedKeys().contains("connectorBaseURL"));
+        assertEquals("/tmp/other", userConfigurationService.getConfig().getErixaHotfolder());
+        assertEquals("https://connector", event.getValue().getConfigurations().getConnectorBaseURL());
+    }
+
+    @Test
+    void testUnchangedUpdateIsNotPublished() {
+        userConfigurationService.updateConfig(userConfigurationService.getConfig());
+        // the first save fills the missing keys with empty values
+        userConfigurationService.updateConfig(userConfigurationService.getConfig());
+
+        verify(configurationsUpdateEvent).fireAsync(any());
+    }
+
+    @Test
+    void testReloadPublishesChangesOnDisk() throws IOException {
+        userConfigurationService.getConfig();
+        try (FileWriter writer = new FileWriter(userConfigurationService.configFilePath)) {
+            writer.write("connectorBaseURL=https://other-connector\nerixaHotfolder=/tmp/erixa\n");
+        }
+        userConfigurationService.reload();
+
+        ArgumentCaptor<UserConfigurationsUpdateEvent> event = ArgumentCaptor.forClass(UserConfigurationsUpdateEvent.class);
+        verify(configurationsUpdateEvent).fireAsync(event.capture());
+        assertEquals(Set.of("connectorBaseURL"), event.getValue().getChangedKeys());
+        assertEquals("https://other-connector", userConfigurationService.getConfig().getConnectorBaseURL());
+    }
+
+    @Test
+    void testReloadIgnoresOwnWrites() {
+        UserConfigurations config = userConfigurationService.getConfig();
+        config.setMandantId("Mandant2");
+        userConfigurationService.updateConfig(config);
+        userConfigurationService.reload();
+
+        verify(configurationsUpdateEvent).fireAsync(any());
+    }
+
+    @Test
+    void testChangedKeysContainsRemovedKeys() {
+        Properties previous = new Properties();
+        previous.setProperty("a", "1");
+        previous.setProperty("b", "2");
+        Properties current = new Properties();
+        current.setProperty("b", "3");
+        current.setProperty("c", "4");
+
+        assertEquals(Set.of("a", "b", "c"), UserConfigurationService.changedKeys(previous, current));
+    }
+}
@@ -0,0 +1,95 @@
+package health.ere.ps.service.connector.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ConnectorMetricsHandlerTest {
+
+    @AfterEach
+    void tearDown() {
+        ConnectorMetrics.clear();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCallsAreRecordedPerTenantAndOperation() throws Exception {
+        ConnectorMetricsHandler handler = new ConnectorMetricsHandler("m1");
+        SOAPMessage request = MessageFactory.newInstance().createMessage();
+        request.getSOAPBody().addBodyElement(new QName("http://ws.gematik.de/conn/SignatureService/v7.4", "SignDocument"));
+
+        handler.handleMessage(context(request, true));
+        Map<String, Object> signDocument = (Map<String, Object>) ((Map<String, Object>) ConnectorMetrics.getStatistics().get("m1")).get("SignDocument");
+        assertEquals(1L, signDocument.get("inFlight"));
+        assertEquals(1L, signDocument.get("sizedRequests"));
+        assertTrue((Long) signDocument.get("averageRequestBytes") > 0);
+
+        handler.handleFault(context(MessageFactory.newInstance().createMessage(), false));
+        handler.close(context(null, false));
+
+        signDocument = (Map<String, Object>) ((Map<String, Object>) ConnectorMetrics.getStatistics().get("m1")).get("SignDocument");
+        assertEquals(0L, signDocument.get("inFlight"));
+        assertEquals(1L, signDocument.get("calls"));
+        assertEquals(1L, signDocument.get("faults"));
+        assertEquals(0L, signDocument.get("errors"));
+        assertEquals(1L, ((Map<String, Long>) signDocument.get("latencyHistogramMs")).get("+Inf"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSizesAreSampledOrTakenFromTheContentLength() throws Exception {
+        ConnectorMetricsHandler handler = new ConnectorMetricsHandler("m1");
+        for (int i = 0; i < ConnectorMetrics.SIZE_SAMPLE_RATE + 1; i++) {
+            SOAPMessage request = MessageFactory.newInstance().createMessage();
+            request.getSOAPBody().addBodyElement(new QName("http://ws.gematik.de/conn/CardService/v8.1", "GetCards"));
+            handler.handleMessage(context(request, true));
+            SOAPMessageContext response = context(MessageFactory.newInstance().createMessage(), false);
+            when(response.get(MessageContext.HTTP_RESPONSE_HEADERS)).thenReturn(Map.of("content-length", List.of("1234")));
+            handler.handleMessage(response);
+        }
+
+        Map<String, Object> getCards = (Map<String, Object>) ((Map<String, Object>) ConnectorMetrics.getStatistics().get("m1")).get("GetCards");
+        assertEquals(17L, getCards.get("calls"));
+        assertEquals(2L, getCards.get("sizedRequests"));
+        assertEquals(17L, getCards.get("sizedResponses"));
+        assertEquals(1234L, getCards.get("averageResponseBytes"));
+    }
+
+    @Test
+    void testHistogramBuckets() {
+        ConnectorMetrics.OperationMetrics metrics = ConnectorMetrics.operation("m1", "ReadVSD");
+        metrics.started(10);
+        metrics.finished(3, 20, ConnectorMetrics.Outcome.OK);
+        metrics.started(10);
+        metrics.finished(700, 20, ConnectorMetrics.Outcome.ERROR);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Long> histogram = (Map<String, Long>) metrics.getStatistics().get("latencyHistogramMs");
+        assertEquals(1L, histogram.get("5"));
+        assertEquals(1L, histogram.get("500"));
+        assertEquals(2L, histogram.get("1000"));
+        assertEquals(2L, histogram.get("+Inf"));
+        assertEquals(351L, metrics.getStatistics().get("averageMs"));
+    }
+
+    private static SOAPMessageContext context(SOAPMessage message, boolean outbound) {
+        SOAPMessageContext context = mock(SOAPMessageContext.class);
+        when(context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY)).thenReturn(outbound);
+        when(context.getMessage()).thenReturn(message);
+        return context;
+    }
+}
@@ -0,0 +1,86 @@
+package health.ere.ps.service.connector.provider;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import health.ere.ps.config.RuntimeConfig;
+
+/**
+ * JMH benchmark of the connector accessors on the signing hot path, run it with:
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main ConnectorTenantBenchmark -prof gc"
+ *
+ * A signing request of a batch of documents without batch signing gets the signature port
+ * and the context twice per document. Compared are the accessors of the
+ * {@link MultiConnectorServicesProvider} with the former synchronized map, the accessors
+ * with the concurrent map and one {@link ConnectorTenant} per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ConnectorTenantBenchmark {
+
+    static final int DOCUMENTS = 3;
+
+    private RuntimeConfig runtimeConfig;
+    private MultiConnectorServicesProvider synchronizedProvider;
+    private MultiConnectorServicesProvider provider;
+
+    @Setup
+    public void setup() {
+        runtimeConfig = new RuntimeConfig("eHBAHandle", "SMCBHandle");
+        synchronizedProvider = new MultiConnectorServicesProvider();
+        synchronizedProvider.getTenant(runtimeConfig);
+        synchronizedProvider.singleConnectorServicesProvider = Collections.synchronizedMap(new HashMap<>(synchronizedProvider.singleConnectorServicesProvider));
+        provider = new MultiConnectorServicesProvider();
+        provider.getTenant(runtimeConfig);
+    }
+
+    @Benchmark
+    public void accessorsSynchronizedMap(Blackhole blackhole) {
+        accessors(synchronizedProvider, blackhole);
+    }
+
+    @Benchmark
+    public void accessorsConcurrentMap(Blackhole blackhole) {
+        accessors(provider, blackhole);
+    }
+
+    @Benchmark
+    public void connectorTenant(Blackhole blackhole) {
+        ConnectorTenant connectorTenant = provider.getTenant(runtimeConfig);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            blackhole.consume(connectorTenant.getSignatureServicePortType());
+            blackhole.consume(connectorTenant.getContextType());
+            blackhole.consume(connectorTenant.getSignatureServicePortType());
+            blackhole.consume(connectorTenant.getContextType());
+        }
+    }
+
+    private void accessors(MultiConnectorServicesProvider provider, Blackhole blackhole) {
+        for (int i = 0; i < DOCUMENTS; i++) {
+            blackhole.consume(provider.getSignatureServicePortType(runtimeConfig));
+            blackhole.consume(provider.getContextType(runtimeConfig));
+            blackhole.consume(provider.getSignatureServicePortType(runtimeConfig));
+            blackhole.consume(provider.getContextType(runtimeConfig));
+        }
+    }
+}
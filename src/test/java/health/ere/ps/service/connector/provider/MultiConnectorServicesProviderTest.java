@@ -1,9 +1,11 @@
 package health.ere.ps.service.connector.provider;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 
 import org.junit.jupiter.api.Test;
 
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
 import health.ere.ps.config.RuntimeConfig;
 
 public class MultiConnectorServicesProviderTest {
@@ -28,4 +30,18 @@ public class MultiConnectorServicesProviderTest {
         assertEquals(2, multiConnectorServicesProvider.singleConnectorServicesProvider.size());
 
     }
+
+    @Test
+    void testGetTenant() {
+        MultiConnectorServicesProvider multiConnectorServicesProvider = new MultiConnectorServicesProvider();
+        RuntimeConfig runtimeConfig = new RuntimeConfig("eHBAHandle", "SMCBHandle");
+        ConnectorTenant tenant = multiConnectorServicesProvider.getTenant(runtimeConfig);
+        ConnectorTenant second = multiConnectorServicesProvider.getTenant(new RuntimeConfig("eHBAHandle", "SMCBHandle"));
+        assertEquals(1, multiConnectorServicesProvider.singleConnectorServicesProvider.size());
+        assertNotSame(tenant.getContextType(), second.getContextType());
+
+        ContextType contextType = tenant.copyContextType();
+        contextType.setUserId("comfort-signature-user");
+        assertEquals(runtimeConfig.getUserId(), tenant.getContextType().getUserId());
+    }
 }
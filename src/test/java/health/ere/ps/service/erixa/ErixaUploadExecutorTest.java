@@ -0,0 +1,25 @@
+package health.ere.ps.service.erixa;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.exception.erixa.ErixaStatusException;
+
+class ErixaUploadExecutorTest {
+
+    @Test
+    void testOnlyUnsentUploadsAndServerErrorsAreRetried() {
+        assertTrue(ErixaUploadExecutor.isRetryable(new IOException(new ConnectException("refused"))));
+        assertTrue(ErixaUploadExecutor.isRetryable(new ErixaStatusException(503, "unavailable")));
+
+        assertFalse(ErixaUploadExecutor.isRetryable(new ErixaStatusException(400, "bad request")));
+        assertFalse(ErixaUploadExecutor.isRetryable(new SocketTimeoutException("read timed out")));
+        assertFalse(ErixaUploadExecutor.isRetryable(new InterruptedException()));
+    }
+}
@@ -0,0 +1,23 @@
+package health.ere.ps.service.erixa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+class ErixaUploadServiceTest {
+
+    @Test
+    void testDecodedBase64LengthMatchesDecoder() {
+        for (int length = 0; length < 10; length++) {
+            byte[] data = "abcdefghij".substring(0, length).getBytes(StandardCharsets.US_ASCII);
+            String padded = Base64.getEncoder().encodeToString(data);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(data);
+
+            assertEquals(length, ErixaUploadService.decodedBase64Length(padded));
+            assertEquals(length, ErixaUploadService.decodedBase64Length(unpadded));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package health.ere.ps.service.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class FanOutTest {
+
+    @Test
+    void testResultsAreInItemOrder() throws Exception {
+        ObserverPool pool = new ObserverPool("workflow", 4, 10, false, false);
+        try {
+            assertEquals(List.of(2, 4, 6, 8, 10), FanOut.map(List.of(1, 2, 3, 4, 5), pool, 4, i -> i * 2));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testNestedFanOutOnASaturatedPoolDoesNotDeadlock() throws Exception {
+        ObserverPool pool = new ObserverPool("workflow", 1, 1, false, false);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // the only thread and the queue are taken
+            pool.execute(() -> await(release));
+            pool.execute(() -> { });
+
+            List<Integer> results = FanOut.map(List.of(1, 2, 3), pool, 3,
+                i -> FanOut.map(List.of(i, i), pool, 2, j -> j).stream().mapToInt(Integer::intValue).sum());
+            assertEquals(List.of(2, 4, 6), results);
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testFailureIsThrownAfterAllItems() {
+        ObserverPool pool = new ObserverPool("workflow", 2, 10, false, false);
+        try {
+            IOException e = assertThrows(IOException.class, () -> FanOut.map(List.of(1, 2, 3), pool, 2, i -> {
+                if (i != 2) {
+                    throw new IOException("item " + i);
+                }
+                return i;
+            }));
+            assertEquals(1, e.getSuppressed().length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package health.ere.ps.service.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class ObserverPoolTest {
+
+    @Test
+    void testSaturatedInteractivePoolRejects() throws Exception {
+        ObserverPool pool = new ObserverPool("interactive", 1, 1, false, false);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.execute(() -> await(release));
+            pool.execute(() -> { });
+
+            assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> { }));
+            assertEquals(1L, pool.getStatistics().get("rejected"));
+            assertEquals(1, pool.getStatistics().get("queued"));
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSaturatedExtractionPoolRunsInCaller() throws Exception {
+        ObserverPool pool = new ObserverPool("extraction", 1, 1, true, false);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        try {
+            pool.execute(() -> await(release));
+            pool.execute(() -> { });
+            pool.execute(() -> thread.set(Thread.currentThread().getName()));
+
+            assertEquals(Thread.currentThread().getName(), thread.get());
+            assertEquals(1L, pool.getStatistics().get("callerRuns"));
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testTasksRunOnNamedThreads() throws Exception {
+        ObserverPool pool = new ObserverPool("workflow", 2, 10, false, false);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        try {
+            pool.execute(() -> {
+                thread.set(Thread.currentThread().getName());
+                done.countDown();
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(thread.get().startsWith("ere-observer-workflow-"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package health.ere.ps.service.extractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.model.muster16.MedicationString;
+import health.ere.ps.model.muster16.Muster16PrescriptionForm;
+
+class Muster16FormMapperTest {
+
+    private final String lineSep = System.lineSeparator();
+
+    @Test
+    void testToForm() {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("insurance", "TK > Brandenburg            83" + lineSep);
+        fields.put("withPayment", "X" + lineSep);
+        fields.put("nameAndAddress", "Blechschmidt" + lineSep + "Manuel               " + lineSep + "Droysenstr. 7" + lineSep + "D 10629 Berlin   " + lineSep);
+        fields.put("birthdate", "16.07.86" + lineSep + "       " + lineSep);
+        fields.put("payor", "100696012 " + lineSep);
+        fields.put("insuranceNumber", "V062074590   " + lineSep);
+        fields.put("status", "1000000" + lineSep);
+        fields.put("locationNumber", " 30001234  " + lineSep);
+        fields.put("practitionerNumber", "30001234  " + lineSep);
+        fields.put("date", "13.04.21" + lineSep);
+        fields.put("medication", "Amoxicillin 1000mg N2" + lineSep + "3x täglich alle 8 Std" + lineSep + "-  -  -  -  -  -" + lineSep
+            + "Ibuprofen 800mg (PZN: 01016144) »1 - 1 - 1«" + lineSep);
+        fields.put("practitionerText", "Dr. Hans Topp-Glücklich" + lineSep + "Musterstr. 1" + lineSep + "18107 Rostock" + lineSep
+            + "Tel 06151 1111111" + lineSep + "Fax 06151 2222222" + lineSep);
+
+        Muster16PrescriptionForm form = Muster16FormMapper.toForm(fields);
+
+        assertEquals("TK > Brandenburg            83", form.getInsuranceCompany());
+        assertTrue(form.getWithPayment());
+        assertEquals("Blechschmidt", form.getPatientLastName());
+        assertEquals("Manuel", form.getPatientFirstName());
+        assertEquals("Droysenstr.", form.getPatientStreetName());
+        assertEquals("7", form.getPatientStreetNumber());
+        assertEquals("10629", form.getPatientZipCode());
+        assertEquals("Berlin", form.getPatientCity());
+        assertEquals("16.07.86", form.getPatientDateOfBirth());
+        assertEquals("100696012", form.getInsuranceCompanyId());
+        assertEquals("V062074590", form.getPatientInsuranceId());
+        assertEquals("1000000", form.getPatientStatus());
+        assertEquals("30001234", form.getClinicId());
+        assertEquals("30001234", form.getPractitionerId());
+        assertEquals("13.04.21", form.getPrescriptionDate());
+
+        assertEquals("Dr.", form.getPractitionerNamePrefix());
+        assertEquals("Hans", form.getPractitionerFirstName());
+        assertEquals("Topp-Glücklich", form.getPractitionerLastName());
+        assertEquals("Musterstr.", form.getPractitionerStreetName());
+        assertEquals("1", form.getPractitionerStreetNumber());
+        assertEquals("18107", form.getPractitionerZipCode());
+        assertEquals("06151 1111111", form.getPractitionerPhone());
+        assertEquals("06151 2222222", form.getPractitionerFax());
+
+        assertEquals(2, form.getPrescriptionList().size());
+        MedicationString amoxicillin = form.getPrescriptionList().get(0);
+        assertEquals("Amoxicillin 1000mg N2", amoxicillin.getName());
+        assertEquals("3x täglich alle 8 Std", amoxicillin.getInstructions());
+        assertNull(amoxicillin.getPzn());
+        MedicationString ibuprofen = form.getPrescriptionList().get(1);
+        assertEquals("Ibuprofen 800mg", ibuprofen.getName());
+        assertEquals("01016144", ibuprofen.getPzn());
+        assertEquals("1-1-1", ibuprofen.getDosage());
+    }
+}
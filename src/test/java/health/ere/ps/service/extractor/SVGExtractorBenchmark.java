@@ -0,0 +1,127 @@
+package health.ere.ps.service.extractor;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripperByArea;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+
+/**
+ * JMH benchmark of the Muster 16 extraction over the bundled print samples, run it with:
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main SVGExtractorBenchmark"
+ *
+ * Compared are the former extraction, which parsed the template for every document and ran
+ * one text stripper per field, the extraction with the cached layout and one stripper per page
+ * and the sequential and parallel extraction of a scanned stack of forms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SVGExtractorBenchmark {
+
+    private static final Map<String, String> SAMPLES = Map.of(
+        "CGM_Z1", "/muster-16-print-samples/cgm-z1-manuel-blechschmidt.pdf",
+        "APRAXOS", "/muster-16-print-samples/apraxos_DIN_A4_Output_F-job_222.pdf");
+
+    static final int STACK_PAGES = 16;
+
+    @Param({"CGM_Z1", "APRAXOS"})
+    public String profile;
+
+    private SVGExtractorConfiguration configuration;
+    private ObserverExecutors observerExecutors;
+    private SVGExtractor svgExtractor;
+    private PDDocument document;
+    private byte[] stack;
+
+    @Setup
+    public void setup() throws IOException {
+        configuration = TemplateProfile.valueOf(profile).configuration;
+        observerExecutors = new ObserverExecutors();
+        svgExtractor = new SVGExtractor(configuration);
+        svgExtractor.observerExecutors = observerExecutors;
+        document = load();
+        try (PDDocument stackDocument = load()) {
+            for (int i = 1; i < STACK_PAGES; i++) {
+                stackDocument.importPage(document.getPage(0));
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            stackDocument.save(bytes);
+            stack = bytes.toByteArray();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        document.close();
+        observerExecutors.shutdown();
+    }
+
+    /**
+     * The extraction before the cached layout: the template is parsed for every document and
+     * every field is extracted by its own text stripper.
+     */
+    @Benchmark
+    public Map<String, String> templateParsedStripperPerField() throws IOException, XMLStreamException {
+        PDPage page = document.getPage(0);
+        if (configuration.ROTATE_DEGREE != 0) {
+            page.setRotation(configuration.ROTATE_DEGREE);
+        }
+        Map<String, String> map = new HashMap<>();
+        SVGTemplateLayout layout = SVGTemplateLayout.parse(configuration);
+        for (Map.Entry<String, Rectangle2D.Float> region : layout.getRegions().entrySet()) {
+            PDFTextStripperByArea textStripper = new PDFTextStripperByArea();
+            textStripper.addRegion(region.getKey(), region.getValue());
+            textStripper.extractRegions(page);
+            map.put(region.getKey(), textStripper.getTextForRegion(region.getKey()));
+        }
+        return map;
+    }
+
+    @Benchmark
+    public Map<String, String> cachedLayoutStripperPerPage() throws IOException, XMLStreamException {
+        return svgExtractor.extract(document);
+    }
+
+    @Benchmark
+    public List<Map<String, String>> stackSequential() throws IOException, XMLStreamException {
+        try (PDDocument stackDocument = PDDocument.load(stack)) {
+            return svgExtractor.extractPages(stackDocument);
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, String>> stackParallel() throws IOException, XMLStreamException {
+        return svgExtractor.extractPages(stack);
+    }
+
+    private PDDocument load() throws IOException {
+        return PDDocument.load(getClass().getResourceAsStream(SAMPLES.get(profile)));
+    }
+}
@@ -6,10 +6,14 @@ import static health.ere.ps.service.extractor.TemplateProfile.CGM_Z1;
 import static health.ere.ps.service.extractor.TemplateProfile.DENS;
 import static health.ere.ps.service.extractor.TemplateProfile.DENS_LANDSCAPE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -17,9 +21,13 @@ import java.util.stream.Collectors;
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import health.ere.ps.service.executor.ObserverExecutors;
+
 class SVGExtractorTest {
 
 
@@ -363,6 +371,53 @@ class SVGExtractorTest {
     }
 
 
+    @Test
+    void testTemplateLayoutIsScaledByConfiguration() throws XMLStreamException {
+        SVGTemplateLayout layout = SVGTemplateLayout.of(CGM_Z1.configuration);
+        SVGTemplateLayout other = SVGTemplateLayout.of(APRAXOS.configuration);
+
+        assertTrue(layout.getRegions().containsKey("medication"));
+        assertEquals(layout.getRegions().keySet(), other.getRegions().keySet());
+        assertEquals((layout.getRegions().get("medication").width / CGM_Z1.configuration.SCALE),
+            (other.getRegions().get("medication").width / APRAXOS.configuration.SCALE), 0.001f);
+    }
+
+    @Test
+    void testExtractPagesInParallel() throws IOException, XMLStreamException {
+        SVGExtractor svgExtractor = new SVGExtractor(CGM_Z1.configuration);
+        ObserverExecutors observerExecutors = new ObserverExecutors();
+        svgExtractor.observerExecutors = observerExecutors;
+        try (PDDocument sample = PDDocument.load(getClass().getResourceAsStream("/muster-16-print-samples/cgm-z1-manuel-blechschmidt.pdf"));
+             PDDocument document = PDDocument.load(getClass().getResourceAsStream("/muster-16-print-samples/cgm-z1-manuel-blechschmidt.pdf"))) {
+            Map<String, String> expected = svgExtractor.extract(sample);
+            for (int i = 1; i < 4; i++) {
+                document.importPage(sample.getPage(0));
+            }
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            document.save(pdf);
+
+            List<Map<String, String>> maps = svgExtractor.extractPages(pdf.toByteArray());
+
+            assertEquals(4, maps.size());
+            maps.forEach(map -> assertEquals(expected, map));
+            assertEquals(maps, svgExtractor.extractPages(document));
+        } finally {
+            observerExecutors.shutdown();
+        }
+    }
+
+    @Test
+    void testBlankPageIsBlank() throws IOException, XMLStreamException {
+        SVGExtractor svgExtractor = new SVGExtractor(CGM_Z1.configuration);
+        try (PDDocument sample = PDDocument.load(getClass().getResourceAsStream("/muster-16-print-samples/cgm-z1-manuel-blechschmidt.pdf"));
+             PDDocument blank = new PDDocument()) {
+            blank.addPage(new PDPage(PDRectangle.A5));
+
+            assertTrue(SVGExtractor.isBlank(svgExtractor.extract(blank)));
+            assertFalse(SVGExtractor.isBlank(svgExtractor.extract(sample)));
+        }
+    }
+
     private void logExtraction(Map<String, String> map) {
         System.out.println(map.entrySet().stream().map((e) -> "        assertEquals(\""+e.getValue().replaceAll(lineSep, "\\\\n")+"\", map.get(\""+e.getKey()+"\"));").collect(Collectors.joining(lineSep)));
     }
@@ -0,0 +1,76 @@
+package health.ere.ps.service.fhir.bundle;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import health.ere.ps.model.muster16.MedicationString;
+import health.ere.ps.model.muster16.Muster16PrescriptionForm;
+
+/**
+ * JMH benchmark of the bundle building, the allocations are reported by the gc profiler:
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main PrescriptionBundlesBuilderBenchmark -prof gc"
+ *
+ * Compared are the bundles of a form built one medication at a time, which builds the patient,
+ * practitioner, organization and coverage for every bundle like before, and the bundles built
+ * together with the resources shared per form. The date parsing is compared separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrescriptionBundlesBuilderBenchmark {
+
+    @Param({"1", "3", "5"})
+    public int medications;
+
+    private Muster16PrescriptionForm form;
+
+    @Setup
+    public void setup() {
+        form = PrescriptionBundlesBuilderTest.form(medications);
+    }
+
+    @Benchmark
+    public void oneBundleAtATime(Blackhole blackhole) {
+        PrescriptionBundlesBuilder builder = new PrescriptionBundlesBuilder(form);
+        for (MedicationString medication : form.getPrescriptionList()) {
+            blackhole.consume(builder.createBundleForMedication(medication));
+        }
+    }
+
+    @Benchmark
+    public List<Bundle> sharedPerForm() {
+        return new PrescriptionBundlesBuilder(form).createBundles();
+    }
+
+    @Benchmark
+    public Date parseDateNewSimpleDateFormat() throws ParseException {
+        return new SimpleDateFormat("dd.MM.yy", Locale.GERMANY).parse("16.07.86");
+    }
+
+    @Benchmark
+    public Date parseDateCachedFormatter() {
+        return PrescriptionBundlesBuilder.parseDate("16.07.86");
+    }
+}
@@ -0,0 +1,113 @@
+package health.ere.ps.service.fhir.bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.model.muster16.MedicationString;
+import health.ere.ps.model.muster16.Muster16PrescriptionForm;
+
+public class PrescriptionBundlesBuilderTest {
+
+    @Test
+    void testBundlesShareCopiesOfTheFormResources() {
+        List<Bundle> bundles = new PrescriptionBundlesBuilder(form(3)).createBundles();
+
+        assertEquals(3, bundles.size());
+        Patient first = patient(bundles.get(0));
+        Patient second = patient(bundles.get(1));
+        assertEquals(first.getId(), second.getId());
+        assertNotSame(first, second);
+        assertEquals(LocalDate.of(1986, 7, 16), toLocalDate(first.getBirthDate()));
+    }
+
+    @Test
+    void testCreateBundlesOfSeveralForms() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<List<Bundle>> bundles = PrescriptionBundlesBuilder.createBundles(List.of(form(1), form(2), form(3)),
+                    "pruefnummer", executor, 3);
+
+            assertEquals(3, bundles.size());
+            assertEquals(1, bundles.get(0).size());
+            assertEquals(2, bundles.get(1).size());
+            assertEquals(3, bundles.get(2).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testParseDate() {
+        assertEquals(LocalDate.of(2021, 4, 13), toLocalDate(PrescriptionBundlesBuilder.parseDate("13.04.21")));
+        assertEquals(LocalDate.of(1986, 7, 16), toLocalDate(PrescriptionBundlesBuilder.parseDate("16.07.86")));
+        assertEquals(LocalDate.of(2021, 4, 5), toLocalDate(PrescriptionBundlesBuilder.parseDate("2021-04-05")));
+    }
+
+    @Test
+    void testParseDateIsLenientLikeSimpleDateFormat() {
+        assertEquals(LocalDate.of(2021, 3, 3), toLocalDate(PrescriptionBundlesBuilder.parseDate("31.02.21")));
+        assertEquals(LocalDate.of(2022, 1, 5), toLocalDate(PrescriptionBundlesBuilder.parseDate("2021-13-05")));
+    }
+
+    @Test
+    void testTwoDigitYearsAreAtMostTwentyYearsAhead() {
+        int year = LocalDate.now().getYear() + 25;
+
+        assertEquals(year - 100, toLocalDate(PrescriptionBundlesBuilder.parseDate(String.format("01.01.%02d", year % 100))).getYear());
+    }
+
+    private static Patient patient(Bundle bundle) {
+        return (Patient) bundle.getEntry().stream()
+            .filter(entry -> entry.getResource() instanceof Patient)
+            .findFirst().orElseThrow().getResource();
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    static Muster16PrescriptionForm form(int medications) {
+        Muster16PrescriptionForm form = new Muster16PrescriptionForm();
+        form.setInsuranceCompany("TK");
+        form.setInsuranceCompanyId("100696012");
+        form.setPatientNamePrefix(new ArrayList<>());
+        form.setPatientFirstName("Manuel");
+        form.setPatientLastName("Blechschmidt");
+        form.setPatientStreetName("Droysenstr.");
+        form.setPatientStreetNumber("7");
+        form.setPatientZipCode("10629");
+        form.setPatientCity("Berlin");
+        form.setPatientInsuranceId("V062074590");
+        form.setPatientDateOfBirth("16.07.86");
+        form.setPatientStatus("1000000");
+        form.setClinicId("30001234");
+        form.setPractitionerId("30001234");
+        form.setPrescriptionDate("13.04.21");
+        form.setPractitionerFirstName("Hans");
+        form.setPractitionerLastName("Topp-Glücklich");
+        form.setPractitionerStreetName("Musterstr.");
+        form.setPractitionerStreetNumber("1");
+        form.setPractitionerZipCode("18107");
+        form.setPractitionerCity("Rostock");
+        form.setPractitionerPhone("06151 1111111");
+        form.setWithPayment(true);
+        List<MedicationString> prescriptionList = new ArrayList<>();
+        for (int i = 0; i < medications; i++) {
+            prescriptionList.add(new MedicationString("Ibuprofen 800mg " + i, null, null, "1-1-1", null, "01016144"));
+        }
+        form.setPrescriptionList(prescriptionList);
+        return form;
+    }
+}
@@ -10,8 +10,14 @@ import java.time.Instant;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -102,4 +108,40 @@ public class BearerTokenManageServiceTest {
         assertEquals(1, bearerTokenMap.size());
         assertEquals(MOCK_JWT, bearerTokenMap.get(runtimeConfig2));
     }
+
+    @Test
+    public void testConcurrentRequestsForOneConfigRequestOneToken() throws Exception {
+        String[] parts = EXPIRED_JWT.split("\\.");
+        parts[1] = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("{\"exp\":" + (Instant.now().getEpochSecond() + 600) + "}").getBytes());
+        String validToken = String.join(".", parts);
+        CountDownLatch requested = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockBearerTokenService.requestBearerToken(eq(mockRuntimeConfig), any(), anyString())).thenAnswer(invocation -> {
+            requested.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return validToken;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> bearerTokenManageService
+                    .requestNewAccessTokenIfNecessary(mockRuntimeConfig, mockSession, "first"));
+            assertTrue(requested.await(5, TimeUnit.SECONDS));
+            Future<?> second = executor.submit(() -> bearerTokenManageService
+                    .requestNewAccessTokenIfNecessary(mockRuntimeConfig, mockSession, "second"));
+
+            // another tenant does not wait for the running request
+            RuntimeConfig otherRuntimeConfig = mock(RuntimeConfig.class);
+            bearerTokenManageService.requestNewAccessTokenIfNecessary(otherRuntimeConfig, mockSession, "other");
+            assertEquals(MOCK_JWT, bearerTokenManageService.bearerToken.get(otherRuntimeConfig));
+
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(mockBearerTokenService, times(1)).requestBearerToken(eq(mockRuntimeConfig), any(), anyString());
+        assertEquals(validToken, bearerTokenManageService.bearerToken.get(mockRuntimeConfig));
+    }
 }
@@ -4,11 +4,13 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -17,6 +19,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 import org.hl7.fhir.r4.model.Bundle;
@@ -33,6 +36,8 @@ import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV740;
 import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755;
 import health.ere.ps.config.AppConfig;
 import health.ere.ps.config.UserConfig;
+import health.ere.ps.event.AbortTaskEntry;
+import health.ere.ps.event.AbortTaskStatus;
 import health.ere.ps.event.ActivateComfortSignatureEvent;
 import health.ere.ps.event.BundlesWithAccessCodeEvent;
 import health.ere.ps.event.GetSignatureModeEvent;
@@ -40,12 +45,16 @@ import health.ere.ps.event.GetSignatureModeResponseEvent;
 import health.ere.ps.event.SignAndUploadBundlesEvent;
 import health.ere.ps.exception.gematik.ERezeptWorkflowException;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.retry.RetryEngine;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
+import health.ere.ps.service.connector.provider.AbstractConnectorServicesProvider;
+import health.ere.ps.service.connector.provider.ConnectorTenant;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
 import health.ere.ps.service.idp.BearerTokenService;
 import jakarta.enterprise.event.Event;
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.client.Invocation.Builder;
@@ -79,6 +88,7 @@ public class ERezeptWorkflowServiceUnitTest {
     }
     private ERezeptWorkflowService mockERezeptWorkflowServiceUnit(Consumer<SignatureServicePortTypeV740> signatureServicePortTypeV740Consumer) {
         ERezeptWorkflowService eRezeptWorkflowServiceUnit = new ERezeptWorkflowService();
+        eRezeptWorkflowServiceUnit.retryEngine = new RetryEngine();
         
         ConnectorCardsService connectorCardsService = mock(ConnectorCardsService.class);
         eRezeptWorkflowServiceUnit.connectorCardsService = connectorCardsService;
@@ -96,6 +106,11 @@ public class ERezeptWorkflowServiceUnitTest {
         if(signatureServicePortTypeV740Consumer != null) {
             signatureServicePortTypeV740Consumer.accept(signatureServicePortTypeV740);
         }
+
+        AbstractConnectorServicesProvider tenantProvider = mock(AbstractConnectorServicesProvider.class);
+        when(tenantProvider.getSignatureServicePortTypeV755()).thenReturn(signatureServicePortTypeV755);
+        when(tenantProvider.getSignatureServicePortType()).thenReturn(signatureServicePortTypeV740);
+        when(connectorServicesProvider.getTenant(any())).thenAnswer(invocation -> new ConnectorTenant(tenantProvider, new ContextType()));
         return eRezeptWorkflowServiceUnit;
     }
 
@@ -234,6 +249,37 @@ public class ERezeptWorkflowServiceUnitTest {
         assertEquals(2, thrownEvent.getBundleWithAccessCodeOrThrowable().get(0).size());
     }
 
+    @Test
+    public void testAbortERezeptTasks() {
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = mockERezeptWorkflowServiceUnit();
+        mockClient(eRezeptWorkflowServiceUnit);
+        eRezeptWorkflowServiceUnit.appConfig = mock(AppConfig.class);
+        when(eRezeptWorkflowServiceUnit.appConfig.getPrescriptionServiceURL()).thenReturn("http://localhost:8080");
+        eRezeptWorkflowServiceUnit.bearerTokenService = mock(BearerTokenService.class);
+        when(eRezeptWorkflowServiceUnit.bearerTokenService.requestBearerToken(any(), any(), any())).thenReturn("token");
+        eRezeptWorkflowServiceUnit.abortConcurrency = 2;
+
+        List<AbortTaskEntry> abortTaskEntries = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            AbortTaskEntry abortTaskEntry = new AbortTaskEntry();
+            abortTaskEntry.setId("160.000.000.000.00" + i + ".01");
+            abortTaskEntry.setAccessCode("ACCESS_CODE");
+            abortTaskEntries.add(abortTaskEntry);
+        }
+        List<AbortTaskStatus> streamed = new CopyOnWriteArrayList<>();
+
+        List<AbortTaskStatus> abortTaskStatusList = eRezeptWorkflowServiceUnit.abortERezeptTasks(null, abortTaskEntries, streamed::add, null, null);
+
+        assertEquals(5, abortTaskStatusList.size());
+        assertEquals(5, streamed.size());
+        for(int i = 0; i < 5; i++) {
+            assertEquals(AbortTaskStatus.Status.OK, abortTaskStatusList.get(i).getStatus());
+            assertEquals(abortTaskEntries.get(i), abortTaskStatusList.get(i).getAbortTaskEntry());
+        }
+        // one token for the whole batch
+        verify(eRezeptWorkflowServiceUnit.bearerTokenService, times(1)).requestBearerToken(any(), any(), any());
+    }
+
     private void mockClient(ERezeptWorkflowService eRezeptWorkflowServiceUnit) {
         eRezeptWorkflowServiceUnit.client = mock(Client.class);
         WebTarget target = mock(WebTarget.class);
@@ -305,4 +351,100 @@ public class ERezeptWorkflowServiceUnitTest {
         assertEquals(0x00, bundleWithAccessCodeOrThrowable.get(0).getSignedBundle()[0]);
         assertEquals(0x01, bundleWithAccessCodeOrThrowable.get(1).getSignedBundle()[0]);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCreateTaskIsNotRetriedOnServerError() {
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = mockERezeptWorkflowServiceUnit();
+        Builder invocation = mockClient(eRezeptWorkflowServiceUnit, Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        eRezeptWorkflowServiceUnit.appConfig = mock(AppConfig.class);
+        when(eRezeptWorkflowServiceUnit.appConfig.getPrescriptionServiceURL()).thenReturn("http://localhost:8080");
+        eRezeptWorkflowServiceUnit.bearerTokenService = mock(BearerTokenService.class);
+
+        // the task may have been created before the server failed, a retry would create another one
+        assertThrows(WebApplicationException.class, () -> eRezeptWorkflowServiceUnit.createERezeptTask(true, null));
+        verify(invocation, times(1)).post(any());
+    }
+
+    @Test
+    public void testCreateTaskIsRetriedWithNewTokenOn401() {
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = mockERezeptWorkflowServiceUnit();
+        Builder invocation = mockClient(eRezeptWorkflowServiceUnit, Response.Status.UNAUTHORIZED.getStatusCode(), Response.Status.OK.getStatusCode());
+        eRezeptWorkflowServiceUnit.appConfig = mock(AppConfig.class);
+        when(eRezeptWorkflowServiceUnit.appConfig.getPrescriptionServiceURL()).thenReturn("http://localhost:8080");
+        eRezeptWorkflowServiceUnit.bearerTokenService = mock(BearerTokenService.class);
+        when(eRezeptWorkflowServiceUnit.bearerTokenService.requestBearerToken(any(), any(), any())).thenReturn("rejected", "renewed");
+        eRezeptWorkflowServiceUnit.setBearerToken("rejected");
+
+        eRezeptWorkflowServiceUnit.createERezeptTask(true, null);
+
+        verify(invocation, times(2)).post(any());
+        verify(invocation).header("Authorization", "Bearer rejected");
+        verify(invocation).header("Authorization", "Bearer renewed");
+    }
+
+    @Test
+    public void testAbortIsRetriedWithNewTokenOn401() {
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = mockERezeptWorkflowServiceUnit();
+        Builder invocation = mockClient(eRezeptWorkflowServiceUnit, Response.Status.UNAUTHORIZED.getStatusCode(), Response.Status.OK.getStatusCode());
+        eRezeptWorkflowServiceUnit.appConfig = mock(AppConfig.class);
+        when(eRezeptWorkflowServiceUnit.appConfig.getPrescriptionServiceURL()).thenReturn("http://localhost:8080");
+        eRezeptWorkflowServiceUnit.bearerTokenService = mock(BearerTokenService.class);
+        when(eRezeptWorkflowServiceUnit.bearerTokenService.requestBearerToken(any(), any(), any())).thenReturn("rejected", "renewed");
+        AbortTaskEntry abortTaskEntry = new AbortTaskEntry();
+        abortTaskEntry.setId("160.000.000.000.001.01");
+        abortTaskEntry.setAccessCode("ACCESS_CODE");
+
+        List<AbortTaskStatus> abortTaskStatusList = eRezeptWorkflowServiceUnit.abortERezeptTasks(null, List.of(abortTaskEntry), null, null, null);
+
+        assertEquals(AbortTaskStatus.Status.OK, abortTaskStatusList.get(0).getStatus());
+        verify(invocation).header("Authorization", "Bearer rejected");
+        verify(invocation).header("Authorization", "Bearer renewed");
+    }
+
+    @Test
+    public void testOnlyTransientConnectorFaultsAreRetried() {
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = mockERezeptWorkflowServiceUnit();
+
+        assertTrue(eRezeptWorkflowServiceUnit.isRetryableConnectorFailure(connectorFault(4001)));
+        assertTrue(eRezeptWorkflowServiceUnit.isRetryableConnectorFailure(new jakarta.xml.ws.WebServiceException(new java.net.ConnectException())));
+        // the connector may have signed already, e.g. with a comfort signature counter
+        assertFalse(eRezeptWorkflowServiceUnit.isRetryableConnectorFailure(new jakarta.xml.ws.WebServiceException(new java.net.SocketTimeoutException())));
+        // faults of the request itself
+        assertFalse(eRezeptWorkflowServiceUnit.isRetryableConnectorFailure(connectorFault(4010)));
+        assertFalse(eRezeptWorkflowServiceUnit.isRetryableConnectorFailure(connectorFault(4063)));
+        assertFalse(eRezeptWorkflowServiceUnit.isRetryableConnectorFailure(new health.ere.ps.exception.connector.ConnectorCardsException("no card")));
+    }
+
+    @Test
+    public void testConnectorRetryTargetPerConnector() {
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = mockERezeptWorkflowServiceUnit();
+        eRezeptWorkflowServiceUnit.userConfig = mock(UserConfig.class);
+        when(eRezeptWorkflowServiceUnit.userConfig.getConnectorBaseURL()).thenReturn("https://connector-a");
+
+        assertEquals("connector@https://connector-a", eRezeptWorkflowServiceUnit.connectorRetryTarget(null));
+    }
+
+    private static FaultMessage connectorFault(int code) {
+        de.gematik.ws.tel.error.v2.Error error = new de.gematik.ws.tel.error.v2.Error();
+        de.gematik.ws.tel.error.v2.Error.Trace trace = new de.gematik.ws.tel.error.v2.Error.Trace();
+        trace.setCode(java.math.BigInteger.valueOf(code));
+        error.getTrace().add(trace);
+        return new FaultMessage("fault " + code, error);
+    }
+
+    /**
+     * Every post is answered with the next status, the last one is repeated.
+     */
+    private Builder mockClient(ERezeptWorkflowService eRezeptWorkflowServiceUnit, int... statuses) {
+        mockClient(eRezeptWorkflowServiceUnit);
+        Builder invocation = eRezeptWorkflowServiceUnit.client.target("http://localhost:8080").request();
+        Response[] responses = new Response[statuses.length];
+        for(int i = 0; i < statuses.length; i++) {
+            responses[i] = mock(Response.class);
+            when(responses[i].readEntity(eq(String.class))).thenReturn("<Task xmlns=\"http://hl7.org/fhir\"></Task>");
+            when(responses[i].getStatus()).thenReturn(statuses[i]);
+        }
+        when(invocation.post(any())).thenReturn(responses[0], Arrays.copyOfRange(responses, 1, responses.length));
+        return invocation;
+    }
+}
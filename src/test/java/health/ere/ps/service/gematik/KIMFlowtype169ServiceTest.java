@@ -25,6 +25,7 @@ import org.junit.jupiter.api.Test;
 
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.model.config.UserConfigurations;
+import health.ere.ps.retry.RetryEngine;
 import health.ere.ps.service.common.security.SSLSocketFactory;
 import health.ere.ps.service.common.security.SecretsManagerService.KeyStoreType;
 import health.ere.ps.service.common.security.SecretsManagerService.SslContextType;
@@ -44,6 +45,8 @@ public class KIMFlowtype169ServiceTest {
       String eRezeptToken = "Task/4711/$accept?ac=777bea0e13cc9c42ceec14aec3ddee2263325dc2c6c699db115f58fe423607ea";
 
       KIMFlowtype169Service kIMFlowtype169Service = new KIMFlowtype169Service();
+      kIMFlowtype169Service.smtpTransportPool = new KIMSmtpTransportPool();
+      kIMFlowtype169Service.smtpTransportPool.retryEngine = new RetryEngine();
       kIMFlowtype169Service.sendERezeptToKIMAddress(fromKimAddress, toKimAddress, "Hallo Apotheke", smtpHostServer, smtpUser, smtpPassword, eRezeptToken);
     }
 
@@ -110,6 +113,9 @@ public class KIMFlowtype169ServiceTest {
       SSLSocketFactory.delegate = sslContext.getSocketFactory();
 
       KIMFlowtype169Service kIMFlowtype169Service = new KIMFlowtype169Service();
+      kIMFlowtype169Service.vzdSearchService = new VZDSearchService();
+      kIMFlowtype169Service.vzdSearchService.connectionPool = new VZDConnectionPool();
+      kIMFlowtype169Service.vzdSearchService.indexEnabled = false;
       kIMFlowtype169Service.disableEndpointIdentification();
       RuntimeConfig runtimeConfig = new RuntimeConfig();
       UserConfigurations configurations = new UserConfigurations();
@@ -0,0 +1,188 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.retry.RetryEngine;
+import jakarta.mail.internet.MimeMessage;
+
+public class KIMSmtpTransportPoolTest {
+
+    private FakeSmtpServer smtpServer;
+    private KIMSmtpTransportPool smtpTransportPool;
+
+    @BeforeEach
+    void setup() throws IOException {
+        smtpServer = new FakeSmtpServer();
+        smtpTransportPool = new KIMSmtpTransportPool();
+        smtpTransportPool.retryEngine = new RetryEngine();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtpTransportPool.shutdown();
+        smtpServer.close();
+    }
+
+    @Test
+    void testBatchesShareOneConnection() throws Exception {
+        smtpTransportPool.maxConnectionsPerSender = 1;
+        KIMSmtpTransportPool.Sender sender = sender();
+
+        assertEquals(5, sender.sendAll(messages(sender, 5)));
+        assertEquals(3, sender.sendAll(messages(sender, 3)));
+
+        assertEquals(1, smtpServer.connections.get());
+        assertEquals(8, smtpServer.messages.size());
+        assertEquals(1, sender.getIdleCount());
+    }
+
+    @Test
+    void testBatchIsSpreadOverConcurrentConnections() throws Exception {
+        KIMSmtpTransportPool.Sender sender = sender();
+
+        assertEquals(6, sender.sendAll(messages(sender, 6)));
+
+        // a chunk that finishes early hands its connection to the other one
+        assertTrue(smtpServer.connections.get() <= 2);
+        assertEquals(6, smtpServer.messages.size());
+    }
+
+    @Test
+    void testRejectedMessagesAreReportedToTheCaller() throws Exception {
+        smtpServer.rejectContaining = "Task/1/";
+        KIMSmtpTransportPool.Sender sender = sender();
+        List<MimeMessage> messages = messages(sender, 4);
+
+        KIMSmtpTransportPool.PartialSendException e = assertThrows(KIMSmtpTransportPool.PartialSendException.class,
+                () -> sender.sendAll(messages));
+
+        assertEquals(3, e.getSent().size());
+        assertEquals(List.of(messages.get(1)), e.getUnsent());
+        assertEquals(3, smtpServer.messages.size());
+    }
+
+    @Test
+    void testServiceSendsOneMessagePerToken() {
+        KIMFlowtype169Service kimFlowtype169Service = new KIMFlowtype169Service();
+        kimFlowtype169Service.smtpTransportPool = smtpTransportPool;
+
+        kimFlowtype169Service.sendERezeptsToKIMAddress("praxis@arzt.kim.telematik", "see@apotheke.kim.telematik",
+                "Hallo Apotheke", "localhost:" + smtpServer.getPort(), "user", "password",
+                List.of("Task/1/$accept?ac=a", "Task/2/$accept?ac=b"));
+
+        assertEquals(2, smtpServer.messages.size());
+        assertTrue(smtpServer.messages.stream().anyMatch(message -> message.contains("Task/2/$accept?ac=b")));
+    }
+
+    private KIMSmtpTransportPool.Sender sender() {
+        return smtpTransportPool.getSender("localhost:" + smtpServer.getPort(), "user", "password");
+    }
+
+    private static List<MimeMessage> messages(KIMSmtpTransportPool.Sender sender, int count) throws Exception {
+        List<MimeMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(KIMFlowtype169Service.createMessage(sender.getSession(), "praxis@arzt.kim.telematik",
+                    "see@apotheke.kim.telematik", "Hallo Apotheke", "Task/" + i + "/$accept?ac=" + i));
+        }
+        return messages;
+    }
+
+    /**
+     * Accepts every command, just enough SMTP for jakarta mail.
+     */
+    static class FakeSmtpServer {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final AtomicInteger connections = new AtomicInteger();
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        volatile String rejectContaining;
+
+        FakeSmtpServer() throws IOException {
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        connections.incrementAndGet();
+                        Thread session = new Thread(() -> handle(socket));
+                        session.setDaemon(true);
+                        session.start();
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        private void handle(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+                reply(out, "220 localhost ESMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase();
+                    if (command.startsWith("EHLO")) {
+                        reply(out, "250-localhost\r\n250 AUTH PLAIN");
+                    } else if (command.equals("AUTH PLAIN")) {
+                        reply(out, "334 ");
+                        in.readLine();
+                        reply(out, "235 2.7.0 Authentication successful");
+                    } else if (command.startsWith("AUTH")) {
+                        reply(out, "235 2.7.0 Authentication successful");
+                    } else if (command.equals("DATA")) {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        StringBuilder data = new StringBuilder();
+                        while (!(line = in.readLine()).equals(".")) {
+                            data.append(line).append('\n');
+                        }
+                        if (rejectContaining != null && data.indexOf(rejectContaining) >= 0) {
+                            reply(out, "554 5.6.0 Message rejected");
+                            continue;
+                        }
+                        messages.add(data.toString());
+                        reply(out, "250 2.0.0 Ok: queued");
+                    } else if (command.equals("QUIT")) {
+                        reply(out, "221 2.0.0 Bye");
+                        return;
+                    } else {
+                        reply(out, "250 2.0.0 Ok");
+                    }
+                }
+            } catch (IOException e) {
+                // client went away
+            }
+        }
+
+        private static void reply(PrintWriter out, String reply) {
+            out.print(reply + "\r\n");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Task;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import health.ere.ps.config.AppConfig;
+import health.ere.ps.service.fhir.FHIRService;
+import health.ere.ps.service.idp.BearerTokenService;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+public class PharmacyServiceUnitTest {
+
+    private static final FhirContext fhirContext = FHIRService.getFhirContext();
+
+    @Test
+    void testCharsetIsTakenFromContentType() {
+        assertEquals(StandardCharsets.ISO_8859_1, PharmacyService.charset(new MediaType("application", "fhir+xml", "ISO-8859-1")));
+        assertEquals(StandardCharsets.UTF_8, PharmacyService.charset(new MediaType("application", "fhir+xml")));
+        assertEquals(StandardCharsets.UTF_8, PharmacyService.charset(new MediaType("application", "fhir+xml", "x-unknown")));
+        assertEquals(StandardCharsets.UTF_8, PharmacyService.charset(null));
+    }
+
+    @Test
+    void testParseSignedContent() throws Exception {
+        Bundle bundle = parseSignedContent("Müller");
+
+        assertEquals("Müller", ((Patient) bundle.getEntryFirstRep().getResource()).getNameFirstRep().getFamily());
+    }
+
+    @Test
+    void testAcceptAll() throws Exception {
+        PharmacyService pharmacyService = new PharmacyService();
+        pharmacyService.appConfig = mock(AppConfig.class);
+        when(pharmacyService.appConfig.getPrescriptionServiceURL()).thenReturn("http://localhost:8080");
+        pharmacyService.bearerTokenService = mock(BearerTokenService.class);
+        pharmacyService.client = mock(Client.class);
+        WebTarget rejectTarget = mockReject(pharmacyService.client);
+        mockAccept(pharmacyService.client, "/Task/1/$accept?ac=a", acceptResponse("1", "Müller"));
+        mockAccept(pharmacyService.client, "/Task/2/$accept?ac=b", acceptResponse("2", "Schmidt"));
+        mockAccept(pharmacyService.client, "/Task/3/$accept?ac=c", "<Bundle xmlns=\"http://hl7.org/fhir\"></Bundle>");
+
+        List<Bundle> bundles = pharmacyService.acceptAll(List.of("/Task/1/$accept?ac=a", "/Task/2/$accept?ac=b", "/Task/3/$accept?ac=c"), null);
+
+        assertEquals(3, bundles.size());
+        assertEquals("Müller", ((Patient) bundles.get(0).getEntryFirstRep().getResource()).getNameFirstRep().getFamily());
+        assertEquals("Schmidt", ((Patient) bundles.get(1).getEntryFirstRep().getResource()).getNameFirstRep().getFamily());
+        assertNull(bundles.get(2));
+        verify(pharmacyService.bearerTokenService, times(1)).requestBearerToken(any(), any(), any());
+        verify(rejectTarget).path("/Task/1/$reject");
+        verify(rejectTarget).path("/Task/2/$reject");
+        verify(rejectTarget, never()).path("/Task/3/$reject");
+    }
+
+    private static WebTarget mockReject(Client client) {
+        WebTarget target = mock(WebTarget.class, RETURNS_SELF);
+        Invocation.Builder invocation = mock(Invocation.Builder.class, RETURNS_SELF);
+        when(target.request()).thenReturn(invocation);
+        Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(Response.Status.NO_CONTENT.getStatusCode());
+        when(invocation.post(any())).thenReturn(response);
+        when(client.target("http://localhost:8080")).thenReturn(target);
+        return target;
+    }
+
+    private static void mockAccept(Client client, String token, String responseBody) {
+        WebTarget target = mock(WebTarget.class);
+        Invocation.Builder invocation = mock(Invocation.Builder.class);
+        when(target.request()).thenReturn(invocation);
+        when(invocation.header(anyString(), any())).thenReturn(invocation);
+        Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(Response.Status.OK.getStatusCode());
+        when(response.readEntity(eq(InputStream.class))).thenReturn(new ByteArrayInputStream(responseBody.getBytes(StandardCharsets.UTF_8)));
+        when(invocation.post(any())).thenReturn(response);
+        when(client.target("http://localhost:8080" + token)).thenReturn(target);
+    }
+
+    private static String acceptResponse(String prescriptionId, String family) throws Exception {
+        Bundle bundle = new Bundle();
+        Task task = new Task();
+        task.addIdentifier().setSystem("https://gematik.de/fhir/erp/NamingSystem/GEM_ERP_NS_PrescriptionId").setValue(prescriptionId);
+        task.addIdentifier().setSystem("https://gematik.de/fhir/erp/NamingSystem/GEM_ERP_NS_Secret").setValue("secret");
+        bundle.addEntry().setResource(task);
+        Binary binary = new Binary();
+        binary.setData(pkcs7(family));
+        bundle.addEntry().setResource(binary);
+        return fhirContext.newXmlParser().encodeResourceToString(bundle);
+    }
+
+    private static Bundle parseSignedContent(String family) throws Exception {
+        return PharmacyService.parseSignedContent(pkcs7(family));
+    }
+
+    private static byte[] pkcs7(String family) throws Exception {
+        Bundle prescription = new Bundle();
+        Patient patient = new Patient();
+        patient.addName().setFamily(family);
+        prescription.addEntry().setResource(patient);
+        byte[] content = fhirContext.newXmlParser().encodeResourceToString(prescription).getBytes(StandardCharsets.UTF_8);
+        return new CMSSignedDataGenerator().generate(new CMSProcessableByteArray(content), true).getEncoded();
+    }
+}
@@ -0,0 +1,119 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import de.gematik.ws.conn.cardservice.v8.CardInfoType;
+import de.gematik.ws.conn.cardservice.v8.Cards;
+import de.gematik.ws.conn.cardservicecommon.v2.CardTypeType;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+import de.gematik.ws.conn.eventservice.v7.GetCards;
+import de.gematik.ws.conn.eventservice.v7.GetCardsResponse;
+import de.gematik.ws.conn.eventservice.wsdl.v7.EventServicePortType;
+import de.gematik.ws.conn.eventservice.wsdl.v7.FaultMessage;
+import health.ere.ps.service.executor.ObserverExecutors;
+import health.ere.ps.service.executor.Workload;
+
+public class PrefillPrescriptionServiceUnitTest {
+
+    @Test
+    void testGetFirstCardHandlesUsesOneGetCardsCall() throws FaultMessage {
+        EventServicePortType eventService = mock(EventServicePortType.class);
+        GetCardsResponse getCardsResponse = new GetCardsResponse();
+        Cards cards = new Cards();
+        cards.getCard().add(card(CardTypeType.SMC_B, "SMC-B-1"));
+        cards.getCard().add(card(CardTypeType.EGK, "EGK-1"));
+        cards.getCard().add(card(CardTypeType.SMC_B, "SMC-B-2"));
+        cards.getCard().add(card(CardTypeType.HBA, "HBA-1"));
+        getCardsResponse.setCards(cards);
+        when(eventService.getCards(any())).thenReturn(getCardsResponse);
+
+        Map<CardTypeType, String> cardHandles = PrefillPrescriptionService.getFirstCardHandles(eventService, new ContextType());
+
+        assertEquals("EGK-1", cardHandles.get(CardTypeType.EGK));
+        assertEquals("SMC-B-1", cardHandles.get(CardTypeType.SMC_B));
+        assertEquals("HBA-1", cardHandles.get(CardTypeType.HBA));
+        ArgumentCaptor<GetCards> parameter = ArgumentCaptor.forClass(GetCards.class);
+        verify(eventService, times(1)).getCards(parameter.capture());
+        assertNull(parameter.getValue().getCardType());
+    }
+
+    @Test
+    void testConcurrentPrefillsDoNotDeadlockInteractivePool() throws InterruptedException {
+        ObserverExecutors observerExecutors = new ObserverExecutors();
+        try {
+            PrefillPrescriptionService service = new PrefillPrescriptionService();
+            service.observerExecutors = observerExecutors;
+            int prefills = 16;
+            CountDownLatch done = new CountDownLatch(prefills);
+            AtomicInteger certificates = new AtomicInteger();
+            // more prefills than interactive threads, each waits for two reads on the same pool
+            for (int i = 0; i < prefills; i++) {
+                observerExecutors.getPool(Workload.INTERACTIVE).execute(() -> {
+                    try {
+                        PrefillPrescriptionService.PrefillTimings timings = new PrefillPrescriptionService.PrefillTimings();
+                        PrefillPrescriptionService.CertificateReadTask<String> hba = service.readCertificateAsync("HBA-1",
+                                timings, "hbaCertificate", handle -> {
+                                    Thread.sleep(20);
+                                    return handle;
+                                });
+                        PrefillPrescriptionService.CertificateReadTask<String> smcb = service.readCertificateAsync(
+                                "SMC-B-1", timings, "smcbCertificate", handle -> {
+                                    Thread.sleep(20);
+                                    return handle;
+                                });
+                        if ("HBA-1".equals(PrefillPrescriptionService.await(hba))
+                                && "SMC-B-1".equals(PrefillPrescriptionService.await(smcb))) {
+                            certificates.addAndGet(2);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(2 * prefills, certificates.get());
+        } finally {
+            observerExecutors.shutdown();
+        }
+    }
+
+    @Test
+    void testCopyOfContextDoesNotShareUserId() {
+        ContextType context = new ContextType();
+        context.setMandantId("Mandant1");
+        context.setClientSystemId("ClientID1");
+        context.setWorkplaceId("Workplace1");
+
+        ContextType copy = PrefillPrescriptionService.copyOf(context);
+        copy.setUserId("user");
+
+        assertEquals("Mandant1", copy.getMandantId());
+        assertEquals("ClientID1", copy.getClientSystemId());
+        assertEquals("Workplace1", copy.getWorkplaceId());
+        assertNull(context.getUserId());
+    }
+
+    private static CardInfoType card(CardTypeType cardType, String cardHandle) {
+        CardInfoType card = new CardInfoType();
+        card.setCardType(cardType);
+        card.setCardHandle(cardHandle);
+        return card;
+    }
+}
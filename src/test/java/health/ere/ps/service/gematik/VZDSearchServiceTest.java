@@ -0,0 +1,139 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+
+import health.ere.ps.config.RuntimeConfig;
+
+public class VZDSearchServiceTest {
+
+    private InMemoryDirectoryServer server;
+    private VZDSearchService vzdSearchService;
+    private final RuntimeConfig runtimeConfig = new RuntimeConfig("https://localhost/");
+
+    @BeforeEach
+    void startServer() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(VZDSearchService.BASE_DN);
+        config.setSchema(null);
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+        server.add("dn: dc=data,dc=vzd", "objectClass: top", "objectClass: domain", "dc: data");
+        addEntry("1", "Apotheke am See", "see@apotheke.kim.telematik", "1.2.276.0.76.4.54");
+        addEntry("2", "Seestern Apotheke", "seestern@apotheke.kim.telematik", "1.2.276.0.76.4.54");
+        addEntry("3", "Praxis am See", "praxis@arzt.kim.telematik", "1.2.276.0.76.4.50");
+
+        VZDConnectionPool connectionPool = new VZDConnectionPool();
+        connectionPool.vzdUrl = Optional.of("ldap://localhost:" + server.getListenPort() + "/");
+        vzdSearchService = new VZDSearchService();
+        vzdSearchService.connectionPool = connectionPool;
+        vzdSearchService.indexEnabled = false;
+    }
+
+    @AfterEach
+    void stopServer() {
+        vzdSearchService.shutdown();
+        vzdSearchService.connectionPool.closeAll();
+        server.shutDown(true);
+    }
+
+    @Test
+    void testSearchIsCachedAndReusesConnection() throws Exception {
+        List<Map<String, Object>> results = vzdSearchService.search(runtimeConfig, "See");
+        assertEquals(2, results.size());
+
+        server.delete("uid=1,dc=data,dc=vzd");
+        assertEquals(2, vzdSearchService.search(runtimeConfig, "see").size());
+        assertEquals(1, vzdSearchService.search(runtimeConfig, "Seestern").size());
+        assertEquals(1, vzdSearchService.connectionPool.getIdleCount());
+    }
+
+    @Test
+    void testSearchTermIsEscaped() {
+        assertEquals("a\\2a\\28b\\29\\5c", VZDSearchService.escapeFilterValue("a*(b)\\"));
+        assertTrue(vzdSearchService.search(runtimeConfig, "***").isEmpty());
+    }
+
+    @Test
+    void testIndexIsLoadedAndRefreshed() throws Exception {
+        VZDSearchService.PharmacyDirectory directory = new VZDSearchService.PharmacyDirectory(runtimeConfig);
+        vzdSearchService.refresh(directory);
+
+        assertEquals(2, directory.index.size());
+        assertEquals(2, directory.index.search("see", 10).size());
+        assertEquals("Seestern Apotheke", directory.index.search("apo sees", 10).get(0).get("displayName"));
+        assertTrue(directory.index.search("praxis", 10).isEmpty());
+
+        addEntry("4", "Bahnhof-Apotheke", "bahnhof@apotheke.kim.telematik", "1.2.276.0.76.4.54");
+        vzdSearchService.refresh(directory);
+        assertEquals(3, directory.index.size());
+        assertEquals(1, directory.index.search("bahn", 10).size());
+
+        server.modify("dn: uid=2,dc=data,dc=vzd", "changetype: modify", "replace: professionOID",
+                "professionOID: 1.2.276.0.76.4.50");
+        vzdSearchService.refresh(directory);
+        assertEquals(2, directory.index.size());
+
+        server.delete("uid=1,dc=data,dc=vzd");
+        vzdSearchService.refresh(directory);
+        assertEquals(2, directory.index.size());
+        directory.lastFullRefresh = 0;
+        vzdSearchService.refresh(directory);
+        assertEquals(1, directory.index.size());
+    }
+
+    @Test
+    void testIndexMatchesSubstrings() throws Exception {
+        VZDSearchService.PharmacyDirectory directory = new VZDSearchService.PharmacyDirectory(runtimeConfig);
+        addEntry("4", "Stadtapotheke", "stadt@apotheke.kim.telematik", "1.2.276.0.76.4.54");
+        vzdSearchService.refresh(directory);
+
+        assertTrue(directory.index.search("Apoth", 10).stream()
+                .anyMatch(entry -> "Stadtapotheke".equals(entry.get("displayName"))));
+        assertEquals(3, directory.index.search("apoth", 10).size());
+        assertEquals("Seestern Apotheke", directory.index.search("stern", 10).get(0).get("displayName"));
+        // too short for a trigram, all entries are checked
+        assertEquals("Apotheke am See", directory.index.search("am", 10).get(0).get("displayName"));
+        assertTrue(directory.index.search("sternapo", 10).isEmpty());
+    }
+
+    @Test
+    void testTruncatedDirectoryIsRetriedAtTheNextFullRefresh() {
+        VZDSearchService.PharmacyDirectory directory = new VZDSearchService.PharmacyDirectory(runtimeConfig);
+        directory.truncated = true;
+        directory.lastFullRefresh = System.currentTimeMillis();
+        vzdSearchService.refresh(directory);
+        assertTrue(directory.index == null);
+
+        directory.lastFullRefresh = 0;
+        vzdSearchService.refresh(directory);
+        assertEquals(2, directory.index.size());
+        assertTrue(!directory.truncated);
+    }
+
+    @Test
+    void testCacheEvictsLeastRecentlyUsedSearches() {
+        vzdSearchService.cacheSize = 2;
+        vzdSearchService.search(runtimeConfig, "See");
+        vzdSearchService.search(runtimeConfig, "Seestern");
+        vzdSearchService.search(runtimeConfig, "Apotheke");
+        assertEquals(2, vzdSearchService.getCacheCount());
+    }
+
+    private void addEntry(String uid, String displayName, String mail, String professionOID) throws Exception {
+        server.add("dn: uid=" + uid + ",dc=data,dc=vzd", "objectClass: top", "uid: " + uid,
+                "displayName: " + displayName, "mail: " + mail, "professionOID: " + professionOID);
+    }
+}
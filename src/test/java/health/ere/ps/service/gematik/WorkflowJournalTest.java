@@ -0,0 +1,186 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.Task;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.model.config.UserConfigurations;
+
+public class WorkflowJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testInterruptedBatchIsRecovered() throws IOException {
+        WorkflowJournal workflowJournal = workflowJournal();
+        workflowJournal.open();
+        WorkflowJournal.Batch batch = workflowJournal.begin();
+        batch.taskCreated(0, "160.000.000.000.001.01", "a");
+        batch.taskCreated(1, "160.000.000.000.002.01", "b");
+        batch.taskCreated(2, "160.000.000.000.003.01", "c");
+        batch.signed(0, new byte[] {1});
+        batch.activated(0);
+        batch.signed(1, new byte[] {2});
+        workflowJournal.shutdown();
+
+        WorkflowJournal restarted = workflowJournal();
+        List<WorkflowJournal.JournaledTask> incomplete = restarted.open();
+        assertEquals(2, incomplete.size());
+        assertEquals("160.000.000.000.002.01", incomplete.get(0).getTaskId());
+        assertEquals(WorkflowJournal.State.SIGNED, incomplete.get(0).getState());
+        assertEquals(WorkflowJournal.sha256(new byte[] {2}), incomplete.get(0).getSignedHash());
+        assertEquals(WorkflowJournal.State.CREATED, incomplete.get(1).getState());
+
+        when(restarted.eRezeptWorkflowService.getERezeptTaskStatus(any(), any(), any())).thenReturn(Task.TaskStatus.DRAFT);
+        doThrow(new RuntimeException("Prescription server is down")).when(restarted.eRezeptWorkflowService)
+            .abortERezeptTask(null, "160.000.000.000.003.01", "c");
+        restarted.recover(incomplete).join();
+        verify(restarted.eRezeptWorkflowService).abortERezeptTask(null, "160.000.000.000.002.01", "b");
+        // the failed task is parked, nothing keeps the journal
+        assertEquals(0, Files.size(directory.resolve("workflow.log")));
+        restarted.shutdown();
+
+        WorkflowJournal again = workflowJournal();
+        incomplete = again.open();
+        assertEquals(1, incomplete.size());
+        assertEquals("c", incomplete.get(0).getAccessCode());
+        assertTrue(Files.notExists(directory.resolve("parked.log")));
+        again.shutdown();
+    }
+
+    @Test
+    void testActivatedTaskIsNotAborted() throws IOException {
+        WorkflowJournal workflowJournal = workflowJournal();
+        workflowJournal.open();
+        WorkflowJournal.Batch batch = workflowJournal.begin();
+        batch.taskCreated(0, "160.000.000.000.001.01", "a");
+        batch.signed(0, new byte[] {1});
+        // stopped after the activation, before its record was written
+        workflowJournal.shutdown();
+
+        WorkflowJournal restarted = workflowJournal();
+        List<WorkflowJournal.JournaledTask> incomplete = restarted.open();
+        when(restarted.eRezeptWorkflowService.getERezeptTaskStatus(null, "160.000.000.000.001.01", "a"))
+            .thenReturn(Task.TaskStatus.READY);
+        restarted.recover(incomplete).join();
+        verify(restarted.eRezeptWorkflowService, never()).abortERezeptTask(any(), any(), any());
+        restarted.shutdown();
+
+        WorkflowJournal again = workflowJournal();
+        assertTrue(again.open().isEmpty());
+        again.shutdown();
+    }
+
+    @Test
+    void testFailedCheckIsRetried() throws IOException {
+        WorkflowJournal workflowJournal = workflowJournal();
+        workflowJournal.open();
+        workflowJournal.begin().taskCreated(0, "160.000.000.000.001.01", "a");
+        workflowJournal.shutdown();
+
+        WorkflowJournal restarted = workflowJournal();
+        restarted.recoveryAttempts = 3;
+        List<WorkflowJournal.JournaledTask> incomplete = restarted.open();
+        when(restarted.eRezeptWorkflowService.getERezeptTaskStatus(null, "160.000.000.000.001.01", "a"))
+            .thenThrow(new RuntimeException("Prescription server is down"))
+            .thenReturn(Task.TaskStatus.DRAFT);
+        restarted.recover(incomplete).join();
+        verify(restarted.eRezeptWorkflowService).abortERezeptTask(null, "160.000.000.000.001.01", "a");
+        restarted.shutdown();
+
+        WorkflowJournal again = workflowJournal();
+        assertTrue(again.open().isEmpty());
+        again.shutdown();
+    }
+
+    @Test
+    void testTaskOfOtherTenantIsRecoveredWithItsRuntimeConfig() throws IOException {
+        RuntimeConfig runtimeConfig = new RuntimeConfig("HBA-2", "SMC-B-2");
+        runtimeConfig.setIdpClientId("client-2");
+        UserConfigurations configurations = new UserConfigurations();
+        configurations.setMandantId("Mandant2");
+        configurations.setClientCertificate("data:application/x-pkcs12;base64," + "A".repeat(70000));
+        runtimeConfig.updateProperties(configurations);
+
+        WorkflowJournal workflowJournal = workflowJournal();
+        workflowJournal.open();
+        workflowJournal.begin(runtimeConfig).taskCreated(0, "160.000.000.000.001.01", "a");
+        workflowJournal.shutdown();
+
+        WorkflowJournal restarted = workflowJournal();
+        List<WorkflowJournal.JournaledTask> incomplete = restarted.open();
+        when(restarted.eRezeptWorkflowService.getERezeptTaskStatus(any(), any(), any())).thenReturn(Task.TaskStatus.DRAFT);
+        restarted.recover(incomplete).join();
+
+        ArgumentCaptor<RuntimeConfig> recovered = ArgumentCaptor.forClass(RuntimeConfig.class);
+        verify(restarted.eRezeptWorkflowService).abortERezeptTask(recovered.capture(), eq("160.000.000.000.001.01"), eq("a"));
+        assertEquals("SMC-B-2", recovered.getValue().getSMCBHandle());
+        assertEquals("HBA-2", recovered.getValue().getEHBAHandle());
+        assertEquals("client-2", recovered.getValue().getIdpClientId());
+        assertEquals("Mandant2", recovered.getValue().getConfigurations().getMandantId());
+        assertEquals(configurations.getClientCertificate(), recovered.getValue().getConfigurations().getClientCertificate());
+        verify(restarted.eRezeptWorkflowService, never()).abortERezeptTask(any(), any());
+        restarted.shutdown();
+    }
+
+    @Test
+    void testFinishedBatchesAreTruncated() throws IOException {
+        WorkflowJournal workflowJournal = workflowJournal();
+        workflowJournal.open();
+        WorkflowJournal.Batch batch = workflowJournal.begin();
+        batch.taskCreated(0, "160.000.000.000.001.01", "a");
+        batch.end();
+        workflowJournal.shutdown();
+
+        assertEquals(0, Files.size(directory.resolve("workflow.log")));
+        WorkflowJournal restarted = workflowJournal();
+        assertTrue(restarted.open().isEmpty());
+        restarted.shutdown();
+    }
+
+    @Test
+    void testTornRecordIsCutOff() throws IOException {
+        WorkflowJournal workflowJournal = workflowJournal();
+        workflowJournal.open();
+        workflowJournal.begin().taskCreated(0, "160.000.000.000.001.01", "a");
+        workflowJournal.shutdown();
+        Files.write(directory.resolve("workflow.log"), new byte[] {0, 0, 0, 42, 1}, StandardOpenOption.APPEND);
+
+        WorkflowJournal restarted = workflowJournal();
+        assertEquals(1, restarted.open().size());
+        restarted.begin().taskCreated(0, "160.000.000.000.002.01", "b");
+        restarted.shutdown();
+
+        WorkflowJournal again = workflowJournal();
+        assertEquals(2, again.open().size());
+        again.shutdown();
+    }
+
+    private WorkflowJournal workflowJournal() {
+        WorkflowJournal workflowJournal = new WorkflowJournal();
+        workflowJournal.directory = directory.toString();
+        workflowJournal.eRezeptWorkflowService = mock(ERezeptWorkflowService.class);
+        workflowJournal.recoveryAttempts = 1;
+        workflowJournal.recoveryBackoffMs = 1;
+        return workflowJournal;
+    }
+}
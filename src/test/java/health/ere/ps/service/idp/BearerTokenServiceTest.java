@@ -0,0 +1,43 @@
+package health.ere.ps.service.idp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.config.AppConfig;
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.service.idp.client.IdpClient;
+import jakarta.enterprise.inject.Instance;
+
+public class BearerTokenServiceTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testIdpClientPerTenant() {
+        BearerTokenService bearerTokenService = new BearerTokenService();
+        bearerTokenService.appConfig = mock(AppConfig.class);
+        when(bearerTokenService.appConfig.getIdpBaseURL()).thenReturn("https://idp.example");
+        when(bearerTokenService.appConfig.getIdpClientId()).thenReturn("client");
+        when(bearerTokenService.appConfig.getIdpAuthRequestRedirectURL()).thenReturn("https://ere.health/redirect_uri");
+        bearerTokenService.idpClient = new IdpClient();
+        bearerTokenService.idpClients = mock(Instance.class);
+        when(bearerTokenService.idpClients.get()).thenAnswer(invocation -> new IdpClient());
+
+        assertSame(bearerTokenService.idpClient, bearerTokenService.getIdpClient(null));
+        assertSame(bearerTokenService.idpClient, bearerTokenService.getIdpClient(new RuntimeConfig("https://connector.example")));
+
+        RuntimeConfig tenant = new RuntimeConfig("https://connector.example");
+        tenant.setIdpBaseURL("https://idp.tenant.example");
+        IdpClient tenantIdpClient = bearerTokenService.getIdpClient(tenant);
+        assertNotSame(bearerTokenService.idpClient, tenantIdpClient);
+        assertEquals("https://idp.tenant.example/.well-known/openid-configuration", tenantIdpClient.getDiscoveryDocumentUrl());
+
+        RuntimeConfig sameTenant = new RuntimeConfig("https://connector.example");
+        sameTenant.setIdpBaseURL("https://idp.tenant.example");
+        assertSame(tenantIdpClient, bearerTokenService.getIdpClient(sameTenant));
+    }
+}
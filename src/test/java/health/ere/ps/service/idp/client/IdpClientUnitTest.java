@@ -0,0 +1,93 @@
+package health.ere.ps.service.idp.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import health.ere.ps.model.idp.client.AuthenticationRequest;
+import health.ere.ps.model.idp.client.AuthenticationResponse;
+import health.ere.ps.model.idp.client.AuthorizationRequest;
+import health.ere.ps.model.idp.client.AuthorizationResponse;
+import health.ere.ps.model.idp.client.DiscoveryDocumentResponse;
+import health.ere.ps.model.idp.client.IdpTokenResult;
+import health.ere.ps.model.idp.client.authentication.AuthenticationChallenge;
+import health.ere.ps.model.idp.client.token.JsonWebToken;
+import health.ere.ps.service.connector.auth.SmcbAuthenticatorService;
+
+public class IdpClientUnitTest {
+
+    IdpClient idpClient;
+    X509Certificate certificate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        idpClient = new IdpClient();
+        idpClient.prescriptionServiceURL = "https://erp.example";
+        idpClient.logger = Logger.getLogger(IdpClient.class);
+        idpClient.authenticatorClient = mock(AuthenticatorClient.class);
+        idpClient.smcbAuthenticatorService = mock(SmcbAuthenticatorService.class);
+        idpClient.init("client", "https://ere.health/redirect_uri", "https://idp.example/.well-known/openid-configuration", true);
+        when(idpClient.authenticatorClient.retrieveDiscoveryDocument(any())).thenReturn(DiscoveryDocumentResponse.builder()
+            .authorizationEndpoint("https://idp.example/sign_response")
+            .tokenEndpoint("https://idp.example/token")
+            .ssoEndpoint("https://idp.example/sso_response")
+            .idpEnc(mock(PublicKey.class))
+            .build());
+        idpClient.initializeClient();
+        when(idpClient.authenticatorClient.doAuthorizationRequest(any())).thenReturn(AuthorizationResponse.builder()
+            .authenticationChallenge(new AuthenticationChallenge(new JsonWebToken("challenge"), null))
+            .build());
+        certificate = mock(X509Certificate.class);
+        when(certificate.getPublicKey()).thenReturn(mock(PublicKey.class));
+    }
+
+    @Test
+    void testLoginWithValidSsoToken() throws Exception {
+        idpClient.ssoTokens.put(certificate, new IdpClient.SsoToken("sso", ZonedDateTime.now().plusHours(12)));
+        when(idpClient.authenticatorClient.performAuthenticationWithSsoToken(any())).thenAnswer(invocation ->
+            AuthenticationResponse.builder().code("code").location("https://ere.health/redirect_uri?code=code&state=" + state()).build());
+        IdpTokenResult idpTokenResult = new IdpTokenResult();
+        when(idpClient.authenticatorClient.retrieveAccessToken(any())).thenReturn(idpTokenResult);
+
+        assertEquals(idpTokenResult, idpClient.login(certificate, null));
+
+        ArgumentCaptor<AuthenticationRequest> authenticationRequest = ArgumentCaptor.forClass(AuthenticationRequest.class);
+        verify(idpClient.authenticatorClient).performAuthenticationWithSsoToken(authenticationRequest.capture());
+        assertEquals("sso", authenticationRequest.getValue().getSsoToken());
+        assertEquals("https://idp.example/sso_response", authenticationRequest.getValue().getAuthenticationEndpointUrl());
+        verify(idpClient.smcbAuthenticatorService, never()).signIdpChallenge(any(), any(), any());
+    }
+
+    @Test
+    void testExpiredSsoTokenFallsBackToSignedChallenge() throws Exception {
+        idpClient.ssoTokens.put(certificate, new IdpClient.SsoToken("sso", ZonedDateTime.now().plusSeconds(10)));
+        when(idpClient.smcbAuthenticatorService.signIdpChallenge(any(), eq(certificate), any()))
+            .thenThrow(new IllegalStateException("Card not reachable"));
+
+        assertThrows(IllegalStateException.class, () -> idpClient.login(certificate, null));
+
+        verify(idpClient.authenticatorClient, never()).performAuthenticationWithSsoToken(any());
+        assertFalse(idpClient.ssoTokens.containsKey(certificate));
+    }
+
+    private String state() throws Exception {
+        ArgumentCaptor<AuthorizationRequest> authorizationRequest = ArgumentCaptor.forClass(AuthorizationRequest.class);
+        verify(idpClient.authenticatorClient).doAuthorizationRequest(authorizationRequest.capture());
+        return authorizationRequest.getValue().getState();
+    }
+}
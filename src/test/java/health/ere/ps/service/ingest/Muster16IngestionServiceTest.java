@@ -0,0 +1,136 @@
+package health.ere.ps.service.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.config.UserConfig;
+import health.ere.ps.service.executor.ObserverExecutors;
+
+public class Muster16IngestionServiceTest {
+
+    private Muster16IngestionService ingestionService;
+
+    @BeforeEach
+    void setup() {
+        ingestionService = new Muster16IngestionService();
+        ingestionService.userConfig = mock(UserConfig.class);
+    }
+
+    @Test
+    void testBrokenPdfOfZipIsReportedAsFailed() throws Exception {
+        List<IngestionResult> results = ingestionService.submitZip(new ByteArrayInputStream(zip())).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, results.size());
+        assertEquals("broken.pdf", results.get(0).getSource());
+        assertTrue(results.get(0).isFailed());
+        assertEquals(1L, ingestionService.getStatistics().get("documents"));
+        assertEquals(1L, ingestionService.getStatistics().get("failed"));
+        assertEquals(0, ingestionService.getStatistics().get("inFlight"));
+    }
+
+    @Test
+    void testZipLimits() throws Exception {
+        ingestionService.maxZipEntries = 1;
+        assertThrows(IOException.class, () -> ingestionService.submitZip(new ByteArrayInputStream(zip())));
+
+        ingestionService.maxZipEntries = 10;
+        ingestionService.maxDocumentBytes = 4;
+        List<IngestionResult> results = ingestionService.submitZip(new ByteArrayInputStream(zip())).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).getFailure().contains("larger than 4 bytes"));
+    }
+
+    @Test
+    void testUploadedZipIsReadOneDocumentAtATime() throws Exception {
+        ObserverExecutors observerExecutors = new ObserverExecutors();
+        try {
+            ingestionService.observerExecutors = observerExecutors;
+            ingestionService.maxInFlight = 1;
+            Muster16IngestionService blockedService = spy(ingestionService);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            doAnswer(invocation -> {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return invocation.callRealMethod();
+            }).when(blockedService).ingest(anyString(), any(byte[].class));
+
+            CompletableFuture<List<IngestionResult>> future = blockedService.submitZip(new ByteArrayInputStream(zip(10, 1000)));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // only the document that is being ingested is in memory, the other nine wait in the spooled ZIP
+            assertEquals(1000L, blockedService.getStatistics().get("bufferedBytes"));
+            assertEquals(9, blockedService.getStatistics().get("waiting"));
+
+            release.countDown();
+            assertEquals(10, future.get(5, TimeUnit.SECONDS).size());
+            assertEquals(0L, blockedService.getStatistics().get("bufferedBytes"));
+        } finally {
+            observerExecutors.shutdown();
+        }
+    }
+
+    @Test
+    void testBlankPageIsSkipped() throws Exception {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage(PDRectangle.A5));
+            document.save(pdf);
+        }
+
+        List<IngestionResult> results = ingestionService.submit("back.pdf", pdf.toByteArray()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).isSkipped());
+        assertFalse(results.get(0).isSent());
+        assertEquals(1L, ingestionService.getStatistics().get("skipped"));
+    }
+
+    private static byte[] zip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("broken.pdf"));
+            zip.write("not a pdf".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("readme.txt"));
+            zip.write("ignored".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zip(int entries, int entryBytes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries; i++) {
+                zip.putNextEntry(new ZipEntry("scan-" + i + ".pdf"));
+                zip.write(new byte[entryBytes]);
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
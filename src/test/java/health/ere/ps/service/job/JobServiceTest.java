@@ -0,0 +1,150 @@
+package health.ere.ps.service.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+
+public class JobServiceTest {
+
+    private JobService jobService;
+    private ObserverExecutors observerExecutors;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        observerExecutors = new ObserverExecutors();
+        jobService = new JobService();
+        jobService.observerExecutors = observerExecutors;
+        jobService.timeoutSeconds = 1;
+        jobService.init();
+        executor = Executors.newFixedThreadPool(2);
+        jobService.executor = executor;
+    }
+
+    @AfterEach
+    void tearDown() {
+        observerExecutors.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testJobResultCanBePolled() throws Exception {
+        Job<List<String>> job = jobService.submit("batch-sign", () -> List.of("a", "b"));
+
+        assertEquals(List.of("a", "b"), job.completion().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Job<?> polled = jobService.getJob(job.getId()).orElseThrow();
+        assertEquals(Job.Status.DONE, polled.getStatus());
+        assertEquals(List.of("a", "b"), polled.getResult());
+        assertFalse(jobService.cancel(job.getId()));
+    }
+
+    @Test
+    void testFailedJob() {
+        Job<String> job = jobService.submit("sign", () -> {
+            throw new IOException("Connector is down");
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> job.completion().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals(Job.Status.FAILED, job.getStatus());
+        assertNull(job.getResult());
+    }
+
+    @Test
+    void testTimeoutInterruptsJob() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Job<String> job = jobService.submit("sign", () -> {
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "too late";
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> job.completion().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(Job.Status.TIMED_OUT, job.getStatus());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        Job<String> job = jobService.submit("batch-sign", () -> {
+            Thread.sleep(60000);
+            return null;
+        });
+
+        assertTrue(jobService.cancel(job.getId()));
+        assertThrows(CancellationException.class, () -> job.completion().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertEquals(Job.Status.CANCELLED, job.getStatus());
+        assertFalse(jobService.cancel("unknown"));
+    }
+
+    @Test
+    void testRunningTaskJobIsNotInterrupted() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Job<String> job = jobService.submit("task", false, () -> {
+            started.countDown();
+            // longer than the timeout
+            Thread.sleep(1500);
+            return "created";
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertFalse(jobService.cancel(job.getId()));
+        assertEquals("created", job.completion().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertEquals(Job.Status.DONE, job.getStatus());
+    }
+
+    @Test
+    void testTimeoutStartsWhenTheJobRuns() throws Exception {
+        jobService.executor = Executors.newSingleThreadExecutor();
+        try {
+            jobService.submit("task", false, () -> {
+                Thread.sleep(1500);
+                return "created";
+            });
+            Job<String> queued = jobService.submit("sign", () -> "signed");
+
+            assertEquals("signed", queued.completion().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        } finally {
+            ((ExecutorService) jobService.executor).shutdownNow();
+        }
+    }
+
+    @Test
+    void testSaturatedPoolRejectsJob() {
+        jobService.executor = command -> {
+            throw new RejectedExecutionException("The jobs observers are saturated");
+        };
+
+        Job<String> job = jobService.submit("sign", () -> "signed");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> job.completion().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertEquals(Job.Status.FAILED, job.getStatus());
+        // answered with 503 and Retry-After instead of 500
+        assertTrue(job.isRejected());
+    }
+}
@@ -1,5 +1,10 @@
 package health.ere.ps.service.kbv;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -9,11 +14,16 @@ import java.util.stream.Collectors;
 
 import javax.xml.transform.TransformerException;
 
+import jakarta.enterprise.event.Event;
+
 import org.hl7.fhir.r4.model.Bundle;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
+import health.ere.ps.event.HTMLBundlesEvent;
+import health.ere.ps.event.ReadyToSignBundlesEvent;
 
 public class XSLTServiceTest {
     IParser parser = FhirContext.forR4().newXmlParser();
@@ -66,6 +76,27 @@ public class XSLTServiceTest {
         }
     }
 
+    @Test
+    public void testReadyToSignBundlesAreRenderedInOrder() throws IOException {
+        List<Bundle> bundles = new ArrayList<>();
+        bundles.add(parser.parseResource(Bundle.class, getXmlString("src/test/resources/kbv-zip/PF08_1.xml")));
+        bundles.add(parser.parseResource(Bundle.class, getXmlString("src/test/resources/kbv-zip/PF08_2.xml")));
+        bundles.add(parser.parseResource(Bundle.class, getXmlString("src/test/resources/kbv-zip/PF08_3.xml")));
+        XSLTService xsltService = new XSLTService();
+        xsltService.init();
+        xsltService.hTMLBundlesEvent = mock(Event.class);
+
+        xsltService.onReadyToSignBundlesEvent(new ReadyToSignBundlesEvent(bundles));
+
+        ArgumentCaptor<HTMLBundlesEvent> argumentCaptor = ArgumentCaptor.forClass(HTMLBundlesEvent.class);
+        verify(xsltService.hTMLBundlesEvent).fireAsync(argumentCaptor.capture());
+        List<String> html = argumentCaptor.getValue().getBundles();
+        assertEquals(3, html.size());
+        assertTrue(html.get(0).contains("160.185.505.541.252.20"));
+        assertTrue(html.get(1).contains("160.391.207.792.716.52"));
+        assertTrue(html.get(2).contains("160.701.411.142.873.49"));
+    }
+
     private String getXmlString(String string) throws IOException {
         return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"+Files.readString(Paths.get(string));
     }
@@ -6,15 +6,15 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.ObservesAsync;
 import jakarta.inject.Inject;
 
-import health.ere.ps.event.EreLogNotificationEvent;
+import health.ere.ps.event.EreLogNotificationBatchEvent;
 
 @ApplicationScoped
 public class EreLogNotificationEventHandler {
     @Inject
     Logger logger;
 
-    void logEventHandler(@ObservesAsync EreLogNotificationEvent ereLogNotificationEvent) {
+    void logEventHandler(@ObservesAsync EreLogNotificationBatchEvent ereLogNotificationBatchEvent) {
 
-        logger.info(ereLogNotificationEvent.toString());
+        ereLogNotificationBatchEvent.getNotifications().forEach(event -> logger.info(event.toString()));
     }
 }
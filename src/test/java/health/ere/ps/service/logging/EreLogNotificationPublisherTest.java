@@ -0,0 +1,52 @@
+package health.ere.ps.service.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.event.EreLogNotificationBatchEvent;
+
+class EreLogNotificationPublisherTest {
+
+    @Test
+    void testRateLimitPerSystemContext() {
+        EreLogNotificationPublisher publisher = new EreLogNotificationPublisher(16, 1000, 2);
+
+        assertTrue(publisher.publish(List.of("Connector"), "", "INFO", "1", null, null));
+        assertTrue(publisher.publish(List.of("Connector"), "", "INFO", "2", null, null));
+        assertFalse(publisher.publish(List.of("Connector"), "", "INFO", "3", null, null));
+        assertTrue(publisher.publish(List.of("VAU"), "", "INFO", "4", null, null));
+
+        assertEquals(1, publisher.getDroppedRateLimitedCount());
+        assertEquals(3, publisher.getPendingCount());
+    }
+
+    @Test
+    void testFullBufferDropsAndBatchDelivery() {
+        List<EreLogNotificationBatchEvent> fired = new ArrayList<>();
+        EreLogNotificationPublisher publisher = new EreLogNotificationPublisher(2, 1000, 100) {
+            @Override
+            void fire(EreLogNotificationBatchEvent event) {
+                fired.add(event);
+            }
+        };
+
+        assertTrue(publisher.publish(List.of(), "", "INFO", "1", null, null));
+        assertTrue(publisher.publish(List.of(), "", "INFO", "2", null, null));
+        assertFalse(publisher.publish(List.of(), "", "INFO", "3", null, null));
+        assertEquals(1, publisher.getDroppedFullCount());
+
+        publisher.deliverPending();
+
+        assertEquals(1, fired.size());
+        assertEquals(2, fired.get(0).getNotifications().size());
+        assertEquals("1", fired.get(0).getNotifications().get(0).getLogMessage());
+        assertEquals(0, publisher.getPendingCount());
+        assertTrue(publisher.publish(List.of(), "", "INFO", "4", null, null));
+    }
+}
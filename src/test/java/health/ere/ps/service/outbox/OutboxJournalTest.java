@@ -0,0 +1,111 @@
+package health.ere.ps.service.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OutboxJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPendingEntriesSurviveReopen() throws IOException {
+        try (OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024)) {
+            assertTrue(journal.open().isEmpty());
+            journal.append(entry("1"));
+            journal.append(entry("2"));
+            journal.append(entry("3"));
+            journal.ack("2");
+        }
+        try (OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024)) {
+            List<OutboxEntry> pending = journal.open();
+            assertEquals(2, pending.size());
+            assertEquals("1", pending.get(0).getId());
+            assertEquals("payload 3 ä", pending.get(1).getPayload());
+            assertEquals("test", pending.get(1).getKind());
+        }
+    }
+
+    @Test
+    void testTornRecordIsCutOff() throws IOException {
+        try (OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024)) {
+            journal.open();
+            journal.append(entry("1"));
+        }
+        Path segment = segments().get(0);
+        long length = Files.size(segment);
+        Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024)) {
+            assertEquals(1, journal.open().size());
+            assertEquals(length, Files.size(segment));
+            journal.append(entry("2"));
+        }
+        try (OutboxJournal journal = new OutboxJournal(directory, 1024 * 1024)) {
+            assertEquals(2, journal.open().size());
+        }
+    }
+
+    @Test
+    void testAcknowledgedSegmentsAreDeleted() throws IOException {
+        // every record starts a new segment
+        try (OutboxJournal journal = new OutboxJournal(directory, 1)) {
+            journal.open();
+            for (int i = 0; i < 5; i++) {
+                journal.append(entry(String.valueOf(i)));
+            }
+            assertEquals(5, segments().size());
+            journal.ack("1");
+            // the segment of entry 0 is pending, so the newer ones are kept
+            assertEquals(6, segments().size());
+            journal.ack("0");
+            assertEquals(5, segments().size());
+        }
+        try (OutboxJournal journal = new OutboxJournal(directory, 1)) {
+            assertEquals(3, journal.open().size());
+        }
+    }
+
+    @Test
+    void testParkedEntriesDoNotKeepSegments() throws IOException {
+        try (OutboxJournal journal = new OutboxJournal(directory, 1)) {
+            journal.open();
+            journal.append(entry("0"));
+            journal.append(entry("1"));
+            journal.park(entry("0"));
+            journal.ack("1");
+            // only the active segment and the parked file are left
+            assertEquals(2, segments().size());
+        }
+        try (OutboxJournal journal = new OutboxJournal(directory, 1)) {
+            List<OutboxEntry> pending = journal.open();
+            assertEquals(1, pending.size());
+            assertEquals("payload 0 ä", pending.get(0).getPayload());
+            assertTrue(Files.notExists(directory.resolve("parked.log")));
+            journal.ack("0");
+        }
+        try (OutboxJournal journal = new OutboxJournal(directory, 1)) {
+            assertTrue(journal.open().isEmpty());
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static OutboxEntry entry(String id) {
+        return new OutboxEntry(id, "test", "payload " + id + " ä", System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,97 @@
+package health.ere.ps.service.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import health.ere.ps.service.executor.ObserverExecutors;
+
+public class OutboxServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObserverExecutors observerExecutors = new ObserverExecutors();
+
+    @AfterEach
+    void tearDown() {
+        observerExecutors.shutdown();
+    }
+
+    @Test
+    void testFailedDeliveriesAreRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        OutboxService outboxService = outboxService(payload -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("KIM is down");
+            }
+            delivered.add(payload);
+        });
+
+        outboxService.enqueue("test", "token").get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("token"), delivered);
+        assertEquals(2L, outboxService.getStatistics().get("failedAttempts"));
+        assertEquals(0, outboxService.getStatistics().get("backlog"));
+        outboxService.shutdown();
+
+        OutboxService restarted = outboxService(delivered::add);
+        assertEquals(0L, restarted.getStatistics().get("recovered"));
+        restarted.shutdown();
+    }
+
+    @Test
+    void testParkedEntriesAreDeliveredAfterRestart() throws Exception {
+        OutboxService outboxService = outboxService(payload -> {
+            throw new IOException("eRiXa is down");
+        });
+        outboxService.maxAttempts = 1;
+
+        assertThrows(ExecutionException.class, () -> outboxService.enqueue("test", "pdf").get(5, TimeUnit.SECONDS));
+        assertEquals(1L, outboxService.getStatistics().get("parked"));
+        outboxService.shutdown();
+
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        OutboxService restarted = outboxService(delivered::add);
+        assertEquals(1L, restarted.getStatistics().get("recovered"));
+        restarted.shutdown();
+        assertEquals(List.of("pdf"), delivered);
+    }
+
+    private OutboxService outboxService(Delivery delivery) throws IOException {
+        OutboxService outboxService = new OutboxService();
+        outboxService.observerExecutors = observerExecutors;
+        outboxService.directory = directory.toString();
+        outboxService.initialBackoffMs = 1;
+        outboxService.handlers.put("test", new OutboxHandler() {
+            @Override
+            public String getKind() {
+                return "test";
+            }
+
+            @Override
+            public void deliver(String payload) throws Exception {
+                delivery.deliver(payload);
+            }
+        });
+        outboxService.init();
+        return outboxService;
+    }
+
+    @FunctionalInterface
+    interface Delivery {
+        void deliver(String payload) throws Exception;
+    }
+}
@@ -0,0 +1,116 @@
+package health.ere.ps.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+
+public class TracerTest {
+
+    @AfterEach
+    void tearDown() {
+        Tracer.setExporter(null);
+    }
+
+    @Test
+    void testSpansAreNoOpWithoutExporter() {
+        try (Span span = Tracer.startSpan("validation")) {
+            assertNull(span.getContext());
+            assertNull(Tracer.currentContext());
+        }
+    }
+
+    @Test
+    void testChildSpansAcrossThreadsAndEvents() throws Exception {
+        List<Span> spans = new ArrayList<>();
+        Tracer.setExporter(spans::add);
+
+        TraceContext eventContext;
+        try (Span root = Tracer.startSpan("websocket.receive")) {
+            try (Span validation = Tracer.startSpan("validation")) {
+                assertEquals(root.getContext().spanId(), validation.getParentSpanId());
+            }
+            assertEquals(root.getContext(), Tracer.currentContext());
+            eventContext = root.getContext();
+        }
+        assertNull(Tracer.currentContext());
+
+        // an observer of the event runs on another thread
+        Thread observer = new Thread(() -> {
+            try (Span span = Tracer.startSpan("workflow.sign-and-upload", eventContext)) {
+                span.setError(new IllegalStateException("connector not reachable"));
+            }
+        });
+        observer.start();
+        observer.join();
+
+        assertEquals(3, spans.size());
+        Span validation = spans.get(0);
+        Span root = spans.get(1);
+        Span workflow = spans.get(2);
+        assertNull(root.getParentSpanId());
+        assertEquals(root.getContext().traceId(), validation.getContext().traceId());
+        assertEquals(root.getContext().traceId(), workflow.getContext().traceId());
+        assertEquals(root.getContext().spanId(), workflow.getParentSpanId());
+        assertNotEquals(root.getContext().spanId(), workflow.getContext().spanId());
+        assertEquals("connector not reachable", workflow.getErrorMessage());
+        assertTrue(root.getEndEpochNanos() >= root.getStartEpochNanos());
+    }
+
+    @Test
+    void testOtlpJson() {
+        List<Span> spans = new ArrayList<>();
+        Tracer.setExporter(spans::add);
+        try (Span root = Tracer.startSpan("sign")) {
+            root.setAttribute("documents", 3).setAttribute("valid", true).setAttribute("flowtype", "160");
+        }
+
+        JsonObject request = Json.createReader(new StringReader(TraceExporter.toOtlpJson(spans, "ere-ps-app"))).readObject();
+
+        JsonObject resourceSpans = request.getJsonArray("resourceSpans").getJsonObject(0);
+        assertEquals("ere-ps-app", resourceSpans.getJsonObject("resource").getJsonArray("attributes")
+            .getJsonObject(0).getJsonObject("value").getString("stringValue"));
+        JsonObject span = resourceSpans.getJsonArray("scopeSpans").getJsonObject(0).getJsonArray("spans").getJsonObject(0);
+        assertEquals("sign", span.getString("name"));
+        assertEquals(32, span.getString("traceId").length());
+        assertEquals(16, span.getString("spanId").length());
+        assertEquals(String.valueOf(spans.get(0).getStartEpochNanos()), span.getString("startTimeUnixNano"));
+        assertEquals("3", span.getJsonArray("attributes").getJsonObject(0).getJsonObject("value").getString("intValue"));
+        assertTrue(span.getJsonArray("attributes").getJsonObject(1).getJsonObject("value").getBoolean("boolValue"));
+        assertEquals(1, span.getJsonObject("status").getInt("code"));
+    }
+
+    @Test
+    void testFileExporter(@TempDir Path tempDir) throws Exception {
+        TraceExporter exporter = new TraceExporter();
+        exporter.exporter = TraceExporter.FILE;
+        exporter.file = tempDir.resolve("traces.jsonl").toString();
+        exporter.flushIntervalMs = 50;
+        exporter.init();
+        try {
+            try (Span span = Tracer.startSpan("task.create")) {
+                span.setAttribute("flowtype", "160");
+            }
+        } finally {
+            exporter.shutdown();
+        }
+
+        List<String> lines = Files.readAllLines(Path.of(exporter.file));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"name\":\"task.create\""));
+        assertEquals(1, exporter.getExported());
+    }
+}
@@ -0,0 +1,33 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.StringReader;
+import java.util.List;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+class JsonEnvelopeWriterTest {
+
+  @Test
+  void testWriteProducesCompactParseableEnvelope() {
+    String message = JsonEnvelopeWriter.write(Websocket.jsonbFactory, "AbortTasksStatus", List.of("a", "b"), "id-\"1\"");
+
+    assertFalse(message.contains("\n"));
+    JsonObject object = Json.createReader(new StringReader(message)).readObject();
+    assertEquals("AbortTasksStatus", object.getString("type"));
+    assertEquals(2, object.getJsonArray("payload").size());
+    assertEquals("id-\"1\"", object.getString("replyToMessageId"));
+  }
+
+  @Test
+  void testWriteRawKeepsNullReplyToMessageIdAsString() {
+    String message = JsonEnvelopeWriter.writeRaw("Bundles", "[]", null);
+
+    assertEquals("{\"type\":\"Bundles\",\"payload\":[],\"replyToMessageId\":\"null\"}", message);
+  }
+}
@@ -1,7 +1,10 @@
 package health.ere.ps.websocket;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -12,13 +15,17 @@ import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import jakarta.enterprise.event.Event;
 import jakarta.json.Json;
 import jakarta.websocket.RemoteEndpoint.Async;
 import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
 import jakarta.websocket.Session;
 
 import org.hl7.fhir.r4.model.Bundle;
@@ -104,4 +111,84 @@ class WebsocketTest {
     assertEquals("Exception", exceptionObject.getString("type"));
 
   }
+
+  @Test
+  void testBinaryFramingSendsHeaderAndChunkedPdf() throws IOException {
+    Websocket websocket = new Websocket();
+    websocket.binaryChunkSize = 1024;
+    Session mockedSession = mock(Session.class);
+    Async mockedAsync = completingAsync();
+    Map<String, Object> userProperties = new HashMap<>();
+    when(mockedSession.getUserProperties()).thenReturn(userProperties);
+    when(mockedSession.getAsyncRemote()).thenReturn(mockedAsync);
+
+    websocket.onMessage(new String(getClass().getResourceAsStream("/websocket" +
+            "-messages/NegotiateFraming.json").readAllBytes(), StandardCharsets.UTF_8), mockedSession);
+    assertEquals(Websocket.FRAMING_BINARY, userProperties.get(Websocket.FRAMING_PROPERTY));
+
+    List<BundleWithAccessCodeOrThrowable> list = new ArrayList<>();
+    Bundle bundle = (Bundle) FhirContext.forR4().newXmlParser().parseResource(
+				getClass().getResourceAsStream("/examples_erezept/Erezept_template_2.xml"));
+    list.add(new BundleWithAccessCodeOrThrowable(bundle, "MOCK_ACCESS_CODE"));
+    byte[] pdf = new byte[2500];
+    websocket.onERezeptDocuments(new ERezeptWithDocumentsEvent(List.of(new ERezeptDocument(list, pdf)), mockedSession, "1"));
+
+    // the NegotiateFramingResponse and the header
+    ArgumentCaptor<Object> headerCaptor = ArgumentCaptor.forClass(Object.class);
+    verify(mockedAsync, times(2)).sendObject(headerCaptor.capture(), any(SendHandler.class));
+    jakarta.json.JsonObject header = Json.createReader(new StringReader((String) headerCaptor.getAllValues().get(1))).readObject();
+    assertEquals("ERezeptWithDocuments", header.getString("type"));
+    jakarta.json.JsonObject bundleObject = header.getJsonArray("payload").getJsonObject(0)
+            .getJsonArray("bundleWithAccessCodeOrThrowables").getJsonObject(0);
+    assertEquals("MOCK_ACCESS_CODE", bundleObject.getString("accessCode"));
+    assertEquals("Bundle", bundleObject.getJsonObject("bundle").getString("resourceType"));
+    jakarta.json.JsonObject pdfReference = header.getJsonArray("payload").getJsonObject(0).getJsonObject("pdfDocument");
+    assertEquals(2500, pdfReference.getInt("length"));
+    assertEquals(3, pdfReference.getInt("chunks"));
+
+    ArgumentCaptor<ByteBuffer> frameCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
+    verify(mockedAsync, times(3)).sendBinary(frameCaptor.capture(), any(SendHandler.class));
+    ByteBuffer lastFrame = frameCaptor.getAllValues().get(2);
+    assertEquals(BinaryFrameWriter.PREFIX_LENGTH + 452, lastFrame.remaining());
+    assertEquals(header.getInt("transferId"), lastFrame.getInt(0));
+    assertEquals(2, lastFrame.getInt(8));
+  }
+
+  @Test
+  void testSessionSenderSendsOneMessageAtATime() {
+    Session mockedSession = mock(Session.class);
+    Async mockedAsync = mock(Async.class);
+    when(mockedSession.getUserProperties()).thenReturn(new HashMap<>());
+    when(mockedSession.getAsyncRemote()).thenReturn(mockedAsync);
+    List<SendHandler> inFlight = new ArrayList<>();
+    doAnswer(invocation -> inFlight.add(invocation.getArgument(1))).when(mockedAsync).sendObject(any(), any(SendHandler.class));
+
+    SessionSender.of(mockedSession).sendObject("1", result -> { });
+    SessionSender.of(mockedSession).sendObject("2", result -> { });
+    verify(mockedAsync, times(1)).sendObject(any(), any(SendHandler.class));
+
+    inFlight.get(0).onResult(new SendResult());
+    verify(mockedAsync).sendObject(eq("2"), any(SendHandler.class));
+  }
+
+  @Test
+  void testBinaryFrameWriterRejectsInvalidChunkSize() {
+    assertThrows(IllegalArgumentException.class, () -> new BinaryFrameWriter(0));
+    Websocket websocket = new Websocket();
+    websocket.binaryChunkSize = 0;
+    assertEquals(Websocket.DEFAULT_BINARY_CHUNK_SIZE, websocket.getBinaryChunkSize());
+  }
+
+  private static Async completingAsync() {
+    Async mockedAsync = mock(Async.class);
+    doAnswer(invocation -> {
+      ((SendHandler) invocation.getArgument(1)).onResult(new SendResult());
+      return null;
+    }).when(mockedAsync).sendObject(any(), any(SendHandler.class));
+    doAnswer(invocation -> {
+      ((SendHandler) invocation.getArgument(1)).onResult(new SendResult());
+      return null;
+    }).when(mockedAsync).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+    return mockedAsync;
+  }
 }